@@ -0,0 +1,134 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import orderingsystem.bench.Workload;
+
+/**
+ * The operations as the console originally issued them: every statement is
+ * built with String.format and run through the string overloads of Cafe,
+ * and an order is placed one autocommitted statement at a time with a
+ * client-side orderid. Results are collected instead of printed so that
+ * console output is not part of the measurement.
+ *
+ */
+public class LegacyWorkload implements Workload {
+
+   // client-side orderids, kept clear of the ids the serial column hands out.
+   private static final AtomicInteger currnum = new AtomicInteger(50000000);
+
+   private Cafe esql;
+
+   public void open(String url, String user, String password) throws Exception {
+      this.esql = new Cafe(new ConnectionPool(url, user, password, 1, 8));
+   }
+
+   public int placeOrder(String login, List<String> items) throws Exception {
+      int orderid = currnum.getAndIncrement();
+      double total = 0.0;
+      Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+      SimpleDateFormat timeformat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+      String addOrderQuery = String.format("INSERT INTO Orders (orderid,login, paid, timeStampRecieved, total) VALUES('%d','%s', '%s', '%s', '%s')", orderid, login, "false", String.format(timeformat.format(timestamp)), "0");
+      esql.executeUpdate(addOrderQuery);
+      for (String item : items) {
+         String getPriceQuery = String.format("SELECT P.price FROM MENU P WHERE itemName = '" + item + "'");
+         List<List<String>> temp = esql.executeQueryAndReturnResult(getPriceQuery);
+         total += Double.parseDouble(temp.get(0).get(0));
+         String addToItemStatusQuery = String.format("INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) VALUES('%d', '%s', '%s', '%s', '%s')", orderid, item, String.format(timeformat.format(timestamp)), String.format("Hasn''t Started"), "test");
+         esql.executeUpdate(addToItemStatusQuery);
+         esql.executeQueryAndReturnResult(String.format("SELECT * FROM ItemStatus WHERE orderid = '" + orderid + "'"));
+      }//end for
+      esql.executeUpdate(String.format("UPDATE Orders SET total = '" + total + "' WHERE orderid = '" + orderid + "'"));
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM Orders WHERE orderid = '" + orderid + "'"));
+      return orderid;
+   }//end placeOrder
+
+   public boolean logIn(String login, String password) throws Exception {
+      String query = String.format("SELECT * FROM USERS WHERE login = '%s' AND password = '%s'", login, password);
+      return esql.executeQuery(query) > 0;
+   }
+
+   public int findByName(String itemName) throws Exception {
+      return esql.executeQueryAndReturnResult(
+         String.format("SELECT * FROM MENU M WHERE M.itemName = '" + itemName + "'")).size();
+   }
+
+   public int findByType(String type) throws Exception {
+      return esql.executeQueryAndReturnResult(
+         String.format("SELECT * FROM MENU M WHERE M.type = '" + type + "'")).size();
+   }
+
+   // the console had exact lookups only; the nearest string-built query.
+   public int searchMenu(String query) throws Exception {
+      return esql.executeQueryAndReturnResult(
+         String.format("SELECT * FROM MENU M WHERE M.itemName ILIKE '%%%s%%' OR M.type ILIKE '%%%s%%' OR M.description ILIKE '%%%s%%'", query, query, query)).size();
+   }
+
+   public int listUnpaidOrders(String staffLogin, String password) throws Exception {
+      if (esql.executeQuery("SELECT U.login FROM Users U WHERE U.login = '" + staffLogin + "' AND (U.type = 'Manager' OR U.type = 'Employee')") == 0)
+         throw new IllegalStateException(staffLogin + " is not staff");
+      return esql.executeQueryAndReturnResult(
+         String.format("SELECT * FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = 'f'")).size();
+   }//end listUnpaidOrders
+
+   // UpdateOrder: read the price and the total, insert the item, write the
+   // adjusted total back.
+   public void addItem(String login, String password, int orderid, String itemName) throws Exception {
+      Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+      SimpleDateFormat timeformat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+      double new_price = Double.parseDouble(esql.executeQueryAndReturnResult(
+         String.format("SELECT P.price FROM MENU P WHERE itemName = '" + itemName + "'")).get(0).get(0));
+      double total_price = Double.parseDouble(esql.executeQueryAndReturnResult(
+         String.format("SELECT total FROM Orders WHERE orderid = " + orderid)).get(0).get(0));
+      total_price += new_price;
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM ItemStatus WHERE orderid = " + orderid));
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM Orders WHERE orderid = " + orderid));
+      esql.executeUpdate(String.format("INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) VALUES('%d', '%s', '%s', '%s', '%s')", orderid, itemName, String.format(timeformat.format(timestamp)), "Hasn''t started", ""));
+      esql.executeUpdate(String.format("UPDATE Orders SET total = " + total_price + " WHERE orderid = " + orderid));
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM ItemStatus WHERE orderid = " + orderid));
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM Orders WHERE orderid = " + orderid));
+   }//end addItem
+
+   public void removeItem(String login, String password, int orderid, String itemName) throws Exception {
+      double price = Double.parseDouble(esql.executeQueryAndReturnResult(
+         String.format("SELECT P.price FROM MENU P WHERE itemName = '" + itemName + "'")).get(0).get(0));
+      double total_price = Double.parseDouble(esql.executeQueryAndReturnResult(
+         String.format("SELECT total FROM Orders WHERE orderid = " + orderid)).get(0).get(0));
+      total_price -= price;
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM ItemStatus WHERE orderid = " + orderid));
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM Orders WHERE orderid = " + orderid));
+      esql.executeUpdate(String.format("DELETE FROM ItemStatus WHERE itemName = '" + itemName + "' AND orderid = " + orderid));
+      esql.executeUpdate(String.format("UPDATE Orders SET total = " + total_price + " WHERE orderid = " + orderid));
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM ItemStatus WHERE orderid = " + orderid));
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM Orders WHERE orderid = " + orderid));
+   }//end removeItem
+
+   public int showOrder(int orderid) throws Exception {
+      esql.executeQueryAndReturnResult(String.format("SELECT * FROM Orders WHERE orderid = " + orderid));
+      return esql.executeQueryAndReturnResult(String.format("SELECT * FROM ItemStatus WHERE orderid = " + orderid)).size();
+   }
+
+   public double getTotal(int orderid) throws Exception {
+      return Double.parseDouble(esql.executeQueryAndReturnResult(
+         String.format("SELECT total FROM Orders WHERE orderid = " + orderid)).get(0).get(0));
+   }
+
+   public void close() {
+      esql.cleanup();
+   }
+
+}//end LegacyWorkload
@@ -0,0 +1,25 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+/**
+ * The service operations with Cafe in pipelined mode: an order is shown
+ * with its two reads overlapped, and placed with its inserts sent as one
+ * pipeline.
+ *
+ */
+public class PipelinedWorkload extends ServiceWorkload {
+
+   public PipelinedWorkload() {
+      super(true);
+   }
+
+}//end PipelinedWorkload
@@ -0,0 +1,118 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import orderingsystem.bench.Workload;
+
+/**
+ * The operations as the console and the HTTP server run them now: through
+ * UserService, MenuService and OrderService.
+ *
+ */
+public class ServiceWorkload implements Workload {
+
+   private final boolean pipelined;
+
+   private Cafe esql;
+
+   // the staff session listUnpaidOrders runs in, opened on first use.
+   private volatile UserSession staff;
+
+   // customer sessions the item edits run in, by login.
+   private final ConcurrentMap<String, UserSession> customers = new ConcurrentHashMap<String, UserSession>();
+
+   public ServiceWorkload() {
+      this(false);
+   }
+
+   /**
+    * @param pipelined whether the services overlap independent reads and
+    *        pipeline the writes of a new order
+    */
+   protected ServiceWorkload(boolean pipelined) {
+      this.pipelined = pipelined;
+   }
+
+   public void open(String url, String user, String password) throws Exception {
+      this.esql = new Cafe(new ConnectionPool(url, user, password, 1, 8));
+      this.esql.setPipelined(pipelined);
+      // load the menu catalog outside the measurement
+      this.esql.getMenuCatalog().reload();
+   }
+
+   public int placeOrder(String login, List<String> items) throws Exception {
+      return esql.getOrderService().placeOrder(new OrderRequest(login, items)).getOrderId();
+   }
+
+   public boolean logIn(String login, String password) throws Exception {
+      return esql.getUserService().logIn(login, password) != null;
+   }
+
+   public int findByName(String itemName) throws Exception {
+      return esql.getMenuService().findByName(itemName) == null ? 0 : 1;
+   }
+
+   public int findByType(String type) throws Exception {
+      return esql.getMenuService().findByType(type).size();
+   }
+
+   public int searchMenu(String query) throws Exception {
+      return esql.getMenuService().search(query, 20).size();
+   }
+
+   public int listUnpaidOrders(String staffLogin, String password) throws Exception {
+      UserSession session = staff;
+      if (session == null || !session.getLogin().equals(staffLogin))
+         staff = session = esql.getUserService().logIn(staffLogin, password);
+      int unpaid = 0;
+      String after = null;
+      do {
+         OrderPage page = esql.getOrderService().listUnpaidOrders(session, after, OrderService.MAX_PAGE_SIZE);
+         unpaid += page.getOrders().size();
+         after = page.getNext();
+      } while (after != null);
+      return unpaid;
+   }//end listUnpaidOrders
+
+   public void addItem(String login, String password, int orderid, String itemName) throws Exception {
+      esql.getOrderService().addItem(customer(login, password), orderid, itemName);
+   }
+
+   public void removeItem(String login, String password, int orderid, String itemName) throws Exception {
+      esql.getOrderService().removeItem(customer(login, password), orderid, itemName);
+   }
+
+   public int showOrder(int orderid) throws Exception {
+      return esql.getOrderService().getOrder(orderid).getItems().size();
+   }
+
+   public double getTotal(int orderid) throws Exception {
+      return esql.getOrderService().getOrder(orderid).getTotal();
+   }
+
+   private UserSession customer(String login, String password) throws Exception {
+      UserSession session = customers.get(login);
+      if (session == null) {
+         session = esql.getUserService().logIn(login, password);
+         customers.put(login, session);
+      }//end if
+      return session;
+   }//end customer
+
+   public void close() {
+      esql.cleanup();
+   }
+
+}//end ServiceWorkload
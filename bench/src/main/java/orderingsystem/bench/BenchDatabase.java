@@ -0,0 +1,184 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+package orderingsystem.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.postgresql.PGConnection;
+
+/**
+ * The database a benchmark runs against. By default a throwaway Postgres is
+ * started for the fork; -Dbench.url (with bench.user and bench.password,
+ * passed to the fork with -jvmArgsAppend) points the benchmarks at an
+ * existing server instead. Either way the public schema is recreated from
+ * sql/src, brought to the current version with the scripts in
+ * sql/src/migrations, and seeded:
+ *
+ *   - the menu and users from menu.csv and users.csv,
+ *   - BENCH_ITEMS extra menu items so that large orders need no repeats,
+ *   - bench.orders orders (10000 by default) spread over the last two
+ *     days, a quarter of them paid, for the unpaid-orders query.
+ *
+ * An existing database given with bench.url is wiped, so it must be a
+ * scratch database.
+ *
+ */
+public final class BenchDatabase implements AutoCloseable {
+
+   public static final String CUSTOMER = "Natalie_Braun";
+   public static final String CUSTOMER_PASSWORD = "b123456";
+   public static final String STAFF = "Admin";
+   public static final String STAFF_PASSWORD = "admin";
+   public static final String MENU_ITEM = "Coffee";
+   public static final String MENU_TYPE = "Drinks";
+   public static final String MENU_SEARCH = "noodle sou";
+
+   public static final int BENCH_ITEMS = 20;
+   static final int DEFAULT_ORDERS = 10000;
+
+   // applied in order after the create scripts, as sql/scripts/migrate.sh does
+   static final String[] MIGRATIONS = {
+      "001_text_numeric_indexes.sql", "002_item_status_queue.sql", "003_order_keyset_indexes.sql",
+      "004_menu_search.sql", "005_favorites.sql", "006_sales_rollups.sql", "007_kitchen_queue_index.sql",
+      "008_item_prices.sql" };
+
+   private final EmbeddedPostgres _postgres;
+   private final String _url;
+   private final String _user;
+   private final String _password;
+
+   private BenchDatabase(EmbeddedPostgres postgres, String url, String user, String password) {
+      this._postgres = postgres;
+      this._url = url;
+      this._user = user;
+      this._password = password;
+   }
+
+   /**
+    * Starts (or connects to) the benchmark database and loads it.
+    */
+   public static BenchDatabase start() throws Exception {
+      String url = System.getProperty("bench.url");
+      BenchDatabase db;
+      if (url != null) {
+         db = new BenchDatabase(null, url, System.getProperty("bench.user", System.getProperty("user.name")),
+                                System.getProperty("bench.password", ""));
+      } else {
+         EmbeddedPostgres postgres = EmbeddedPostgres.start();
+         db = new BenchDatabase(postgres, postgres.getJdbcUrl("postgres", "postgres"), "postgres", "");
+      }//end if
+      try {
+         db.load(Integer.getInteger("bench.orders", DEFAULT_ORDERS));
+      }catch (Exception e) {
+         db.close();
+         throw e;
+      }//end try
+      return db;
+   }//end start
+
+   public String getUrl() { return this._url; }
+   public String getUser() { return this._user; }
+   public String getPassword() { return this._password; }
+
+   /**
+    * @return the names of the first count benchmark menu items
+    */
+   public static List<String> benchItems(int count) {
+      if (count > BENCH_ITEMS)
+         throw new IllegalArgumentException("At most " + BENCH_ITEMS + " items per order");
+      List<String> items = new ArrayList<String>(count);
+      for (int i = 1; i <= count; ++i)
+         items.add(String.format("Bench Item %02d", i));
+      return items;
+   }//end benchItems
+
+   private void load(int orders) throws SQLException, IOException {
+      try (Connection conn = DriverManager.getConnection(this._url, this._user, this._password);
+           Statement stmt = conn.createStatement()) {
+         stmt.execute("DROP SCHEMA IF EXISTS public CASCADE");
+         stmt.execute("CREATE SCHEMA public");
+         stmt.execute(script("create_tables.sql", true));
+         stmt.execute(script("create_indexes.sql", true));
+         stmt.execute(script("menu_version.sql", true));
+         for (String migration : MIGRATIONS)
+            stmt.execute(script("migrations/" + migration, false));
+
+         PGConnection pg = conn.unwrap(PGConnection.class);
+         copy(pg, "Menu", "menu.csv");
+         copy(pg, "Users", "users.csv");
+
+         try (PreparedStatement item = conn.prepareStatement(
+                 "INSERT INTO Menu (itemName, type, price, description, imageURL) VALUES (?, 'Bench', 1.00, '', '')")) {
+            for (String name : benchItems(BENCH_ITEMS)) {
+               item.setString(1, name);
+               item.addBatch();
+            }//end for
+            item.executeBatch();
+         }//end try
+         try (PreparedStatement order = conn.prepareStatement(
+                 "INSERT INTO Orders (login, paid, timeStampRecieved, total) " +
+                 "SELECT ?, i % 4 = 0, NOW() - (i % 2880) * INTERVAL '1 minute', 1.99 " +
+                 "FROM generate_series(1, ?) i")) {
+            order.setString(1, CUSTOMER);
+            order.setInt(2, orders);
+            order.executeUpdate();
+         }//end try
+         stmt.execute("ANALYZE");
+      }//end try
+   }//end load
+
+   // The create scripts start by dropping the tables they create, which
+   // fails on the fresh schema; those statements are left out. Migrations
+   // run as they are.
+   private static String script(String name, boolean skipDrops) throws IOException {
+      StringBuilder sql = new StringBuilder();
+      try (BufferedReader reader = new BufferedReader(resource(name))) {
+         String line;
+         while ((line = reader.readLine()) != null)
+            if (!skipDrops || !line.trim().toUpperCase().startsWith("DROP "))
+               sql.append(line).append('\n');
+      }//end try
+      return sql.toString();
+   }//end script
+
+   private static void copy(PGConnection pg, String table, String csv) throws SQLException, IOException {
+      try (Reader reader = resource(csv)) {
+         pg.getCopyAPI().copyIn("COPY " + table + " FROM STDIN WITH DELIMITER ';'", reader);
+      }
+   }//end copy
+
+   private static Reader resource(String name) throws IOException {
+      InputStream in = BenchDatabase.class.getResourceAsStream("/sql/" + name);
+      if (in == null)
+         throw new IOException("Missing resource sql/" + name);
+      return new InputStreamReader(in, StandardCharsets.UTF_8);
+   }//end resource
+
+   public void close() throws IOException {
+      if (this._postgres != null)
+         this._postgres.close();
+   }
+
+}//end BenchDatabase
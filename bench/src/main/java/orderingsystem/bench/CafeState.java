@@ -0,0 +1,74 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+package orderingsystem.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The database and the workload shared by the threads of one trial.
+ *
+ * path selects how the operations are run:
+ *   legacy  - string-built statements, as the console originally ran them
+ *   service - the UserService, MenuService and OrderService layer
+ *   pipelined - the same layer with Cafe.setPipelined(true)
+ *
+ */
+@State(Scope.Benchmark)
+public class CafeState {
+
+   @Param({"legacy", "service", "pipelined"})
+   public String path;
+
+   private BenchDatabase _db;
+   private Workload _workload;
+
+   @Setup(Level.Trial)
+   public void setUp() throws Exception {
+      this._db = BenchDatabase.start();
+      this._workload = newWorkload(this.path);
+      this._workload.open(this._db.getUrl(), this._db.getUser(), this._db.getPassword());
+   }//end setUp
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception {
+      try {
+         if (this._workload != null)
+            this._workload.close();
+      } finally {
+         if (this._db != null)
+            this._db.close();
+      }//end try
+   }//end tearDown
+
+   public Workload workload() {
+      return this._workload;
+   }
+
+   private static Workload newWorkload(String path) throws ReflectiveOperationException {
+      String name;
+      if (path.equals("legacy"))
+         name = "LegacyWorkload";
+      else if (path.equals("service"))
+         name = "ServiceWorkload";
+      else if (path.equals("pipelined"))
+         name = "PipelinedWorkload";
+      else
+         throw new IllegalArgumentException("Unknown path: " + path);
+      return (Workload) Class.forName(name).getDeclaredConstructor().newInstance();
+   }//end newWorkload
+
+}//end CafeState
@@ -0,0 +1,120 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+package orderingsystem.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The service layer with the pgjdbc settings ConnectionPool opens its
+ * connections with, against the same layer with the driver's own defaults.
+ *
+ * settings selects the driver properties:
+ *   tuned    - ConnectionPool.DRIVER_DEFAULTS: server-side prepare on first
+ *              use, batched inserts rewritten to multi-row inserts, a
+ *              default fetch size
+ *   driver   - prepareThreshold=5, no batch rewriting, no fetch size, as a
+ *              plain DriverManager connection would have them
+ *
+ * Placing a 20-item order shows the batch rewriting, logging in and reading
+ * an order back show the statements prepared on the server.
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DriverSettingsBenchmark {
+
+   // the driver's own defaults for the settings ConnectionPool changes
+   static final String[][] DRIVER_DEFAULTS = {
+      { "cafe.jdbc.prepareThreshold", "5" },
+      { "cafe.jdbc.reWriteBatchedInserts", "false" },
+      { "cafe.jdbc.defaultRowFetchSize", "0" },
+      { "cafe.jdbc.preparedStatementCacheQueries", "256" } };
+
+   @State(Scope.Benchmark)
+   public static class DriverState {
+
+      @Param({"tuned", "driver"})
+      public String settings;
+
+      private BenchDatabase _db;
+      private Workload _workload;
+      private List<String> _order;
+      private int _orderId;
+
+      @Setup(Level.Trial)
+      public void setUp() throws Exception {
+         if (this.settings.equals("driver")) {
+            for (String[] setting : DRIVER_DEFAULTS)
+               System.setProperty(setting[0], setting[1]);
+         }else if (!this.settings.equals("tuned"))
+            throw new IllegalArgumentException("Unknown settings: " + this.settings);
+         this._db = BenchDatabase.start();
+         this._workload = (Workload) Class.forName("ServiceWorkload").getDeclaredConstructor().newInstance();
+         this._workload.open(this._db.getUrl(), this._db.getUser(), this._db.getPassword());
+         this._order = BenchDatabase.benchItems(BenchDatabase.BENCH_ITEMS);
+         this._orderId = this._workload.placeOrder(BenchDatabase.CUSTOMER, this._order);
+      }//end setUp
+
+      @TearDown(Level.Trial)
+      public void tearDown() throws Exception {
+         try {
+            if (this._workload != null)
+               this._workload.close();
+         } finally {
+            if (this._db != null)
+               this._db.close();
+            for (String[] setting : DRIVER_DEFAULTS)
+               System.clearProperty(setting[0]);
+         }//end try
+      }//end tearDown
+
+   }//end DriverState
+
+   @Benchmark
+   public int placeOrder(DriverState state) throws Exception {
+      return state._workload.placeOrder(BenchDatabase.CUSTOMER, state._order);
+   }
+
+   @Benchmark
+   public boolean logIn(DriverState state) throws Exception {
+      return state._workload.logIn(BenchDatabase.CUSTOMER, BenchDatabase.CUSTOMER_PASSWORD);
+   }
+
+   @Benchmark
+   public int showOrder(DriverState state) throws Exception {
+      return state._workload.showOrder(state._orderId);
+   }
+
+   @Benchmark
+   public int unpaidOrders(DriverState state) throws Exception {
+      return state._workload.listUnpaidOrders(BenchDatabase.STAFF, BenchDatabase.STAFF_PASSWORD);
+   }
+
+}//end DriverSettingsBenchmark
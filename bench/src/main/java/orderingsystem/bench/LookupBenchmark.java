@@ -0,0 +1,62 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+package orderingsystem.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The read paths: logging in, looking up the menu by item name and by type,
+ * searching it for partial words, and the staff query for the unpaid
+ * orders of the last day.
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+   @Benchmark
+   public boolean logIn(CafeState state) throws Exception {
+      return state.workload().logIn(BenchDatabase.CUSTOMER, BenchDatabase.CUSTOMER_PASSWORD);
+   }
+
+   @Benchmark
+   public int menuByName(CafeState state) throws Exception {
+      return state.workload().findByName(BenchDatabase.MENU_ITEM);
+   }
+
+   @Benchmark
+   public int menuByType(CafeState state) throws Exception {
+      return state.workload().findByType(BenchDatabase.MENU_TYPE);
+   }
+
+   @Benchmark
+   public int menuSearch(CafeState state) throws Exception {
+      return state.workload().searchMenu(BenchDatabase.MENU_SEARCH);
+   }
+
+   @Benchmark
+   public int unpaidOrders(CafeState state) throws Exception {
+      return state.workload().listUnpaidOrders(BenchDatabase.STAFF, BenchDatabase.STAFF_PASSWORD);
+   }
+
+}//end LookupBenchmark
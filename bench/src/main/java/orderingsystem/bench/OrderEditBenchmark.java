@@ -0,0 +1,99 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+package orderingsystem.bench;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parallel edits of one order: every thread adds an item of its own to the
+ * same unpaid order and removes it again. Each pair leaves the total as it
+ * was, so after every iteration the stored total is checked against the
+ * total the order started with; any difference is an edit that overwrote
+ * another one's total.
+ *
+ * The legacy path reads the total, adjusts it in Java and writes it back,
+ * so it is expected to lose updates and its difference is only printed. On
+ * the service path a difference fails the run. Runs with at most
+ * BenchDatabase.BENCH_ITEMS threads, e.g. -t 16.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderEditBenchmark {
+
+   private final AtomicInteger _editors = new AtomicInteger();
+   private int _orderid;
+   private double _total;
+
+   /**
+    * The item one thread adds and removes.
+    */
+   @State(Scope.Thread)
+   public static class Editor {
+      String item;
+
+      @Setup(Level.Trial)
+      public void setUp(OrderEditBenchmark bench) {
+         int editor = bench._editors.getAndIncrement();
+         if (editor >= BenchDatabase.BENCH_ITEMS)
+            throw new IllegalStateException("At most " + BenchDatabase.BENCH_ITEMS + " threads");
+         this.item = BenchDatabase.benchItems(editor + 1).get(editor);
+      }//end setUp
+   }//end Editor
+
+   @Setup(Level.Iteration)
+   public void placeOrder(CafeState state) throws Exception {
+      Workload workload = state.workload();
+      this._orderid = workload.placeOrder(BenchDatabase.CUSTOMER, Collections.singletonList(BenchDatabase.MENU_ITEM));
+      this._total = workload.getTotal(this._orderid);
+   }//end placeOrder
+
+   @Benchmark
+   public void addAndRemove(CafeState state, Editor editor) throws Exception {
+      Workload workload = state.workload();
+      workload.addItem(BenchDatabase.CUSTOMER, BenchDatabase.CUSTOMER_PASSWORD, this._orderid, editor.item);
+      workload.removeItem(BenchDatabase.CUSTOMER, BenchDatabase.CUSTOMER_PASSWORD, this._orderid, editor.item);
+   }//end addAndRemove
+
+   @TearDown(Level.Iteration)
+   public void checkTotal(CafeState state) throws Exception {
+      double drift = state.workload().getTotal(this._orderid) - this._total;
+      if (Math.abs(drift) < 0.005)
+         return;
+      String message = String.format("Order %d total is off by %.2f after parallel edits", this._orderid, drift);
+      if (!state.path.equals("legacy"))
+         throw new IllegalStateException(message);
+      System.out.println(message + " (expected on the legacy path)");
+   }//end checkTotal
+
+}//end OrderEditBenchmark
@@ -0,0 +1,62 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+package orderingsystem.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wall time of one order update as a customer sees it: the order is
+ * written and the order screen is read back. Compare the service path,
+ * which runs every statement in turn, with the pipelined path, which sends
+ * the writes as one pipeline and overlaps the two reads of the screen.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class OrderUpdateBenchmark {
+
+   @Param({"1", "5"})
+   public int items;
+
+   private List<String> _order;
+
+   @Setup
+   public void setUp() {
+      this._order = BenchDatabase.benchItems(this.items);
+   }
+
+   @Benchmark
+   public int updateAndShow(CafeState state) throws Exception {
+      Workload workload = state.workload();
+      return workload.showOrder(workload.placeOrder(BenchDatabase.CUSTOMER, this._order));
+   }
+
+}//end OrderUpdateBenchmark
@@ -0,0 +1,57 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+package orderingsystem.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end cost of placing an order of 1, 5 or 20 items, from the first
+ * statement to the stored order being read back.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaceOrderBenchmark {
+
+   @Param({"1", "5", "20"})
+   public int items;
+
+   private List<String> _order;
+
+   @Setup
+   public void setUp() {
+      this._order = BenchDatabase.benchItems(this.items);
+   }
+
+   @Benchmark
+   public int placeOrder(CafeState state) throws Exception {
+      return state.workload().placeOrder(BenchDatabase.CUSTOMER, this._order);
+   }
+
+}//end PlaceOrderBenchmark
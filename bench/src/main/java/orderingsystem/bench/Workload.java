@@ -0,0 +1,92 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package orderingsystem.bench;
+
+import java.util.List;
+
+/**
+ * One way of running the benchmarked operations against the database.
+ * Implementations live in the default package next to Cafe, which classes
+ * in a named package cannot reference directly, and are loaded by name.
+ *
+ */
+public interface Workload {
+
+   /**
+    * Connects to the benchmark database.
+    */
+   void open(String url, String user, String password) throws Exception;
+
+   /**
+    * Places an order and returns its orderid.
+    */
+   int placeOrder(String login, List<String> items) throws Exception;
+
+   /**
+    * @return true when the credentials are valid
+    */
+   boolean logIn(String login, String password) throws Exception;
+
+   /**
+    * @return the number of menu items with the name
+    */
+   int findByName(String itemName) throws Exception;
+
+   /**
+    * @return the number of menu items of the type
+    */
+   int findByType(String type) throws Exception;
+
+   /**
+    * Searches the menu for partial words, as a customer types them.
+    *
+    * @return the number of menu items found
+    */
+   int searchMenu(String query) throws Exception;
+
+   /**
+    * Lists the unpaid orders as the given employee or manager would, who
+    * logged in once with the password.
+    *
+    * @return the number of orders of the last day that are still unpaid
+    */
+   int listUnpaidOrders(String staffLogin, String password) throws Exception;
+
+   /**
+    * Adds an item to an unpaid order as its customer, who logged in once
+    * with the password.
+    */
+   void addItem(String login, String password, int orderid, String itemName) throws Exception;
+
+   /**
+    * Removes an item from an unpaid order as its customer, who logged in
+    * once with the password.
+    */
+   void removeItem(String login, String password, int orderid, String itemName) throws Exception;
+
+   /**
+    * Reads an order and the status of its items, as the order screen shows
+    * them.
+    *
+    * @return the number of items of the order
+    */
+   int showOrder(int orderid) throws Exception;
+
+   /**
+    * @return the total stored for the order
+    */
+   double getTotal(int orderid) throws Exception;
+
+   void close() throws Exception;
+
+}//end Workload
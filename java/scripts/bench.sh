@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+BENCH=$DIR/../../bench
+
+# build the Cafe sources and the JMH benchmarks into one jar
+mvn -B -q -f $BENCH/pom.xml package || exit 1
+
+# run every benchmark with the allocation profiler; extra arguments go to
+# JMH, e.g. "PlaceOrder -p path=service -t 4" or
+# -jvmArgsAppend "-Dbench.url=jdbc:postgresql://localhost:$PGPORT/scratch".
+# Results are also written to bench/target/results.json.
+java -jar $BENCH/target/benchmarks.jar -prof gc -rf json -rff $BENCH/target/results.json "$@"
@@ -1,13 +1,10 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 
-export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
-export PATH=$JAVA_HOME/bin:$PATH
-
-# compile the java program
-javac -d $DIR/../classes $DIR/../src/Cafe.java
+# build the java program and the PostgreSQL driver into java/target/cafe.jar
+# (JDK 17 or later and Maven on the PATH)
+mvn -B -q -f $DIR/../pom.xml package || exit 1
 
 #run the java program
 #Use your database name, port number and login
-java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar Cafe $USER"_DB" $PGPORT $USER
-
+java $JAVA_OPTS -jar $DIR/../target/cafe.jar $USER"_DB" $PGPORT $USER
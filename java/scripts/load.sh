@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# build the java program and the PostgreSQL driver into java/target/cafe.jar
+mvn -B -q -f $DIR/../pom.xml package || exit 1
+
+# generate cafe traffic against the database, e.g.
+#   load.sh build 1000000 90 /tmp/cafe-data   add 90 days of order history
+#   load.sh run 60 50 4 1 load.json            one minute of 50 customers,
+#                                              4 employees and 1 manager
+# JAVA_OPTS passes settings such as -Dload.think=0, -Dcafe.pool.max=32 or
+# driver settings such as -Dcafe.jdbc.prepareThreshold=5.
+java $JAVA_OPTS -cp $DIR/../target/cafe.jar LoadGenerator $USER"_DB" $PGPORT $USER "$@"
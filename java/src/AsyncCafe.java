@@ -0,0 +1,142 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This class is the asynchronous variant of the Cafe query API. Every call
+ * returns at once with a CompletableFuture and runs on a thread of its own
+ * with a pooled connection of its own, so reads that do not depend on each
+ * other overlap instead of waiting in line. The threads come from
+ * RequestExecutors, as for CafeServer requests.
+ *
+ * A call does not run in a transaction the calling thread opened with
+ * Cafe.begin and would not see its changes, so calls from such a thread
+ * are refused. Writes that depend on each other go in one
+ * executePipeline, which also makes them one transaction.
+ *
+ * Callers chain further work onto the futures or wait for one with get(),
+ * which rethrows the call's failure.
+ *
+ */
+public class AsyncCafe {
+
+   private final Cafe _esql;
+   private final ExecutorService _executor;
+
+   public AsyncCafe(Cafe esql) {
+      this(esql, RequestExecutors.newRequestExecutor());
+   }
+
+   /**
+    * @param esql the session whose pool the calls use
+    * @param executor runs the calls; shut down by close
+    */
+   public AsyncCafe(Cafe esql, ExecutorService executor) {
+      this._esql = esql;
+      this._executor = executor;
+   }
+
+   /**
+    * @see Cafe#executeQueryAndReturnResult(String, Object...)
+    */
+   public CompletableFuture<List<List<String>>> executeQueryAndReturnResult(final String query, final Object... params) {
+      return submit(new Callable<List<List<String>>>() {
+         public List<List<String>> call() throws SQLException {
+            return AsyncCafe.this._esql.executeQueryAndReturnResult(query, params);
+         }
+      });
+   }//end executeQueryAndReturnResult
+
+   /**
+    * @see Cafe#executeUpdate(String, Object...)
+    */
+   public CompletableFuture<Integer> executeUpdate(final String sql, final Object... params) {
+      return submit(new Callable<Integer>() {
+         public Integer call() throws SQLException {
+            return AsyncCafe.this._esql.executeUpdate(sql, params);
+         }
+      });
+   }//end executeUpdate
+
+   /**
+    * @see Cafe#executePipeline(String[], Object[][])
+    */
+   public CompletableFuture<int[]> executePipeline(final String[] statements, final Object[][] params) {
+      return submit(new Callable<int[]>() {
+         public int[] call() throws SQLException {
+            return AsyncCafe.this._esql.executePipeline(statements, params);
+         }
+      });
+   }//end executePipeline
+
+   /**
+    * Runs any work against the session, e.g. a service call, on a thread
+    * of its own.
+    *
+    * @throws IllegalStateException when the calling thread has a
+    *         transaction open
+    */
+   public <T> CompletableFuture<T> submit(final Callable<T> work) {
+      if (this._esql.inTransaction())
+         throw new IllegalStateException("Asynchronous calls cannot take part in the open transaction");
+      final CompletableFuture<T> result = new CompletableFuture<T>();
+      this._executor.execute(new Runnable() {
+         public void run() {
+            try {
+               result.complete(work.call());
+            }catch (Throwable e) {
+               result.completeExceptionally(e);
+            }//end try
+         }
+      });
+      return result;
+   }//end submit
+
+   /**
+    * Waits for a call and returns its result.
+    *
+    * @throws java.sql.SQLException the call's failure
+    */
+   public static <T> T get(Future<T> future) throws SQLException {
+      try {
+         return future.get();
+      }catch (InterruptedException e) {
+         future.cancel(true);
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while waiting for the database");
+      }catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof SQLException)
+            throw (SQLException) cause;
+         if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+         if (cause instanceof Error)
+            throw (Error) cause;
+         throw new SQLException(String.valueOf(cause));
+      }//end try
+   }//end get
+
+   /**
+    * Stops accepting calls; calls already running finish.
+    */
+   public void close() {
+      this._executor.shutdown();
+   }
+
+}//end AsyncCafe
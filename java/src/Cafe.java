@@ -14,16 +14,19 @@ import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.*;
-import java.sql.DriverManager;
-import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.io.File;
+import java.io.IOException;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -34,8 +37,75 @@ import java.util.ArrayList;
  */
 public class Cafe {
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // default bounds of the connection pool, overridable with the
+   // cafe.pool.min and cafe.pool.max system properties.
+   static final int DEFAULT_POOL_MIN = 1;
+   static final int DEFAULT_POOL_MAX = 8;
+
+   // pool of physical database connections shared by every session.
+   private ConnectionPool _pool = null;
+
+   // true when this instance created the pool and must close it.
+   private boolean _ownsPool = false;
+
+   // how often the constructor tries to connect before giving up,
+   // overridable with the cafe.connect.attempts system property.
+   static final int DEFAULT_CONNECT_ATTEMPTS = 5;
+
+   // statement timeout of every call, in milliseconds, overridable with the
+   // cafe.statement.timeout system property and per thread with
+   // setThreadStatementTimeout.
+   static final long DEFAULT_STATEMENT_TIMEOUT = 10000;
+   private volatile long _statementTimeout = Long.getLong ("cafe.statement.timeout", DEFAULT_STATEMENT_TIMEOUT);
+   private final ThreadLocal<Long> _threadStatementTimeout = new ThreadLocal<Long> ();
+
+   // reads that failed on a broken connection or a restarting server are
+   // tried again, cafe.retry.attempts times in all.
+   private final RetryPolicy _readRetry =
+      new RetryPolicy (Integer.getInteger ("cafe.retry.attempts", 3), 50, 1000);
+
+   // rows fetched per round trip when streaming a result.
+   static final int DEFAULT_FETCH_SIZE = 256;
+   private volatile int _fetchSize = DEFAULT_FETCH_SIZE;
+
+   // menu items the console's search lists.
+   static final int SEARCH_RESULTS = 20;
+
+   // in-memory copy of the Menu table.
+   private final MenuCatalog _menu = new MenuCatalog(this);
+
+   // latency, rows and failures of every SQL template run through here.
+   private final QueryMetrics _metrics = new QueryMetrics();
+
+   // order ids reserved from the sequence in blocks.
+   private final OrderIdAllocator _orderIds = new OrderIdAllocator(
+      this, OrderIdAllocator.SEQUENCE,
+      Integer.getInteger("cafe.orderid.block", OrderIdAllocator.DEFAULT_BLOCK_SIZE));
+
+   // when set, reads that do not depend on each other overlap and the
+   // writes of a new order go out as one pipeline.
+   private volatile boolean _pipelined = Boolean.getBoolean ("cafe.pipelined");
+
+   // runs calls on other threads; created on first use.
+   private AsyncCafe _async = null;
+
+   // writes item status changes behind the kitchen; see StatusWriter.
+   private final StatusWriter _statusWriter = new StatusWriter(this);
+
+   // takes new orders when set; see OrderLog.
+   private volatile OrderLog _orderLog = null;
+
+   // the operations the console and the HTTP server are built on.
+   private final UserService _userService = new UserService(this);
+   private final MenuService _menuService = new MenuService(this);
+   private final OrderService _orderService = new OrderService(this);
+   private final KitchenService _kitchenService = new KitchenService(this);
+   private final FavoritesService _favoritesService = new FavoritesService(this);
+   private final ReportService _reportService = new ReportService(this);
+
+   // connection pinned to the calling thread while a transaction is open.
+   private final ThreadLocal<ConnectionPool.PooledConnection> _transaction =
+      new ThreadLocal<ConnectionPool.PooledConnection>();
 
    // handling the keyboard inputs through a BufferedReader
    // This variable can be global for convenience.
@@ -49,26 +119,327 @@ public class Cafe {
     * @param database the name of the database
     * @param username the user name used to login to the database
     * @param password the user login password
-    * @throws java.sql.SQLException when failed to make a connection.
+    * @throws java.sql.SQLException when failed to make a connection, after
+    *         trying cafe.connect.attempts times with growing pauses.
     */
    public Cafe(String dbname, String dbport, String user, String passwd) throws SQLException {
 
       System.out.print("Connecting to database...");
-      try{
-         // constructs the connection URL
-         String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-         System.out.println ("Connection URL: " + url + "\n");
-
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
-         System.out.println("Done");
-      }catch (Exception e){
-         System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
-         System.out.println("Make sure you started postgres on this machine");
-         System.exit(-1);
-      }//end catch
+      // constructs the connection URL
+      String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+      System.out.println ("Connection URL: " + url + "\n");
+
+      RetryPolicy connect = new RetryPolicy(Integer.getInteger("cafe.connect.attempts", DEFAULT_CONNECT_ATTEMPTS),
+                                            250, 5000);
+      for (int attempt = 1; this._pool == null; ++attempt) {
+         try{
+            // open the pool of physical connections
+            this._pool = new ConnectionPool(url, user, passwd,
+                                            Integer.getInteger("cafe.pool.min", DEFAULT_POOL_MIN),
+                                            Integer.getInteger("cafe.pool.max", DEFAULT_POOL_MAX));
+         }catch (SQLException e){
+            System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
+            if (!connect.pause(attempt)) {
+               System.out.println("Make sure you started postgres on this machine");
+               throw e;
+            }//end if
+            System.err.println("Trying again (" + (attempt + 1) + " of " + connect.getAttempts() + ")");
+         }//end catch
+      }//end for
+      this._ownsPool = true;
+      System.out.println("Done");
    }//end Cafe
 
+   /**
+    * Creates a new instance of Cafe that borrows its connections from an
+    * existing pool, so several sessions share the same physical connections.
+    *
+    * @param pool the pool to borrow connections from
+    */
+   public Cafe(ConnectionPool pool) {
+      this._pool = pool;
+   }//end Cafe
+
+   /**
+    * @return the pool this instance borrows its connections from
+    */
+   public ConnectionPool getPool () {
+      return this._pool;
+   }
+
+   /**
+    * @return the in-memory copy of the Menu table
+    */
+   public MenuCatalog getMenuCatalog () {
+      return this._menu;
+   }
+
+   /**
+    * @return the per-query statistics of this instance
+    */
+   public QueryMetrics getMetrics () {
+      return this._metrics;
+   }
+
+   /**
+    * @return the source of ids for new orders
+    */
+   public OrderIdAllocator getOrderIdAllocator () {
+      return this._orderIds;
+   }
+
+   public UserService getUserService () {
+      return this._userService;
+   }
+
+   public MenuService getMenuService () {
+      return this._menuService;
+   }
+
+   public OrderService getOrderService () {
+      return this._orderService;
+   }
+
+   public KitchenService getKitchenService () {
+      return this._kitchenService;
+   }
+
+   public FavoritesService getFavoritesService () {
+      return this._favoritesService;
+   }
+
+   public ReportService getReportService () {
+      return this._reportService;
+   }
+
+   public StatusWriter getStatusWriter () {
+      return this._statusWriter;
+   }
+
+   /**
+    * Takes new orders through an order log in a local directory from now
+    * on, so they are taken whether or not the database answers. The menu
+    * is loaded first, as the register prices from it while offline.
+    *
+    * @param dir the directory of the log
+    * @throws java.io.IOException when the log could not be opened
+    * @throws java.sql.SQLException when the menu could not be loaded
+    */
+   public synchronized OrderLog openOrderLog (File dir) throws IOException, SQLException {
+      if (this._orderLog != null)
+         throw new IllegalStateException ("An order log is already open");
+      this._menu.getAll ();
+      this._orderLog = OrderLog.open (this, dir);
+      return this._orderLog;
+   }//end openOrderLog
+
+   /**
+    * @return the log new orders are taken through, or null when they are
+    *         written to the database directly
+    */
+   public OrderLog getOrderLog () {
+      return this._orderLog;
+   }
+
+   /**
+    * @return the asynchronous variant of the query API, sharing this
+    *         session's pool
+    */
+   public synchronized AsyncCafe getAsync () {
+      if (this._async == null)
+         this._async = new AsyncCafe (this);
+      return this._async;
+   }//end getAsync
+
+   /**
+    * @return true when the services overlap independent reads and pipeline
+    *         dependent writes; set with -Dcafe.pipelined=true
+    */
+   public boolean isPipelined () {
+      return this._pipelined;
+   }
+
+   public void setPipelined (boolean pipelined) {
+      this._pipelined = pipelined;
+   }
+
+   /*
+    * Prints menu items the way executeQueryAndPrintResult prints Menu rows.
+    */
+   static void printMenuItems (Collection<MenuItem> items) {
+      if (items.isEmpty())
+         return;
+      System.out.println ("itemname\ttype\tprice\tdescription\timageurl\t");
+      for (MenuItem item : items)
+         System.out.println (item);
+   }//end printMenuItems
+
+   /**
+    * Sets the statement timeout of calls that have no timeout of their own
+    * set with setThreadStatementTimeout.
+    *
+    * @param millis the timeout in milliseconds, 0 for none
+    */
+   public void setStatementTimeout (long millis) {
+      this._statementTimeout = millis;
+   }
+
+   public long getStatementTimeout () {
+      return this._statementTimeout;
+   }
+
+   /**
+    * Sets the statement timeout of the calls the calling thread makes from
+    * now on, so one operation can allow its statements more or less time
+    * than the rest. Restore the returned value when the operation is done:
+    *
+    *    long previous = esql.setThreadStatementTimeout (2000);
+    *    try { ... } finally { esql.setThreadStatementTimeout (previous); }
+    *
+    * A statement that runs longer fails with SQL state 57014.
+    *
+    * @param millis the timeout in milliseconds, 0 for none, or -1 to use
+    *        the timeout of the instance again
+    * @return the thread's previous timeout, -1 when it had none
+    */
+   public long setThreadStatementTimeout (long millis) {
+      Long previous = this._threadStatementTimeout.get ();
+      if (millis < 0)
+         this._threadStatementTimeout.remove ();
+      else
+         this._threadStatementTimeout.set (millis);
+      return previous == null ? -1 : previous;
+   }//end setThreadStatementTimeout
+
+   /*
+    * Returns the connection pinned by an open transaction on this thread, or
+    * borrows one from the pool for a single call. Either way the connection
+    * gets the calling thread's statement timeout.
+    */
+   private ConnectionPool.PooledConnection acquire () throws SQLException {
+      ConnectionPool.PooledConnection pc = this._transaction.get ();
+      if (pc != null) {
+         pc.setStatementTimeout (statementTimeout ());
+         return pc;
+      }
+      pc = this._pool.borrow ();
+      try {
+         pc.setStatementTimeout (statementTimeout ());
+      } catch (SQLException e) {
+         release (pc, e);
+         throw e;
+      }
+      return pc;
+   }//end acquire
+
+   private long statementTimeout () {
+      Long millis = this._threadStatementTimeout.get ();
+      return millis != null ? millis : this._statementTimeout;
+   }
+
+   /*
+    * Gives back a connection taken with acquire.  Pinned connections stay
+    * with their transaction; the others go back to the pool, or are
+    * discarded when the failure left them unusable.
+    */
+   private void release (ConnectionPool.PooledConnection pc, SQLException failure) {
+      this._pool.getCircuitBreaker ().record (failure);
+      if (pc == this._transaction.get ())
+         return;
+      this._pool.release (pc, failure != null && ConnectionPool.isBroken (pc, failure));
+   }//end release
+
+   /*
+    * Adds one execution of a template, started at the given System.nanoTime,
+    * to the query metrics.
+    */
+   void record (String template, long start, long rows, SQLException failure) {
+      this._metrics.record (template, System.nanoTime () - start, rows, failure != null);
+   }//end record
+
+   /**
+    * @return true when the calling thread has a transaction open
+    */
+   boolean inTransaction () {
+      return this._transaction.get () != null;
+   }
+
+   /**
+    * Starts a transaction on the calling thread.  Every call made by this
+    * thread until commit or rollback runs on the same connection.
+    *
+    * @throws java.sql.SQLException when a transaction is already open or no
+    *         connection could be borrowed
+    */
+   public void begin () throws SQLException {
+      if (this._transaction.get () != null)
+         throw new SQLException ("A transaction is already open on this thread");
+      ConnectionPool.PooledConnection pc = this._pool.borrow ();
+      try {
+         pc.connection ().setAutoCommit (false);
+      } catch (SQLException e) {
+         this._pool.release (pc, true);
+         throw e;
+      }
+      this._transaction.set (pc);
+   }//end begin
+
+   /**
+    * Commits the transaction opened with begin and returns its connection.
+    *
+    * @throws java.sql.SQLException when the commit failed; the transaction
+    *         is rolled back and closed either way
+    */
+   public void commit () throws SQLException {
+      endTransaction (true);
+   }//end commit
+
+   /**
+    * Rolls back the transaction opened with begin, if any, and returns its
+    * connection.
+    *
+    * @throws java.sql.SQLException when the rollback failed
+    */
+   public void rollback () throws SQLException {
+      endTransaction (false);
+   }//end rollback
+
+   private void endTransaction (boolean commit) throws SQLException {
+      ConnectionPool.PooledConnection pc = this._transaction.get ();
+      if (pc == null) {
+         if (commit)
+            throw new SQLException ("No transaction is open on this thread");
+         return;
+      }
+      this._transaction.remove ();
+      SQLException failure = null;
+      try {
+         if (commit)
+            pc.connection ().commit ();
+         else
+            pc.connection ().rollback ();
+      } catch (SQLException e) {
+         failure = e;
+         try {
+            pc.connection ().rollback ();
+         } catch (SQLException ignored) {
+            // the connection is discarded below.
+         }
+      }
+      // a timeout set inside the transaction was undone with it.
+      if (!commit)
+         pc.forgetStatementTimeout ();
+      try {
+         pc.connection ().setAutoCommit (true);
+      } catch (SQLException e) {
+         if (failure == null)
+            failure = e;
+      }
+      this._pool.release (pc, failure != null);
+      if (failure != null)
+         throw failure;
+   }//end endTransaction
+
    /**
     * Method to execute an update SQL statement.  Update SQL instructions
     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
@@ -77,58 +448,327 @@ public class Cafe {
     * @throws java.sql.SQLException when update failed
     */
    public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
+      ConnectionPool.PooledConnection pc = acquire ();
+      long start = System.nanoTime ();
+      int rows = 0;
+      SQLException failure = null;
+      try {
+         // creates a statement object
+         Statement stmt = pc.connection ().createStatement ();
+
+         // issues the update instruction
+         rows = stmt.executeUpdate (sql);
+
+         // close the instruction
+         stmt.close ();
+      } catch (SQLException e) {
+         failure = e;
+         throw e;
+      } finally {
+         record (QueryMetrics.template (sql), start, rows, failure);
+         release (pc, failure);
+      }
+   }//end executeUpdate
 
-      // close the instruction
-      stmt.close ();
+   /**
+    * Parameterized form of executeUpdate.  The SQL template is prepared once
+    * per connection and reused from the statement cache.
+    *
+    * @param sql the SQL template with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      ConnectionPool.PooledConnection pc = acquire ();
+      long start = System.nanoTime ();
+      int rows = 0;
+      SQLException failure = null;
+      try {
+         rows = prepare (pc, sql, params).executeUpdate ();
+         return rows;
+      } catch (SQLException e) {
+         failure = e;
+         throw e;
+      } finally {
+         record (sql, start, rows, failure);
+         release (pc, failure);
+      }
    }//end executeUpdate
 
+   /**
+    * Runs one SQL template once per parameter row as a single JDBC batch,
+    * so the whole set goes to the server in one round trip.
+    *
+    * @param sql the SQL template with '?' placeholders
+    * @param rows the values bound for each execution, in order
+    * @return the update count of each execution
+    * @throws java.sql.SQLException when the batch failed
+    */
+   public int[] executeBatch (String sql, List<Object[]> rows) throws SQLException {
+      if (rows.isEmpty())
+         return new int[0];
+      ConnectionPool.PooledConnection pc = acquire ();
+      long start = System.nanoTime ();
+      long changed = 0;
+      SQLException failure = null;
+      try {
+         PreparedStatement stmt = pc.statements ().prepare (sql);
+         for (Object[] row : rows) {
+            bind (stmt, row);
+            stmt.addBatch ();
+         }//end for
+         try {
+            int[] counts = stmt.executeBatch ();
+            for (int count : counts)
+               if (count > 0)
+                  changed += count;
+            return counts;
+         } finally {
+            stmt.clearBatch ();
+         }
+      } catch (SQLException e) {
+         failure = e;
+         pc.statements ().invalidate (sql);
+         throw e;
+      } finally {
+         record (sql, start, changed, failure);
+         release (pc, failure);
+      }
+   }//end executeBatch
+
+   /**
+    * Sends several statements, each with its own parameters, as a single
+    * request. The server runs them in order and answers once, so a chain of
+    * dependent writes costs one round trip. Outside a transaction opened
+    * with begin, the statements still commit or fail together.
+    *
+    * @param statements the SQL templates with '?' placeholders, run in order
+    * @param params the values bound to each template
+    * @return the update count of each statement, -1 for one returning rows
+    * @throws java.sql.SQLException when a statement failed; none of them
+    *         took effect
+    */
+   public int[] executePipeline (String[] statements, Object[][] params) throws SQLException {
+      if (statements.length != params.length)
+         throw new IllegalArgumentException ("Every statement needs its own parameters");
+      StringBuilder sql = new StringBuilder ();
+      List<Object> values = new ArrayList<Object> ();
+      for (int i = 0; i < statements.length; ++i) {
+         sql.append (i == 0 ? "" : ";\n").append (statements[i]);
+         values.addAll (Arrays.asList (params[i]));
+      }//end for
+      ConnectionPool.PooledConnection pc = acquire ();
+      long start = System.nanoTime ();
+      long changed = 0;
+      SQLException failure = null;
+      try {
+         PreparedStatement stmt = prepare (pc, sql.toString (), values.toArray ());
+         int[] counts = new int[statements.length];
+         boolean rows = stmt.execute ();
+         for (int i = 0; i < counts.length; ++i) {
+            counts[i] = rows ? -1 : stmt.getUpdateCount ();
+            if (counts[i] > 0)
+               changed += counts[i];
+            rows = stmt.getMoreResults ();
+         }//end for
+         return counts;
+      } catch (SQLException e) {
+         failure = e;
+         throw e;
+      } finally {
+         record (sql.toString (), start, changed, failure);
+         release (pc, failure);
+      }
+   }//end executePipeline
+
+   /*
+    * Fetches the cached statement for the template and binds the parameters.
+    * A statement whose bind fails is dropped from the cache.
+    */
+   private static PreparedStatement prepare (ConnectionPool.PooledConnection pc, String sql, Object[] params) throws SQLException {
+      PreparedStatement stmt = pc.statements ().prepare (sql);
+      try {
+         bind (stmt, params);
+      } catch (SQLException e) {
+         pc.statements ().invalidate (sql);
+         throw e;
+      }
+      return stmt;
+   }//end prepare
+
+   private static void bind (PreparedStatement stmt, Object[] params) throws SQLException {
+      for (int i = 0; i < params.length; ++i) {
+         if (params[i] == null)
+            stmt.setNull (i + 1, java.sql.Types.VARCHAR);
+         else
+            stmt.setObject (i + 1, params[i]);
+      }//end for
+   }//end bind
+
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and outputs the results to
-    * standard out.
+    * standard out.  Rows are streamed through a cursor, so large listings
+    * print in constant memory.
     *
     * @param query the input query string
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+      ResultCursor cursor = openCursor (this._fetchSize, query, new Object[0], false);
+      try {
+         return printResultSet (cursor);
+      } finally {
+         cursor.close ();
+      }
+   }//end executeQuery
 
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
+   /**
+    * Parameterized form of executeQueryAndPrintResult.  The query is a SQL
+    * template with '?' placeholders that is prepared once per connection and
+    * reused from the statement cache.
+    *
+    * @param query the SQL template
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      ResultCursor cursor = openCursor (this._fetchSize, query, params, true);
+      try {
+         return printResultSet (cursor);
+      } finally {
+         cursor.close ();
+      }
+   }//end executeQueryAndPrintResult
 
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
+   /*
+    * Prints every row of the cursor to standard out, preceded by a header
+    * line of column names when there is at least one row.  Output goes
+    * through a fixed-size buffer instead of one print call per cell.
+    */
+   private static int printResultSet (ResultCursor rs) throws SQLException {
+      int numCol = rs.getColumnCount ();
       int rowCount = 0;
 
+      PrintWriter out = new PrintWriter (new BufferedWriter (new OutputStreamWriter (System.out), 8192));
+      StringBuilder line = new StringBuilder ();
+
       // iterates through the result set and output them to standard out.
       boolean outputHeader = true;
       while (rs.next()){
-		 if(outputHeader){
-			for(int i = 1; i <= numCol; i++){
-			System.out.print(rsmd.getColumnName(i) + "\t");
-			}
-			System.out.println();
-			outputHeader = false;
-		 }
+         if(outputHeader){
+            for(int i = 1; i <= numCol; i++)
+               line.append (rs.getColumnName(i)).append ('\t');
+            out.println (line);
+            outputHeader = false;
+         }
+         line.setLength (0);
          for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
+            line.append (rs.getString (i)).append ('\t');
+         out.println (line);
          ++rowCount;
       }//end while
-      stmt.close ();
+      out.flush ();
       return rowCount;
-   }//end executeQuery
+   }//end printResultSet
+
+   /**
+    * Sets the number of rows fetched per round trip by cursors and by the
+    * printing methods.
+    *
+    * @param fetchSize rows per fetch, at least 1
+    */
+   public void setFetchSize (int fetchSize) {
+      if (fetchSize < 1)
+         throw new IllegalArgumentException ("fetch size must be positive: " + fetchSize);
+      this._fetchSize = fetchSize;
+   }
+
+   /**
+    * Runs a query and returns a cursor over its rows, fetched from the server
+    * in chunks of the default fetch size.  The cursor must be closed.
+    *
+    * @param query the SQL template
+    * @param params the values bound to the placeholders, in order
+    * @return a cursor positioned before the first row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ResultCursor openCursor (String query, Object... params) throws SQLException {
+      return openCursor (this._fetchSize, query, params, true);
+   }//end openCursor
+
+   /**
+    * Runs a query and returns a cursor over its rows, fetched from the server
+    * in chunks of the given size.  The cursor must be closed.
+    *
+    * @param fetchSize rows per fetch
+    * @param query the SQL template
+    * @param params the values bound to the placeholders, in order
+    * @return a cursor positioned before the first row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ResultCursor openCursor (int fetchSize, String query, Object... params) throws SQLException {
+      return openCursor (fetchSize, query, params, true);
+   }//end openCursor
+
+   /*
+    * The driver only fetches in chunks inside a transaction, so a cursor
+    * opened outside begin/commit runs in a read transaction of its own that
+    * ends when the cursor is closed.  The query metrics count a cursor from
+    * the moment it is opened until it is closed.
+    */
+   private ResultCursor openCursor (int fetchSize, String query, Object[] params, boolean cached) throws SQLException {
+      ConnectionPool.PooledConnection pc = acquire ();
+      long start = System.nanoTime ();
+      String template = cached ? query : QueryMetrics.template (query);
+      boolean ownsTransaction = pc != this._transaction.get ();
+      PreparedStatement stmt = null;
+      try {
+         if (ownsTransaction)
+            pc.connection ().setAutoCommit (false);
+         if (cached) {
+            stmt = prepare (pc, query, params);
+         } else {
+            stmt = pc.connection ().prepareStatement (query);
+            bind (stmt, params);
+         }
+         stmt.setFetchSize (fetchSize);
+         return new ResultCursor (this, pc, stmt, cached, ownsTransaction, stmt.executeQuery (),
+                                  template, start);
+      } catch (SQLException e) {
+         if (stmt != null && !cached) {
+            try {
+               stmt.close ();
+            } catch (SQLException ignored) {
+               // ignored.
+            }
+         }
+         record (template, start, 0, e);
+         closeCursor (pc, ownsTransaction, e);
+         throw e;
+      }
+   }//end openCursor
+
+   /*
+    * Ends the read transaction of a cursor, if it opened one, and gives its
+    * connection back.
+    */
+   void closeCursor (ConnectionPool.PooledConnection pc, boolean ownsTransaction, SQLException failure) {
+      if (ownsTransaction) {
+         try {
+            pc.connection ().commit ();
+            pc.connection ().setAutoCommit (true);
+         } catch (SQLException e) {
+            // never hand out a connection left inside a transaction.
+            this._pool.release (pc, true);
+            return;
+         }
+      }
+      release (pc, failure);
+   }//end closeCursor
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
@@ -140,22 +780,94 @@ public class Cafe {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+      for (int attempt = 1; ; ++attempt) {
+         try {
+            return resultOnce (query);
+         } catch (SQLException e) {
+            if (!retry (query, e, attempt))
+               throw e;
+         }
+      }//end for
+   }//end executeQueryAndReturnResult
 
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
+   private List<List<String>> resultOnce (String query) throws SQLException {
+      ConnectionPool.PooledConnection pc = acquire ();
+      long start = System.nanoTime ();
+      int rows = 0;
+      SQLException failure = null;
+      try {
+         // creates a statement object
+         Statement stmt = pc.connection ().createStatement ();
+
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery (query);
+         List<List<String>> result = collectResultSet (rs);
+         rows = result.size ();
+         stmt.close ();
+         return result;
+      } catch (SQLException e) {
+         failure = e;
+         throw e;
+      } finally {
+         record (QueryMetrics.template (query), start, rows, failure);
+         release (pc, failure);
+      }
+   }//end resultOnce
 
+   /**
+    * Parameterized form of executeQueryAndReturnResult.
+    *
+    * @param query the SQL template
+    * @param params the values bound to the placeholders, in order
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      for (int attempt = 1; ; ++attempt) {
+         try {
+            return resultOnce (query, params);
+         } catch (SQLException e) {
+            if (!retry (query, e, attempt))
+               throw e;
+         }
+      }//end for
+   }//end executeQueryAndReturnResult
+
+   private List<List<String>> resultOnce (String query, Object[] params) throws SQLException {
+      ConnectionPool.PooledConnection pc = acquire ();
+      long start = System.nanoTime ();
+      int rows = 0;
+      SQLException failure = null;
+      try {
+         ResultSet rs = prepare (pc, query, params).executeQuery ();
+         try {
+            List<List<String>> result = collectResultSet (rs);
+            rows = result.size ();
+            return result;
+         } finally {
+            rs.close ();
+         }
+      } catch (SQLException e) {
+         failure = e;
+         throw e;
+      } finally {
+         record (query, start, rows, failure);
+         release (pc, failure);
+      }
+   }//end resultOnce
+
+   /*
+    * Copies every row of the result set into a list of string records.
+    */
+   private static List<List<String>> collectResultSet (ResultSet rs) throws SQLException {
       /*
        ** obtains the metadata object for the returned result set.  The metadata
        ** contains row and column info.
        */
       ResultSetMetaData rsmd = rs.getMetaData ();
       int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
 
       // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
       List<List<String>> result  = new ArrayList<List<String>>();
       while (rs.next()){
         List<String> record = new ArrayList<String>();
@@ -163,9 +875,34 @@ public class Cafe {
 			record.add(rs.getString (i));
         result.add(record);
       }//end while
-      stmt.close ();
       return result;
-   }//end executeQueryAndReturnResult
+   }//end collectResultSet
+
+   /*
+    * Decides whether a failed read is tried again, and waits before it if
+    * so. Only plain SELECTs outside a transaction are repeated, and only
+    * after failures that say nothing about the statement itself.
+    */
+   private boolean retry (String query, SQLException e, int attempt) {
+      if (inTransaction () || !isRead (query) || !RetryPolicy.isTransient (e))
+         return false;
+      if (!this._readRetry.pause (attempt))
+         return false;
+      this._metrics.retried ();
+      return true;
+   }//end retry
+
+   /*
+    * True for a statement that starts with SELECT, which is safe to repeat.
+    * Data-changing statements that return rows start with INSERT, UPDATE,
+    * DELETE or WITH.
+    */
+   static boolean isRead (String sql) {
+      int i = 0;
+      while (i < sql.length () && (Character.isWhitespace (sql.charAt (i)) || sql.charAt (i) == '('))
+         ++i;
+      return sql.regionMatches (true, i, "SELECT", 0, 6);
+   }//end isRead
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
@@ -176,51 +913,137 @@ public class Cafe {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
-
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
+      for (int attempt = 1; ; ++attempt) {
+         try {
+            return countOnce (query);
+         } catch (SQLException e) {
+            if (!retry (query, e, attempt))
+               throw e;
+         }
+      }//end for
+   }//end executeQuery
 
+   private int countOnce (String query) throws SQLException {
+       ConnectionPool.PooledConnection pc = acquire ();
+       long start = System.nanoTime ();
        int rowCount = 0;
+       SQLException failure = null;
+       try {
+          // creates a statement object
+          Statement stmt = pc.connection ().createStatement ();
+
+          // issues the query instruction
+          ResultSet rs = stmt.executeQuery (query);
+
+          // iterates through the result set and count nuber of results.
+          while (rs.next()){
+             rowCount++;
+          }//end while
+          stmt.close ();
+          return rowCount;
+       } catch (SQLException e) {
+          failure = e;
+          throw e;
+       } finally {
+          record (QueryMetrics.template (query), start, rowCount, failure);
+          release (pc, failure);
+       }
+   }//end countOnce
 
-       // iterates through the result set and count nuber of results.
-       while (rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
-   }
+   /**
+    * Parameterized form of executeQuery.
+    *
+    * @param query the SQL template
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query, Object... params) throws SQLException {
+      for (int attempt = 1; ; ++attempt) {
+         try {
+            return countOnce (query, params);
+         } catch (SQLException e) {
+            if (!retry (query, e, attempt))
+               throw e;
+         }
+      }//end for
+   }//end executeQuery
+
+   private int countOnce (String query, Object[] params) throws SQLException {
+       ConnectionPool.PooledConnection pc = acquire ();
+       long start = System.nanoTime ();
+       int rowCount = 0;
+       SQLException failure = null;
+       try {
+          ResultSet rs = prepare (pc, query, params).executeQuery ();
+          while (rs.next()){
+             rowCount++;
+          }//end while
+          rs.close ();
+          return rowCount;
+       } catch (SQLException e) {
+          failure = e;
+          throw e;
+       } finally {
+          record (query, start, rowCount, failure);
+          release (pc, failure);
+       }
+   }//end countOnce
 
    /**
     * Method to fetch the last value from sequence. This
     * method issues the query to the DBMS and returns the current
-    * value of sequence used for autogenerated keys
+    * value of sequence used for autogenerated keys.  currval is per
+    * session, so call this inside the begin/commit that ran nextval.
     *
     * @param sequence name of the DB sequence
     * @return current value of a sequence
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int getCurrSeqVal(String sequence) throws SQLException {
-	Statement stmt = this._connection.createStatement ();
-
-	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-	if (rs.next())
-		return rs.getInt(1);
-	return -1;
+	ConnectionPool.PooledConnection pc = acquire ();
+	long start = System.nanoTime ();
+	SQLException failure = null;
+	try {
+		ResultSet rs = prepare (pc, "Select currval(?)", new Object[] { sequence }).executeQuery ();
+		try {
+			if (rs.next())
+				return rs.getInt(1);
+			return -1;
+		} finally {
+			rs.close ();
+		}
+	} catch (SQLException e) {
+		failure = e;
+		throw e;
+	} finally {
+		record ("Select currval(?)", start, 1, failure);
+		release (pc, failure);
+	}
    }
 
    /**
-    * Method to close the physical connection if it is open.
+    * Method to write the pending item status changes and close the
+    * connection pool if this instance opened it.
     */
    public void cleanup(){
+      this._metrics.stopDump ();
+      // pending status changes and logged orders go out before the pool closes.
+      this._statusWriter.close ();
+      if (this._orderLog != null)
+         this._orderLog.close ();
+      synchronized (this) {
+         if (this._async != null)
+            this._async.close ();
+      }
       try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
+         rollback ();
       }catch (SQLException e){
          // ignored.
       }//end try
+      if (this._pool != null && this._ownsPool){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -229,26 +1052,36 @@ public class Cafe {
     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
     */
    public static void main (String[] args) {
-      if (args.length != 3) {
+      boolean option = args.length == 5 && Arrays.asList ("--serve", "--import", "--export").contains (args[3]);
+      if (args.length != 3 && !option) {
          System.err.println (
             "Usage: " +
             "java [-classpath <classpath>] " +
             Cafe.class.getName () +
-            " <dbname> <port> <user>");
+            " <dbname> <port> <user> [--serve <http port> | --import <dir> | --export <dir>]");
+         return;
+      }//end if
+
+      if (args.length == 5 && args[3].equals("--serve")) {
+         serve(args[0], args[1], args[2], Integer.parseInt(args[4]));
+         return;
+      }//end if
+      if (args.length == 5) {
+         transfer(args[0], args[1], args[2], args[3].equals("--import"), new File(args[4]));
          return;
       }//end if
 
       Greeting();
       Cafe esql = null;
       try{
-         // use postgres JDBC driver.
-         Class.forName ("org.postgresql.Driver").newInstance ();
          // instantiate the Cafe object and creates a physical
          // connection.
          String dbname = args[0];
          String dbport = args[1];
          String user = args[2];
          esql = new Cafe (dbname, dbport, user, "");
+         startMetricsDump (esql);
+         openOrderLog (esql);
 
          boolean keepon = true;
          while(keepon) {
@@ -258,7 +1091,7 @@ public class Cafe {
             System.out.println("1. Create user");
             System.out.println("2. Log in");
             System.out.println("9. < EXIT");
-            String authorisedUser = null;
+            UserSession authorisedUser = null;
             switch (readChoice()){
                case 1: CreateUser(esql); break;
                case 2: authorisedUser = LogIn(esql); break;
@@ -274,14 +1107,22 @@ public class Cafe {
                 System.out.println("2. Update Profile");
                 System.out.println("3. Place a Order");
                 System.out.println("4. Update a Order");
+                if (authorisedUser.isStaff())
+                   System.out.println("5. Kitchen queue");
+                System.out.println("6. Order the usual");
+                if (authorisedUser.isManager())
+                   System.out.println("7. Sales report");
                 System.out.println(".........................");
                 System.out.println("9. Log out");
                 switch (readChoice()){
                    case 1: Menu(esql, authorisedUser); break;
-                   case 2: UpdateProfile(esql, authorisedUser); break;
+                   case 2: authorisedUser = UpdateProfile(esql, authorisedUser); break;
                    case 3: PlaceOrder(esql, authorisedUser); break;
                    case 4: UpdateOrder(esql, authorisedUser); break;
-                   case 9: usermenu = false; break;
+                   case 5: KitchenQueue(esql, authorisedUser); break;
+                   case 6: OrderUsual(esql, authorisedUser); break;
+                   case 7: SalesReport(esql, authorisedUser); break;
+                   case 9: esql.getUserService().logOut(authorisedUser); usermenu = false; break;
                    default : System.out.println("Unrecognized choice!"); break;
                 }
               }
@@ -303,6 +1144,67 @@ public class Cafe {
       }//end try
    }//end main
 
+   /*
+    * Runs the headless HTTP server until the JVM is stopped.
+    */
+   static void serve (String dbname, String dbport, String user, int httpPort) {
+      try{
+         final Cafe esql = new Cafe (dbname, dbport, user, "");
+         startMetricsDump (esql);
+         openOrderLog (esql);
+         final CafeServer server = new CafeServer (esql, httpPort);
+         Runtime.getRuntime ().addShutdownHook (new Thread () {
+            public void run () {
+               server.stop (1);
+               esql.cleanup ();
+            }
+         });
+         server.start ();
+         System.out.println ("Serving on port " + server.getPort ());
+      }catch (Exception e) {
+         System.err.println (e.getMessage ());
+      }//end try
+   }//end serve
+
+   /*
+    * Loads the data files of a directory into the database, or writes the
+    * tables out to one, printing progress as it goes.
+    */
+   static void transfer (String dbname, String dbport, String user, boolean load, File dir) {
+      Cafe esql = null;
+      try{
+         esql = new Cafe (dbname, dbport, user, "");
+         DataTransfer transfer = new DataTransfer (esql, System.out);
+         Map<String, Long> rows = load ? transfer.importAll (dir) : transfer.exportAll (dir);
+         System.out.println ((load ? "Imported " : "Exported ") + rows);
+      }catch (Exception e) {
+         System.err.println (e.getMessage ());
+      }finally{
+         if (esql != null)
+            esql.cleanup ();
+      }//end try
+   }//end transfer
+
+   /*
+    * Prints the query metrics to standard error every cafe.metrics.dump
+    * seconds, when that system property is set.
+    */
+   static void startMetricsDump (Cafe esql) {
+      int seconds = Integer.getInteger ("cafe.metrics.dump", 0);
+      if (seconds > 0)
+         esql.getMetrics ().startDump (seconds * 1000L, System.err);
+   }//end startMetricsDump
+
+   /*
+    * Takes orders through an order log in the cafe.offline.dir directory,
+    * when that system property is set.
+    */
+   static void openOrderLog (Cafe esql) throws IOException, SQLException {
+      String dir = System.getProperty ("cafe.offline.dir");
+      if (dir != null)
+         System.out.println ("Taking orders through " + esql.openOrderLog (new File (dir)));
+   }//end openOrderLog
+
    public static void Greeting(){
       System.out.println(
          "\n\n*******************************************************\n" +
@@ -341,13 +1243,8 @@ public class Cafe {
          String password = in.readLine();
          System.out.print("\tEnter user phone: ");
          String phone = in.readLine();
-         
-	    String type="Customer";
-	    String favItems="";
-
-				 String query = String.format("INSERT INTO USERS (phoneNum, login, password, favItems, type) VALUES ('%s','%s','%s','%s','%s')", phone, login, password, favItems, type);
 
-         esql.executeUpdate(query);
+         esql.getUserService().createUser(login, password, phone);
          System.out.println ("User successfully created!");
       }catch(Exception e){
          System.err.println (e.getMessage ());
@@ -357,20 +1254,16 @@ public class Cafe {
 
    /*
     * Check log in credentials for an existing user
-    * @return User login or null is the user does not exist
+    * @return the user's session or null is the user does not exist
     **/
-   public static String LogIn(Cafe esql){
+   public static UserSession LogIn(Cafe esql){
       try{
          System.out.print("\tEnter user login: ");
          String login = in.readLine();
          System.out.print("\tEnter user password: ");
          String password = in.readLine();
 
-         String query = String.format("SELECT * FROM USERS WHERE login = '%s' AND password = '%s'", login, password);
-         int userNum = esql.executeQuery(query);
-	 if (userNum > 0)
-		return login;
-         return null;
+	 return esql.getUserService().logIn(login, password);
       }catch(Exception e){
          System.err.println (e.getMessage ());
          return null;
@@ -379,274 +1272,158 @@ public class Cafe {
 
 // Rest of the functions definition go in here
 
-  public static void Menu(Cafe esql, String authorisedUser)
+  public static void Menu(Cafe esql, UserSession authorisedUser)
   {
 	try
 	{
-		int isManager = esql.executeQuery("SELECT U.login FROM Users U WHERE U.login = '" + authorisedUser + "' AND U.type = 'Manager'");
-		if(isManager > 0)
-		{
+		MenuService menu = esql.getMenuService();
+		boolean isManager = authorisedUser.isManager();
+		if(isManager)
 			System.out.println("===== MANAGER'S VIEW =====");
-			System.out.println("Please choose what you wish to do");
-			System.out.println("1. Search by item name");
-			System.out.println("2. Search by item type");
+		System.out.println("Please choose what you wish to do");
+		System.out.println("1. Search the menu");
+		System.out.println("2. Search by item type");
+		if(isManager)
+		{
 			System.out.println("3. Add item to menu");
 			System.out.println("4. Delete item from menu");
 			System.out.println("5. Update item from menu");
-			
-			switch(readChoice()){
-				case 1:
-					System.out.print("Enter the item name: ");
-					String itemName_t = in.readLine();
-					String query1 = String.format("SELECT * FROM MENU M WHERE M.itemName = '" + itemName_t + "'");
-					esql.executeQueryAndPrintResult(query1);
-					break;
-				case 2:
-					System.out.print("Enter the item type: ");
-					String itemType_t = in.readLine();
-					String query2 = String.format("SELECT * FROM MENU M WHERE M.type = '" + itemType_t + "'");
-					esql.executeQueryAndPrintResult(query2);
-					break;
-				case 3:
-					System.out.print("Enter the Item Name: ");
-					String itemName = in.readLine();
-					System.out.print("Enter the Item Type: ");
-					String itemType = in.readLine();
-					System.out.print("Enter the Item Price: $");
-					String itemPrice = in.readLine();
-					System.out.print("Enter the Item Description: ");
-					String itemDesc = in.readLine();
-					System.out.print("Enter the Image URL: ");
-					String imageURL = in.readLine();
-					String query3 = String.format("INSERT INTO MENU (itemName, type, price, description, imageURL) VALUES ('%s', '%s', '%s', '%s', '%s')", itemName, itemType, itemPrice, itemDesc, imageURL);
-					esql.executeUpdate(query3);
-					break;
-				case 4: 
-					System.out.print("Enter the item name to delete: ");
-					String ItemToDelete = in.readLine();
-					String query4 = String.format("DELETE FROM MENU WHERE itemName = '" + ItemToDelete + "'");
-					esql.executeUpdate(query4);
-					break;
-				case 5:
-					System.out.print("Please enter the item name to update: ");
-					String targetItem = in.readLine();
-					System.out.print("Enter its updated name: ");
-					String new_itemName = in.readLine();
-					System.out.print("Enter its updated type: ");
-					String new_itemType = in.readLine();
-					System.out.print("Enter its updated price: $");
-					String new_itemPrice = in.readLine();
-					System.out.print("Enter its updated description: ");
-					String new_itemDesc = in.readLine();
-					System.out.print("Enter its updated image url: ");
-					String new_imageURL = in.readLine();
-					String query5 = String.format("UPDATE MENU SET itemName = '" + new_itemName + "', type = '" + new_itemType + "', price = '" + new_itemPrice + "', description = '" + new_itemDesc + "', imageURL = '" + new_imageURL + "' WHERE itemName = '" + targetItem + "'");
-					esql.executeUpdate(query5);
-					break;
-					
-
-			}
 		}
 
-		else
-		{
-			System.out.println("Please choose what you wish to do");
-			System.out.println("1. Search by item name");
-			System.out.println("2. Search by item type");
-			
-			switch(readChoice()){
-				case 1:
-					System.out.print("Enter the item name: ");
-					String itemName = in.readLine();
-					String query1 = String.format("SELECT * FROM MENU M WHERE M.itemName = '" + itemName + "'");
-					esql.executeQueryAndPrintResult(query1);
-					break;
-				case 2:
-					System.out.print("Enter the item type: ");
-					String itemType = in.readLine();
-					String query2 = String.format("SELECT * FROM MENU M WHERE M.type = '" + itemType + "'");
-					esql.executeQueryAndPrintResult(query2);
-					break;
-			}
+		int choice = readChoice();
+		if(!isManager && choice > 2)
+			return;
+		switch(choice){
+			case 1:
+				System.out.print("Enter all or part of an item name, type or description: ");
+				printMenuItems(menu.search(in.readLine(), SEARCH_RESULTS));
+				break;
+			case 2:
+				System.out.print("Enter the item type: ");
+				printMenuItems(menu.findByType(in.readLine()));
+				break;
+			case 3:
+				System.out.print("Enter the Item Name: ");
+				String itemName = in.readLine();
+				System.out.print("Enter the Item Type: ");
+				String itemType = in.readLine();
+				System.out.print("Enter the Item Price: $");
+				String itemPrice = in.readLine();
+				System.out.print("Enter the Item Description: ");
+				String itemDesc = in.readLine();
+				System.out.print("Enter the Image URL: ");
+				String imageURL = in.readLine();
+				menu.addItem(authorisedUser, new MenuItem(itemName, itemType, Double.parseDouble(itemPrice), itemDesc, imageURL));
+				break;
+			case 4:
+				System.out.print("Enter the item name to delete: ");
+				String ItemToDelete = in.readLine();
+				if(!menu.deleteItem(authorisedUser, ItemToDelete))
+					System.out.println(ItemToDelete + " is not on the menu.");
+				break;
+			case 5:
+				System.out.print("Please enter the item name to update: ");
+				String targetItem = in.readLine();
+				System.out.print("Enter its updated name: ");
+				String new_itemName = in.readLine();
+				System.out.print("Enter its updated type: ");
+				String new_itemType = in.readLine();
+				System.out.print("Enter its updated price: $");
+				String new_itemPrice = in.readLine();
+				System.out.print("Enter its updated description: ");
+				String new_itemDesc = in.readLine();
+				System.out.print("Enter its updated image url: ");
+				String new_imageURL = in.readLine();
+				if(!menu.updateItem(authorisedUser, targetItem, new MenuItem(new_itemName, new_itemType, Double.parseDouble(new_itemPrice), new_itemDesc, new_imageURL)))
+					System.out.println(targetItem + " is not on the menu.");
+				break;
 		}
-
-		return;	
+		return;
 	}
 	catch(Exception e)
 	{
 		System.out.println(e.getMessage());
 		return;
 	}
-	
+
   }
 
-  public static void UpdateProfile(Cafe esql, String authorisedUser){
+  /*
+   * Updates one field of the user's profile, or of another user's for managers.
+   * @return the user's session after the update
+   **/
+  public static UserSession UpdateProfile(Cafe esql, UserSession authorisedUser){
 	try{
-		int isManager = esql.executeQuery("SELECT U.login FROM Users U WHERE U.login = '" + authorisedUser + "' AND U.type = 'Manager'");
-		if(isManager > 0)
+		UserService users = esql.getUserService();
+		boolean isManager = authorisedUser.isManager();
+		String targetUser = null;
+		if(isManager)
 		{
 			System.out.println("===== MANAGER'S VIEW =====");
 			System.out.println("Please choose who to update");
 			System.out.println("1. Self");
 			System.out.println("2. Other User");
-			int choice = readChoice();
-			String targetUser = "tmp";
-			if(choice == 2)
+			if(readChoice() == 2)
 			{
 				System.out.println("Enter the users login");
 				targetUser = in.readLine();
 			}
-			
-			System.out.println("Please choose what you wish to update");
-			System.out.println("1. Login");
-			System.out.println("2. Phone Number");
-			System.out.println("3. Password");
-			System.out.println("4. Favorite Items");
-			System.out.println("5. User Type");
-			switch(readChoice()){
-				case 1:
-					System.out.println("Enter your new login");
-					String newLogin = in.readLine();
-					String query1;
-					if(choice == 2)
-						query1 = String.format("UPDATE Users SET login = '" + newLogin + "' WHERE login = '" + targetUser + "'");
-					else
-						query1 = String.format("UPDATE Users SET login = '" + newLogin + "' WHERE login = '" + authorisedUser + "'");
-					esql.executeUpdate(query1);
-					System.out.println("Success!");
-					break;
-				case 2:
-					System.out.println("Enter your new phone number");
-					String newPhoneNumber = in.readLine();
-					String query2;
-					if(choice == 2)
-						query2 = String.format("UPDATE Users SET phoneNum = '" + newPhoneNumber + "' WHERE login = '" + targetUser + "'");
-					else
-						query2 = String.format("UPDATE Users SET phoneNum = '" + newPhoneNumber + "' WHERE login = '" + authorisedUser + "'");					
-					esql.executeUpdate(query2);
-					System.out.println("Success!");
-					break;
-				case 3:
-					System.out.println("Enter your password");
-					String newPassword = in.readLine();
-					String query3;
-					if(choice == 2)
-						query3 = String.format("UPDATE Users SET password = '" + newPassword + "' WHERE login = '" + targetUser + "'");
-					else
-						query3 = String.format("UPDATE Users SET password = '" + newPassword + "' WHERE login = '" + authorisedUser + "'");
-					esql.executeUpdate(query3);
-					System.out.println("Success!");
-					break;
-				case 4:
-					System.out.println("Enter your new favorite items");
-					String newFavItems = in.readLine();
-					String query4;
-					if(choice == 2)
-						query4 = String.format("UPDATE Users SET favItems = '" + newFavItems + "' WHERE login = '" + targetUser + "'");
-					else
-						query4 = String.format("UPDATE Users SET favItems = '" + newFavItems + "' WHERE login = '" + authorisedUser + "'");
-					esql.executeUpdate(query4);
-					System.out.println("Success!");
-					break;
-				case 5:
-					System.out.println("Enter your new user type");
-					String newType = in.readLine();
-					String query5;
-					if(choice == 2)
-						query5 = String.format("UPDATE Users SET type = '" + newType + "' WHERE login = '" + targetUser + "'");
-					else
-						query5 = String.format("UPDATE Users SET type = '" + newType + "' WHERE login = '" + authorisedUser + "'");
-					esql.executeUpdate(query5);
-					System.out.println("Success!");
-					break;
-			}
-
 		}
-		
-		else
-		{
-			System.out.println("Please choose what you wish to update");
-			System.out.println("1. Login");
-			System.out.println("2. Phone Number");
-			System.out.println("3. Password");
-			System.out.println("4. Favorite Items");
-			switch(readChoice()){
-				case 1:
-					System.out.println("Enter your new login");
-					String newLogin = in.readLine();
-					String query1 = String.format("UPDATE Users SET login = '" + newLogin + "' WHERE login = '" + authorisedUser + "'");
-					esql.executeUpdate(query1);
-					System.out.println("Success!");
-					break;
-				case 2:
-					System.out.println("Enter your new phone number");
-					String newPhoneNumber = in.readLine();
-					String query2 = String.format("UPDATE Users SET phoneNum = '" + newPhoneNumber + "' WHERE login = '" + authorisedUser + "'");
-					esql.executeUpdate(query2);
-					System.out.println("Success!");
-					break;
-				case 3:
-					System.out.println("Enter your password");
-					String newPassword = in.readLine();
-					String query3 = String.format("UPDATE Users SET password = '" + newPassword + "' WHERE login = '" + authorisedUser + "'");
-					esql.executeUpdate(query3);
-					System.out.println("Success!");
-					break;
-				case 4:
-					System.out.println("Enter your new favorite items");
-					String newFavItems = in.readLine();
-					String query4 = String.format("UPDATE Users SET favItems = '" + newFavItems + "' WHERE login = '" + authorisedUser + "'");
-					esql.executeUpdate(query4);
-					System.out.println("Success!");
-					break;
-			}
-		}	
-
 
-		return;
+		System.out.println("Please choose what you wish to update");
+		System.out.println("1. Login");
+		System.out.println("2. Phone Number");
+		System.out.println("3. Password");
+		System.out.println("4. Favorite Items");
+		if(isManager)
+			System.out.println("5. User Type");
+		String[] prompts = { "Enter your new login", "Enter your new phone number", "Enter your password",
+		                     "Enter your new favorite items", "Enter your new user type" };
+		int choice = readChoice();
+		if(choice < 1 || choice > (isManager ? 5 : 4))
+			return authorisedUser;
+
+		System.out.println(prompts[choice - 1]);
+		String value = in.readLine();
+		UserSession updated = users.updateProfile(authorisedUser, targetUser, UserService.PROFILE_FIELDS.get(choice - 1), value);
+		System.out.println("Success!");
+		return updated;
 	}
 	catch(Exception e)
 	{
 		System.out.println(e.getMessage());
-		return;
-	}	
+		return authorisedUser;
+	}
 
   }
-  static int currnum = 90002;
-  public static void PlaceOrder(Cafe esql, String authorisedUser)
+
+  public static void PlaceOrder(Cafe esql, UserSession authorisedUser)
   {
 	try
 	{
-		boolean isOrdering = true;
 		String item;
-		double total = 0.0;
-		Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-		SimpleDateFormat timeformat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		List<String> items = new ArrayList<String>();
 
-		String addOrderQuery = String.format("INSERT INTO Orders (orderid,login, paid, timeStampRecieved, total) VALUES('%d','%s', '%s', '%s', '%s')",currnum,authorisedUser, "false", String.format(timeformat.format(timestamp)), "0");
-                esql.executeUpdate(addOrderQuery);	
 		System.out.println("Please enter the names of the items you want to add: (Enter 0 to complete order)");
-		while(isOrdering)
+		while(true)
 		{
 			System.out.print("Enter the item you want to add: ");
 			item = in.readLine();
 
-			if(item.equals("0")) { isOrdering = false; break; }
+			if(item == null || item.equals("0")) break;
 
-			String getPriceQuery = String.format("SELECT P.price FROM MENU P WHERE itemName = '" + item + "'");
-			List<List<String>> temp = esql.executeQueryAndReturnResult(getPriceQuery);
-			total += Double.parseDouble(temp.get(0).get(0));
-
-			String addToItemStatusQuery = String.format("INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) VALUES('%d', '%s', '%s', '%s', '%s')",currnum, item, String.format(timeformat.format(timestamp)), String.format("Hasn''t Started"), "test");
-			esql.executeUpdate(addToItemStatusQuery);
-			String query2000 = String.format("SELECT * FROM ItemStatus WHERE orderid = '"+currnum+"'");
-			esql.executeQueryAndPrintResult(query2000);
+			if(items.contains(item))
+				System.out.println(item + " is already in your order.");
+			else
+				items.add(item);
+		}
+		if(items.isEmpty())
+		{
+			System.out.println("No items entered, order cancelled.");
+			return;
 		}
-		String UpdateOrderQuery = String.format("UPDATE Orders SET total = '" +total+ "' WHERE orderid = '" + currnum+"'");
-		esql.executeUpdate(UpdateOrderQuery);
-		String PrintOrderQuery = String.format("SELECT * FROM Orders WHERE orderid = '" + currnum + "'");
-		esql.executeQueryAndPrintResult(PrintOrderQuery);
-		currnum++;
+
+		printReceipt(esql.getOrderService().placeOrder(new OrderRequest(authorisedUser.getLogin(), items)));
 	}
 	catch(Exception e)
 	{
@@ -655,124 +1432,210 @@ public class Cafe {
 	return;
   }
 
-  public static void UpdateOrder(Cafe esql, String authorisedUser){
-     Scanner sc = new Scanner(System.in);
-     double new_price = 0.0;
-     double price = 0.0;
-     double total_price = 0.0;
-     String getpaid;
-     Timestamp timestamp_2 = new Timestamp(System.currentTimeMillis());
-     SimpleDateFormat timeformat_2 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+  public static void UpdateOrder(Cafe esql, UserSession authorisedUser){
      try {
-      int isManager_Employee = esql.executeQuery("SELECT U.login FROM Users U WHERE U.login = '" + authorisedUser + "' AND (U.type = 'Manager' OR U.type = 'Employee')");
-	if (isManager_Employee > 0 ){
-	 String unpaid_24hours_query = String.format("SELECT * FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = 'f'");
-	 esql.executeQueryAndPrintResult(unpaid_24hours_query);
-         System.out.print("Enter OrderId you wish to update: ");
-         int id = sc.nextInt();
-         getpaid = String.format("SELECT paid FROM Orders WHERE orderid = " + id);
-         List<List<String>> getpaid_1 = esql.executeQueryAndReturnResult(getpaid);
-         char c = getpaid_1.get(0).get(0).charAt(0);
-         if (c == 'f'){
+      OrderService orders = esql.getOrderService();
+	if (authorisedUser.isStaff()){
+         int id = chooseOrder(orders, authorisedUser, "Enter OrderId you wish to update: ");
+         if (!orders.getOrder(id).isPaid()){
             System.out.print("Press YES to change an ORDER to paid: ");
             String input = in.readLine().toLowerCase();
             if(input.equals("yes")){
-               String query1 = String.format("UPDATE Orders SET paid = 't' WHERE orderid = " + id);
-               esql.executeUpdate(query1);
-            }
-            else{
-               System.out.println("It has already been paid.");
+               printReceipt(orders.markPaid(authorisedUser, id));
             }
          }
+         else{
+            System.out.println("It has already been paid.");
+         }
       }
 
       else{
-	 String query20000 = String.format("SELECT * FROM orders WHERE login = '"+authorisedUser+"'");
-	 esql.executeQueryAndPrintResult(query20000);
-         System.out.print("Enter your orderID: ");
-         int id = sc.nextInt();
-         //String query100 = String.format("SELECT * FROM Orders WHERE orderid = " + id);
-         //esql.executeQueryAndPrintResult(query100);
-         getpaid = String.format("SELECT paid FROM Orders WHERE orderid = " + id);
-         List<List<String>> getpaid_1 = esql.executeQueryAndReturnResult(getpaid);
-         char c = getpaid_1.get(0).get(0).charAt(0);
-         if (c == 'f'){
+         int id = chooseOrder(orders, authorisedUser, "Enter your orderID: ");
+         OrderReceipt order = orders.getOrder(id);
+         if (!order.isPaid()){
             System.out.println("1. Add the item.");
             System.out.println("2. Delete the item.");
             switch(readChoice()){
                case 1:
                   System.out.print("Enter new item: ");
                   String new_order_name = in.readLine();
-
-                  String getNewPriceQuery = String.format("SELECT P.price FROM MENU P WHERE itemName = '" + new_order_name + "'");
-                  List<List<String>> temp = esql.executeQueryAndReturnResult(getNewPriceQuery);
-                  new_price = Double.parseDouble(temp.get(0).get(0));
-
-                  //String getOldPriceQuery = String.format("SELECT P.price FROM MENU P WHERE itemName = '" + old_order_name + "'");
-                  //List<List<String>> temp3 = esql.executeQueryAndReturnResult(getOldPriceQuery);
-                  //old_price = Double.parseDouble(temp3.get(0).get(0));
-
-                  String getTotalQuery = String.format("SELECT total FROM Orders WHERE orderid = " + id);
-                  List<List<String>> temp2 = esql.executeQueryAndReturnResult(getTotalQuery);
-                  total_price = Double.parseDouble(temp2.get(0).get(0));
-                  total_price += new_price;
-                  String query12 = String.format("SELECT * FROM ItemStatus WHERE orderid = " + id);
-                  esql.executeQueryAndPrintResult(query12);
-                  String query13 = String.format("SELECT * FROM Orders WHERE orderid = " + id);
-                  esql.executeQueryAndPrintResult(query13);
-		  //System.out.println(timeformat_2.format(timestamp_2));
-		  String query2 = String.format("INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) VALUES('%d', '%s', '%s', '%s', '%s')", id, new_order_name, String.format(timeformat_2.format(timestamp_2)), "Hasn''t started", "");
-                  esql.executeUpdate(query2);
-                  String query3 = String.format("UPDATE Orders SET total = " + total_price + " WHERE orderid = " + id);
-                  esql.executeUpdate(query3);
-
-                  String query22 = String.format("SELECT * FROM ItemStatus WHERE orderid = " + id);
-                  esql.executeQueryAndPrintResult(query22);
-                  String query23 = String.format("SELECT * FROM Orders WHERE orderid = " + id);
-                  esql.executeQueryAndPrintResult(query23);
-
+                  printReceipt(order);
+                  orders.addItem(authorisedUser, id, new_order_name);
+                  printReceipt(orders.getOrder(id));
                   break;
                case 2:
                   System.out.print("Enter item you want to delete: ");
                   String order_name = in.readLine();
-
-                  String getPriceQuery = String.format("SELECT P.price FROM MENU P WHERE itemName = '" + order_name + "'");
-                  List<List<String>> temp4 = esql.executeQueryAndReturnResult(getPriceQuery);
-                  price = Double.parseDouble(temp4.get(0).get(0));
-
-                  String TotalQuery = String.format("SELECT total FROM Orders WHERE orderid = " + id);
-                  List<List<String>> temp3 = esql.executeQueryAndReturnResult(TotalQuery);
-                  total_price = Double.parseDouble(temp3.get(0).get(0));
-                  total_price -= price;
-
-                  String query14 = String.format("SELECT * FROM ItemStatus WHERE orderid = " + id);
-                  esql.executeQueryAndPrintResult(query14);
-                  String query24 = String.format("SELECT * FROM Orders WHERE orderid = " + id);
-                  esql.executeQueryAndPrintResult(query24);
-
-                  String query4 = String.format("DELETE FROM ItemStatus WHERE itemName = '" + order_name + "' AND orderid = " + id);
-                  esql.executeUpdate(query4);
-                  String query5 = String.format("UPDATE Orders SET total = " + total_price + " WHERE orderid = " + id);
-                  esql.executeUpdate(query5);
-
-                  String query15 = String.format("SELECT * FROM ItemStatus WHERE orderid = " + id);
-                  esql.executeQueryAndPrintResult(query15);
-                  String query25 = String.format("SELECT * FROM Orders WHERE orderid = " + id);
-                  esql.executeQueryAndPrintResult(query25);
+                  printReceipt(order);
+                  orders.removeItem(authorisedUser, id, order_name);
+                  printReceipt(orders.getOrder(id));
                   break;
-
             }
          }
          else {
             System.out.println("It has already been paid.");
-            
-         }      
+         }
       }
-   } 
+   }
      catch (Exception e) {
       System.out.println(e.getMessage());
    }
   }
 
-}//end Cafe
+  /*
+   * Shows the user's favorites and most frequently ordered items and lets
+   * them place their usual order in one step.
+   */
+  public static void OrderUsual(Cafe esql, UserSession authorisedUser){
+     try {
+        FavoritesService favorites = esql.getFavoritesService();
+        System.out.println("Favorite items: " + favorites.getFavorites(authorisedUser));
+        System.out.println("Most ordered:");
+        System.out.println(FrequentItem.HEADER);
+        for (FrequentItem item : favorites.getFrequentItems(authorisedUser, 5))
+           System.out.println(item);
+        List<String> usual = favorites.getUsual(authorisedUser);
+        if (usual.isEmpty()) {
+           System.out.println("No favorites or past orders to reorder.");
+           return;
+        }
+        System.out.print("Press YES to order " + usual + ": ");
+        String input = in.readLine();
+        if (input != null && input.trim().equalsIgnoreCase("yes"))
+           printReceipt(favorites.placeUsual(authorisedUser));
+     }
+     catch (Exception e) {
+        System.out.println(e.getMessage());
+     }
+  }//end OrderUsual
+
+  /*
+   * Shows managers the sales of the week up to a day, that day hour by
+   * hour, and the week's best selling items.
+   */
+  public static void SalesReport(Cafe esql, UserSession authorisedUser){
+     try {
+        ReportService reports = esql.getReportService();
+        System.out.print("Enter a day (yyyy-mm-dd), or nothing for today: ");
+        String input = in.readLine();
+        java.sql.Date day = input == null || input.trim().isEmpty()
+           ? java.sql.Date.valueOf(new java.sql.Date(System.currentTimeMillis()).toString())
+           : java.sql.Date.valueOf(input.trim());
+        java.sql.Date next = ReportService.plusDays(day, 1);
+        java.sql.Date weekStart = ReportService.plusDays(day, -6);
+
+        System.out.println("Sales by day");
+        System.out.println(SalesPeriod.HEADER);
+        for (SalesPeriod period : reports.dailySales(authorisedUser, weekStart, next))
+           System.out.println(period);
+        System.out.println("Sales by hour on " + day);
+        System.out.println(SalesPeriod.HEADER);
+        for (SalesPeriod period : reports.hourlySales(authorisedUser, day, next))
+           System.out.println(period);
+        System.out.println("Top sellers since " + weekStart);
+        System.out.println(ItemSales.HEADER);
+        for (ItemSales item : reports.topItems(authorisedUser, weekStart, next, 10))
+           System.out.println(item);
+     }
+     catch (Exception e) {
+        System.out.println(e.getMessage());
+     }
+  }//end SalesReport
+
+  /*
+   * Shows employees the items waiting in the kitchen and lets them claim
+   * the oldest ones, mark a claimed one finished or change an item's status.
+   */
+  public static void KitchenQueue(Cafe esql, UserSession authorisedUser){
+     try {
+        KitchenService kitchen = esql.getKitchenService();
+        printWorkItems(kitchen.listQueue(authorisedUser, 50));
+        System.out.println("1. Claim the next items.");
+        System.out.println("2. Mark an item finished.");
+        System.out.println("3. Change an item's status or comments.");
+        switch(readChoice()){
+           case 1:
+              System.out.print("How many items? ");
+              printWorkItems(kitchen.claim(authorisedUser, Integer.parseInt(in.readLine().trim())));
+              break;
+           case 2:
+              System.out.print("Enter the orderid: ");
+              int id = Integer.parseInt(in.readLine().trim());
+              System.out.print("Enter the item: ");
+              String item = in.readLine();
+              printWorkItems(Collections.singletonList(kitchen.finish(authorisedUser, id, item)));
+              break;
+           case 3:
+              System.out.print("Enter the orderid: ");
+              int order = Integer.parseInt(in.readLine().trim());
+              System.out.print("Enter the item: ");
+              String name = in.readLine();
+              System.out.print("Enter the new status: ");
+              String status = in.readLine().trim();
+              System.out.print("Enter the comments (leave empty to keep them): ");
+              String comments = in.readLine().trim();
+              printWorkItems(Collections.singletonList(kitchen.setStatus(authorisedUser, order, name, status,
+                                                                         comments.isEmpty() ? null : comments)));
+              break;
+        }
+     }
+     catch (Exception e) {
+        System.out.println(e.getMessage());
+     }
+  }//end KitchenQueue
+
+  static void printWorkItems(List<WorkItem> items) {
+     if (items.isEmpty()) {
+        System.out.println("Nothing waiting.");
+        return;
+     }
+     System.out.println(WorkItem.HEADER);
+     for (WorkItem item : items)
+        System.out.println(item);
+  }//end printWorkItems
+
+  /*
+   * Lists the orders the user may update a page at a time, the unpaid ones
+   * for staff and their own for customers, and reads the orderid picked.
+   */
+  static int chooseOrder(OrderService orders, UserSession user, String prompt) throws Exception {
+     String after = null;
+     while (true) {
+        OrderPage page = user.isStaff()
+           ? orders.listUnpaidOrders(user, after, OrderService.DEFAULT_PAGE_SIZE)
+           : orders.listOwnOrders(user, after, OrderService.DEFAULT_PAGE_SIZE);
+        printOrders(page.getOrders());
+        if (page.getNext() != null)
+           System.out.println("Enter n to see more orders.");
+        System.out.print(prompt);
+        String input = in.readLine().trim();
+        if (page.getNext() == null || !input.equalsIgnoreCase("n"))
+           return Integer.parseInt(input);
+        after = page.getNext();
+     }
+  }//end chooseOrder
+
+  /*
+   * Prints orders one per line under a column header.
+   */
+  static void printOrders(List<? extends OrderSummary> orders) {
+     if (orders.isEmpty())
+        return;
+     System.out.println(OrderSummary.HEADER);
+     for (OrderSummary order : orders)
+        System.out.println(order);
+  }//end printOrders
+
+  /*
+   * Prints an order's items followed by the order itself.
+   */
+  static void printReceipt(OrderReceipt order) {
+     if (!order.getItems().isEmpty()) {
+        System.out.println(OrderReceipt.Line.HEADER);
+        for (OrderReceipt.Line line : order.getItems())
+           System.out.println(line);
+     }
+     printOrders(Collections.singletonList(order));
+  }//end printReceipt
 
+}//end Cafe
@@ -0,0 +1,663 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs Cafe headless: the operations of the console menu are
+ * served as HTTP/JSON endpoints, so one process can serve every register.
+ * Each request runs on a thread of its own from RequestExecutors: a virtual
+ * thread when built and run with Java 21, a cached pool thread otherwise.
+ *
+ * Endpoints (request and response bodies are JSON objects):
+ *
+ *   POST /users            {login, password, phone}         create a customer
+ *   POST /login            {login, password}                returns {token, login, type}
+ *   POST /logout                                            ends the session
+ *   GET  /menu?name=|type=                                  menu items
+ *   GET  /menu?q=&limit=                                    menu items matching the words
+ *                                                           of q, best first
+ *   GET  /orders?after=&limit=                              own orders, or the last
+ *                                                           day's unpaid orders for staff,
+ *                                                           newest first; returns
+ *                                                           {orders, next}, next being
+ *                                                           the after of the next page
+ *   POST /orders           {items: [...]}                   place an order
+ *   POST /orders/usual                                      place the usual order: the
+ *                                                           favorites, or else the most
+ *                                                           ordered items
+ *   POST /orders/update    {orderid, action, item}          action is add, remove or pay;
+ *                                                           add and remove return
+ *                                                           {orderid, total}
+ *   POST /profile          {field, value, target}           field is login, phoneNum,
+ *                                                           password, favItems or type
+ *   GET  /favorites?limit=                                  {favorites, frequent, usual},
+ *                                                           frequent being the limit
+ *                                                           most ordered items with
+ *                                                           their order counts
+ *   GET  /reports/sales?from=&to=&by=                       managers: sales by day, or
+ *                                                           by hour when by=hour, from
+ *                                                           the day from to the day
+ *                                                           before to (yyyy-mm-dd,
+ *                                                           default the last 7 days)
+ *   GET  /reports/items?from=&to=&limit=                    managers: best selling items
+ *   GET  /kitchen?limit=                                    staff: items not finished yet
+ *   POST /kitchen          {action, max, orderid, item,     staff: action is claim (the
+ *                           status, comments}               max oldest waiting items),
+ *                                                           finish (a claimed item) or
+ *                                                           status (set the status and,
+ *                                                           when given, the comments)
+ *   GET  /events                                            item status changes as
+ *                                                           server-sent events: all for
+ *                                                           staff, own orders otherwise
+ *   GET  /metrics                                           query, pool, status writer
+ *                                                           and order log metrics in the
+ *                                                           Prometheus text format
+ *
+ * A request fails with status 503 while the database is unreachable or
+ * overloaded, or when one of its statements ran past its timeout. A
+ * request body larger than -Dcafe.http.body.max bytes (default 64 KiB) is
+ * refused with status 413 before any of it is parsed.
+ *
+ * Every endpoint but /users, /login, /menu and /metrics needs the token
+ * returned by /login in the X-Session header. Sessions expire after a
+ * period without requests, and when a manager changes a user's profile.
+ *
+ * /events streams from the server's single StatusListener, so open screens
+ * add no database load. An event is {orderid, login, status, itemName}, or
+ * {reload: true} when changes may have been missed.
+ *
+ */
+public class CafeServer {
+
+   /**
+    * A failure that maps to a specific HTTP status.
+    */
+   static class HttpError extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+      final int status;
+
+      HttpError(int status, String message) {
+         super(message);
+         this.status = status;
+      }
+   }//end HttpError
+
+   /**
+    * Base class of every endpoint: decodes the request, maps failures to
+    * status codes and writes the JSON response.
+    */
+   abstract class Endpoint implements HttpHandler {
+      private final boolean _authenticated;
+
+      Endpoint(boolean authenticated) {
+         this._authenticated = authenticated;
+      }
+
+      /**
+       * @return the response object, written as JSON with status 200
+       */
+      abstract Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+         throws SQLException;
+
+      public void handle(HttpExchange exchange) throws IOException {
+         int status = 200;
+         Object response;
+         try {
+            UserSession session = this._authenticated ? session(exchange) : null;
+            Map<String, Object> body = Json.parseObject(readBody(exchange.getRequestBody()));
+            response = serve(exchange.getRequestMethod(), parseQuery(exchange.getRequestURI().getRawQuery()),
+                             body, session);
+         }catch (HttpError e) {
+            status = e.status;
+            response = error(e.getMessage());
+         }catch (ServiceException e) {
+            status = status(e.getReason());
+            response = error(e.getMessage());
+         }catch (IllegalArgumentException e) {
+            status = 400;
+            response = error(e.getMessage());
+         }catch (SQLException e) {
+            // a database that is down, overloaded or too slow is reported
+            // as unavailable, so clients back off instead of retrying.
+            status = "23505".equals(e.getSQLState()) ? 409
+                   : e instanceof CircuitBreaker.OpenException || CircuitBreaker.isUnavailable(e) ? 503 : 500;
+            response = error(e.getMessage());
+         }catch (RuntimeException e) {
+            status = 500;
+            response = error(String.valueOf(e.getMessage()));
+         }//end try
+
+         send(exchange, status, response);
+      }//end handle
+   }//end Endpoint
+
+   /**
+    * Streams item status changes to one client as server-sent events. A
+    * client that falls EVENT_BACKLOG changes behind, e.g. during a bulk
+    * load, gets a single reload event in place of the changes it missed.
+    */
+   class EventStream implements HttpHandler {
+      public void handle(HttpExchange exchange) throws IOException {
+         final UserSession session;
+         try {
+            session = session(exchange);
+         }catch (HttpError e) {
+            send(exchange, e.status, error(e.getMessage()));
+            return;
+         }//end try
+         final BlockingQueue<StatusListener.Change> queue =
+            new ArrayBlockingQueue<StatusListener.Change>(EVENT_BACKLOG);
+         StatusListener.Subscriber subscriber = new StatusListener.Subscriber() {
+            public void changed(StatusListener.Change change) {
+               if (!session.isStaff() && change.getOrderId() != 0 && !session.getLogin().equals(change.getLogin()))
+                  return;
+               if (!queue.offer(change)) {
+                  queue.clear();
+                  queue.offer(new StatusListener.Change(0, null, null, null));
+               }//end if
+            }
+         };
+
+         exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+         exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+         exchange.sendResponseHeaders(200, 0);
+         OutputStream out = exchange.getResponseBody();
+         CafeServer.this._listener.subscribe(subscriber);
+         try {
+            while (true) {
+               StatusListener.Change change = queue.poll(KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+               String event = change == null ? ": keepalive\n\n" : "data: " + Json.write(event(change)) + "\n\n";
+               out.write(event.getBytes("UTF-8"));
+               out.flush();
+            }//end while
+         }catch (InterruptedException e) {
+            // the server is stopping.
+         }catch (IOException e) {
+            // the client went away.
+         } finally {
+            CafeServer.this._listener.unsubscribe(subscriber);
+            out.close();
+         }//end try
+      }//end handle
+   }//end EventStream
+
+   // changes a slow /events client may fall behind before it is sent a reload.
+   static final int EVENT_BACKLOG = 1000;
+   // seconds between keepalive comments on an idle /events stream.
+   static final int KEEPALIVE_SECONDS = 15;
+   // largest request body read, in bytes.
+   static final int MAX_BODY = Integer.getInteger("cafe.http.body.max", 64 << 10);
+
+   private final Cafe _esql;
+   private final HttpServer _server;
+   private final ExecutorService _executor;
+   private final StatusListener _listener;
+
+   /**
+    * Creates a new server bound to the given port. It does not accept
+    * requests until start is called.
+    *
+    * @param esql the database session every request runs through
+    * @param port the TCP port to listen on
+    * @throws java.io.IOException when the port cannot be bound
+    */
+   public CafeServer(Cafe esql, int port) throws IOException {
+      this._esql = esql;
+      this._executor = RequestExecutors.newRequestExecutor();
+      this._listener = new StatusListener(esql.getPool());
+      this._server = HttpServer.create(new InetSocketAddress(port), 128);
+      this._server.setExecutor(this._executor);
+
+      final UserService users = esql.getUserService();
+      final MenuService menu = esql.getMenuService();
+      final OrderService orders = esql.getOrderService();
+      final KitchenService kitchen = esql.getKitchenService();
+      final FavoritesService favorites = esql.getFavoritesService();
+      final ReportService reports = esql.getReportService();
+
+      this._server.createContext("/users", new Endpoint(false) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "POST");
+            String newLogin = required(body, "login");
+            users.createUser(newLogin, required(body, "password"), required(body, "phone"));
+            return object("login", newLogin);
+         }
+      });
+      this._server.createContext("/login", new Endpoint(false) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "POST");
+            UserSession opened = users.logIn(required(body, "login"), required(body, "password"));
+            if (opened == null)
+               throw new HttpError(401, "Wrong login or password");
+            Map<String, Object> result = object("token", opened.getToken());
+            result.put("login", opened.getLogin());
+            result.put("type", opened.getType());
+            return result;
+         }
+      });
+      this._server.createContext("/logout", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "POST");
+            users.logOut(session);
+            return object("login", session.getLogin());
+         }
+      });
+      this._server.createContext("/menu", new Endpoint(false) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "GET");
+            Collection<MenuItem> items;
+            if (query.containsKey("q")) {
+               String limit = query.get("limit");
+               items = menu.search(query.get("q"), limit == null ? 20 : Integer.parseInt(limit));
+            } else if (query.containsKey("name")) {
+               MenuItem item = menu.findByName(query.get("name"));
+               items = new ArrayList<MenuItem>();
+               if (item != null)
+                  items.add(item);
+            } else if (query.containsKey("type")) {
+               items = menu.findByType(query.get("type"));
+            } else {
+               items = menu.findAll();
+            }//end if
+            List<Object> result = new ArrayList<Object>();
+            for (MenuItem item : items)
+               result.add(menuItem(item));
+            return result;
+         }
+      });
+      this._server.createContext("/orders/usual", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "POST");
+            return receipt(favorites.placeUsual(session));
+         }
+      });
+      this._server.createContext("/orders/update", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "POST");
+            int orderid = requiredInt(body, "orderid");
+            String action = required(body, "action");
+            if (action.equals("pay"))
+               return receipt(orders.markPaid(session, orderid));
+            if (action.equals("add"))
+               return total(orderid, orders.addItem(session, orderid, required(body, "item")));
+            if (action.equals("remove"))
+               return total(orderid, orders.removeItem(session, orderid, required(body, "item")));
+            throw new IllegalArgumentException("action must be add, remove or pay");
+         }
+      });
+      this._server.createContext("/orders", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            if (method.equals("GET")) {
+               String after = query.get("after");
+               String limit = query.get("limit");
+               int pageSize = limit == null ? OrderService.DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+               OrderPage page = session.isStaff() ? orders.listUnpaidOrders(session, after, pageSize)
+                                                  : orders.listOwnOrders(session, after, pageSize);
+               List<Object> list = new ArrayList<Object>();
+               for (OrderSummary order : page.getOrders())
+                  list.add(summary(order));
+               Map<String, Object> result = object("orders", list);
+               result.put("next", page.getNext());
+               return result;
+            }//end if
+            requireMethod(method, "POST");
+            Object items = body.get("items");
+            if (!(items instanceof List))
+               throw new IllegalArgumentException("items must be a list of item names");
+            List<String> names = new ArrayList<String>();
+            for (Object item : (List<?>) items)
+               names.add(String.valueOf(item));
+            return receipt(orders.placeOrder(new OrderRequest(session.getLogin(), names)));
+         }
+      });
+      this._server.createContext("/profile", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "POST");
+            String target = (String) body.get("target");
+            String field = required(body, "field");
+            String value = required(body, "value");
+            UserSession updated = users.updateProfile(session, target, field, value);
+            if (target == null)
+               return object("login", updated.getLogin());
+            return object("login", field.equals("login") ? value : target);
+         }
+      });
+      this._server.createContext("/favorites", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "GET");
+            String limit = query.get("limit");
+            List<Object> frequent = new ArrayList<Object>();
+            for (FrequentItem item : favorites.getFrequentItems(session, limit == null ? 5 : Integer.parseInt(limit))) {
+               Map<String, Object> entry = object("itemName", item.getItemName());
+               entry.put("orders", item.getOrders());
+               frequent.add(entry);
+            }//end for
+            Map<String, Object> result = object("favorites", favorites.getFavorites(session));
+            result.put("frequent", frequent);
+            result.put("usual", favorites.getUsual(session));
+            return result;
+         }
+      });
+      this._server.createContext("/reports/sales", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "GET");
+            Date to = query.containsKey("to") ? Date.valueOf(query.get("to"))
+                                              : ReportService.plusDays(today(), 1);
+            Date from = query.containsKey("from") ? Date.valueOf(query.get("from"))
+                                                  : ReportService.plusDays(to, -7);
+            List<SalesPeriod> periods = "hour".equals(query.get("by")) ? reports.hourlySales(session, from, to)
+                                                                       : reports.dailySales(session, from, to);
+            List<Object> result = new ArrayList<Object>();
+            for (SalesPeriod period : periods) {
+               Map<String, Object> entry = object("start", String.valueOf(period.getStart()));
+               entry.put("orders", period.getOrders());
+               entry.put("revenue", period.getRevenue());
+               entry.put("unpaid", period.getUnpaid());
+               result.add(entry);
+            }//end for
+            return result;
+         }
+      });
+      this._server.createContext("/reports/items", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            requireMethod(method, "GET");
+            Date to = query.containsKey("to") ? Date.valueOf(query.get("to"))
+                                              : ReportService.plusDays(today(), 1);
+            Date from = query.containsKey("from") ? Date.valueOf(query.get("from"))
+                                                  : ReportService.plusDays(to, -7);
+            String limit = query.get("limit");
+            List<Object> result = new ArrayList<Object>();
+            for (ItemSales item : reports.topItems(session, from, to, limit == null ? 10 : Integer.parseInt(limit))) {
+               Map<String, Object> entry = object("itemName", item.getItemName());
+               entry.put("orders", item.getOrders());
+               entry.put("revenue", item.getRevenue());
+               result.add(entry);
+            }//end for
+            return result;
+         }
+      });
+      this._server.createContext("/kitchen", new Endpoint(true) {
+         Object serve(String method, Map<String, String> query, Map<String, Object> body, UserSession session)
+            throws SQLException {
+            if (method.equals("GET")) {
+               String limit = query.get("limit");
+               return workItems(kitchen.listQueue(session, limit == null ? 50 : Integer.parseInt(limit)));
+            }//end if
+            requireMethod(method, "POST");
+            String action = required(body, "action");
+            if (action.equals("claim"))
+               return workItems(kitchen.claim(session, body.containsKey("max") ? requiredInt(body, "max") : 1));
+            if (action.equals("finish"))
+               return workItem(kitchen.finish(session, requiredInt(body, "orderid"), required(body, "item")));
+            if (action.equals("status"))
+               return workItem(kitchen.setStatus(session, requiredInt(body, "orderid"), required(body, "item"),
+                                                 required(body, "status"), (String) body.get("comments")));
+            throw new IllegalArgumentException("action must be claim, finish or status");
+         }
+      });
+      this._server.createContext("/events", new EventStream());
+
+      this._server.createContext("/metrics", new HttpHandler() {
+         public void handle(HttpExchange exchange) throws IOException {
+            StringWriter text = new StringWriter();
+            PrintWriter writer = new PrintWriter(text);
+            CafeServer.this._esql.getMetrics().writePrometheus(writer, CafeServer.this._esql.getPool());
+            CafeServer.this._esql.getStatusWriter().writePrometheus(writer);
+            if (CafeServer.this._esql.getOrderLog() != null)
+               CafeServer.this._esql.getOrderLog().writePrometheus(writer);
+            byte[] bytes = text.toString().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+               out.write(bytes);
+            } finally {
+               out.close();
+            }//end try
+         }
+      });
+   }//end CafeServer
+
+   /**
+    * Starts listening for item status changes and accepting requests.
+    *
+    * @throws java.sql.SQLException when the listener could not connect
+    */
+   public void start() throws SQLException {
+      this._listener.start();
+      this._server.start();
+   }//end start
+
+   /**
+    * Stops accepting requests and waits up to the delay for running ones.
+    *
+    * @param delaySeconds how long to wait for requests in flight
+    */
+   public void stop(int delaySeconds) {
+      this._server.stop(delaySeconds);
+      this._listener.stop();
+      // interrupts /events streams still waiting for changes.
+      this._executor.shutdownNow();
+   }//end stop
+
+   /**
+    * @return the port the server listens on
+    */
+   public int getPort() {
+      return this._server.getAddress().getPort();
+   }
+
+   static Map<String, Object> summary(OrderSummary order) {
+      Map<String, Object> result = object("orderid", order.getOrderId());
+      result.put("login", order.getLogin());
+      result.put("paid", order.isPaid());
+      result.put("timeStampRecieved", String.valueOf(order.getTimeStampRecieved()));
+      result.put("total", order.getTotal());
+      return result;
+   }//end summary
+
+   static Map<String, Object> receipt(OrderReceipt order) {
+      Map<String, Object> result = summary(order);
+      List<Object> items = new ArrayList<Object>();
+      for (OrderReceipt.Line line : order.getItems()) {
+         Map<String, Object> item = object("itemName", line.getItemName());
+         item.put("status", line.getStatus());
+         item.put("lastUpdated", String.valueOf(line.getLastUpdated()));
+         item.put("comments", line.getComments());
+         items.add(item);
+      }//end for
+      result.put("items", items);
+      return result;
+   }//end receipt
+
+   static Map<String, Object> total(int orderid, double total) {
+      Map<String, Object> result = object("orderid", orderid);
+      result.put("total", total);
+      return result;
+   }//end total
+
+   static List<Object> workItems(List<WorkItem> items) {
+      List<Object> result = new ArrayList<Object>();
+      for (WorkItem item : items)
+         result.add(workItem(item));
+      return result;
+   }//end workItems
+
+   static Map<String, Object> workItem(WorkItem item) {
+      Map<String, Object> result = object("orderid", item.getOrderId());
+      result.put("itemName", item.getItemName());
+      result.put("status", item.getStatus());
+      result.put("lastUpdated", String.valueOf(item.getLastUpdated()));
+      result.put("comments", item.getComments());
+      return result;
+   }//end workItem
+
+   static Map<String, Object> event(StatusListener.Change change) {
+      if (change.getOrderId() == 0)
+         return object("reload", true);
+      Map<String, Object> result = object("orderid", change.getOrderId());
+      result.put("login", change.getLogin());
+      result.put("status", change.getStatus());
+      result.put("itemName", change.getItemName());
+      return result;
+   }//end event
+
+   static Map<String, Object> menuItem(MenuItem item) {
+      Map<String, Object> result = object("itemName", item.getItemName());
+      result.put("type", item.getType());
+      result.put("price", item.getPrice());
+      result.put("description", item.getDescription());
+      result.put("imageURL", item.getImageURL());
+      return result;
+   }//end menuItem
+
+   /*
+    * The current day, without its time.
+    */
+   static Date today() {
+      return Date.valueOf(new Date(System.currentTimeMillis()).toString());
+   }
+
+   static Map<String, Object> object(String key, Object value) {
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      result.put(key, value);
+      return result;
+   }
+
+   static int status(ServiceException.Reason reason) {
+      switch (reason) {
+         case UNAUTHORIZED: return 401;
+         case FORBIDDEN: return 403;
+         case NOT_FOUND: return 404;
+         case CONFLICT: return 409;
+         default: return 400;
+      }//end switch
+   }//end status
+
+   /*
+    * Returns the session named by the request's X-Session header.
+    */
+   UserSession session(HttpExchange exchange) {
+      String token = exchange.getRequestHeaders().getFirst("X-Session");
+      UserSession session = token == null ? null : this._esql.getUserService().getSession(token);
+      if (session == null)
+         throw new HttpError(401, "Log in first and send the token in X-Session");
+      return session;
+   }//end session
+
+   static void send(HttpExchange exchange, int status, Object response) throws IOException {
+      byte[] bytes = Json.write(response).getBytes("UTF-8");
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      try {
+         out.write(bytes);
+      } finally {
+         out.close();
+      }//end try
+   }//end send
+
+   static Map<String, Object> error(String message) {
+      return object("error", message);
+   }
+
+   static void requireMethod(String method, String expected) {
+      if (!method.equals(expected))
+         throw new HttpError(405, "Use " + expected);
+   }
+
+   static String required(Map<String, Object> body, String field) {
+      Object value = body.get(field);
+      if (value == null)
+         throw new IllegalArgumentException("Missing field: " + field);
+      return value.toString();
+   }//end required
+
+   static int requiredInt(Map<String, Object> body, String field) {
+      Object value = body.get(field);
+      if (value instanceof Number)
+         return ((Number) value).intValue();
+      try {
+         return Integer.parseInt(required(body, field));
+      }catch (NumberFormatException e) {
+         throw new IllegalArgumentException(field + " must be a number");
+      }//end try
+   }//end requiredInt
+
+   static Map<String, String> parseQuery(String rawQuery) throws IOException {
+      Map<String, String> query = new LinkedHashMap<String, String>();
+      if (rawQuery == null || rawQuery.isEmpty())
+         return query;
+      for (String pair : rawQuery.split("&")) {
+         int eq = pair.indexOf('=');
+         String key = eq < 0 ? pair : pair.substring(0, eq);
+         String value = eq < 0 ? "" : pair.substring(eq + 1);
+         query.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+      }//end for
+      return query;
+   }//end parseQuery
+
+   /*
+    * Reads the request body, failing with 413 as soon as it grows past
+    * MAX_BODY bytes.
+    */
+   static String readBody(InputStream in) throws IOException {
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      byte[] chunk = new byte[4096];
+      int n;
+      try {
+         while ((n = in.read(chunk)) > 0) {
+            if (buf.size() + n > MAX_BODY)
+               throw new HttpError(413, "Request body over " + MAX_BODY + " bytes");
+            buf.write(chunk, 0, n);
+         }//end while
+      } finally {
+         in.close();
+      }//end try
+      return new String(buf.toByteArray(), "UTF-8");
+   }//end readBody
+
+}//end CafeServer
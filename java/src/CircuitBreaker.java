@@ -0,0 +1,154 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class stops a pool from handing out connections while the database
+ * is down or overloaded, so callers fail at once instead of each waiting
+ * out a connect or statement timeout.
+ *
+ * The breaker opens after a number of consecutive failures that point at
+ * the database rather than the statement: connection failures, statement
+ * timeouts, too many connections and the server shutting down. While open,
+ * borrowing throws OpenException. Once the open period is over one borrow
+ * is let through as a trial; its success closes the breaker again and its
+ * failure reopens it.
+ *
+ */
+public class CircuitBreaker {
+
+   // defaults, overridable with the cafe.breaker.failures and
+   // cafe.breaker.open (milliseconds) system properties.
+   static final int DEFAULT_THRESHOLD = 5;
+   static final long DEFAULT_OPEN_MILLIS = 5000;
+
+   public enum State { CLOSED, OPEN, HALF_OPEN }
+
+   /**
+    * Thrown instead of borrowing a connection while the breaker is open.
+    */
+   public static class OpenException extends SQLException {
+      private static final long serialVersionUID = 1L;
+
+      OpenException(long retryMillis) {
+         super("The database is unavailable, not trying again for " + retryMillis + "ms", "57P03");
+      }
+   }//end OpenException
+
+   private final int _threshold;
+   private final long _openMillis;
+
+   // read without the lock on the success path, written under it.
+   private volatile State _state = State.CLOSED;
+   private volatile int _failures = 0;
+   private long _openedAt = 0;
+   private long _trialAt = 0;
+
+   private final AtomicLong _opens = new AtomicLong();
+   private final AtomicLong _rejections = new AtomicLong();
+
+   /**
+    * @param threshold the consecutive failures that open the breaker
+    * @param openMillis how long the breaker stays open before a trial
+    */
+   public CircuitBreaker(int threshold, long openMillis) {
+      if (threshold < 1)
+         throw new IllegalArgumentException("threshold must be positive: " + threshold);
+      this._threshold = threshold;
+      this._openMillis = openMillis;
+   }//end CircuitBreaker
+
+   /**
+    * Checks that a connection may be borrowed.
+    *
+    * @throws OpenException when the breaker is open, or half open with a
+    *         trial already under way
+    */
+   public void before() throws OpenException {
+      if (this._state == State.CLOSED)
+         return;
+      synchronized (this) {
+         long now = System.currentTimeMillis();
+         if (this._state == State.OPEN && now - this._openedAt >= this._openMillis) {
+            this._state = State.HALF_OPEN;
+            this._trialAt = now;
+            return;
+         }//end if
+         // a trial that never reported back is replaced after a period.
+         if (this._state == State.HALF_OPEN && now - this._trialAt >= this._openMillis) {
+            this._trialAt = now;
+            return;
+         }//end if
+         if (this._state == State.CLOSED)
+            return;
+         this._rejections.incrementAndGet();
+         throw new OpenException(Math.max(0, this._openMillis - (now - (this._state == State.OPEN ? this._openedAt
+                                                                                                 : this._trialAt))));
+      }//end synchronized
+   }//end before
+
+   /**
+    * Records the outcome of a call made on a borrowed connection.
+    *
+    * @param failure the failure of the call, or null when it succeeded
+    */
+   public void record(SQLException failure) {
+      if (failure == null || !isUnavailable(failure))
+         success();
+      else
+         failure();
+   }//end record
+
+   public void success() {
+      if (this._state == State.CLOSED && this._failures == 0)
+         return;
+      synchronized (this) {
+         this._state = State.CLOSED;
+         this._failures = 0;
+      }//end synchronized
+   }//end success
+
+   public synchronized void failure() {
+      this._failures++;
+      if (this._state == State.HALF_OPEN || (this._state == State.CLOSED && this._failures >= this._threshold)) {
+         this._state = State.OPEN;
+         this._openedAt = System.currentTimeMillis();
+         this._opens.incrementAndGet();
+      }//end if
+   }//end failure
+
+   /**
+    * @param e a failure
+    * @return true when the failure says the database is down or overloaded
+    *         rather than that the statement was wrong
+    */
+   public static boolean isUnavailable(SQLException e) {
+      if (e instanceof OpenException)
+         return false;
+      String state = e.getSQLState();
+      if (state == null)
+         return false;
+      return state.startsWith("08")           // connection exception
+          || state.startsWith("53")           // insufficient resources, e.g. too many connections
+          || state.equals("57014")            // statement timeout or cancel
+          || state.equals("57P01")            // admin shutdown
+          || state.equals("57P02")            // crash shutdown
+          || state.equals("57P03");           // cannot connect now
+   }//end isUnavailable
+
+   public State getState() { return this._state; }
+   public long getOpenCount() { return this._opens.get(); }
+   public long getRejectedCount() { return this._rejections.get(); }
+
+}//end CircuitBreaker
@@ -0,0 +1,460 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a bounded pool of physical PostgreSQL connections that
+ * Cafe sessions borrow from instead of each opening their own. Connections
+ * idle for a while are validated before being handed out, connections idle
+ * for too long are closed down to the minimum size, and borrowers wait at
+ * most the acquire timeout for a free slot.
+ *
+ * Once a connection is found broken, every idle connection is validated
+ * before its next use, so after a database restart the dead connections
+ * are replaced instead of failing one call each. A CircuitBreaker makes
+ * borrowers fail at once while the database keeps failing.
+ *
+ * Connections are opened with the driver settings of
+ * connectionProperties: statements are prepared on the server from their
+ * first execution and batched inserts are sent as multi-row inserts. Any
+ * cafe.jdbc.&lt;name&gt; system property sets the pgjdbc property &lt;name&gt;, e.g.
+ * -Dcafe.jdbc.prepareThreshold=5 or -Dcafe.jdbc.defaultRowFetchSize=0.
+ *
+ */
+public class ConnectionPool {
+
+   static final String DRIVER_PROPERTY_PREFIX = "cafe.jdbc.";
+
+   // pgjdbc settings every pooled connection is opened with, before the
+   // cafe.jdbc.* overrides. Statements come from a StatementCache and are
+   // executed many times, so they are worth preparing on the first use.
+   static final String[][] DRIVER_DEFAULTS = {
+      { "ApplicationName", "cafe" },
+      { "prepareThreshold", "1" },
+      { "preparedStatementCacheQueries", String.valueOf(4 * StatementCache.DEFAULT_CAPACITY) },
+      { "reWriteBatchedInserts", "true" },
+      { "defaultRowFetchSize", String.valueOf(Cafe.DEFAULT_FETCH_SIZE) },
+      { "tcpKeepAlive", "true" } };
+
+   /**
+    * A physical connection owned by the pool together with the prepared
+    * statements cached on it.
+    */
+   public static class PooledConnection {
+      private final Connection _connection;
+      private final StatementCache _statements;
+      private volatile long _lastUsed = System.currentTimeMillis();
+
+      // the session's statement_timeout in milliseconds, -1 when unknown.
+      private long _statementTimeout = -1;
+
+      PooledConnection(Connection connection, int statementCacheSize) {
+         this._connection = connection;
+         this._statements = new StatementCache(connection, statementCacheSize);
+      }
+
+      public Connection connection() { return this._connection; }
+      public StatementCache statements() { return this._statements; }
+
+      /**
+       * Sets the session's statement timeout, unless it already has that
+       * value. Set inside a transaction, the timeout is undone by a
+       * rollback, after which forgetStatementTimeout must be called.
+       *
+       * @param millis the timeout, 0 for none
+       * @throws java.sql.SQLException when the timeout could not be set
+       */
+      public void setStatementTimeout(long millis) throws SQLException {
+         if (millis == this._statementTimeout)
+            return;
+         Statement stmt = this._connection.createStatement();
+         try {
+            stmt.execute("SET statement_timeout = " + millis);
+         } finally {
+            stmt.close();
+         }//end try
+         this._statementTimeout = millis;
+      }//end setStatementTimeout
+
+      void forgetStatementTimeout() { this._statementTimeout = -1; }
+
+      void touch() { this._lastUsed = System.currentTimeMillis(); }
+      long lastUsed() { return this._lastUsed; }
+      long idleMillis() { return System.currentTimeMillis() - this._lastUsed; }
+   }//end PooledConnection
+
+   private final String _url;
+   private final Properties _properties;
+   private final int _minSize;
+   private final int _maxSize;
+
+   // one permit per connection that may be handed out at the same time.
+   private final Semaphore _permits;
+
+   // idle connections, most recently used first.
+   private final LinkedBlockingDeque<PooledConnection> _idle = new LinkedBlockingDeque<PooledConnection>();
+
+   // every live connection, borrowed or idle.
+   private final Set<PooledConnection> _all =
+      Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+
+   private final ScheduledExecutorService _evictor;
+
+   private final CircuitBreaker _breaker = new CircuitBreaker(
+      Integer.getInteger("cafe.breaker.failures", CircuitBreaker.DEFAULT_THRESHOLD),
+      Long.getLong("cafe.breaker.open", CircuitBreaker.DEFAULT_OPEN_MILLIS));
+
+   // idle connections last used before this time are validated before use.
+   private volatile long _suspectBefore = 0;
+
+   private volatile long _acquireTimeoutMillis = 30000;
+   private volatile long _idleTimeoutMillis = 10 * 60 * 1000;
+   private volatile long _validationIdleMillis = 1000;
+   private volatile String _validationQuery = "SELECT 1";
+   private volatile int _statementCacheSize = StatementCache.DEFAULT_CAPACITY;
+   private volatile boolean _closed = false;
+
+   private final AtomicLong _borrows = new AtomicLong();
+   private final AtomicLong _timeouts = new AtomicLong();
+   private final AtomicLong _created = new AtomicLong();
+   private final AtomicLong _destroyed = new AtomicLong();
+   private final AtomicLong _validationFailures = new AtomicLong();
+   private final AtomicLong _totalWaitNanos = new AtomicLong();
+   private final AtomicLong _maxWaitNanos = new AtomicLong();
+   private final LatencyHistogram _waitHistogram = new LatencyHistogram();
+
+   /**
+    * Creates a new pool and opens its minimum number of connections
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param minSize the number of connections kept open while idle
+    * @param maxSize the maximum number of connections open at once
+    * @throws java.sql.SQLException when failed to open the initial connections.
+    */
+   public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize) throws SQLException {
+      if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+         throw new IllegalArgumentException("invalid pool size: min=" + minSize + " max=" + maxSize);
+      this._url = url;
+      this._properties = connectionProperties(user, passwd);
+      this._minSize = minSize;
+      this._maxSize = maxSize;
+      this._permits = new Semaphore(maxSize, true);
+
+      try {
+         for (int i = 0; i < minSize; ++i)
+            this._idle.offerLast(create());
+      }catch (SQLException e) {
+         PooledConnection pc;
+         while ((pc = this._idle.pollFirst()) != null)
+            destroy(pc);
+         throw e;
+      }//end try
+
+      this._evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "cafe-pool-evictor");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      this._evictor.scheduleWithFixedDelay(new Runnable() {
+         public void run() { evictIdle(); }
+      }, 30, 30, TimeUnit.SECONDS);
+   }//end ConnectionPool
+
+   public void setAcquireTimeoutMillis(long millis) { this._acquireTimeoutMillis = millis; }
+   public void setIdleTimeoutMillis(long millis) { this._idleTimeoutMillis = millis; }
+   public void setValidationIdleMillis(long millis) { this._validationIdleMillis = millis; }
+   public void setValidationQuery(String query) { this._validationQuery = query; }
+   public void setStatementCacheSize(int size) { this._statementCacheSize = size; }
+
+   /**
+    * Borrows a connection, waiting at most the acquire timeout for one to
+    * become free. A connection that has been idle longer than the
+    * validation interval is checked with the validation query first.
+    *
+    * @return a connection that must be handed back with release
+    * @throws java.sql.SQLException when the pool is closed, the wait timed
+    *         out, or a new connection could not be opened
+    * @throws CircuitBreaker.OpenException when the database kept failing
+    *         and the breaker is open
+    */
+   public PooledConnection borrow() throws SQLException {
+      if (this._closed)
+         throw new SQLException("Connection pool is closed");
+      this._breaker.before();
+
+      long start = System.nanoTime();
+      try {
+         if (!this._permits.tryAcquire(this._acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            this._timeouts.incrementAndGet();
+            this._breaker.failure();
+            // insufficient resources: the pool, not the connection, failed.
+            throw new SQLException("Timed out after " + this._acquireTimeoutMillis +
+                                   "ms waiting for a connection (max " + this._maxSize + ")", "53000");
+         }//end if
+      }catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while waiting for a connection");
+      }//end try
+      recordWait(System.nanoTime() - start);
+      this._borrows.incrementAndGet();
+
+      try {
+         PooledConnection pc;
+         while ((pc = this._idle.pollFirst()) != null) {
+            if (validate(pc)) {
+               pc.touch();
+               return pc;
+            }//end if
+            destroy(pc);
+         }//end while
+         return create();
+      }catch (SQLException e) {
+         this._permits.release();
+         this._breaker.record(e);
+         throw e;
+      }catch (RuntimeException e) {
+         this._permits.release();
+         throw e;
+      }//end try
+   }//end borrow
+
+   /**
+    * Hands a borrowed connection back to the pool. Broken connections are
+    * closed instead of being reused.
+    *
+    * @param pc the connection returned by borrow
+    * @param broken true when the connection failed and must not be reused
+    */
+   public void release(PooledConnection pc, boolean broken) {
+      try {
+         if (broken || this._closed) {
+            if (broken)
+               this._suspectBefore = System.currentTimeMillis();
+            destroy(pc);
+         } else {
+            pc.touch();
+            this._idle.offerFirst(pc);
+            // close() may have drained the idle list while we were adding.
+            if (this._closed && this._idle.remove(pc))
+               destroy(pc);
+         }//end if
+      } finally {
+         this._permits.release();
+      }//end try
+   }//end release
+
+   /**
+    * Decides whether a failure left the connection unusable, either because
+    * it is closed or because the SQL state reports a connection exception.
+    *
+    * @param pc the connection the failure happened on
+    * @param e the failure
+    * @return true when the connection should be discarded
+    */
+   public static boolean isBroken(PooledConnection pc, SQLException e) {
+      String state = e.getSQLState();
+      if (state != null && state.startsWith("08"))
+         return true;
+      try {
+         return pc.connection().isClosed();
+      }catch (SQLException ignored) {
+         return true;
+      }//end try
+   }//end isBroken
+
+   /**
+    * Opens a connection to the pool's database that is not part of the
+    * pool, for a session that lasts as long as the application, such as a
+    * LISTEN. The caller closes it.
+    *
+    * @throws java.sql.SQLException when the connection could not be opened
+    */
+   public Connection openDedicated() throws SQLException {
+      return DriverManager.getConnection(this._url, this._properties);
+   }
+
+   /**
+    * Builds the properties a connection is opened with: the login, the
+    * driver defaults of DRIVER_DEFAULTS and the cafe.jdbc.* system
+    * properties, which take precedence.
+    *
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @return the properties to pass to DriverManager.getConnection
+    */
+   public static Properties connectionProperties(String user, String passwd) {
+      Properties props = new Properties();
+      for (String[] setting : DRIVER_DEFAULTS)
+         props.setProperty(setting[0], setting[1]);
+      Properties system = System.getProperties();
+      for (String name : system.stringPropertyNames())
+         if (name.startsWith(DRIVER_PROPERTY_PREFIX) && name.length() > DRIVER_PROPERTY_PREFIX.length())
+            props.setProperty(name.substring(DRIVER_PROPERTY_PREFIX.length()), system.getProperty(name));
+      if (user != null)
+         props.setProperty("user", user);
+      if (passwd != null)
+         props.setProperty("password", passwd);
+      return props;
+   }//end connectionProperties
+
+   /**
+    * Closes every idle connection and stops the evictor. Connections still
+    * borrowed are closed when they are released.
+    */
+   public void close() {
+      this._closed = true;
+      this._evictor.shutdownNow();
+      PooledConnection pc;
+      while ((pc = this._idle.pollFirst()) != null)
+         destroy(pc);
+   }//end close
+
+   /**
+    * @return the breaker that borrow checks; callers report the outcome of
+    *         their statements to it
+    */
+   public CircuitBreaker getCircuitBreaker() { return this._breaker; }
+
+   public int getMaxSize() { return this._maxSize; }
+   public int getMinSize() { return this._minSize; }
+   public int getSize() { return this._all.size(); }
+   public int getIdleCount() { return this._idle.size(); }
+   public int getActiveCount() { return this._maxSize - this._permits.availablePermits(); }
+   public long getBorrowCount() { return this._borrows.get(); }
+   public long getTimeoutCount() { return this._timeouts.get(); }
+   public long getCreatedCount() { return this._created.get(); }
+   public long getDestroyedCount() { return this._destroyed.get(); }
+   public long getValidationFailureCount() { return this._validationFailures.get(); }
+   public long getTotalWaitNanos() { return this._totalWaitNanos.get(); }
+   public long getMaxWaitNanos() { return this._maxWaitNanos.get(); }
+
+   /**
+    * @return the distribution of the time borrow waited for a connection
+    */
+   public LatencyHistogram getWaitHistogram() { return this._waitHistogram; }
+
+   /**
+    * @return the statement cache hits and misses summed over live connections
+    */
+   public long[] getStatementCacheCounters() {
+      long hits = 0, misses = 0;
+      for (PooledConnection pc : this._all) {
+         hits += pc.statements().getHits();
+         misses += pc.statements().getMisses();
+      }//end for
+      return new long[] { hits, misses };
+   }//end getStatementCacheCounters
+
+   @Override
+   public String toString() {
+      long borrows = this._borrows.get();
+      long[] stmts = getStatementCacheCounters();
+      return String.format("size=%d (min %d, max %d) active=%d idle=%d borrows=%d timeouts=%d " +
+                           "created=%d destroyed=%d validationFailures=%d avgWait=%.3fms maxWait=%.3fms " +
+                           "stmtHits=%d stmtMisses=%d breaker=%s",
+                           getSize(), this._minSize, this._maxSize, getActiveCount(), getIdleCount(),
+                           borrows, this._timeouts.get(), this._created.get(), this._destroyed.get(),
+                           this._validationFailures.get(),
+                           borrows == 0 ? 0.0 : this._totalWaitNanos.get() / 1e6 / borrows,
+                           this._maxWaitNanos.get() / 1e6, stmts[0], stmts[1], this._breaker.getState());
+   }
+
+   /*
+    * Closes idle connections that exceeded the idle timeout, never going
+    * below the minimum size, and tops the pool back up to the minimum.
+    */
+   void evictIdle() {
+      if (this._closed)
+         return;
+      Iterator<PooledConnection> it = this._idle.descendingIterator();
+      while (it.hasNext() && this._all.size() > this._minSize) {
+         PooledConnection pc = it.next();
+         if (pc.idleMillis() > this._idleTimeoutMillis && this._idle.removeLastOccurrence(pc))
+            destroy(pc);
+      }//end while
+      try {
+         while (!this._closed && this._all.size() < this._minSize)
+            this._idle.offerLast(create());
+      }catch (SQLException e) {
+         // the next borrow or eviction run will try again.
+      }//end try
+   }//end evictIdle
+
+   private PooledConnection create() throws SQLException {
+      Connection conn = DriverManager.getConnection(this._url, this._properties);
+      PooledConnection pc = new PooledConnection(conn, this._statementCacheSize);
+      this._all.add(pc);
+      this._created.incrementAndGet();
+      return pc;
+   }//end create
+
+   private void destroy(PooledConnection pc) {
+      if (!this._all.remove(pc))
+         return;
+      this._destroyed.incrementAndGet();
+      pc.statements().clear();
+      try {
+         pc.connection().close();
+      }catch (SQLException e) {
+         // ignored.
+      }//end try
+   }//end destroy
+
+   private boolean validate(PooledConnection pc) {
+      if (pc.idleMillis() < this._validationIdleMillis && pc.lastUsed() >= this._suspectBefore)
+         return true;
+      try {
+         Statement stmt = pc.connection().createStatement();
+         try {
+            ResultSet rs = stmt.executeQuery(this._validationQuery);
+            rs.close();
+         } finally {
+            stmt.close();
+         }//end try
+         return true;
+      }catch (SQLException e) {
+         this._validationFailures.incrementAndGet();
+         return false;
+      }//end try
+   }//end validate
+
+   private void recordWait(long nanos) {
+      this._waitHistogram.record(nanos);
+      this._totalWaitNanos.addAndGet(nanos);
+      long max;
+      while (nanos > (max = this._maxWaitNanos.get()))
+         if (this._maxWaitNanos.compareAndSet(max, nanos))
+            break;
+   }//end recordWait
+
+}//end ConnectionPool
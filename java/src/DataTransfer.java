@@ -0,0 +1,447 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * This class loads the ';'-delimited data files into the database from the
+ * client side, and writes them back out. The files use the text format of
+ * COPY with ';' as delimiter, the format of sql/src/menu.csv and
+ * sql/src/users.csv: fields are not quoted, a backslash escapes the next
+ * character and a field of just \N is NULL.
+ *
+ * Data is streamed through the driver's COPY API in both directions.
+ *
+ * Tables are loaded in foreign key order: Menu and Users together, then
+ * Orders, then ItemStatus, each table on a connection of its own. Missing
+ * files are skipped. Progress is printed every second while a transfer
+ * runs.
+ *
+ */
+public class DataTransfer {
+
+   /**
+    * One table and the data file it is kept in.
+    */
+   static final class Table {
+      final String name;
+      final String file;
+      final String[] columns;
+      // SQL type of each column for casts, null for the text columns.
+      final String[] types;
+
+      Table(String name, String file, String[] columns, String[] types) {
+         this.name = name;
+         this.file = file;
+         this.columns = columns;
+         this.types = types;
+      }
+
+      String columnList() {
+         StringBuilder sql = new StringBuilder();
+         for (String column : this.columns)
+            sql.append(sql.length() == 0 ? "" : ", ").append(column);
+         return sql.toString();
+      }//end columnList
+
+      // char(n) columns of unmigrated databases come back padded; the files
+      // hold them trimmed.
+      String selectSql() {
+         StringBuilder sql = new StringBuilder();
+         for (int i = 0; i < this.columns.length; ++i) {
+            sql.append(i == 0 ? "" : ", ");
+            sql.append(this.types[i] == null ? "rtrim(" + this.columns[i] + ")" : this.columns[i]);
+         }//end for
+         return "SELECT " + sql + " FROM " + this.name;
+      }//end selectSql
+   }//end Table
+
+   static final Table MENU = new Table("Menu", "menu.csv",
+      new String[] { "itemName", "type", "price", "description", "imageURL" },
+      new String[] { null, null, "numeric", null, null });
+   static final Table USERS = new Table("Users", "users.csv",
+      new String[] { "login", "phoneNum", "password", "favItems", "type" },
+      new String[] { null, null, null, null, null });
+   static final Table ORDERS = new Table("Orders", "orders.csv",
+      new String[] { "orderid", "login", "paid", "timeStampRecieved", "total" },
+      new String[] { "integer", null, "boolean", "timestamp", "numeric" });
+   static final Table ITEM_STATUS = new Table("ItemStatus", "itemStatus.csv",
+      new String[] { "orderid", "itemName", "lastUpdated", "status", "comments" },
+      new String[] { "integer", null, "timestamp", null, null });
+
+   // load order; the tables of one stage are loaded in parallel.
+   static final Table[][] STAGES = { { MENU, USERS }, { ORDERS }, { ITEM_STATUS } };
+
+   /**
+    * The running count of one table's transfer, for progress reports.
+    */
+   private static final class Transfer {
+      final String name;
+      final long totalBytes;
+      final AtomicLong bytes = new AtomicLong();
+      final long start = System.nanoTime();
+
+      Transfer(String name, long totalBytes) {
+         this.name = name;
+         this.totalBytes = totalBytes;
+      }
+   }//end Transfer
+
+   private final Cafe _esql;
+   private final PrintStream _progress;
+   private final List<Transfer> _running = new ArrayList<Transfer>();
+
+   /**
+    * @param esql the database session whose pool the transfers borrow from
+    * @param progress where to print progress, or null for none
+    */
+   public DataTransfer(Cafe esql, PrintStream progress) {
+      this._esql = esql;
+      this._progress = progress;
+   }
+
+   /**
+    * Loads every data file found in the directory into its table.
+    *
+    * @param dir the directory holding the data files
+    * @return the rows loaded per table
+    * @throws java.sql.SQLException when a table could not be loaded; tables
+    *         of earlier stages stay loaded
+    * @throws java.io.IOException when a file could not be read
+    */
+   public Map<String, Long> importAll(File dir) throws SQLException, IOException {
+      List<Table> tables = new ArrayList<Table>();
+      for (Table[] stage : STAGES)
+         tables.addAll(Arrays.asList(stage));
+      return importTables(dir, tables);
+   }//end importAll
+
+   /**
+    * Loads the data files of the given tables found in the directory, in
+    * foreign key order.
+    *
+    * @return the rows loaded per table
+    */
+   Map<String, Long> importTables(final File dir, List<Table> tables) throws SQLException, IOException {
+      Map<String, Long> rows = new LinkedHashMap<String, Long>();
+      for (Table[] stage : STAGES) {
+         List<Table> present = new ArrayList<Table>();
+         for (Table table : stage)
+            if (tables.contains(table) && new File(dir, table.file).isFile())
+               present.add(table);
+         rows.putAll(runParallel(present, new Task() {
+            public long run(Table table) throws SQLException, IOException {
+               return importTable(table, new File(dir, table.file));
+            }
+         }));
+      }//end for
+      if (rows.containsKey(ORDERS.name))
+         this._esql.executeQuery(
+            "SELECT setval('" + OrderIdAllocator.SEQUENCE + "', (SELECT COALESCE(MAX(orderid), 0) + 1 FROM Orders), false)");
+      if (rows.containsKey(MENU.name))
+         this._esql.getMenuCatalog().reload();
+      return rows;
+   }//end importTables
+
+   /**
+    * Writes every table to its data file in the directory, all tables in
+    * parallel.
+    *
+    * @param dir the directory to write to; it is created if missing
+    * @return the rows written per table
+    * @throws java.sql.SQLException when a table could not be read
+    * @throws java.io.IOException when a file could not be written
+    */
+   public Map<String, Long> exportAll(final File dir) throws SQLException, IOException {
+      if (!dir.isDirectory() && !dir.mkdirs())
+         throw new IOException("Cannot create " + dir);
+      List<Table> tables = new ArrayList<Table>();
+      for (Table[] stage : STAGES)
+         tables.addAll(Arrays.asList(stage));
+      return runParallel(tables, new Task() {
+         public long run(Table table) throws SQLException, IOException {
+            return exportTable(table, new File(dir, table.file));
+         }
+      });
+   }//end exportAll
+
+   /**
+    * Loads one data file into its table.
+    *
+    * @return the number of rows loaded
+    */
+   long importTable(Table table, File file) throws SQLException, IOException {
+      Transfer transfer = started(table.name, file.length());
+      long start = System.nanoTime();
+      long rows = 0;
+      SQLException failure = null;
+      Reader in = null;
+      ConnectionPool.PooledConnection pc = null;
+      try {
+         in = new InputStreamReader(counting(new FileInputStream(file), transfer.bytes), "UTF-8");
+         pc = this._esql.getPool().borrow();
+         // a bulk load takes as long as the file is big.
+         pc.setStatementTimeout(0);
+         rows = copyManager(pc).copyIn("COPY " + table.name + " (" + table.columnList() + ") FROM STDIN WITH DELIMITER ';'", in);
+         return rows;
+      }catch (SQLException e) {
+         failure = e;
+         throw e;
+      } finally {
+         if (in != null)
+            in.close();
+         this._esql.record("COPY " + table.name + " FROM STDIN", start, rows, failure);
+         if (pc != null)
+            this._esql.getPool().release(pc, failure != null && ConnectionPool.isBroken(pc, failure));
+         finished(transfer, rows, "Loaded", "into");
+      }//end try
+   }//end importTable
+
+   /**
+    * Writes one table to a data file. The rows go to a temporary file in
+    * the same directory, which replaces the data file only once it is
+    * complete and synced, so a failed export leaves the previous file as
+    * it was.
+    *
+    * @return the number of rows written
+    */
+   long exportTable(Table table, File file) throws SQLException, IOException {
+      Transfer transfer = started(table.name, -1);
+      long start = System.nanoTime();
+      long rows = 0;
+      SQLException failure = null;
+      File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+      FileOutputStream stream = null;
+      boolean written = false;
+      ConnectionPool.PooledConnection pc = null;
+      try {
+         stream = new FileOutputStream(tmp);
+         Writer out = new BufferedWriter(new OutputStreamWriter(counting(stream, transfer.bytes), "UTF-8"), 65536);
+         pc = this._esql.getPool().borrow();
+         pc.setStatementTimeout(0);
+         rows = copyManager(pc).copyOut("COPY (" + table.selectSql() + ") TO STDOUT WITH DELIMITER ';'", out);
+         out.flush();
+         stream.getFD().sync();
+         stream.close();
+         Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         written = true;
+         return rows;
+      }catch (SQLException e) {
+         failure = e;
+         throw e;
+      } finally {
+         if (stream != null)
+            stream.close();
+         if (!written)
+            tmp.delete();
+         this._esql.record("COPY " + table.name + " TO STDOUT", start, rows, failure);
+         if (pc != null)
+            this._esql.getPool().release(pc, failure != null && ConnectionPool.isBroken(pc, failure));
+         finished(transfer, rows, "Wrote", "from");
+      }//end try
+   }//end exportTable
+
+   static void appendField(StringBuilder line, String value) {
+      if (value == null) {
+         line.append("\\N");
+         return;
+      }//end if
+      for (int i = 0; i < value.length(); ++i) {
+         char c = value.charAt(i);
+         switch (c) {
+            case '\\': line.append("\\\\"); break;
+            case ';': line.append("\\;"); break;
+            case '\n': line.append("\\n"); break;
+            case '\r': line.append("\\r"); break;
+            case '\t': line.append("\\t"); break;
+            default: line.append(c); break;
+         }//end switch
+      }//end for
+   }//end appendField
+
+   private static CopyManager copyManager(ConnectionPool.PooledConnection pc) throws SQLException {
+      return pc.connection().unwrap(PGConnection.class).getCopyAPI();
+   }
+
+   /**
+    * One table's share of a parallel transfer.
+    */
+   private interface Task {
+      long run(Table table) throws SQLException, IOException;
+   }
+
+   /*
+    * Runs the task for every table on a thread of its own and waits for all
+    * of them. The first failure is rethrown once the others have finished.
+    */
+   private Map<String, Long> runParallel(List<Table> tables, final Task task) throws SQLException, IOException {
+      Map<String, Long> rows = new LinkedHashMap<String, Long>();
+      if (tables.isEmpty())
+         return rows;
+      ExecutorService workers = Executors.newFixedThreadPool(tables.size());
+      ScheduledExecutorService reporter = startReporter();
+      try {
+         List<Future<Long>> results = new ArrayList<Future<Long>>();
+         for (final Table table : tables)
+            results.add(workers.submit(new Callable<Long>() {
+               public Long call() throws Exception {
+                  return task.run(table);
+               }
+            }));
+         Throwable failure = null;
+         for (int i = 0; i < tables.size(); ++i) {
+            try {
+               rows.put(tables.get(i).name, results.get(i).get());
+            }catch (ExecutionException e) {
+               if (failure == null)
+                  failure = e.getCause();
+            }catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new SQLException("Interrupted while transferring " + tables.get(i).name);
+            }//end try
+         }//end for
+         if (failure instanceof SQLException)
+            throw (SQLException) failure;
+         if (failure instanceof IOException)
+            throw (IOException) failure;
+         if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+         if (failure != null)
+            throw new SQLException(String.valueOf(failure));
+         return rows;
+      } finally {
+         workers.shutdownNow();
+         if (reporter != null)
+            reporter.shutdownNow();
+      }//end try
+   }//end runParallel
+
+   private ScheduledExecutorService startReporter() {
+      if (this._progress == null)
+         return null;
+      ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "cafe-transfer-progress");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      reporter.scheduleAtFixedRate(new Runnable() {
+         public void run() {
+            report();
+         }
+      }, 1, 1, TimeUnit.SECONDS);
+      return reporter;
+   }//end startReporter
+
+   private void report() {
+      StringBuilder line = new StringBuilder();
+      synchronized (this._running) {
+         for (Transfer t : this._running) {
+            line.append(line.length() == 0 ? "" : "  ").append(t.name).append(' ');
+            long bytes = t.bytes.get();
+            if (t.totalBytes > 0)
+               line.append(100 * bytes / t.totalBytes).append("% of ").append(megabytes(t.totalBytes));
+            else
+               line.append(megabytes(bytes));
+         }//end for
+      }//end synchronized
+      if (line.length() > 0)
+         this._progress.println(line);
+   }//end report
+
+   private Transfer started(String name, long totalBytes) {
+      Transfer transfer = new Transfer(name, totalBytes);
+      synchronized (this._running) {
+         this._running.add(transfer);
+      }
+      return transfer;
+   }//end started
+
+   private void finished(Transfer transfer, long rows, String verb, String preposition) {
+      synchronized (this._running) {
+         this._running.remove(transfer);
+      }
+      if (this._progress != null)
+         this._progress.println(String.format("%s %d rows %s %s (%s) in %.2fs", verb, rows, preposition,
+                                              transfer.name, megabytes(transfer.bytes.get()),
+                                              (System.nanoTime() - transfer.start) / 1e9));
+   }//end finished
+
+   private static String megabytes(long bytes) {
+      return String.format("%.1f MB", bytes / 1048576.0);
+   }
+
+   private static InputStream counting(InputStream in, final AtomicLong count) {
+      return new FilterInputStream(in) {
+         public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+               count.incrementAndGet();
+            return b;
+         }
+         public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0)
+               count.addAndGet(n);
+            return n;
+         }
+      };
+   }//end counting
+
+   private static OutputStream counting(OutputStream out, final AtomicLong count) {
+      return new FilterOutputStream(out) {
+         public void write(int b) throws IOException {
+            this.out.write(b);
+            count.incrementAndGet();
+         }
+         public void write(byte[] buf, int off, int len) throws IOException {
+            this.out.write(buf, off, len);
+            count.addAndGet(len);
+         }
+      };
+   }//end counting
+
+}//end DataTransfer
@@ -0,0 +1,232 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class synthesizes order history in the data file format of
+ * DataTransfer: orders.csv and itemStatus.csv, the files load_data.sql
+ * expects next to menu.csv and users.csv.
+ *
+ * The history covers the given number of days up to now, and is shaped
+ * like a cafe's:
+ *   - orders follow the hour of the day, with a breakfast rush, a lunch
+ *     peak twice as high and a quiet evening, and weekends at 70%;
+ *   - customers order with Zipf weights over a shuffled customer list, so
+ *     a few regulars place a large share of the orders and most customers
+ *     only a handful;
+ *   - menu items are picked with Zipf weights too, and an order holds one
+ *     item or more, each further item half as likely as the one before;
+ *   - orders older than UNPAID_HOURS are paid and their items finished;
+ *     newer ones are mostly unpaid, with items waiting or being made.
+ * Orderids rise with time from the first orderid given. The same seed
+ * gives the same files.
+ *
+ */
+public class DatasetBuilder {
+
+   // relative order volume in each hour of the day.
+   static final double[] HOUR_WEIGHTS = {
+      0, 0, 0, 0, 0, 0.2, 1, 4, 6, 4, 3, 6, 10, 8, 4, 3, 3, 3, 2, 1, 0.5, 0.2, 0, 0 };
+   static final double WEEKEND_WEIGHT = 0.7;
+   static final double CUSTOMER_SKEW = 1.0;
+   static final double MENU_SKEW = 0.8;
+   static final int MAX_ITEMS = 6;
+   static final int UNPAID_HOURS = 2;
+
+   /**
+    * Draws indexes 0..n-1 with probability proportional to 1/(i+1)^skew.
+    */
+   static final class Zipf {
+      private final double[] _cumulative;
+
+      Zipf(int n, double skew) {
+         this._cumulative = new double[n];
+         double sum = 0;
+         for (int i = 0; i < n; ++i)
+            this._cumulative[i] = sum += 1.0 / Math.pow(i + 1, skew);
+      }
+
+      int next(Random random) {
+         double x = random.nextDouble() * this._cumulative[this._cumulative.length - 1];
+         int i = Arrays.binarySearch(this._cumulative, x);
+         return Math.min(i < 0 ? -i - 1 : i, this._cumulative.length - 1);
+      }//end next
+   }//end Zipf
+
+   private final Random _random;
+
+   public DatasetBuilder(long seed) {
+      this._random = new Random(seed);
+   }
+
+   /**
+    * Writes orders.csv and itemStatus.csv into the directory.
+    *
+    * @param dir the directory to write to; it is created if missing
+    * @param customers the logins that place the orders
+    * @param menu the items that can be ordered
+    * @param orders how many orders to write
+    * @param days how many days back the orders go
+    * @param firstOrderid the orderid of the oldest order
+    * @return the number of orders and of items written
+    * @throws java.io.IOException when a file could not be written
+    */
+   public long[] write(File dir, List<String> customers, List<MenuItem> menu, long orders, int days, int firstOrderid)
+      throws IOException {
+      if (customers.isEmpty() || menu.isEmpty())
+         throw new IllegalArgumentException("Orders need customers and menu items");
+      if (!dir.isDirectory() && !dir.mkdirs())
+         throw new IOException("Cannot create " + dir);
+      customers = new ArrayList<String>(customers);
+      menu = new ArrayList<MenuItem>(menu);
+      Collections.shuffle(customers, this._random);
+      Collections.shuffle(menu, this._random);
+      Zipf customer = new Zipf(customers.size(), CUSTOMER_SKEW);
+      Zipf item = new Zipf(menu.size(), MENU_SKEW);
+
+      // hour slots from midnight days ago up to now, the last one partial.
+      long now = System.currentTimeMillis();
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(now);
+      calendar.set(Calendar.HOUR_OF_DAY, 0);
+      calendar.set(Calendar.MINUTE, 0);
+      calendar.set(Calendar.SECOND, 0);
+      calendar.set(Calendar.MILLISECOND, 0);
+      calendar.add(Calendar.DAY_OF_MONTH, -days);
+      List<long[]> slots = new ArrayList<long[]>();
+      List<Double> weights = new ArrayList<Double>();
+      double total = 0;
+      while (calendar.getTimeInMillis() < now) {
+         long start = calendar.getTimeInMillis();
+         int day = calendar.get(Calendar.DAY_OF_WEEK);
+         double weight = HOUR_WEIGHTS[calendar.get(Calendar.HOUR_OF_DAY)] *
+                         (day == Calendar.SATURDAY || day == Calendar.SUNDAY ? WEEKEND_WEIGHT : 1.0);
+         calendar.add(Calendar.HOUR_OF_DAY, 1);
+         long end = Math.min(calendar.getTimeInMillis(), now);
+         weight *= (end - start) / 3600000.0;
+         slots.add(new long[] { start, end });
+         weights.add(weight);
+         total += weight;
+      }//end while
+      if (total == 0)
+         throw new IllegalArgumentException("No opening hours in the last " + days + " days");
+
+      Writer orderFile = open(new File(dir, DataTransfer.ORDERS.file));
+      Writer itemFile = open(new File(dir, DataTransfer.ITEM_STATUS.file));
+      long written = 0, items = 0;
+      double expected = 0;
+      int orderid = firstOrderid;
+      try {
+         for (int s = 0; s < slots.size(); ++s) {
+            // spread the orders over the slots by weight, carrying the
+            // fractions along so the counts add up to exactly orders.
+            expected += orders * weights.get(s) / total;
+            int count = (int) (Math.round(expected) - written);
+            long[] times = new long[count];
+            long micros = (slots.get(s)[1] - slots.get(s)[0]) * 1000L;
+            for (int i = 0; i < count; ++i)
+               times[i] = slots.get(s)[0] * 1000L + (long) (this._random.nextDouble() * micros);
+            Arrays.sort(times);
+            for (long time : times) {
+               items += writeOrder(orderFile, itemFile, orderid++, customers.get(customer.next(this._random)),
+                                   pickItems(menu, item), time, now);
+               ++written;
+            }//end for
+         }//end for
+      } finally {
+         orderFile.close();
+         itemFile.close();
+      }//end try
+      return new long[] { written, items };
+   }//end write
+
+   private List<MenuItem> pickItems(List<MenuItem> menu, Zipf item) {
+      int count = 1;
+      while (count < Math.min(MAX_ITEMS, menu.size()) && this._random.nextBoolean())
+         ++count;
+      List<MenuItem> picked = new ArrayList<MenuItem>(count);
+      while (picked.size() < count) {
+         MenuItem next = menu.get(item.next(this._random));
+         if (!picked.contains(next))
+            picked.add(next);
+      }//end while
+      return picked;
+   }//end pickItems
+
+   /*
+    * Writes one order and its items; times are in microseconds.
+    */
+   private int writeOrder(Writer orderFile, Writer itemFile, int orderid, String login, List<MenuItem> items,
+                          long time, long now) throws IOException {
+      long age = now * 1000L - time;
+      boolean paid = age > UNPAID_HOURS * 3600000000L || this._random.nextDouble() < 0.3;
+      BigDecimal total = BigDecimal.ZERO;
+      for (MenuItem item : items) {
+         total = total.add(BigDecimal.valueOf(item.getPrice()));
+         // items are finished 3 to 15 minutes after the order, or are
+         // still waiting or being made when that is not over yet.
+         long made = time + (3 + this._random.nextInt(13)) * 60000000L;
+         String status;
+         long updated;
+         if (paid || made < now * 1000L) {
+            status = KitchenService.FINISHED;
+            updated = Math.min(made, now * 1000L);
+         } else if (this._random.nextBoolean()) {
+            status = KitchenService.STARTED;
+            updated = time + (long) (this._random.nextDouble() * age);
+         } else {
+            status = OrderBuilder.INITIAL_STATUS;
+            updated = time;
+         }//end if
+         line(itemFile, String.valueOf(orderid), item.getItemName(), timestamp(updated), status, "");
+      }//end for
+      line(orderFile, String.valueOf(orderid), login, paid ? "t" : "f", timestamp(time),
+           total.setScale(2, RoundingMode.HALF_UP).toPlainString());
+      return items.size();
+   }//end writeOrder
+
+   private static void line(Writer out, String... fields) throws IOException {
+      StringBuilder line = new StringBuilder();
+      for (String field : fields) {
+         if (line.length() > 0)
+            line.append(';');
+         DataTransfer.appendField(line, field);
+      }//end for
+      out.write(line.append('\n').toString());
+   }//end line
+
+   private static String timestamp(long micros) {
+      Timestamp time = new Timestamp(micros / 1000L);
+      time.setNanos((int) (micros % 1000000L) * 1000);
+      return time.toString();
+   }//end timestamp
+
+   private static Writer open(File file) throws IOException {
+      return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 65536);
+   }
+
+}//end DatasetBuilder
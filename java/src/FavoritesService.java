@@ -0,0 +1,221 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class holds the favorite and frequently ordered items of each user,
+ * and places "the usual": the user's favorites, or when there are none
+ * their most frequently ordered items that are still on the menu.
+ *
+ * Favorites are stored in FavoriteItems and mirrored as a comma list in
+ * Users.favItems. How often each user ordered each item is counted in
+ * ItemCounts by triggers on ItemStatus as orders are placed and edited, so
+ * the top items are a lookup of a few rows; they are cached per user in a
+ * bounded FrequentItemsCache that OrderService invalidates on every change
+ * of a user's orders.
+ *
+ */
+public class FavoritesService {
+
+   // most frequently ordered items kept and listed per user.
+   public static final int MAX_FREQUENT = 20;
+
+   // frequently ordered items that make up the usual of a user without favorites.
+   public static final int USUAL_SIZE = 3;
+
+   // width of Users.favItems.
+   static final int FAV_ITEMS_LENGTH = 400;
+
+   static final String FAVORITES =
+      "SELECT itemName FROM FavoriteItems WHERE login = ? ORDER BY position";
+   static final String FREQUENT =
+      "SELECT itemName, orders FROM ItemCounts WHERE login = ? AND orders > 0 " +
+      "ORDER BY orders DESC, lastOrdered DESC, itemName LIMIT " + MAX_FREQUENT;
+   static final String INSERT_FAVORITE =
+      "INSERT INTO FavoriteItems (login, itemName, position) VALUES (?, ?, ?)";
+
+   private final Cafe _esql;
+   private final FrequentItemsCache _frequent = new FrequentItemsCache(
+      Integer.getInteger("cafe.frequent.max", FrequentItemsCache.DEFAULT_CAPACITY),
+      Long.getLong("cafe.frequent.ttl", FrequentItemsCache.DEFAULT_TTL_MILLIS / 1000) * 1000);
+
+   public FavoritesService(Cafe esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * @param acting the session of the user
+    * @return the user's favorite items, in the order they were given
+    * @throws java.sql.SQLException when the favorites could not be read
+    */
+   public List<String> getFavorites(UserSession acting) throws SQLException {
+      List<String> items = new ArrayList<String>();
+      for (List<String> row : this._esql.executeQueryAndReturnResult(FAVORITES, acting.getLogin()))
+         items.add(row.get(0));
+      return items;
+   }//end getFavorites
+
+   /**
+    * @param acting the session of the user
+    * @param limit the most items to list, at most MAX_FREQUENT
+    * @return the items the user ordered most often, most often first
+    * @throws java.sql.SQLException when the counts could not be read
+    * @throws ServiceException when the limit is out of range
+    */
+   public List<FrequentItem> getFrequentItems(UserSession acting, int limit) throws SQLException {
+      if (limit < 1 || limit > MAX_FREQUENT)
+         throw new ServiceException(ServiceException.Reason.INVALID,
+                                    "The number of items must be between 1 and " + MAX_FREQUENT);
+      List<FrequentItem> items = frequent(acting.getLogin());
+      return items.size() <= limit ? items : items.subList(0, limit);
+   }//end getFrequentItems
+
+   /**
+    * @param acting the session of the user
+    * @return the items of the user's usual order: their favorites, or when
+    *         there are none their USUAL_SIZE most frequently ordered items
+    *         that are still on the menu; empty when there are neither
+    * @throws java.sql.SQLException when the items could not be read
+    */
+   public List<String> getUsual(UserSession acting) throws SQLException {
+      List<String> items = getFavorites(acting);
+      if (!items.isEmpty())
+         return items;
+      MenuCatalog menu = this._esql.getMenuCatalog();
+      for (FrequentItem item : frequent(acting.getLogin())) {
+         if (menu.get(item.getItemName()) != null)
+            items.add(item.getItemName());
+         if (items.size() == USUAL_SIZE)
+            break;
+      }//end for
+      return items;
+   }//end getUsual
+
+   /**
+    * Places the user's usual order, written like any other order in a
+    * single transaction.
+    *
+    * @param acting the session of the user
+    * @return the stored order
+    * @throws java.sql.SQLException when the order could not be stored
+    * @throws ServiceException when the user has neither favorites nor
+    *         past orders of items still on the menu
+    */
+   public OrderReceipt placeUsual(UserSession acting) throws SQLException {
+      List<String> items = getUsual(acting);
+      if (items.isEmpty())
+         throw new ServiceException(ServiceException.Reason.NOT_FOUND,
+                                    "No favorites or past orders to reorder");
+      return this._esql.getOrderService().placeOrder(new OrderRequest(acting.getLogin(), items));
+   }//end placeUsual
+
+   /**
+    * Replaces a user's favorites with the menu items named in a comma
+    * list, matched ignoring case, and rewrites Users.favItems as the list
+    * of stored names, all in one transaction. Access is checked by
+    * UserService.updateProfile.
+    *
+    * @param login the user
+    * @param list the comma separated item names
+    * @return the stored list
+    * @throws java.sql.SQLException when the favorites could not be stored
+    * @throws ServiceException when an item is not on the menu, the list is
+    *         too long or the user does not exist
+    */
+   String store(String login, String list) throws SQLException {
+      List<String> items = resolve(list);
+      StringBuilder stored = new StringBuilder();
+      for (String item : items)
+         stored.append(stored.length() == 0 ? "" : ",").append(item);
+      if (stored.length() > FAV_ITEMS_LENGTH)
+         throw new ServiceException(ServiceException.Reason.INVALID,
+                                    "Favorites must fit in " + FAV_ITEMS_LENGTH + " characters");
+
+      List<Object[]> rows = new ArrayList<Object[]>(items.size());
+      for (String item : items)
+         rows.add(new Object[] { login, item, rows.size() + 1 });
+      this._esql.begin();
+      try {
+         if (this._esql.executeUpdate("UPDATE Users SET favItems = ? WHERE login = ?", stored.toString(), login) == 0)
+            throw new ServiceException(ServiceException.Reason.NOT_FOUND, "No user " + login);
+         this._esql.executeUpdate("DELETE FROM FavoriteItems WHERE login = ?", login);
+         if (!rows.isEmpty())
+            this._esql.executeBatch(INSERT_FAVORITE, rows);
+         this._esql.commit();
+      }catch (SQLException e) {
+         this._esql.rollback();
+         throw e;
+      }catch (RuntimeException e) {
+         this._esql.rollback();
+         throw e;
+      }//end try
+      return stored.toString();
+   }//end store
+
+   /**
+    * Drops the cached counts of a user whose orders changed.
+    */
+   void ordered(String login) {
+      this._frequent.invalidate(login);
+   }
+
+   public FrequentItemsCache getCache() {
+      return this._frequent;
+   }
+
+   private List<FrequentItem> frequent(String login) throws SQLException {
+      List<FrequentItem> items = this._frequent.get(login);
+      if (items != null)
+         return items;
+      long stamp = this._frequent.stamp();
+      items = new ArrayList<FrequentItem>();
+      for (List<String> row : this._esql.executeQueryAndReturnResult(FREQUENT, login))
+         items.add(new FrequentItem(row.get(0), Integer.parseInt(row.get(1).trim())));
+      this._frequent.put(login, items, stamp);
+      return items;
+   }//end frequent
+
+   /*
+    * Matches each name of a comma list to a menu item, ignoring case and
+    * surrounding blanks; blank and repeated names are skipped.
+    */
+   private List<String> resolve(String list) throws SQLException {
+      MenuCatalog menu = this._esql.getMenuCatalog();
+      Set<String> items = new LinkedHashSet<String>();
+      List<String> unknown = new ArrayList<String>();
+      for (String name : (list == null ? "" : list).split(",")) {
+         name = name.trim();
+         if (name.isEmpty())
+            continue;
+         MenuItem item = menu.get(name);
+         if (item == null)
+            for (MenuItem candidate : menu.getAll())
+               if (candidate.getItemName().equalsIgnoreCase(name)) {
+                  item = candidate;
+                  break;
+               }//end if
+         if (item == null)
+            unknown.add(name);
+         else
+            items.add(item.getItemName());
+      }//end for
+      if (!unknown.isEmpty())
+         throw new ServiceException(ServiceException.Reason.INVALID, "Not on the menu: " + unknown);
+      return new ArrayList<String>(items);
+   }//end resolve
+
+}//end FavoritesService
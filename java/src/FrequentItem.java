@@ -0,0 +1,46 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+/**
+ * This class holds how often a user ordered one menu item, as counted in
+ * the ItemCounts table.
+ *
+ */
+public class FrequentItem {
+
+   // column header matching toString().
+   public static final String HEADER = "itemname\torders\t";
+
+   private final String _itemName;
+   private final int _orders;
+
+   public FrequentItem(String itemName, int orders) {
+      this._itemName = itemName;
+      this._orders = orders;
+   }
+
+   public String getItemName() { return this._itemName; }
+
+   /**
+    * @return the number of the user's orders that held the item
+    */
+   public int getOrders() { return this._orders; }
+
+   /**
+    * @return the item as one tab separated line, matching HEADER
+    */
+   @Override
+   public String toString() {
+      return this._itemName + "\t" + this._orders + "\t";
+   }
+
+}//end FrequentItem
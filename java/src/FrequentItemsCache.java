@@ -0,0 +1,137 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the most frequently ordered items of recently active
+ * users, so showing them or reordering does not read ItemCounts every time.
+ * It holds at most a fixed number of users, dropping the least recently
+ * used one when full, and reads an entry again once it is older than the
+ * time to live, which bounds how stale an entry gets when another process
+ * places the user's orders.
+ *
+ * Orders placed through this process invalidate the user's entry. A read
+ * that started before an invalidation is not cached when it finishes after
+ * it: callers take a stamp() before reading and hand it to put().
+ *
+ */
+public class FrequentItemsCache {
+
+   // defaults, overridable with the cafe.frequent.max and
+   // cafe.frequent.ttl (seconds) system properties.
+   static final int DEFAULT_CAPACITY = 10000;
+   static final long DEFAULT_TTL_MILLIS = 60 * 1000L;
+
+   /**
+    * The items of one user and when they were read, or only when the user
+    * was last invalidated.
+    */
+   private static final class Slot {
+      final List<FrequentItem> items;
+      final long loaded;
+      final long invalidated;
+
+      Slot(List<FrequentItem> items, long loaded, long invalidated) {
+         this.items = items;
+         this.loaded = loaded;
+         this.invalidated = invalidated;
+      }
+   }//end Slot
+
+   private final int _capacity;
+   private final long _ttlMillis;
+
+   // access-ordered map, so the eldest entry is the least recently used.
+   private final LinkedHashMap<String, Slot> _users;
+
+   // bumped by every invalidation.
+   private long _version = 0;
+
+   private long _hits = 0;
+   private long _misses = 0;
+   private long _evictions = 0;
+
+   /**
+    * @param capacity the maximum number of users kept
+    * @param ttlMillis how long an entry is served before it is read again
+    */
+   public FrequentItemsCache(int capacity, long ttlMillis) {
+      if (capacity < 1)
+         throw new IllegalArgumentException("capacity must be positive: " + capacity);
+      this._capacity = capacity;
+      this._ttlMillis = ttlMillis;
+      this._users = new LinkedHashMap<String, Slot>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+            if (size() <= FrequentItemsCache.this._capacity)
+               return false;
+            FrequentItemsCache.this._evictions++;
+            return true;
+         }
+      };
+   }//end FrequentItemsCache
+
+   /**
+    * @param login the user
+    * @return the cached items, or null when they have to be read
+    */
+   public synchronized List<FrequentItem> get(String login) {
+      Slot slot = this._users.get(login);
+      if (slot == null || slot.items == null
+          || System.currentTimeMillis() - slot.loaded > this._ttlMillis) {
+         this._misses++;
+         return null;
+      }//end if
+      this._hits++;
+      return slot.items;
+   }//end get
+
+   /**
+    * @return the stamp to pass to put() for a read that starts now
+    */
+   public synchronized long stamp() {
+      return this._version;
+   }
+
+   /**
+    * Caches the items read for a user, unless the user was invalidated
+    * after the read started.
+    *
+    * @param login the user
+    * @param items the items read
+    * @param stamp what stamp() returned before the read
+    */
+   public synchronized void put(String login, List<FrequentItem> items, long stamp) {
+      Slot slot = this._users.get(login);
+      if (slot != null && slot.invalidated > stamp)
+         return;
+      this._users.put(login, new Slot(Collections.unmodifiableList(items), System.currentTimeMillis(),
+                                      slot != null ? slot.invalidated : 0));
+   }//end put
+
+   /**
+    * Drops the cached items of a user, e.g. after they placed an order.
+    */
+   public synchronized void invalidate(String login) {
+      this._users.put(login, new Slot(null, 0, ++this._version));
+   }
+
+   public synchronized int size() { return this._users.size(); }
+   public synchronized long getHits() { return this._hits; }
+   public synchronized long getMisses() { return this._misses; }
+   public synchronized long getEvictions() { return this._evictions; }
+
+}//end FrequentItemsCache
@@ -0,0 +1,53 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+/**
+ * This class holds how often one menu item sold over a range of days, as
+ * summed from the ItemSales table.
+ *
+ */
+public class ItemSales {
+
+   // column header matching toString().
+   public static final String HEADER = "itemname\torders\trevenue\t";
+
+   private final String _itemName;
+   private final int _orders;
+   private final double _revenue;
+
+   public ItemSales(String itemName, int orders, double revenue) {
+      this._itemName = itemName;
+      this._orders = orders;
+      this._revenue = revenue;
+   }
+
+   public String getItemName() { return this._itemName; }
+
+   /**
+    * @return the number of orders that held the item
+    */
+   public int getOrders() { return this._orders; }
+
+   /**
+    * @return the menu price of the item summed over those orders
+    */
+   public double getRevenue() { return this._revenue; }
+
+   /**
+    * @return the item as one tab separated line, matching HEADER
+    */
+   @Override
+   public String toString() {
+      return this._itemName + "\t" + this._orders + "\t" + this._revenue + "\t";
+   }
+
+}//end ItemSales
@@ -0,0 +1,279 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads and writes the small JSON documents exchanged by the
+ * HTTP server. Objects map to LinkedHashMap, arrays to ArrayList, numbers
+ * to Double (or Long when they have no fraction), and true/false/null to
+ * Boolean and null.
+ *
+ */
+public final class Json {
+
+   private final String _text;
+   private int _pos = 0;
+
+   private Json(String text) {
+      this._text = text;
+   }
+
+   /**
+    * Parses a JSON document.
+    *
+    * @param text the document
+    * @return the parsed value
+    * @throws IllegalArgumentException when the text is not valid JSON
+    */
+   public static Object parse(String text) {
+      Json p = new Json(text);
+      Object value = p.readValue();
+      p.skipSpace();
+      if (p._pos != text.length())
+         throw p.error("trailing characters");
+      return value;
+   }//end parse
+
+   /**
+    * Parses a JSON document that must be an object; an empty document is
+    * read as an empty object.
+    *
+    * @param text the document
+    * @return the parsed object
+    * @throws IllegalArgumentException when the text is not a JSON object
+    */
+   @SuppressWarnings("unchecked")
+   public static Map<String, Object> parseObject(String text) {
+      if (text == null || text.trim().isEmpty())
+         return new LinkedHashMap<String, Object>();
+      Object value = parse(text);
+      if (!(value instanceof Map))
+         throw new IllegalArgumentException("Expected a JSON object");
+      return (Map<String, Object>) value;
+   }//end parseObject
+
+   /**
+    * Writes a value as JSON. Maps, iterables, arrays of objects, strings,
+    * numbers, booleans and null are supported; anything else is written as
+    * its toString().
+    *
+    * @param value the value to write
+    * @return the JSON text
+    */
+   public static String write(Object value) {
+      StringBuilder out = new StringBuilder();
+      write(out, value);
+      return out.toString();
+   }//end write
+
+   private static void write(StringBuilder out, Object value) {
+      if (value == null) {
+         out.append("null");
+      } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+         out.append(value);
+      } else if (value instanceof Number) {
+         double d = ((Number) value).doubleValue();
+         if (Double.isNaN(d) || Double.isInfinite(d))
+            out.append("null");
+         else
+            out.append(value);
+      } else if (value instanceof Map) {
+         out.append('{');
+         Iterator<? extends Map.Entry<?, ?>> it = ((Map<?, ?>) value).entrySet().iterator();
+         while (it.hasNext()) {
+            Map.Entry<?, ?> e = it.next();
+            writeString(out, String.valueOf(e.getKey()));
+            out.append(':');
+            write(out, e.getValue());
+            if (it.hasNext())
+               out.append(',');
+         }//end while
+         out.append('}');
+      } else if (value instanceof Iterable || value instanceof Object[]) {
+         Iterable<?> items = value instanceof Object[] ? java.util.Arrays.asList((Object[]) value) : (Iterable<?>) value;
+         out.append('[');
+         boolean first = true;
+         for (Object item : items) {
+            if (!first)
+               out.append(',');
+            write(out, item);
+            first = false;
+         }//end for
+         out.append(']');
+      } else {
+         writeString(out, value.toString());
+      }//end if
+   }//end write
+
+   private static void writeString(StringBuilder out, String s) {
+      out.append('"');
+      for (int i = 0; i < s.length(); ++i) {
+         char c = s.charAt(i);
+         switch (c) {
+            case '"': out.append("\\\""); break;
+            case '\\': out.append("\\\\"); break;
+            case '\n': out.append("\\n"); break;
+            case '\r': out.append("\\r"); break;
+            case '\t': out.append("\\t"); break;
+            default:
+               if (c < 0x20)
+                  out.append(String.format("\\u%04x", (int) c));
+               else
+                  out.append(c);
+         }//end switch
+      }//end for
+      out.append('"');
+   }//end writeString
+
+   private Object readValue() {
+      skipSpace();
+      if (this._pos >= this._text.length())
+         throw error("unexpected end of input");
+      char c = this._text.charAt(this._pos);
+      switch (c) {
+         case '{': return readObject();
+         case '[': return readArray();
+         case '"': return readString();
+         case 't': expect("true"); return Boolean.TRUE;
+         case 'f': expect("false"); return Boolean.FALSE;
+         case 'n': expect("null"); return null;
+         default: return readNumber();
+      }//end switch
+   }//end readValue
+
+   private Map<String, Object> readObject() {
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      ++this._pos;
+      skipSpace();
+      if (peek() == '}') {
+         ++this._pos;
+         return map;
+      }//end if
+      while (true) {
+         skipSpace();
+         if (peek() != '"')
+            throw error("expected a string key");
+         String key = readString();
+         skipSpace();
+         if (peek() != ':')
+            throw error("expected ':'");
+         ++this._pos;
+         map.put(key, readValue());
+         skipSpace();
+         char c = peek();
+         ++this._pos;
+         if (c == '}')
+            return map;
+         if (c != ',')
+            throw error("expected ',' or '}'");
+      }//end while
+   }//end readObject
+
+   private List<Object> readArray() {
+      List<Object> list = new ArrayList<Object>();
+      ++this._pos;
+      skipSpace();
+      if (peek() == ']') {
+         ++this._pos;
+         return list;
+      }//end if
+      while (true) {
+         list.add(readValue());
+         skipSpace();
+         char c = peek();
+         ++this._pos;
+         if (c == ']')
+            return list;
+         if (c != ',')
+            throw error("expected ',' or ']'");
+      }//end while
+   }//end readArray
+
+   private String readString() {
+      StringBuilder sb = new StringBuilder();
+      ++this._pos;
+      while (true) {
+         if (this._pos >= this._text.length())
+            throw error("unterminated string");
+         char c = this._text.charAt(this._pos++);
+         if (c == '"')
+            return sb.toString();
+         if (c != '\\') {
+            sb.append(c);
+            continue;
+         }//end if
+         if (this._pos >= this._text.length())
+            throw error("unterminated escape");
+         char e = this._text.charAt(this._pos++);
+         switch (e) {
+            case '"': sb.append('"'); break;
+            case '\\': sb.append('\\'); break;
+            case '/': sb.append('/'); break;
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+               if (this._pos + 4 > this._text.length())
+                  throw error("bad unicode escape");
+               sb.append((char) Integer.parseInt(this._text.substring(this._pos, this._pos + 4), 16));
+               this._pos += 4;
+               break;
+            default: throw error("bad escape '\\" + e + "'");
+         }//end switch
+      }//end while
+   }//end readString
+
+   private Object readNumber() {
+      int start = this._pos;
+      while (this._pos < this._text.length() && "+-0123456789.eE".indexOf(this._text.charAt(this._pos)) >= 0)
+         ++this._pos;
+      String num = this._text.substring(start, this._pos);
+      if (num.isEmpty())
+         throw error("unexpected character");
+      try {
+         if (num.indexOf('.') < 0 && num.indexOf('e') < 0 && num.indexOf('E') < 0)
+            return Long.valueOf(num);
+         return Double.valueOf(num);
+      }catch (NumberFormatException e) {
+         throw error("bad number '" + num + "'");
+      }//end try
+   }//end readNumber
+
+   private void expect(String word) {
+      if (!this._text.startsWith(word, this._pos))
+         throw error("unexpected token");
+      this._pos += word.length();
+   }//end expect
+
+   private char peek() {
+      if (this._pos >= this._text.length())
+         throw error("unexpected end of input");
+      return this._text.charAt(this._pos);
+   }//end peek
+
+   private void skipSpace() {
+      while (this._pos < this._text.length() && Character.isWhitespace(this._text.charAt(this._pos)))
+         ++this._pos;
+   }//end skipSpace
+
+   private IllegalArgumentException error(String what) {
+      return new IllegalArgumentException("Invalid JSON at " + this._pos + ": " + what);
+   }//end error
+
+}//end Json
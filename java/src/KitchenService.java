@@ -0,0 +1,187 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class holds the kitchen queue: employees claim the items nobody has
+ * started on, oldest first, and mark them finished when they are done.
+ * Items move from OrderBuilder.INITIAL_STATUS to STARTED when claimed and
+ * to FINISHED when done.
+ *
+ * Claims lock the rows they take with SKIP LOCKED, so any number of
+ * employees can claim at once without waiting on each other or getting
+ * the same item twice. Every other status change goes through the
+ * session's StatusWriter, which writes them in batches a few milliseconds
+ * later; the queue and orders show them before they are written.
+ *
+ */
+public class KitchenService {
+
+   public static final String STARTED = "Started";
+   public static final String FINISHED = "Finished";
+
+   // most items one claim takes.
+   public static final int MAX_CLAIM = 20;
+
+   // widths of the ItemStatus columns.
+   static final int MAX_STATUS = 20;
+   static final int MAX_COMMENTS = 130;
+
+   // the items on the queue. The statuses are literals so that the
+   // itemstatus_open index of migration 007 matches the condition.
+   static final String OPEN = "status IN ('Hasn''t Started', 'Started')";
+
+   static final String ITEM =
+      "SELECT orderid, itemName, status, lastUpdated, comments FROM ItemStatus WHERE orderid = ? AND itemName = ?";
+
+   static final String CLAIM =
+      "UPDATE ItemStatus i SET status = ?, lastUpdated = ? " +
+      "FROM (SELECT orderid, itemName FROM ItemStatus WHERE status = ? " +
+      "ORDER BY lastUpdated LIMIT ? FOR UPDATE SKIP LOCKED) c " +
+      "WHERE i.orderid = c.orderid AND i.itemName = c.itemName " +
+      "RETURNING i.orderid, i.itemName, i.status, i.lastUpdated, i.comments";
+
+   private final Cafe _esql;
+
+   public KitchenService(Cafe esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * @param acting the session of an employee or manager
+    * @param limit the most items to list
+    * @return the items that are not finished yet, oldest first; items
+    *         with a pending change that takes them off the queue are left
+    *         out
+    * @throws java.sql.SQLException when the queue could not be read
+    * @throws ServiceException when the acting user is a customer
+    */
+   public List<WorkItem> listQueue(UserSession acting, int limit) throws SQLException {
+      requireStaff(acting);
+      StatusWriter writer = this._esql.getStatusWriter();
+      List<WorkItem> items = new ArrayList<WorkItem>();
+      ResultCursor cursor = this._esql.openCursor(
+         "SELECT orderid, itemName, status, lastUpdated, comments FROM ItemStatus " +
+         "WHERE " + OPEN + " ORDER BY lastUpdated LIMIT ?", limit);
+      try {
+         while (cursor.next()) {
+            WorkItem item = writer.overlay(new WorkItem(cursor.getInt(1), cursor.getString(2), cursor.getString(3),
+                                                        cursor.getTimestamp(4), cursor.getString(5)));
+            if (OrderBuilder.INITIAL_STATUS.equals(item.getStatus()) || STARTED.equals(item.getStatus()))
+               items.add(item);
+         }//end while
+      } finally {
+         cursor.close();
+      }//end try
+      return items;
+   }//end listQueue
+
+   /**
+    * Claims the oldest items nobody has started on and marks them started.
+    *
+    * @param acting the session of an employee or manager
+    * @param max the most items to claim, at most MAX_CLAIM
+    * @return the claimed items, oldest first; empty when nothing is waiting
+    * @throws java.sql.SQLException when the claim could not be stored
+    * @throws ServiceException when the acting user is a customer
+    */
+   public List<WorkItem> claim(UserSession acting, int max) throws SQLException {
+      requireStaff(acting);
+      if (max < 1 || max > MAX_CLAIM)
+         throw new ServiceException(ServiceException.Reason.INVALID, "Claim between 1 and " + MAX_CLAIM + " items");
+      List<WorkItem> items = new ArrayList<WorkItem>();
+      for (List<String> row : this._esql.executeQueryAndReturnResult(CLAIM,
+              STARTED, new Timestamp(System.currentTimeMillis()), OrderBuilder.INITIAL_STATUS, max))
+         items.add(workItem(row));
+      // RETURNING gives no order; claims are taken oldest first.
+      Collections.sort(items, new Comparator<WorkItem>() {
+         public int compare(WorkItem a, WorkItem b) {
+            return a.getLastUpdated().compareTo(b.getLastUpdated());
+         }
+      });
+      return items;
+   }//end claim
+
+   /**
+    * Marks a started item finished. The change is written by the status
+    * writer.
+    *
+    * @param acting the session of an employee or manager
+    * @return the finished item
+    * @throws java.sql.SQLException when the item could not be read or the
+    *         change could not be stored
+    * @throws ServiceException when the acting user is a customer, there is
+    *         no such item, or it is not started
+    */
+   public WorkItem finish(UserSession acting, int orderid, String itemName) throws SQLException {
+      requireStaff(acting);
+      WorkItem item = find(orderid, itemName);
+      if (!STARTED.equals(item.getStatus()))
+         throw new ServiceException(ServiceException.Reason.CONFLICT, itemName + " of order " + orderid + " is not started");
+      return change(item, FINISHED, null);
+   }//end finish
+
+   /**
+    * Sets the status of an item, and its comments when they are given. The
+    * change is written by the status writer.
+    *
+    * @param acting the session of an employee or manager
+    * @param comments the new comments, or null to keep them
+    * @return the changed item
+    * @throws java.sql.SQLException when the item could not be read or the
+    *         change could not be stored
+    * @throws ServiceException when the acting user is a customer, the
+    *         status or comments are empty or too long, or there is no such
+    *         item
+    */
+   public WorkItem setStatus(UserSession acting, int orderid, String itemName, String status, String comments)
+      throws SQLException {
+      requireStaff(acting);
+      if (status == null || status.trim().isEmpty() || status.trim().length() > MAX_STATUS)
+         throw new ServiceException(ServiceException.Reason.INVALID, "The status must be 1 to " + MAX_STATUS + " characters");
+      if (comments != null && comments.trim().length() > MAX_COMMENTS)
+         throw new ServiceException(ServiceException.Reason.INVALID, "Comments are at most " + MAX_COMMENTS + " characters");
+      return change(find(orderid, itemName), status.trim(), comments == null ? null : comments.trim());
+   }//end setStatus
+
+   /*
+    * The item as it is once the pending changes are written.
+    */
+   private WorkItem find(int orderid, String itemName) throws SQLException {
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(ITEM, orderid, itemName);
+      if (rows.isEmpty())
+         throw new ServiceException(ServiceException.Reason.NOT_FOUND, itemName + " is not part of order " + orderid);
+      return this._esql.getStatusWriter().overlay(workItem(rows.get(0)));
+   }//end find
+
+   private WorkItem change(WorkItem item, String status, String comments) throws SQLException {
+      Timestamp now = new Timestamp(System.currentTimeMillis());
+      this._esql.getStatusWriter().update(item.getOrderId(), item.getItemName(), status, now, comments);
+      return new WorkItem(item.getOrderId(), item.getItemName(), status, now,
+                          comments != null ? comments : item.getComments());
+   }//end change
+
+   private static WorkItem workItem(List<String> row) {
+      return new WorkItem(Integer.parseInt(row.get(0)), row.get(1), row.get(2), Timestamp.valueOf(row.get(3)), row.get(4));
+   }
+
+   private static void requireStaff(UserSession acting) {
+      if (!acting.isStaff())
+         throw new ServiceException(ServiceException.Reason.FORBIDDEN, "Only employees and managers can do this");
+   }//end requireStaff
+
+}//end KitchenService
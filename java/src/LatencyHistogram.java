@@ -0,0 +1,122 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts durations in log-linear buckets, the way HDR histograms
+ * do: every power of two is split into SUB_BUCKETS equal buckets, so any
+ * recorded value is known to within about 3% while the whole range from a
+ * nanosecond to centuries fits in under two thousand counters.
+ *
+ * Recording is lock-free (a few atomic increments) and safe from any number
+ * of threads. Reads are not atomic with respect to concurrent recording, so
+ * percentiles taken under load may be off by the values recorded meanwhile.
+ *
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BUCKET_BITS = 5;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+   // values below SUB_BUCKETS get a bucket each; every power of two from
+   // there on up to 2^63 gets SUB_BUCKETS buckets.
+   private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+   private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong _count = new AtomicLong();
+   private final AtomicLong _sum = new AtomicLong();
+   private final AtomicLong _max = new AtomicLong();
+
+   /**
+    * Records one duration.
+    *
+    * @param nanos the duration in nanoseconds; negative values count as 0
+    */
+   public void record(long nanos) {
+      if (nanos < 0)
+         nanos = 0;
+      this._counts.incrementAndGet(bucket(nanos));
+      this._count.incrementAndGet();
+      this._sum.addAndGet(nanos);
+      long max;
+      while (nanos > (max = this._max.get()))
+         if (this._max.compareAndSet(max, nanos))
+            break;
+   }//end record
+
+   /**
+    * Adds the durations another histogram recorded to this one.
+    */
+   public void add(LatencyHistogram other) {
+      for (int i = 0; i < BUCKETS; ++i) {
+         long count = other._counts.get(i);
+         if (count != 0)
+            this._counts.addAndGet(i, count);
+      }//end for
+      this._count.addAndGet(other._count.get());
+      this._sum.addAndGet(other._sum.get());
+      long max, otherMax = other._max.get();
+      while (otherMax > (max = this._max.get()))
+         if (this._max.compareAndSet(max, otherMax))
+            break;
+   }//end add
+
+   public long getCount() { return this._count.get(); }
+   public long getSumNanos() { return this._sum.get(); }
+   public long getMaxNanos() { return this._max.get(); }
+
+   public double getMeanNanos() {
+      long count = this._count.get();
+      return count == 0 ? 0.0 : (double) this._sum.get() / count;
+   }
+
+   /**
+    * @param percentile between 0 and 100
+    * @return the smallest recorded duration that at least the given share of
+    *         the recorded durations do not exceed, rounded up to the end of
+    *         its bucket, or 0 when nothing was recorded
+    */
+   public long getValueAtPercentile(double percentile) {
+      long count = this._count.get();
+      if (count == 0)
+         return 0;
+      long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0.0), 100.0) / 100.0 * count);
+      if (rank < 1)
+         rank = 1;
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+         seen += this._counts.get(i);
+         if (seen >= rank)
+            return Math.min(highestValue(i), this._max.get());
+      }//end for
+      return this._max.get();
+   }//end getValueAtPercentile
+
+   static int bucket(long value) {
+      if (value < SUB_BUCKETS)
+         return (int) value;
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int shift = exponent - SUB_BUCKET_BITS;
+      return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+   }//end bucket
+
+   static long highestValue(int bucket) {
+      if (bucket < SUB_BUCKETS)
+         return bucket;
+      int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+      long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+      return lowest + (1L << shift) - 1;
+   }//end highestValue
+
+}//end LatencyHistogram
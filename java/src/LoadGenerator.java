@@ -0,0 +1,460 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class generates cafe traffic against a database, for capacity
+ * tests and for tracking performance from build to build.
+ *
+ *   build <orders> <days> <dir>
+ *      synthesizes order history with DatasetBuilder into the directory
+ *      and loads it on top of the orders already there; the files stay
+ *      behind and can be loaded again with load_data.sql or --import
+ *   run <seconds> <customers> <employees> <managers> [<report>]
+ *      runs that many simulated users at once through the services Cafe
+ *      offers and reports throughput and latency percentiles per
+ *      operation, as a table on standard output and as JSON in the report
+ *      file
+ *
+ * Every simulated user logs in as a user of its type picked at random from
+ * the Users table, then picks operations from its role's mix:
+ *   customers - browse the menu, place orders, list and show their orders,
+ *               add and remove items of an unpaid order, log in again
+ *   employees - list unpaid orders, look at the kitchen queue, claim and
+ *               finish items, mark orders paid
+ *   managers  - what employees do, and now and then rewrite a menu item
+ * Between operations a user thinks for an exponentially distributed time
+ * with a mean of -Dload.think milliseconds (default 100); -Dload.think=0
+ * runs closed loop. Operations of the first -Dload.warmup seconds (default
+ * 5) are not counted. -Dload.seed (default 42) seeds the data and the
+ * users' choices. The sessions share one pool of -Dcafe.pool.max
+ * connections.
+ *
+ * An operation the services refuse, e.g. a claim when nothing is waiting,
+ * counts as rejected; one that fails in the database counts as an error.
+ *
+ */
+public class LoadGenerator {
+
+   static final String[] CUSTOMER_OPERATIONS = {
+      "menuByType", "menuByName", "placeOrder", "listOwnOrders", "showOrder", "addItem", "removeItem", "logIn" };
+   static final int[] CUSTOMER_WEIGHTS = { 25, 15, 15, 15, 10, 8, 7, 5 };
+   static final String[] EMPLOYEE_OPERATIONS = {
+      "listUnpaidOrders", "kitchenQueue", "claim", "finish", "markPaid" };
+   static final int[] EMPLOYEE_WEIGHTS = { 20, 10, 30, 30, 10 };
+   static final String[] MANAGER_OPERATIONS = {
+      "listUnpaidOrders", "kitchenQueue", "claim", "finish", "markPaid", "updateMenuItem" };
+   static final int[] MANAGER_WEIGHTS = { 20, 10, 25, 25, 15, 5 };
+
+   // latency percentiles in the report, and their names there.
+   static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+   static final String[] PERCENTILE_NAMES = { "p50Millis", "p90Millis", "p99Millis", "p999Millis" };
+
+   /**
+    * The counts and latencies of one operation.
+    */
+   static final class Operation {
+      final String name;
+      final LatencyHistogram latency = new LatencyHistogram();
+      final AtomicLong rejected = new AtomicLong();
+      final AtomicLong errors = new AtomicLong();
+
+      Operation(String name) {
+         this.name = name;
+      }
+   }//end Operation
+
+   private final Cafe _esql;
+   private final long _seed;
+   private final long _thinkMillis;
+   private final Map<String, Operation> _operations = new LinkedHashMap<String, Operation>();
+   private volatile boolean _measuring = false;
+   private volatile boolean _stopped = false;
+
+   public LoadGenerator(Cafe esql, long seed, long thinkMillis) {
+      this._esql = esql;
+      this._seed = seed;
+      this._thinkMillis = thinkMillis;
+      for (String[] operations : new String[][] { CUSTOMER_OPERATIONS, EMPLOYEE_OPERATIONS, MANAGER_OPERATIONS })
+         for (String name : operations)
+            if (!this._operations.containsKey(name))
+               this._operations.put(name, new Operation(name));
+   }//end LoadGenerator
+
+   /**
+    * Synthesizes order history into the directory and loads it.
+    *
+    * @return the rows loaded per table
+    */
+   public Map<String, Long> build(long orders, int days, File dir) throws SQLException, IOException {
+      List<String> customers = new ArrayList<String>();
+      for (List<String> row : this._esql.executeQueryAndReturnResult("SELECT login FROM Users WHERE type = ?", "Customer"))
+         customers.add(row.get(0).trim());
+      List<MenuItem> menu = new ArrayList<MenuItem>(this._esql.getMenuCatalog().getAll());
+      // past every orderid used, and every one the sequence handed out.
+      int first = Integer.parseInt(this._esql.executeQueryAndReturnResult(
+         "SELECT GREATEST((SELECT COALESCE(MAX(orderid), 0) FROM Orders), " +
+         "(SELECT last_value FROM " + OrderIdAllocator.SEQUENCE + ")) + 1").get(0).get(0));
+
+      long start = System.nanoTime();
+      long[] written = new DatasetBuilder(this._seed).write(dir, customers, menu, orders, days, first);
+      System.out.println(String.format(Locale.ROOT, "Wrote %d orders with %d items in %.1f s",
+                                       written[0], written[1], (System.nanoTime() - start) / 1e9));
+      Map<String, Long> rows = new DataTransfer(this._esql, System.out).importTables(
+         dir, Arrays.asList(DataTransfer.ORDERS, DataTransfer.ITEM_STATUS));
+      long timeout = this._esql.setThreadStatementTimeout(0);
+      try {
+         this._esql.executeUpdate("ANALYZE Orders");
+         this._esql.executeUpdate("ANALYZE ItemStatus");
+      } finally {
+         this._esql.setThreadStatementTimeout(timeout);
+      }//end try
+      return rows;
+   }//end build
+
+   /**
+    * Runs the simulated users and returns the report.
+    *
+    * @param seconds how long to measure, after the warmup
+    * @param warmupSeconds how long to run before measuring
+    * @return the report, ready for Json.write
+    */
+   public Map<String, Object> run(int seconds, int warmupSeconds, int customers, int employees, int managers)
+      throws SQLException, InterruptedException {
+      Random random = new Random(this._seed);
+      List<User> users = new ArrayList<User>();
+      users.addAll(logIn("Customer", customers, CUSTOMER_OPERATIONS, CUSTOMER_WEIGHTS, random));
+      users.addAll(logIn("Employee", employees, EMPLOYEE_OPERATIONS, EMPLOYEE_WEIGHTS, random));
+      users.addAll(logIn("Manager", managers, MANAGER_OPERATIONS, MANAGER_WEIGHTS, random));
+
+      ExecutorService executor = RequestExecutors.newRequestExecutor();
+      List<Future<?>> running = new ArrayList<Future<?>>();
+      for (User user : users)
+         running.add(executor.submit(user));
+      Thread.sleep(warmupSeconds * 1000L);
+      this._esql.getMetrics().clear();
+      StatusWriter writer = this._esql.getStatusWriter();
+      long changes = writer.getChanges(), commits = writer.getFlushes();
+      this._measuring = true;
+      long start = System.nanoTime();
+      Timestamp started = new Timestamp(System.currentTimeMillis());
+      Thread.sleep(seconds * 1000L);
+      this._measuring = false;
+      double measured = (System.nanoTime() - start) / 1e9;
+      this._stopped = true;
+      executor.shutdown();
+      for (Future<?> user : running) {
+         try {
+            user.get();
+         }catch (java.util.concurrent.ExecutionException e) {
+            System.err.println("A simulated user stopped: " + e.getCause());
+         }//end try
+      }//end for
+
+      Map<String, Object> report = new LinkedHashMap<String, Object>();
+      report.put("started", started.toString());
+      report.put("seconds", measured);
+      report.put("warmupSeconds", warmupSeconds);
+      report.put("thinkMillis", this._thinkMillis);
+      report.put("seed", this._seed);
+      Map<String, Object> counts = new LinkedHashMap<String, Object>();
+      counts.put("customers", customers);
+      counts.put("employees", employees);
+      counts.put("managers", managers);
+      report.put("users", counts);
+      List<Object> operations = new ArrayList<Object>();
+      LatencyHistogram all = new LatencyHistogram();
+      long rejected = 0, errors = 0;
+      for (Operation operation : this._operations.values()) {
+         if (operation.latency.getCount() == 0)
+            continue;
+         operations.add(stats(operation.name, operation.latency, operation.rejected.get(), operation.errors.get(), measured));
+         all.add(operation.latency);
+         rejected += operation.rejected.get();
+         errors += operation.errors.get();
+      }//end for
+      report.put("operations", operations);
+      report.put("total", stats("total", all, rejected, errors, measured));
+      // item status changes of the run and the commits that wrote them.
+      Map<String, Object> statusWrites = new LinkedHashMap<String, Object>();
+      statusWrites.put("changes", writer.getChanges() - changes);
+      statusWrites.put("commits", writer.getFlushes() - commits);
+      report.put("statusWrites", statusWrites);
+      return report;
+   }//end run
+
+   /*
+    * Opens the sessions of count users of the type, picked at random.
+    */
+   private List<User> logIn(String type, int count, String[] operations, int[] weights, Random random)
+      throws SQLException {
+      List<User> users = new ArrayList<User>();
+      if (count == 0)
+         return users;
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+         "SELECT login, password FROM Users WHERE type = ?", type);
+      if (rows.isEmpty())
+         throw new ServiceException(ServiceException.Reason.NOT_FOUND, "No users of type " + type);
+      Collections.shuffle(rows, random);
+      for (int i = 0; i < count; ++i) {
+         List<String> row = rows.get(i % rows.size());
+         UserSession session = this._esql.getUserService().logIn(row.get(0).trim(), row.get(1).trim());
+         if (session == null)
+            throw new ServiceException(ServiceException.Reason.UNAUTHORIZED, "Cannot log in as " + row.get(0).trim());
+         users.add(new User(session, row.get(1).trim(), operations, weights, new Random(random.nextLong())));
+      }//end for
+      return users;
+   }//end logIn
+
+   /**
+    * One simulated user, running its role's operations until stopped.
+    */
+   final class User implements Runnable {
+      private final UserSession _session;
+      private final String _password;
+      private final String[] _operations;
+      private final int[] _weights;
+      private final Random _random;
+
+      // the customer's unpaid order and its items, once one is placed.
+      private int _orderid = -1;
+      private final List<String> _items = new ArrayList<String>();
+      // what an employee claimed and has not finished, and the unpaid
+      // orders last listed.
+      private final List<WorkItem> _claimed = new ArrayList<WorkItem>();
+      private final List<OrderSummary> _unpaid = new ArrayList<OrderSummary>();
+
+      User(UserSession session, String password, String[] operations, int[] weights, Random random) {
+         this._session = session;
+         this._password = password;
+         this._operations = operations;
+         this._weights = weights;
+         this._random = random;
+      }
+
+      public void run() {
+         while (!LoadGenerator.this._stopped) {
+            String name = pick();
+            long start = System.nanoTime();
+            boolean rejected = false, failed = false;
+            try {
+               name = perform(name);
+            }catch (ServiceException e) {
+               rejected = true;
+            }catch (SQLException e) {
+               failed = true;
+            }catch (RuntimeException e) {
+               failed = true;
+            }//end try
+            long nanos = System.nanoTime() - start;
+            if (LoadGenerator.this._measuring) {
+               Operation operation = LoadGenerator.this._operations.get(name);
+               operation.latency.record(nanos);
+               if (rejected)
+                  operation.rejected.incrementAndGet();
+               if (failed)
+                  operation.errors.incrementAndGet();
+            }//end if
+            think();
+         }//end while
+      }//end run
+
+      private String pick() {
+         int total = 0;
+         for (int weight : this._weights)
+            total += weight;
+         int x = this._random.nextInt(total);
+         for (int i = 0; i < this._weights.length; ++i)
+            if ((x -= this._weights[i]) < 0)
+               return this._operations[i];
+         return this._operations[0];
+      }//end pick
+
+      private void think() {
+         if (LoadGenerator.this._thinkMillis <= 0)
+            return;
+         long millis = (long) (-Math.log(1.0 - this._random.nextDouble()) * LoadGenerator.this._thinkMillis);
+         try {
+            Thread.sleep(millis);
+         }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LoadGenerator.this._stopped = true;
+         }//end try
+      }//end think
+
+      /*
+       * Runs the operation, or the one it needs first, e.g. placing an
+       * order before one can be shown. Returns the name of the operation
+       * that ran.
+       */
+      private String perform(String name) throws SQLException {
+         try {
+            return attempt(name);
+         }catch (ServiceException e) {
+            // most likely the order was paid meanwhile; start a new one.
+            if (name.equals("addItem") || name.equals("removeItem"))
+               this._orderid = -1;
+            throw e;
+         }//end try
+      }//end perform
+
+      private String attempt(String name) throws SQLException {
+         Cafe esql = LoadGenerator.this._esql;
+         List<MenuItem> menu = new ArrayList<MenuItem>(esql.getMenuCatalog().getAll());
+         MenuItem item = menu.get(this._random.nextInt(menu.size()));
+         if (name.equals("menuByType")) {
+            esql.getMenuService().findByType(item.getType());
+         } else if (name.equals("menuByName")) {
+            esql.getMenuService().findByName(item.getItemName());
+         } else if (name.equals("logIn")) {
+            esql.getUserService().logOut(esql.getUserService().logIn(this._session.getLogin(), this._password));
+         } else if (name.equals("listOwnOrders")) {
+            esql.getOrderService().listOwnOrders(this._session, null, OrderService.DEFAULT_PAGE_SIZE);
+         } else if (name.equals("placeOrder") || this._orderid < 0 && Arrays.asList(
+                       "showOrder", "addItem", "removeItem").contains(name)) {
+            this._items.clear();
+            this._items.add(item.getItemName());
+            this._orderid = esql.getOrderService().placeOrder(
+               new OrderRequest(this._session.getLogin(), this._items)).getOrderId();
+            return "placeOrder";
+         } else if (name.equals("showOrder")) {
+            esql.getOrderService().getOrder(this._orderid);
+         } else if (name.equals("addItem") || name.equals("removeItem") && this._items.size() < 2) {
+            if (this._items.contains(item.getItemName()))
+               return "addItem";
+            esql.getOrderService().addItem(this._session, this._orderid, item.getItemName());
+            this._items.add(item.getItemName());
+            return "addItem";
+         } else if (name.equals("removeItem")) {
+            String removed = this._items.remove(this._random.nextInt(this._items.size()));
+            esql.getOrderService().removeItem(this._session, this._orderid, removed);
+         } else if (name.equals("listUnpaidOrders") || name.equals("markPaid") && this._unpaid.isEmpty()) {
+            this._unpaid.clear();
+            this._unpaid.addAll(esql.getOrderService().listUnpaidOrders(
+               this._session, null, OrderService.DEFAULT_PAGE_SIZE).getOrders());
+            return "listUnpaidOrders";
+         } else if (name.equals("markPaid")) {
+            OrderSummary order = this._unpaid.remove(this._random.nextInt(this._unpaid.size()));
+            esql.getOrderService().markPaid(this._session, order.getOrderId());
+         } else if (name.equals("kitchenQueue")) {
+            esql.getKitchenService().listQueue(this._session, 50);
+         } else if (name.equals("claim") || name.equals("finish") && this._claimed.isEmpty()) {
+            this._claimed.addAll(esql.getKitchenService().claim(this._session, 1 + this._random.nextInt(3)));
+            return "claim";
+         } else if (name.equals("finish")) {
+            WorkItem claimed = this._claimed.remove(0);
+            esql.getKitchenService().finish(this._session, claimed.getOrderId(), claimed.getItemName());
+         } else if (name.equals("updateMenuItem")) {
+            esql.getMenuService().updateItem(this._session, item.getItemName(), item);
+         }//end if
+         return name;
+      }//end attempt
+   }//end User
+
+   private static Map<String, Object> stats(String name, LatencyHistogram latency, long rejected, long errors,
+                                            double seconds) {
+      Map<String, Object> stats = new LinkedHashMap<String, Object>();
+      stats.put("name", name);
+      stats.put("count", latency.getCount());
+      stats.put("rejected", rejected);
+      stats.put("errors", errors);
+      stats.put("perSecond", latency.getCount() / seconds);
+      stats.put("meanMillis", latency.getMeanNanos() / 1e6);
+      for (int i = 0; i < PERCENTILES.length; ++i)
+         stats.put(PERCENTILE_NAMES[i], latency.getValueAtPercentile(PERCENTILES[i]) / 1e6);
+      stats.put("maxMillis", latency.getMaxNanos() / 1e6);
+      return stats;
+   }//end stats
+
+   /**
+    * Prints the report as a table, latencies in milliseconds.
+    */
+   static void print(Map<String, Object> report, PrintWriter out) {
+      out.println(String.format(Locale.ROOT, "-- %s users, %.1f s from %s",
+                                report.get("users"), report.get("seconds"), report.get("started")));
+      out.println(String.format(Locale.ROOT, "%-17s %9s %8s %7s %9s %9s %9s %9s %9s %9s",
+                                "operation", "count", "rejected", "errors", "per s", "mean", "p50", "p99", "p99.9", "max"));
+      List<Object> rows = new ArrayList<Object>((List<?>) report.get("operations"));
+      rows.add(report.get("total"));
+      for (Object row : rows) {
+         Map<?, ?> s = (Map<?, ?>) row;
+         out.println(String.format(Locale.ROOT, "%-17s %9d %8d %7d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f",
+                                   s.get("name"), s.get("count"), s.get("rejected"), s.get("errors"), s.get("perSecond"),
+                                   s.get("meanMillis"), s.get("p50Millis"), s.get("p99Millis"), s.get("p999Millis"),
+                                   s.get("maxMillis")));
+      }//end for
+      Map<?, ?> statusWrites = (Map<?, ?>) report.get("statusWrites");
+      if (statusWrites != null)
+         out.println("item status changes " + statusWrites.get("changes") + " in " + statusWrites.get("commits") + " commits");
+      out.flush();
+   }//end print
+
+   public static void main(String[] args) {
+      boolean build = args.length == 7 && args[3].equals("build");
+      boolean run = (args.length == 8 || args.length == 9) && args[3].equals("run");
+      if (!build && !run) {
+         System.err.println(
+            "Usage: java [-classpath <classpath>] " + LoadGenerator.class.getName() + " <dbname> <port> <user>\n" +
+            "          build <orders> <days> <dir>\n" +
+            "        | run <seconds> <customers> <employees> <managers> [<report>]");
+         return;
+      }//end if
+      Cafe esql = null;
+      try {
+         esql = new Cafe(args[0], args[1], args[2], "");
+         LoadGenerator load = new LoadGenerator(esql, Long.getLong("load.seed", 42L), Long.getLong("load.think", 100L));
+         if (build) {
+            Map<String, Long> rows = load.build(Long.parseLong(args[4]), Integer.parseInt(args[5]), new File(args[6]));
+            System.out.println("Imported " + rows);
+            return;
+         }//end if
+         Map<String, Object> report = load.run(Integer.parseInt(args[4]), Integer.getInteger("load.warmup", 5),
+                                               Integer.parseInt(args[5]), Integer.parseInt(args[6]),
+                                               Integer.parseInt(args[7]));
+         print(report, new PrintWriter(System.out));
+         if (args.length == 9) {
+            Writer out = new OutputStreamWriter(new FileOutputStream(args[8]), "UTF-8");
+            try {
+               out.write(Json.write(report));
+               out.write('\n');
+            } finally {
+               out.close();
+            }//end try
+         }//end if
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally {
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+}//end LoadGenerator
@@ -0,0 +1,280 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps the whole Menu table in memory as an immutable snapshot
+ * indexed by item name and by type, so price lookups and menu searches are
+ * hash lookups instead of queries.
+ *
+ * Edits made through this catalog swap in a modified copy of the snapshot,
+ * carrying the version the edit's own transaction read back.
+ * Edits made by other processes are picked up through the MenuVersion row
+ * that sql/src/menu_version.sql bumps on every change to Menu: at most once
+ * per check interval a reader compares it with the snapshot's version and
+ * reloads when they differ. Without that table the catalog simply reloads
+ * once per check interval.
+ *
+ * Menus of up to -Dcafe.menu.search.max items (default 50000) also get a
+ * MenuSearchIndex. A reload builds it anew; edits made through the catalog
+ * copy the snapshot's index and update the copy item by item.
+ *
+ * While the session takes orders through an OrderLog a failed reload
+ * keeps the snapshot it has, so the register goes on pricing orders from
+ * the last menu it saw when the database cannot be reached.
+ *
+ */
+public class MenuCatalog {
+
+   /**
+    * One immutable view of the Menu table.
+    */
+   static final class Snapshot {
+      final long version;
+      final Map<String, MenuItem> byName;
+      final Map<String, List<MenuItem>> byType;
+      // null when the menu is too large to index.
+      final MenuSearchIndex search;
+
+      Snapshot(long version, Collection<MenuItem> items, MenuSearchIndex search) {
+         Map<String, MenuItem> names = new LinkedHashMap<String, MenuItem>();
+         Map<String, List<MenuItem>> types = new HashMap<String, List<MenuItem>>();
+         for (MenuItem item : items) {
+            names.put(item.getItemName(), item);
+            List<MenuItem> list = types.get(item.getType());
+            if (list == null) {
+               list = new ArrayList<MenuItem>();
+               types.put(item.getType(), list);
+            }//end if
+            list.add(item);
+         }//end for
+         for (Map.Entry<String, List<MenuItem>> e : types.entrySet())
+            e.setValue(Collections.unmodifiableList(e.getValue()));
+         this.version = version;
+         this.byName = Collections.unmodifiableMap(names);
+         this.byType = Collections.unmodifiableMap(types);
+         this.search = search;
+      }
+   }//end Snapshot
+
+   // version used when the MenuVersion table is not installed.
+   private static final long UNVERSIONED = -1;
+
+   static final int SEARCH_MAX = Integer.getInteger("cafe.menu.search.max", 50000);
+
+   private final Cafe _esql;
+
+   // the current snapshot; replaced as a whole, never modified.
+   private volatile Snapshot _snapshot = null;
+
+   // when the version was last compared, in milliseconds.
+   private final AtomicLong _lastCheck = new AtomicLong();
+
+   private volatile long _checkIntervalMillis = 1000;
+
+   /**
+    * Creates a new catalog. The Menu table is loaded on first use.
+    *
+    * @param esql the database session the catalog loads through
+    */
+   public MenuCatalog(Cafe esql) {
+      this._esql = esql;
+   }//end MenuCatalog
+
+   /**
+    * @param millis how stale the catalog may get before the next version check
+    */
+   public void setCheckIntervalMillis(long millis) {
+      this._checkIntervalMillis = millis;
+   }
+
+   /**
+    * @param itemName the item name
+    * @return the menu item, or null when it is not on the menu
+    * @throws java.sql.SQLException when the catalog had to be reloaded and failed
+    */
+   public MenuItem get(String itemName) throws SQLException {
+      return current().byName.get(itemName);
+   }//end get
+
+   /**
+    * @param type the item type
+    * @return every item of that type, empty when there are none
+    * @throws java.sql.SQLException when the catalog had to be reloaded and failed
+    */
+   public List<MenuItem> getByType(String type) throws SQLException {
+      List<MenuItem> items = current().byType.get(type);
+      return items != null ? items : Collections.<MenuItem>emptyList();
+   }//end getByType
+
+   /**
+    * @return every item on the menu
+    * @throws java.sql.SQLException when the catalog had to be reloaded and failed
+    */
+   public Collection<MenuItem> getAll() throws SQLException {
+      return current().byName.values();
+   }//end getAll
+
+   /**
+    * @return the search index of the current menu, or null when the menu
+    *         has more than SEARCH_MAX items
+    * @throws java.sql.SQLException when the catalog had to be reloaded and failed
+    */
+   public MenuSearchIndex getSearchIndex() throws SQLException {
+      return current().search;
+   }
+
+   /**
+    * Reads the Menu table again and swaps in the new snapshot.
+    *
+    * @throws java.sql.SQLException when the Menu table could not be read
+    */
+   public synchronized void reload() throws SQLException {
+      // read the version first: a change racing with the load then shows
+      // up as a newer version on the next check.
+      long version = readVersion();
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+         "SELECT itemName, type, price, description, imageURL FROM Menu", new Object[0]);
+      List<MenuItem> items = new ArrayList<MenuItem>(rows.size());
+      for (List<String> row : rows)
+         items.add(new MenuItem(row.get(0), row.get(1), Double.parseDouble(row.get(2)), row.get(3), row.get(4)));
+      this._snapshot = new Snapshot(version, items,
+                                    items.size() <= SEARCH_MAX ? new MenuSearchIndex(items) : null);
+      this._lastCheck.set(System.currentTimeMillis());
+   }//end reload
+
+   /**
+    * Reads the menu version an edit left. Called in the edit's
+    * transaction, after its statement, so the version is the one the
+    * edit's trigger set and no other edit can move it before the commit.
+    *
+    * @return the version, or UNVERSIONED when the snapshot is not
+    *         versioned and the MenuVersion table need not be read
+    * @throws java.sql.SQLException when the version could not be read
+    */
+   long editVersion() throws SQLException {
+      Snapshot snap = this._snapshot;
+      if (snap == null || snap.version == UNVERSIONED)
+         return UNVERSIONED;
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+         "SELECT version FROM MenuVersion", new Object[0]);
+      return rows.isEmpty() ? UNVERSIONED : Long.parseLong(rows.get(0).get(0));
+   }//end editVersion
+
+   /**
+    * Records an item that was added to or changed in the Menu table.
+    *
+    * @param previousName the name the item had before, or null for a new item
+    * @param item the item as it is now stored
+    * @param version the version the edit left, as read by editVersion
+    */
+   public synchronized void put(String previousName, MenuItem item, long version) {
+      Snapshot snap = this._snapshot;
+      if (snap == null)
+         return;
+      Map<String, MenuItem> items = new LinkedHashMap<String, MenuItem>(snap.byName);
+      if (previousName != null)
+         items.remove(previousName);
+      items.put(item.getItemName(), item);
+      MenuSearchIndex search = null;
+      if (snap.search != null) {
+         search = new MenuSearchIndex(snap.search);
+         if (previousName != null)
+            search.remove(previousName);
+         search.add(item);
+      }//end if
+      this._snapshot = new Snapshot(next(snap, version), items.values(), search);
+   }//end put
+
+   /**
+    * Records an item that was deleted from the Menu table.
+    *
+    * @param itemName the name of the deleted item
+    * @param version the version the edit left, as read by editVersion
+    */
+   public synchronized void remove(String itemName, long version) {
+      Snapshot snap = this._snapshot;
+      if (snap == null || !snap.byName.containsKey(itemName))
+         return;
+      Map<String, MenuItem> items = new LinkedHashMap<String, MenuItem>(snap.byName);
+      items.remove(itemName);
+      MenuSearchIndex search = null;
+      if (snap.search != null) {
+         search = new MenuSearchIndex(snap.search);
+         search.remove(itemName);
+      }//end if
+      this._snapshot = new Snapshot(next(snap, version), items.values(), search);
+   }//end remove
+
+   /*
+    * The version of a snapshot updated by one edit. The edit's trigger
+    * bumps the version by one; when it moved further, another process
+    * edited the menu too, and the old version is kept so the next check
+    * reloads.
+    */
+   private static long next(Snapshot snap, long version) {
+      return snap.version != UNVERSIONED && version == snap.version + 1 ? version : snap.version;
+   }//end next
+
+   /*
+    * Returns the snapshot, loading it on first use and reloading it when the
+    * check interval has passed and the stored version moved on.  Only one
+    * caller per interval pays for the check; the others use the snapshot
+    * they already have.
+    */
+   private Snapshot current() throws SQLException {
+      Snapshot snap = this._snapshot;
+      if (snap == null) {
+         synchronized (this) {
+            if (this._snapshot == null)
+               reload();
+            return this._snapshot;
+         }
+      }//end if
+
+      long now = System.currentTimeMillis();
+      long last = this._lastCheck.get();
+      if (now - last < this._checkIntervalMillis || !this._lastCheck.compareAndSet(last, now))
+         return snap;
+
+      long version = readVersion();
+      if (version == UNVERSIONED || version != snap.version) {
+         try {
+            reload();
+         }catch (SQLException e) {
+            if (this._esql.getOrderLog() == null)
+               throw e;
+         }//end try
+      }//end if
+      return this._snapshot;
+   }//end current
+
+   private long readVersion() {
+      try {
+         List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+            "SELECT version FROM MenuVersion", new Object[0]);
+         return rows.isEmpty() ? UNVERSIONED : Long.parseLong(rows.get(0).get(0));
+      }catch (SQLException e) {
+         return UNVERSIONED;
+      }//end try
+   }//end readVersion
+
+}//end MenuCatalog
@@ -0,0 +1,64 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+/**
+ * This class holds one row of the Menu table. Instances are immutable so
+ * they can be shared freely between catalog snapshots and threads.
+ *
+ */
+public class MenuItem {
+
+   private final String _itemName;
+   private final String _type;
+   private final double _price;
+   private final String _description;
+   private final String _imageURL;
+
+   /**
+    * Creates a new menu item. Values are trimmed, since the char(n) columns
+    * of unmigrated databases come back space-padded; migration 001 makes
+    * them varchar.
+    *
+    * @param itemName the unique item name
+    * @param type the item type, e.g. Drinks or Sweets
+    * @param price the item price
+    * @param description the item description, may be null
+    * @param imageURL the image URL, may be null
+    */
+   public MenuItem(String itemName, String type, double price, String description, String imageURL) {
+      this._itemName = trim(itemName);
+      this._type = trim(type);
+      this._price = price;
+      this._description = trim(description);
+      this._imageURL = trim(imageURL);
+   }//end MenuItem
+
+   public String getItemName() { return this._itemName; }
+   public String getType() { return this._type; }
+   public double getPrice() { return this._price; }
+   public String getDescription() { return this._description; }
+   public String getImageURL() { return this._imageURL; }
+
+   /**
+    * @return the item as one tab separated line, in Menu column order
+    */
+   @Override
+   public String toString() {
+      return this._itemName + "\t" + this._type + "\t" + this._price + "\t" +
+             this._description + "\t" + this._imageURL + "\t";
+   }
+
+   private static String trim(String s) {
+      return s == null ? null : s.trim();
+   }
+
+}//end MenuItem
@@ -0,0 +1,412 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class answers menu searches from memory. itemName, type and
+ * description are split into lower case words, and every word is kept in
+ *   - a trie, whose nodes list the words starting with their prefix, and
+ *   - a trigram index listing the words each three letter sequence occurs
+ *     in, padded like pg_trgm pads them ("  cof", " co", ... "ee ").
+ *
+ * Each word of a query must match a word of the item, as the word itself,
+ * a prefix of it, a substring of it (found through the word's inner
+ * trigrams) or, failing those, a word whose trigrams are at least
+ * SIMILARITY alike, which forgives a typo or two. Matches score in that
+ * order and by field, the name counting most; results come best first.
+ *
+ * Items are added and removed one at a time, so a menu edit updates only
+ * the words of the edited item; the menu catalog applies it to a copy, so
+ * the index of an older snapshot does not change under its readers.
+ * Searches run under a read lock and edits under a write lock.
+ *
+ */
+public class MenuSearchIndex {
+
+   // the searched fields and how much a match in each counts.
+   static final int NAME = 0, TYPE = 1, DESCRIPTION = 2;
+   static final double[] FIELD_WEIGHTS = { 3, 2, 1 };
+
+   // scores of the kinds of match, best first.
+   static final double EXACT = 4, PREFIX = 3, SUBSTRING = 2, SIMILAR = 1;
+
+   // the trigram similarity a word needs to match a misspelling of it;
+   // the default of pg_trgm.
+   static final double SIMILARITY = 0.3;
+
+   /**
+    * One trie node: the words that start with the node's prefix.
+    */
+   static final class Node {
+      final Map<Character, Node> children = new HashMap<Character, Node>();
+      final Set<String> words = new HashSet<String>();
+   }//end Node
+
+   private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+   private final Map<String, MenuItem> _items = new HashMap<String, MenuItem>();
+   // word -> item name -> occurrences of the word in each field
+   private final Map<String, Map<String, int[]>> _postings = new HashMap<String, Map<String, int[]>>();
+   private final Node _root = new Node();
+   private final Map<String, Set<String>> _trigrams = new HashMap<String, Set<String>>();
+   // word -> number of distinct trigrams in it
+   private final Map<String, Integer> _trigramCounts = new HashMap<String, Integer>();
+
+   public MenuSearchIndex(Collection<MenuItem> items) {
+      for (MenuItem item : items)
+         add(item);
+   }
+
+   /**
+    * Copies an index, so the copy can be edited while the original is
+    * searched. Nothing is split into words or trigrams again.
+    */
+   public MenuSearchIndex(MenuSearchIndex index) {
+      index._lock.readLock().lock();
+      try {
+         this._items.putAll(index._items);
+         for (Map.Entry<String, Map<String, int[]>> e : index._postings.entrySet()) {
+            Map<String, int[]> items = new LinkedHashMap<String, int[]>();
+            for (Map.Entry<String, int[]> item : e.getValue().entrySet())
+               items.put(item.getKey(), item.getValue().clone());
+            this._postings.put(e.getKey(), items);
+         }//end for
+         copyTrie(index._root, this._root);
+         for (Map.Entry<String, Set<String>> e : index._trigrams.entrySet())
+            this._trigrams.put(e.getKey(), new HashSet<String>(e.getValue()));
+         this._trigramCounts.putAll(index._trigramCounts);
+      } finally {
+         index._lock.readLock().unlock();
+      }//end try
+   }
+
+   public int size() {
+      this._lock.readLock().lock();
+      try {
+         return this._items.size();
+      } finally {
+         this._lock.readLock().unlock();
+      }//end try
+   }//end size
+
+   /**
+    * Indexes an item, replacing an item of the same name.
+    */
+   public void add(MenuItem item) {
+      this._lock.writeLock().lock();
+      try {
+         removeItem(item.getItemName());
+         this._items.put(item.getItemName(), item);
+         String[][] fields = fields(item);
+         for (int field = 0; field < fields.length; ++field)
+            for (String word : fields[field])
+               addWord(word, item.getItemName(), field);
+      } finally {
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end add
+
+   /**
+    * Drops an item from the index.
+    */
+   public void remove(String itemName) {
+      this._lock.writeLock().lock();
+      try {
+         removeItem(itemName);
+      } finally {
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end remove
+
+   /**
+    * @param query one or more words, in any case
+    * @param limit the most items to return
+    * @return the items matching every word of the query, best first
+    */
+   public List<MenuItem> search(String query, int limit) {
+      String[] words = words(query);
+      if (words.length == 0)
+         return Collections.emptyList();
+      this._lock.readLock().lock();
+      try {
+         Map<String, Double> scores = null;
+         for (String word : words) {
+            Map<String, Double> matches = match(word);
+            if (scores == null) {
+               scores = matches;
+            } else {
+               // every word has to match; the scores add up.
+               Map<String, Double> both = new HashMap<String, Double>();
+               for (Map.Entry<String, Double> e : scores.entrySet()) {
+                  Double score = matches.get(e.getKey());
+                  if (score != null)
+                     both.put(e.getKey(), e.getValue() + score);
+               }//end for
+               scores = both;
+            }//end if
+            if (scores.isEmpty())
+               return Collections.emptyList();
+         }//end for
+         return top(scores, limit);
+      } finally {
+         this._lock.readLock().unlock();
+      }//end try
+   }//end search
+
+   /*
+    * Scores every item one query word matches, keeping its best match.
+    */
+   private Map<String, Double> match(String word) {
+      Map<String, Double> scores = new HashMap<String, Double>();
+      score(scores, word, EXACT);
+      Node node = find(word);
+      if (node != null)
+         for (String prefixed : node.words)
+            score(scores, prefixed, PREFIX);
+      for (String containing : containing(word))
+         score(scores, containing, SUBSTRING);
+      if (scores.isEmpty())
+         for (Map.Entry<String, Double> e : similar(word).entrySet())
+            score(scores, e.getKey(), SIMILAR * e.getValue());
+      return scores;
+   }//end match
+
+   private void score(Map<String, Double> scores, String word, double kind) {
+      Map<String, int[]> items = this._postings.get(word);
+      if (items == null)
+         return;
+      for (Map.Entry<String, int[]> e : items.entrySet()) {
+         double best = 0;
+         for (int field = 0; field < FIELD_WEIGHTS.length; ++field)
+            if (e.getValue()[field] > 0)
+               best = Math.max(best, kind * FIELD_WEIGHTS[field]);
+         Double score = scores.get(e.getKey());
+         if (score == null || score < best)
+            scores.put(e.getKey(), best);
+      }//end for
+   }//end score
+
+   /*
+    * The words the query word is a substring of, not counting the ones it
+    * starts. Words shorter than a trigram are looked for among all words.
+    */
+   private Set<String> containing(String word) {
+      Set<String> found = new HashSet<String>();
+      if (word.length() < 3) {
+         for (String candidate : this._postings.keySet())
+            if (candidate.indexOf(word) > 0)
+               found.add(candidate);
+         return found;
+      }//end if
+      Set<String> candidates = null;
+      for (int i = 0; i + 3 <= word.length(); ++i) {
+         Set<String> words = this._trigrams.get(word.substring(i, i + 3));
+         if (words == null)
+            return found;
+         if (candidates == null || words.size() < candidates.size())
+            candidates = words;
+      }//end for
+      for (String candidate : candidates)
+         if (candidate.indexOf(word) > 0)
+            found.add(candidate);
+      return found;
+   }//end containing
+
+   /*
+    * The words at least SIMILARITY alike the query word, with their
+    * similarity: shared trigrams over the trigrams of both.
+    */
+   private Map<String, Double> similar(String word) {
+      Set<String> trigrams = trigrams(word);
+      Map<String, Integer> shared = new HashMap<String, Integer>();
+      for (String trigram : trigrams) {
+         Set<String> words = this._trigrams.get(trigram);
+         if (words == null)
+            continue;
+         for (String candidate : words) {
+            Integer count = shared.get(candidate);
+            shared.put(candidate, count == null ? 1 : count + 1);
+         }//end for
+      }//end for
+      Map<String, Double> similar = new HashMap<String, Double>();
+      for (Map.Entry<String, Integer> e : shared.entrySet()) {
+         int both = e.getValue();
+         double similarity = (double) both / (trigrams.size() + this._trigramCounts.get(e.getKey()) - both);
+         if (similarity >= SIMILARITY)
+            similar.put(e.getKey(), similarity);
+      }//end for
+      return similar;
+   }//end similar
+
+   /*
+    * The limit best scored items, best first, picked with a heap of the
+    * best so far instead of sorting every match.
+    */
+   private List<MenuItem> top(final Map<String, Double> scores, int limit) {
+      // best first; equal scores by name.
+      Comparator<String> order = new Comparator<String>() {
+         public int compare(String a, String b) {
+            int byScore = Double.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : a.compareTo(b);
+         }
+      };
+      PriorityQueue<String> best = new PriorityQueue<String>(limit + 1, Collections.reverseOrder(order));
+      for (String name : scores.keySet()) {
+         best.add(name);
+         if (best.size() > limit)
+            best.poll();
+      }//end for
+      List<String> names = new ArrayList<String>(best);
+      Collections.sort(names, order);
+      List<MenuItem> items = new ArrayList<MenuItem>(names.size());
+      for (String name : names)
+         items.add(this._items.get(name));
+      return items;
+   }//end top
+
+   private void addWord(String word, String itemName, int field) {
+      Map<String, int[]> items = this._postings.get(word);
+      if (items == null) {
+         items = new LinkedHashMap<String, int[]>();
+         this._postings.put(word, items);
+         Node node = this._root;
+         for (int i = 0; i < word.length(); ++i) {
+            Node child = node.children.get(word.charAt(i));
+            if (child == null) {
+               child = new Node();
+               node.children.put(word.charAt(i), child);
+            }//end if
+            node = child;
+            node.words.add(word);
+         }//end for
+         Set<String> trigrams = trigrams(word);
+         this._trigramCounts.put(word, trigrams.size());
+         for (String trigram : trigrams) {
+            Set<String> words = this._trigrams.get(trigram);
+            if (words == null) {
+               words = new HashSet<String>();
+               this._trigrams.put(trigram, words);
+            }//end if
+            words.add(word);
+         }//end for
+      }//end if
+      int[] counts = items.get(itemName);
+      if (counts == null) {
+         counts = new int[FIELD_WEIGHTS.length];
+         items.put(itemName, counts);
+      }//end if
+      ++counts[field];
+   }//end addWord
+
+   private void removeItem(String itemName) {
+      MenuItem item = this._items.remove(itemName);
+      if (item == null)
+         return;
+      Set<String> words = new HashSet<String>();
+      for (String[] field : fields(item))
+         words.addAll(Arrays.asList(field));
+      for (String word : words) {
+         Map<String, int[]> items = this._postings.get(word);
+         items.remove(itemName);
+         if (!items.isEmpty())
+            continue;
+         // the last item with the word is gone; so is the word.
+         this._postings.remove(word);
+         this._trigramCounts.remove(word);
+         removeFromTrie(this._root, word, 0);
+         for (String trigram : trigrams(word)) {
+            Set<String> trigramWords = this._trigrams.get(trigram);
+            trigramWords.remove(word);
+            if (trigramWords.isEmpty())
+               this._trigrams.remove(trigram);
+         }//end for
+      }//end for
+   }//end removeItem
+
+   private static void copyTrie(Node from, Node to) {
+      to.words.addAll(from.words);
+      for (Map.Entry<Character, Node> e : from.children.entrySet()) {
+         Node child = new Node();
+         copyTrie(e.getValue(), child);
+         to.children.put(e.getKey(), child);
+      }//end for
+   }//end copyTrie
+
+   private static void removeFromTrie(Node node, String word, int depth) {
+      if (depth == word.length())
+         return;
+      Node child = node.children.get(word.charAt(depth));
+      child.words.remove(word);
+      removeFromTrie(child, word, depth + 1);
+      if (child.words.isEmpty())
+         node.children.remove(word.charAt(depth));
+   }//end removeFromTrie
+
+   private Node find(String prefix) {
+      Node node = this._root;
+      for (int i = 0; node != null && i < prefix.length(); ++i)
+         node = node.children.get(prefix.charAt(i));
+      return node;
+   }//end find
+
+   private static String[][] fields(MenuItem item) {
+      return new String[][] { words(item.getItemName()), words(item.getType()), words(item.getDescription()) };
+   }
+
+   /**
+    * @return the lower case words of the text: runs of letters and digits
+    */
+   static String[] words(String text) {
+      if (text == null)
+         return new String[0];
+      List<String> words = new ArrayList<String>();
+      StringBuilder word = new StringBuilder();
+      String lower = text.toLowerCase(Locale.ROOT);
+      for (int i = 0; i <= lower.length(); ++i) {
+         char c = i < lower.length() ? lower.charAt(i) : ' ';
+         if (Character.isLetterOrDigit(c)) {
+            word.append(c);
+         } else if (word.length() > 0) {
+            words.add(word.toString());
+            word.setLength(0);
+         }//end if
+      }//end for
+      return words.toArray(new String[words.size()]);
+   }//end words
+
+   /**
+    * @return the trigrams of the word padded with two spaces in front and
+    *         one behind, as pg_trgm takes them
+    */
+   static Set<String> trigrams(String word) {
+      String padded = "  " + word + " ";
+      Set<String> trigrams = new HashSet<String>();
+      for (int i = 0; i + 3 <= padded.length(); ++i)
+         trigrams.add(padded.substring(i, i + 3));
+      return trigrams;
+   }//end trigrams
+
+}//end MenuSearchIndex
@@ -0,0 +1,189 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class holds the menu operations. Searches are answered from the
+ * menu catalog; edits are limited to managers and keep the catalog in
+ * step with the Menu table.
+ *
+ */
+public class MenuService {
+
+   public static final int MAX_RESULTS = 100;
+
+   // what edit returns when no row was changed.
+   private static final long UNCHANGED = Long.MIN_VALUE;
+
+   // what the menu_search index of migration 004 is built on.
+   static final String SEARCH_TEXT = "lower(itemName || ' ' || type || ' ' || COALESCE(description, ''))";
+
+   // statement timeout of a search run in the database, in milliseconds,
+   // overridable with the cafe.timeout.search system property.
+   static final long SEARCH_TIMEOUT = Long.getLong("cafe.timeout.search", 1000);
+
+   private final Cafe _esql;
+
+   public MenuService(Cafe esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * @return the item, or null when it is not on the menu
+    */
+   public MenuItem findByName(String itemName) throws SQLException {
+      return this._esql.getMenuCatalog().get(itemName);
+   }
+
+   public List<MenuItem> findByType(String type) throws SQLException {
+      return this._esql.getMenuCatalog().getByType(type);
+   }
+
+   public Collection<MenuItem> findAll() throws SQLException {
+      return this._esql.getMenuCatalog().getAll();
+   }
+
+   /**
+    * Finds the items whose name, type or description hold every word of
+    * the query, as a word, the start of a word, part of a word, or a word
+    * spelled slightly differently. The catalog's search index answers;
+    * menus too large to index are searched in the database.
+    *
+    * @param query the words to look for, in any case
+    * @param limit the most items to return, at most MAX_RESULTS
+    * @return the matching items, best match first
+    * @throws java.sql.SQLException when the menu could not be searched
+    * @throws ServiceException when the limit is out of range
+    */
+   public List<MenuItem> search(String query, int limit) throws SQLException {
+      if (limit < 1 || limit > MAX_RESULTS)
+         throw new ServiceException(ServiceException.Reason.INVALID, "Search for between 1 and " + MAX_RESULTS + " items");
+      MenuSearchIndex index = this._esql.getMenuCatalog().getSearchIndex();
+      if (index != null)
+         return index.search(query, limit);
+      String[] words = MenuSearchIndex.words(query);
+      List<MenuItem> items = new ArrayList<MenuItem>();
+      if (words.length == 0)
+         return items;
+      // words hold only letters and digits, so none is a LIKE wildcard.
+      StringBuilder sql = new StringBuilder(
+         "SELECT itemName, type, price, description, imageURL FROM Menu WHERE ");
+      StringBuilder all = new StringBuilder();
+      List<Object> params = new ArrayList<Object>();
+      for (int i = 0; i < words.length; ++i) {
+         sql.append(i == 0 ? "" : " AND ").append("(" + SEARCH_TEXT + " LIKE ? OR ? <% " + SEARCH_TEXT + ")");
+         all.append(i == 0 ? "" : " ").append(words[i]);
+         params.add("%" + words[i] + "%");
+         params.add(words[i]);
+      }//end for
+      sql.append(" ORDER BY word_similarity(?, lower(itemName)) DESC, word_similarity(?, " + SEARCH_TEXT + ") DESC, " +
+                 "itemName LIMIT ?");
+      params.add(all.toString());
+      params.add(all.toString());
+      params.add(limit);
+      long timeout = this._esql.setThreadStatementTimeout(SEARCH_TIMEOUT);
+      try {
+         for (List<String> row : this._esql.executeQueryAndReturnResult(sql.toString(), params.toArray()))
+            items.add(new MenuItem(row.get(0), row.get(1), Double.parseDouble(row.get(2)), row.get(3), row.get(4)));
+      } finally {
+         this._esql.setThreadStatementTimeout(timeout);
+      }//end try
+      return items;
+   }//end search
+
+   /**
+    * Adds an item to the menu.
+    *
+    * @param acting the session of the manager making the change
+    * @param item the new item
+    * @throws java.sql.SQLException when the item could not be stored
+    * @throws ServiceException when the acting user is not a manager
+    */
+   public void addItem(UserSession acting, MenuItem item) throws SQLException {
+      requireManager(acting);
+      long version = edit(
+         "INSERT INTO MENU (itemName, type, price, description, imageURL) VALUES (?, ?, ?, ?, ?)",
+         item.getItemName(), item.getType(), item.getPrice(), item.getDescription(), item.getImageURL());
+      this._esql.getMenuCatalog().put(null, item, version);
+   }//end addItem
+
+   /**
+    * Deletes an item from the menu.
+    *
+    * @param acting the session of the manager making the change
+    * @param itemName the item to delete
+    * @return false when there was no such item
+    * @throws java.sql.SQLException when the item could not be deleted, e.g.
+    *         because orders still reference it
+    * @throws ServiceException when the acting user is not a manager
+    */
+   public boolean deleteItem(UserSession acting, String itemName) throws SQLException {
+      requireManager(acting);
+      long version = edit("DELETE FROM MENU WHERE itemName = ?", itemName);
+      if (version == UNCHANGED)
+         return false;
+      this._esql.getMenuCatalog().remove(itemName, version);
+      return true;
+   }//end deleteItem
+
+   /**
+    * Replaces a menu item, possibly under a new name.
+    *
+    * @param acting the session of the manager making the change
+    * @param itemName the current name of the item
+    * @param item the item as it should be stored
+    * @return false when there was no such item
+    * @throws java.sql.SQLException when the item could not be updated
+    * @throws ServiceException when the acting user is not a manager
+    */
+   public boolean updateItem(UserSession acting, String itemName, MenuItem item) throws SQLException {
+      requireManager(acting);
+      long version = edit(
+         "UPDATE MENU SET itemName = ?, type = ?, price = ?, description = ?, imageURL = ? WHERE itemName = ?",
+         item.getItemName(), item.getType(), item.getPrice(), item.getDescription(), item.getImageURL(), itemName);
+      if (version == UNCHANGED)
+         return false;
+      this._esql.getMenuCatalog().put(itemName, item, version);
+      return true;
+   }//end updateItem
+
+   /*
+    * Runs one edit of the Menu table and reads back the menu version it
+    * left in the same transaction, so the catalog takes the edit without
+    * reloading. Returns UNCHANGED when no row was changed.
+    */
+   private long edit(String sql, Object... params) throws SQLException {
+      this._esql.begin();
+      try {
+         long version = this._esql.executeUpdate(sql, params) == 0
+            ? UNCHANGED : this._esql.getMenuCatalog().editVersion();
+         this._esql.commit();
+         return version;
+      }catch (SQLException e) {
+         this._esql.rollback();
+         throw e;
+      }catch (RuntimeException e) {
+         this._esql.rollback();
+         throw e;
+      }//end try
+   }//end edit
+
+   private static void requireManager(UserSession acting) {
+      if (!acting.isManager())
+         throw new ServiceException(ServiceException.Reason.FORBIDDEN, "Only managers can edit the menu");
+   }//end requireManager
+
+}//end MenuService
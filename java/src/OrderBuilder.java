@@ -0,0 +1,195 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class collects the items of a new order in memory and writes the
+ * whole order in one transaction: the Orders row and a single batch of
+ * ItemStatus rows, or, when the session is pipelined, both inserts in one
+ * request. Items are priced from the in-memory menu catalog and
+ * the order id comes from the session's OrderIdAllocator. The number of
+ * round trips and commits stays the same no matter how many items are
+ * ordered. When the session has an OrderLog the order is appended to it
+ * instead, with an id from its reserve, and reaches the database later.
+ *
+ */
+public class OrderBuilder {
+
+   // status every new item starts in.
+   public static final String INITIAL_STATUS = "Hasn't Started";
+
+   static final String INSERT_ORDER =
+      "INSERT INTO Orders (orderid, login, paid, timeStampRecieved, total) VALUES (?, ?, ?, ?, ?)";
+   static final String INSERT_ITEM =
+      "INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments, price) VALUES ";
+   static final String ITEM_VALUES = "(?, ?, ?, ?, ?, ?)";
+
+   private final Cafe _esql;
+   private final String _login;
+
+   // item names in the order they were added; an order holds each item once.
+   private final Set<String> _items = new LinkedHashSet<String>();
+
+   // filled in by place().
+   private final Map<String, Double> _prices = new HashMap<String, Double>();
+   private double _total = 0.0;
+   private int _orderId = -1;
+
+   /**
+    * Starts a new, empty order
+    *
+    * @param esql the database session the order is written through
+    * @param login the login of the customer placing the order
+    */
+   public OrderBuilder(Cafe esql, String login) {
+      this._esql = esql;
+      this._login = login;
+   }//end OrderBuilder
+
+   /**
+    * Adds an item to the order. Nothing is sent to the database until
+    * place() is called.
+    *
+    * @param itemName the menu item name
+    * @return false when the item was already part of the order
+    */
+   public boolean addItem(String itemName) {
+      if (this._orderId != -1)
+         throw new IllegalStateException("Order " + this._orderId + " has already been placed");
+      return this._items.add(itemName);
+   }//end addItem
+
+   public List<String> getItems() {
+      return Collections.unmodifiableList(new ArrayList<String>(this._items));
+   }
+
+   public boolean isEmpty() {
+      return this._items.isEmpty();
+   }
+
+   /**
+    * Prices the items and writes the order. Either the Orders row and all
+    * ItemStatus rows are committed together, or nothing is.
+    *
+    * @return the id of the new order
+    * @throws java.sql.SQLException when the order could not be written
+    * @throws IllegalArgumentException when an item is not on the menu
+    */
+   public int place() throws SQLException {
+      if (this._orderId != -1)
+         throw new IllegalStateException("Order " + this._orderId + " has already been placed");
+      if (this._items.isEmpty())
+         throw new IllegalStateException("An order needs at least one item");
+
+      priceItems();
+      Timestamp now = new Timestamp(System.currentTimeMillis());
+      OrderLog log = this._esql.getOrderLog();
+      if (log != null) {
+         this._orderId = log.append(this._login, now, this._total, getItems()).getOrderId();
+         return this._orderId;
+      }//end if
+      int orderId = this._esql.getOrderIdAllocator().next();
+
+      if (this._esql.isPipelined()) {
+         writePipelined(orderId, now);
+         this._orderId = orderId;
+         return orderId;
+      }//end if
+      this._esql.begin();
+      try {
+         this._esql.executeUpdate(INSERT_ORDER, orderId, this._login, Boolean.FALSE, now, this._total);
+
+         List<Object[]> rows = new ArrayList<Object[]>(this._items.size());
+         for (String item : this._items)
+            rows.add(new Object[] { orderId, item, now, INITIAL_STATUS, "", this._prices.get(item) });
+         this._esql.executeBatch(INSERT_ITEM + ITEM_VALUES, rows);
+
+         this._esql.commit();
+         this._orderId = orderId;
+         return orderId;
+      }catch (SQLException e) {
+         this._esql.rollback();
+         throw e;
+      }catch (RuntimeException e) {
+         this._esql.rollback();
+         throw e;
+      }//end try
+   }//end place
+
+   /*
+    * Sends the Orders row and one multi-row ItemStatus insert as a single
+    * pipeline: one round trip, committed together.
+    */
+   private void writePipelined(int orderId, Timestamp now) throws SQLException {
+      StringBuilder items = new StringBuilder(INSERT_ITEM);
+      List<Object> values = new ArrayList<Object>(this._items.size() * 6);
+      for (String item : this._items) {
+         items.append(values.isEmpty() ? "" : ", ").append(ITEM_VALUES);
+         values.addAll(Arrays.asList(new Object[] { orderId, item, now, INITIAL_STATUS, "", this._prices.get(item) }));
+      }//end for
+      this._esql.executePipeline(
+         new String[] { INSERT_ORDER, items.toString() },
+         new Object[][] { { orderId, this._login, Boolean.FALSE, now, this._total }, values.toArray() });
+   }//end writePipelined
+
+   public int getOrderId() {
+      return this._orderId;
+   }
+
+   /**
+    * @return the order total, known once place() has priced the items
+    */
+   public double getTotal() {
+      return this._total;
+   }
+
+   /**
+    * @param itemName an item of the order
+    * @return the item's menu price, known once place() has priced the items
+    */
+   public Double getPrice(String itemName) {
+      return this._prices.get(itemName);
+   }
+
+   /*
+    * Prices every item from the menu catalog.
+    */
+   private void priceItems() throws SQLException {
+      MenuCatalog menu = this._esql.getMenuCatalog();
+      List<String> unknown = new ArrayList<String>();
+      double total = 0.0;
+      this._prices.clear();
+      for (String item : this._items) {
+         MenuItem menuItem = menu.get(item);
+         if (menuItem == null) {
+            unknown.add(item);
+         } else {
+            this._prices.put(item, menuItem.getPrice());
+            total += menuItem.getPrice();
+         }//end if
+      }//end for
+      if (!unknown.isEmpty())
+         throw new IllegalArgumentException("Not on the menu: " + unknown);
+      this._total = total;
+   }//end priceItems
+
+}//end OrderBuilder
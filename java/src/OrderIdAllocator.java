@@ -0,0 +1,105 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class hands out order ids reserved from the orders_orderid_seq
+ * sequence in blocks. One query reserves a whole block, so most orders
+ * get their id without a round trip, and the id is known before the
+ * Orders row is written.
+ *
+ * Every id comes from nextval on the shared sequence, so ids never collide
+ * with other instances or with rows that take the serial default; they
+ * are merely not dense. Ids still in the block when the process exits
+ * are never used.
+ *
+ * Taking an id from the current block is lock-free; only the thread that
+ * finds the block used up reserves the next one while the others wait.
+ *
+ */
+public class OrderIdAllocator {
+
+   public static final String SEQUENCE = "orders_orderid_seq";
+
+   // ids reserved per round trip, overridable with cafe.orderid.block.
+   static final int DEFAULT_BLOCK_SIZE = 50;
+
+   /**
+    * One reserved block of ids, handed out front to back.
+    */
+   private static final class Block {
+      final int[] ids;
+      final AtomicInteger next = new AtomicInteger();
+
+      Block(int[] ids) {
+         this.ids = ids;
+      }
+   }//end Block
+
+   private static final Block EMPTY = new Block(new int[0]);
+
+   private final Cafe _esql;
+   private final String _sequence;
+   private final int _blockSize;
+
+   private final AtomicReference<Block> _block = new AtomicReference<Block>(EMPTY);
+
+   /**
+    * @param esql the database session the blocks are reserved through
+    * @param sequence the sequence to take ids from
+    * @param blockSize the number of ids reserved per round trip
+    */
+   public OrderIdAllocator(Cafe esql, String sequence, int blockSize) {
+      if (blockSize < 1)
+         throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+      this._esql = esql;
+      this._sequence = sequence;
+      this._blockSize = blockSize;
+   }//end OrderIdAllocator
+
+   /**
+    * @return an order id no other caller or instance will be given
+    * @throws java.sql.SQLException when a new block could not be reserved
+    */
+   public int next() throws SQLException {
+      while (true) {
+         Block block = this._block.get();
+         int i = block.next.getAndIncrement();
+         if (i < block.ids.length)
+            return block.ids[i];
+         refill(block);
+      }//end while
+   }//end next
+
+   public int getBlockSize() {
+      return this._blockSize;
+   }
+
+   /*
+    * Replaces the used-up block, unless another thread already did.
+    */
+   private synchronized void refill(Block used) throws SQLException {
+      if (this._block.get() != used)
+         return;
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+         "SELECT nextval(?) FROM generate_series(1, ?)", this._sequence, this._blockSize);
+      int[] ids = new int[rows.size()];
+      for (int i = 0; i < ids.length; ++i)
+         ids[i] = Integer.parseInt(rows.get(i).get(0));
+      this._block.set(new Block(ids));
+   }//end refill
+
+}//end OrderIdAllocator
@@ -0,0 +1,824 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * This class lets a register take orders without waiting on the database.
+ * New orders are appended to a log in a local directory and a background
+ * replayer writes them to Orders and ItemStatus; while the database is
+ * unreachable they wait in the log, and the register keeps pricing from
+ * the in-memory menu catalog.
+ *
+ * The log is a series of segment files of SEGMENT_SIZE bytes, each memory
+ * mapped. A record is its length, the CRC32 of its contents and the
+ * contents; on opening, the log is read back up to the first record that
+ * is cut short or fails its checksum. An order is acknowledged once its
+ * record is forced to disk. Appenders that arrive while a force is under
+ * way wait for the next one, which covers all of them, so a busy register
+ * forces the log once per group of orders rather than once per order.
+ *
+ * Order ids are taken from a reserve of RESERVE ids drawn from
+ * orders_orderid_seq while the database is reachable and kept in the
+ * state file, so orders taken offline never collide with any other. The
+ * state file also records how far the log was replayed. Replaying an
+ * order twice after a crash inserts nothing the second time. An order the
+ * database refuses for good, such as one naming an item deleted from the
+ * menu meanwhile, is appended to rejected.txt and skipped.
+ *
+ * Orders not replayed yet can be read back by id; edits of them wait for
+ * the replay. They do not show in order listings until replayed.
+ *
+ */
+public class OrderLog {
+
+   // defaults, overridable with the cafe.offline.segment (bytes),
+   // cafe.offline.reserve and cafe.offline.replay (milliseconds) system
+   // properties.
+   static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+   static final int DEFAULT_RESERVE = 1000;
+   static final long DEFAULT_REPLAY_MILLIS = 200;
+
+   // most orders replayed in one transaction.
+   static final int REPLAY_BATCH = 500;
+
+   // a batch is one statement per table whatever its size, each column
+   // passed as an array, so the rollup triggers run once per batch.
+   static final String INSERT_ORDERS =
+      "INSERT INTO Orders (orderid, login, paid, timeStampRecieved, total) " +
+      "SELECT orderid, login, false, received, total " +
+      "FROM unnest(?::integer[], ?::text[], ?::timestamp[], ?::numeric[]) AS o(orderid, login, received, total) " +
+      "ON CONFLICT (orderid) DO NOTHING";
+   // records hold no prices; items are priced from the menu they are
+   // replayed into.
+   static final String INSERT_ITEMS =
+      "INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments, price) " +
+      "SELECT i.orderid, i.itemName, i.received, ?::text, '', m.price " +
+      "FROM unnest(?::integer[], ?::text[], ?::timestamp[]) AS i(orderid, itemName, received) " +
+      "LEFT JOIN Menu m ON m.itemName = i.itemName " +
+      "ON CONFLICT (orderid, itemName) DO NOTHING";
+
+   // record layout: length and checksum of the contents, then the contents.
+   private static final int HEADER = 8;
+   private static final byte ORDER = 1;
+
+   private static final String STATE = "state";
+   private static final String REJECTED = "rejected.txt";
+
+   /**
+    * One mapped segment file.
+    */
+   private static final class Segment {
+      final long index;
+      final RandomAccessFile file;
+      final MappedByteBuffer buffer;
+
+      Segment(long index, RandomAccessFile file, MappedByteBuffer buffer) {
+         this.index = index;
+         this.file = file;
+         this.buffer = buffer;
+      }
+   }//end Segment
+
+   /**
+    * One order of the log and the position just past its record.
+    */
+   private static final class Record {
+      final OrderReceipt order;
+      final long end;
+
+      Record(OrderReceipt order, long end) {
+         this.order = order;
+         this.end = end;
+      }
+   }//end Record
+
+   private final Cafe _esql;
+   private final File _dir;
+   private final int _segmentSize;
+   private final int _reserveSize;
+   private final RandomAccessFile _lockFile;
+   private final FileLock _lock;
+
+   // guarded by _appendLock. Positions count bytes from the start of
+   // segment 0, so the segment of a position is position / _segmentSize.
+   private final Object _appendLock = new Object();
+   private volatile Segment _current;
+   private volatile long _written;
+   private final ArrayDeque<Integer> _reserve = new ArrayDeque<Integer>();
+   private boolean _closed = false;
+
+   // guarded by _syncLock; lock order is _appendLock, then _syncLock.
+   private final Object _syncLock = new Object();
+   private long _durable;
+   private boolean _syncing = false;
+
+   // the orders not replayed yet, in log order and by id.
+   private final ConcurrentLinkedQueue<Record> _unreplayed = new ConcurrentLinkedQueue<Record>();
+   private final Map<Integer, OrderReceipt> _pending = new ConcurrentHashMap<Integer, OrderReceipt>();
+
+   // guarded by _replayLock.
+   private final Object _replayLock = new Object();
+   private long _replayed;
+   private long _oldestSegment;
+   private SQLException _replayFailure = null;
+
+   private final ScheduledExecutorService _replayer;
+
+   private final AtomicLong _appends = new AtomicLong();
+   private final AtomicLong _syncs = new AtomicLong();
+   private final AtomicLong _replayedOrders = new AtomicLong();
+   private final AtomicLong _rejected = new AtomicLong();
+
+   /**
+    * Opens the log in a directory, creating it when missing, reads back
+    * the orders not replayed yet and starts the replayer.
+    *
+    * @param esql the session the orders are replayed through
+    * @param dir the directory of the log; one process at a time
+    * @throws java.io.IOException when the log could not be read or is in
+    *         use by another process
+    */
+   public static OrderLog open(Cafe esql, File dir) throws IOException {
+      return new OrderLog(esql, dir, Integer.getInteger("cafe.offline.segment", DEFAULT_SEGMENT_SIZE),
+                          Integer.getInteger("cafe.offline.reserve", DEFAULT_RESERVE),
+                          Long.getLong("cafe.offline.replay", DEFAULT_REPLAY_MILLIS));
+   }//end open
+
+   OrderLog(Cafe esql, File dir, int segmentSize, int reserveSize, long replayMillis) throws IOException {
+      if (!dir.isDirectory() && !dir.mkdirs())
+         throw new IOException("Cannot create " + dir);
+      this._esql = esql;
+      this._dir = dir;
+      this._reserveSize = reserveSize;
+      this._lockFile = new RandomAccessFile(new File(dir, "lock"), "rw");
+      this._lock = this._lockFile.getChannel().tryLock();
+      if (this._lock == null) {
+         this._lockFile.close();
+         throw new IOException(dir + " is in use by another process");
+      }//end if
+      try {
+         Properties state = readState();
+         // positions stay valid only with the segment size they were written with.
+         this._segmentSize = Integer.parseInt(state.getProperty("segmentSize", Integer.toString(segmentSize)));
+         this._replayed = Long.parseLong(state.getProperty("replayed", "0"));
+         for (String id : state.getProperty("reserve", "").split(","))
+            if (!id.isEmpty())
+               this._reserve.add(Integer.valueOf(id));
+         recover();
+      }catch (IOException e) {
+         this._lockFile.close();
+         throw e;
+      }catch (RuntimeException e) {
+         this._lockFile.close();
+         throw e;
+      }//end try
+      try {
+         topUp();
+      }catch (SQLException e) {
+         System.err.println("No order ids reserved for offline orders yet: " + e.getMessage());
+      }//end try
+      this._replayer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "cafe-order-log-replayer");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      this._replayer.scheduleWithFixedDelay(new Runnable() {
+         public void run() { background(); }
+      }, 0, replayMillis, TimeUnit.MILLISECONDS);
+   }//end OrderLog
+
+   /**
+    * Appends a new order and waits until it is on disk.
+    *
+    * @param login the customer placing the order
+    * @param received the time the order was taken
+    * @param total the order total
+    * @param items the item names
+    * @return the order, with every item in OrderBuilder.INITIAL_STATUS
+    * @throws java.sql.SQLException when no reserved order id is left and
+    *         no more could be reserved
+    * @throws IllegalStateException when the log is closed
+    */
+   public OrderReceipt append(String login, Timestamp received, double total, List<String> items)
+      throws SQLException {
+      while (true) {
+         Record record = write(login, received, total, items);
+         if (record != null) {
+            awaitDurable(record.end);
+            return record.order;
+         }//end if
+         // the reserve ran out faster than the replayer tops it up.
+         try {
+            topUp();
+         }catch (SQLException e) {
+            SQLException none = new SQLException("No order ids are left for offline orders", "53000");
+            none.initCause(e);
+            throw none;
+         }//end try
+      }//end while
+   }//end append
+
+   /*
+    * Writes the record of a new order to the mapped segment, rolling over
+    * to the next segment when it does not fit.
+    *
+    * @return the order and where its record ends; null when no reserved
+    *         order id is left
+    */
+   private Record write(String login, Timestamp received, double total, List<String> items) throws SQLException {
+      synchronized (this._appendLock) {
+         if (this._closed)
+            throw new IllegalStateException("The order log is closed");
+         Integer orderid = this._reserve.poll();
+         if (orderid == null)
+            return null;
+         List<OrderReceipt.Line> lines = new ArrayList<OrderReceipt.Line>(items.size());
+         for (String item : items)
+            lines.add(new OrderReceipt.Line(item, OrderBuilder.INITIAL_STATUS, received, ""));
+         OrderReceipt order = new OrderReceipt(new OrderSummary(orderid, login, false, received, total), lines);
+         byte[] record = encode(order);
+         if (record.length > this._segmentSize - HEADER) {
+            this._reserve.addFirst(orderid);
+            throw new IllegalArgumentException("Order of " + items.size() + " items is too large for the log");
+         }//end if
+         int offset = (int) (this._written - this._current.index * this._segmentSize);
+         if (offset + HEADER + record.length > this._segmentSize) {
+            roll();
+            offset = 0;
+         }//end if
+         CRC32 crc = new CRC32();
+         crc.update(record);
+         ByteBuffer buffer = this._current.buffer.duplicate();
+         buffer.position(offset + HEADER);
+         buffer.put(record);
+         this._current.buffer.putInt(offset + 4, (int) crc.getValue());
+         this._current.buffer.putInt(offset, record.length);
+         Record written = new Record(order, this._current.index * this._segmentSize + offset + HEADER + record.length);
+         this._written = written.end;
+         this._pending.put(orderid, order);
+         this._unreplayed.add(written);
+         this._appends.incrementAndGet();
+         return written;
+      }//end synchronized
+   }//end write
+
+   /**
+    * @param orderid an order id
+    * @return the order when it was taken by this log and not replayed
+    *         yet, null otherwise
+    */
+   public OrderReceipt get(int orderid) {
+      return this._pending.get(orderid);
+   }
+
+   /**
+    * Makes sure an order taken by this log is in the database, replaying
+    * the log now when it is not.
+    *
+    * @param orderid an order id
+    * @throws java.sql.SQLException when the order is still not replayed
+    */
+   public void awaitReplay(int orderid) throws SQLException {
+      if (!this._pending.containsKey(orderid))
+         return;
+      synchronized (this._replayLock) {
+         replay();
+         if (this._pending.containsKey(orderid))
+            throw this._replayFailure != null ? this._replayFailure
+               : new SQLException("Order " + orderid + " is not stored in the database yet", "57P03");
+      }//end synchronized
+   }//end awaitReplay
+
+   /**
+    * Stops the replayer after one last replay, and closes the log. Orders
+    * still not replayed are replayed when the log is opened again.
+    */
+   public void close() {
+      synchronized (this._appendLock) {
+         if (this._closed)
+            return;
+         this._closed = true;
+      }//end synchronized
+      this._replayer.shutdown();
+      try {
+         this._replayer.awaitTermination(30, TimeUnit.SECONDS);
+      }catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }//end try
+      synchronized (this._replayLock) {
+         replay();
+         try {
+            writeState();
+         }catch (IOException e) {
+            System.err.println("Cannot write the order log state: " + e.getMessage());
+         }//end try
+      }//end synchronized
+      this._current.buffer.force();
+      try {
+         this._current.file.close();
+         this._lock.release();
+         this._lockFile.close();
+      }catch (IOException e) {
+         // ignored.
+      }//end try
+      if (!this._pending.isEmpty())
+         System.err.println(this._pending.size() + " orders wait in " + this._dir + " for the database");
+   }//end close
+
+   /** @return the orders not replayed yet */
+   public int getPending() { return this._pending.size(); }
+
+   /** @return the order ids left for new orders */
+   public int getReserve() {
+      synchronized (this._appendLock) {
+         return this._reserve.size();
+      }
+   }
+
+   /** @return the orders appended since the log was opened */
+   public long getAppends() { return this._appends.get(); }
+
+   /** @return the forces of the log to disk, each covering one or more orders */
+   public long getSyncs() { return this._syncs.get(); }
+
+   /** @return the orders replayed since the log was opened */
+   public long getReplayed() { return this._replayedOrders.get(); }
+
+   /** @return the orders the database refused, see rejected.txt */
+   public long getRejected() { return this._rejected.get(); }
+
+   /**
+    * Writes the counters in the Prometheus text exposition format.
+    */
+   public void writePrometheus(PrintWriter out) {
+      out.println("# HELP cafe_order_log_appends_total Orders appended to the order log.");
+      out.println("# TYPE cafe_order_log_appends_total counter");
+      out.println("cafe_order_log_appends_total " + getAppends());
+      out.println("# HELP cafe_order_log_syncs_total Forces of the order log to disk.");
+      out.println("# TYPE cafe_order_log_syncs_total counter");
+      out.println("cafe_order_log_syncs_total " + getSyncs());
+      out.println("# HELP cafe_order_log_replayed_total Orders replayed into the database.");
+      out.println("# TYPE cafe_order_log_replayed_total counter");
+      out.println("cafe_order_log_replayed_total " + getReplayed());
+      out.println("# HELP cafe_order_log_rejected_total Orders the database refused.");
+      out.println("# TYPE cafe_order_log_rejected_total counter");
+      out.println("cafe_order_log_rejected_total " + getRejected());
+      out.println("# HELP cafe_order_log_pending Orders waiting to be replayed.");
+      out.println("# TYPE cafe_order_log_pending gauge");
+      out.println("cafe_order_log_pending " + getPending());
+      out.println("# HELP cafe_order_log_reserve Order ids left for new orders.");
+      out.println("# TYPE cafe_order_log_reserve gauge");
+      out.println("cafe_order_log_reserve " + getReserve());
+      out.flush();
+   }//end writePrometheus
+
+   @Override
+   public String toString() {
+      return "order log " + this._dir + ": " + getAppends() + " appended, " + getSyncs() + " syncs, "
+         + getReplayed() + " replayed, " + getRejected() + " rejected, " + getPending() + " pending, "
+         + getReserve() + " ids reserved";
+   }
+
+   /*
+    * Waits until the log is on disk up to end. The first waiter forces the
+    * log for everyone appended so far; the others wait for it.
+    */
+   private void awaitDurable(long end) throws SQLException {
+      while (true) {
+         synchronized (this._syncLock) {
+            try {
+               while (this._syncing && this._durable < end)
+                  this._syncLock.wait();
+            }catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new SQLException("Interrupted while writing the order log");
+            }//end try
+            if (this._durable >= end)
+               return;
+            this._syncing = true;
+         }//end synchronized
+         // _written is read before _current: a position in a newer segment
+         // implies that segment is current, and older ones were forced
+         // when they were rolled over.
+         long target = this._written;
+         Segment segment = this._current;
+         boolean forced = false;
+         try {
+            segment.buffer.force();
+            forced = true;
+         }finally {
+            synchronized (this._syncLock) {
+               this._syncing = false;
+               if (forced) {
+                  this._syncs.incrementAndGet();
+                  if (target > this._durable)
+                     this._durable = target;
+               }//end if
+               this._syncLock.notifyAll();
+            }//end synchronized
+         }//end try
+      }//end while
+   }//end awaitDurable
+
+   /*
+    * Forces the full segment and starts the next one. Called with
+    * _appendLock held.
+    */
+   private void roll() throws SQLException {
+      Segment full = this._current;
+      full.buffer.force();
+      long end = (full.index + 1) * this._segmentSize;
+      synchronized (this._syncLock) {
+         if (this._written > this._durable)
+            this._durable = this._written;
+         this._syncLock.notifyAll();
+      }//end synchronized
+      try {
+         this._current = map(full.index + 1);
+         full.file.close();
+      }catch (IOException e) {
+         throw new SQLException("Cannot start a new order log segment: " + e.getMessage(), "58030");
+      }//end try
+      this._written = end;
+   }//end roll
+
+   private Segment map(long index) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(segmentFile(index), "rw");
+      try {
+         if (file.length() < this._segmentSize)
+            file.setLength(this._segmentSize);
+         return new Segment(index, file, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this._segmentSize));
+      }catch (IOException e) {
+         file.close();
+         throw e;
+      }//end try
+   }//end map
+
+   private File segmentFile(long index) {
+      return new File(this._dir, String.format("orders-%016d.log", index));
+   }
+
+   /*
+    * Reads back the records after the replayed position, drops the
+    * reserved ids they used and maps the segment to append to. Appending
+    * resumes after the last good record, and whatever follows it is
+    * cleared.
+    */
+   private void recover() throws IOException {
+      long index = this._replayed / this._segmentSize;
+      // segments before the replayed one are left from a crash after a replay.
+      long old = index - 1;
+      while (old >= 0 && segmentFile(old).delete())
+         old--;
+      this._oldestSegment = index;
+      long position = this._replayed;
+      int used = -1;
+      List<Integer> reserve = new ArrayList<Integer>(this._reserve);
+      while (segmentFile(index).exists()) {
+         byte[] data = readSegment(index);
+         int offset = index == this._replayed / this._segmentSize ? (int) (this._replayed % this._segmentSize) : 0;
+         while (offset + HEADER <= data.length) {
+            ByteBuffer header = ByteBuffer.wrap(data, offset, HEADER);
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || offset + HEADER + length > data.length)
+               break;
+            CRC32 crc = new CRC32();
+            crc.update(data, offset + HEADER, length);
+            if ((int) crc.getValue() != checksum)
+               break;
+            OrderReceipt order = decode(data, offset + HEADER, length);
+            offset += HEADER + length;
+            position = index * this._segmentSize + offset;
+            this._pending.put(order.getOrderId(), order);
+            this._unreplayed.add(new Record(order, position));
+            used = Math.max(used, reserve.indexOf(order.getOrderId()));
+         }//end while
+         if (!segmentFile(index + 1).exists()) {
+            // the segment appended to last: clear what follows the last good record.
+            this._current = map(index);
+            for (int i = offset; i < this._segmentSize; i++)
+               this._current.buffer.put(i, (byte) 0);
+            this._current.buffer.force();
+            this._written = index * this._segmentSize + offset;
+            break;
+         }//end if
+         index++;
+      }//end while
+      if (this._current == null) {
+         this._current = map(index);
+         this._written = position;
+      }//end if
+      this._durable = this._written;
+      for (int i = 0; i <= used; i++)
+         this._reserve.poll();
+   }//end recover
+
+   private byte[] readSegment(long index) throws IOException {
+      byte[] data = new byte[(int) Math.min(segmentFile(index).length(), this._segmentSize)];
+      DataInputStream in = new DataInputStream(new FileInputStream(segmentFile(index)));
+      try {
+         in.readFully(data);
+      }finally {
+         in.close();
+      }//end try
+      return data;
+   }//end readSegment
+
+   // runs on the replayer thread.
+   private void background() {
+      try {
+         topUp();
+      }catch (SQLException e) {
+         // the reserve is topped up on a later run.
+      }//end try
+      synchronized (this._replayLock) {
+         replay();
+      }//end synchronized
+   }//end background
+
+   /*
+    * Reserves more order ids once fewer than half of RESERVE are left;
+    * appenders that ran out wait for the same round trip.
+    */
+   private synchronized void topUp() throws SQLException {
+      int missing;
+      synchronized (this._appendLock) {
+         missing = this._reserveSize - this._reserve.size();
+      }//end synchronized
+      if (missing < (this._reserveSize + 1) / 2)
+         return;
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+         "SELECT nextval(?) FROM generate_series(1, ?)", OrderIdAllocator.SEQUENCE, missing);
+      synchronized (this._appendLock) {
+         for (List<String> row : rows)
+            this._reserve.add(Integer.valueOf(row.get(0)));
+      }//end synchronized
+      synchronized (this._replayLock) {
+         try {
+            writeState();
+         }catch (IOException e) {
+            System.err.println("Cannot write the order log state: " + e.getMessage());
+         }//end try
+      }//end synchronized
+   }//end topUp
+
+   /*
+    * Writes the orders on disk to the database, a batch per transaction,
+    * until none is left or the database cannot be reached. Called with
+    * _replayLock held.
+    */
+   private void replay() {
+      long durable;
+      synchronized (this._syncLock) {
+         durable = this._durable;
+      }//end synchronized
+      while (true) {
+         List<Record> batch = new ArrayList<Record>();
+         for (Record r : this._unreplayed) {
+            if (r.end > durable || batch.size() == REPLAY_BATCH)
+               break;
+            batch.add(r);
+         }//end for
+         if (batch.isEmpty())
+            return;
+         try {
+            try {
+               insert(batch);
+            }catch (SQLException e) {
+               if (waitable(e))
+                  throw e;
+               // one of the orders is refused; find it.
+               for (Record r : batch) {
+                  try {
+                     insert(Collections.singletonList(r));
+                  }catch (SQLException refused) {
+                     if (waitable(refused))
+                        throw refused;
+                     reject(r, refused);
+                  }//end try
+                  replayed(r);
+               }//end for
+               this._replayFailure = null;
+               continue;
+            }//end try
+            for (Record r : batch)
+               replayed(r);
+            this._replayFailure = null;
+         }catch (SQLException e) {
+            this._replayFailure = e;
+            return;
+         }finally {
+            try {
+               writeState();
+            }catch (IOException e) {
+               System.err.println("Cannot write the order log state: " + e.getMessage());
+            }//end try
+            deleteReplayedSegments();
+         }//end try
+      }//end while
+   }//end replay
+
+   private void insert(List<Record> batch) throws SQLException {
+      int n = batch.size();
+      String[] orderids = new String[n], logins = new String[n], received = new String[n], totals = new String[n];
+      List<String> itemOrders = new ArrayList<String>(), itemNames = new ArrayList<String>(), itemTimes = new ArrayList<String>();
+      for (int i = 0; i < n; i++) {
+         OrderReceipt o = batch.get(i).order;
+         orderids[i] = Integer.toString(o.getOrderId());
+         logins[i] = o.getLogin();
+         received[i] = o.getTimeStampRecieved().toString();
+         totals[i] = Double.toString(o.getTotal());
+         for (OrderReceipt.Line line : o.getItems()) {
+            itemOrders.add(orderids[i]);
+            itemNames.add(line.getItemName());
+            itemTimes.add(received[i]);
+         }//end for
+      }//end for
+      this._esql.begin();
+      try {
+         this._esql.executeUpdate(INSERT_ORDERS, StatusWriter.array(orderids), StatusWriter.array(logins),
+                                  StatusWriter.array(received), StatusWriter.array(totals));
+         this._esql.executeUpdate(INSERT_ITEMS, OrderBuilder.INITIAL_STATUS,
+                                  StatusWriter.array(itemOrders.toArray(new String[0])),
+                                  StatusWriter.array(itemNames.toArray(new String[0])),
+                                  StatusWriter.array(itemTimes.toArray(new String[0])));
+         this._esql.commit();
+      }catch (SQLException e) {
+         this._esql.rollback();
+         throw e;
+      }catch (RuntimeException e) {
+         this._esql.rollback();
+         throw e;
+      }//end try
+   }//end insert
+
+   private void replayed(Record r) {
+      this._unreplayed.poll();
+      this._replayed = r.end;
+      this._pending.remove(r.order.getOrderId());
+      this._replayedOrders.incrementAndGet();
+      this._esql.getFavoritesService().ordered(r.order.getLogin());
+   }//end replayed
+
+   private void reject(Record r, SQLException e) {
+      this._rejected.incrementAndGet();
+      System.err.println("Order " + r.order.getOrderId() + " was refused by the database: " + e.getMessage());
+      try {
+         PrintWriter out = new PrintWriter(new FileWriter(new File(this._dir, REJECTED), true));
+         try {
+            StringBuilder items = new StringBuilder();
+            for (OrderReceipt.Line line : r.order.getItems())
+               items.append(items.length() == 0 ? "" : ",").append(line.getItemName());
+            out.println(r.order.getOrderId() + "\t" + r.order.getLogin() + "\t" + r.order.getTimeStampRecieved()
+                        + "\t" + r.order.getTotal() + "\t" + items + "\t" + e.getMessage().replaceAll("\\s+", " "));
+         }finally {
+            out.close();
+         }//end try
+      }catch (IOException io) {
+         System.err.println("Cannot write " + REJECTED + ": " + io.getMessage());
+      }//end try
+   }//end reject
+
+   // failures that go away once the database is reachable again, and
+   // replays cut short by an interrupt, which the database refused nothing of.
+   private static boolean waitable(SQLException e) {
+      return e instanceof CircuitBreaker.OpenException || CircuitBreaker.isUnavailable(e) || RetryPolicy.isTransient(e)
+         || Thread.currentThread().isInterrupted();
+   }
+
+   /*
+    * Deletes the segments before the one holding the replayed position.
+    * Called with _replayLock held.
+    */
+   private void deleteReplayedSegments() {
+      long index = this._replayed / this._segmentSize;
+      while (this._oldestSegment < index && this._oldestSegment < this._current.index) {
+         if (!segmentFile(this._oldestSegment).delete() && segmentFile(this._oldestSegment).exists())
+            return;
+         this._oldestSegment++;
+      }//end while
+   }//end deleteReplayedSegments
+
+   private Properties readState() throws IOException {
+      Properties state = new Properties();
+      File file = new File(this._dir, STATE);
+      if (file.exists()) {
+         FileInputStream in = new FileInputStream(file);
+         try {
+            state.load(in);
+         }finally {
+            in.close();
+         }//end try
+      }//end if
+      return state;
+   }//end readState
+
+   /*
+    * Replaces the state file with the replayed position and the reserved
+    * ids left, through a synced temporary file. Called with _replayLock
+    * held.
+    */
+   private void writeState() throws IOException {
+      Properties state = new Properties();
+      state.setProperty("segmentSize", Integer.toString(this._segmentSize));
+      state.setProperty("replayed", Long.toString(this._replayed));
+      StringBuilder reserve = new StringBuilder();
+      synchronized (this._appendLock) {
+         for (Integer id : this._reserve)
+            reserve.append(reserve.length() == 0 ? "" : ",").append(id);
+      }//end synchronized
+      state.setProperty("reserve", reserve.toString());
+      File tmp = new File(this._dir, STATE + ".tmp");
+      FileOutputStream out = new FileOutputStream(tmp);
+      try {
+         state.store(out, "order log state");
+         out.getFD().sync();
+      }finally {
+         out.close();
+      }//end try
+      Files.move(tmp.toPath(), new File(this._dir, STATE).toPath(),
+                 StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }//end writeState
+
+   static byte[] encode(OrderReceipt order) {
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         DataOutputStream out = new DataOutputStream(bytes);
+         out.writeByte(ORDER);
+         out.writeInt(order.getOrderId());
+         out.writeBoolean(order.getLogin() != null);
+         out.writeUTF(order.getLogin() == null ? "" : order.getLogin());
+         out.writeLong(order.getTimeStampRecieved().getTime());
+         out.writeDouble(order.getTotal());
+         out.writeShort(order.getItems().size());
+         for (OrderReceipt.Line line : order.getItems())
+            out.writeUTF(line.getItemName());
+         out.close();
+         return bytes.toByteArray();
+      }catch (IOException e) {
+         throw new IllegalStateException(e);
+      }//end try
+   }//end encode
+
+   static OrderReceipt decode(byte[] data, int offset, int length) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+      if (in.readByte() != ORDER)
+         throw new IOException("Unknown order log record");
+      int orderid = in.readInt();
+      boolean hasLogin = in.readBoolean();
+      String login = in.readUTF();
+      Timestamp received = new Timestamp(in.readLong());
+      double total = in.readDouble();
+      int n = in.readUnsignedShort();
+      List<OrderReceipt.Line> lines = new ArrayList<OrderReceipt.Line>(n);
+      for (int i = 0; i < n; i++)
+         lines.add(new OrderReceipt.Line(in.readUTF(), OrderBuilder.INITIAL_STATUS, received, ""));
+      return new OrderReceipt(new OrderSummary(orderid, hasLogin ? login : null, false, received, total), lines);
+   }//end decode
+
+}//end OrderLog
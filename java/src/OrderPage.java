@@ -0,0 +1,72 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds one page of an order listing, newest first, and the
+ * cursor of the page after it.
+ *
+ * A cursor names the (timeStampRecieved, orderid) of the last order on a
+ * page; the next page starts right after that order, however many orders
+ * have been placed since. It is written as seconds.nanos.orderid, which
+ * keeps the microseconds Postgres stores and needs no escaping in a URL.
+ *
+ */
+public class OrderPage {
+
+   private final List<OrderSummary> _orders;
+   private final String _next;
+
+   public OrderPage(List<OrderSummary> orders, String next) {
+      this._orders = Collections.unmodifiableList(orders);
+      this._next = next;
+   }
+
+   public List<OrderSummary> getOrders() { return this._orders; }
+
+   /**
+    * @return the cursor of the next page, or null on the last page
+    */
+   public String getNext() { return this._next; }
+
+   /**
+    * @return the cursor of the page that follows the order
+    */
+   static String cursor(OrderSummary order) {
+      Timestamp time = order.getTimeStampRecieved();
+      // getTime() includes the milliseconds of the nanos; take them off.
+      long seconds = (time.getTime() - time.getNanos() / 1000000) / 1000L;
+      return seconds + "." + time.getNanos() + "." + order.getOrderId();
+   }//end cursor
+
+   /**
+    * @return the timeStampRecieved and orderid the cursor names
+    * @throws ServiceException when the text is not a cursor
+    */
+   static Object[] parse(String cursor) {
+      String[] parts = cursor.split("\\.");
+      try {
+         if (parts.length == 3) {
+            Timestamp time = new Timestamp(Long.parseLong(parts[0]) * 1000L);
+            time.setNanos(Integer.parseInt(parts[1]));
+            return new Object[] { time, Integer.parseInt(parts[2]) };
+         }//end if
+      }catch (IllegalArgumentException e) {
+         // not a number, or nanos out of range
+      }//end try
+      throw new ServiceException(ServiceException.Reason.INVALID, "Invalid page cursor: " + cursor);
+   }//end parse
+
+}//end OrderPage
@@ -0,0 +1,63 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds an order together with the status of each of its items.
+ *
+ */
+public class OrderReceipt extends OrderSummary {
+
+   /**
+    * One ItemStatus row of the order.
+    */
+   public static class Line {
+      // column header matching toString().
+      public static final String HEADER = "itemname\tstatus\tlastupdated\tcomments\t";
+
+      private final String _itemName;
+      private final String _status;
+      private final Timestamp _lastUpdated;
+      private final String _comments;
+
+      public Line(String itemName, String status, Timestamp lastUpdated, String comments) {
+         this._itemName = itemName == null ? null : itemName.trim();
+         this._status = status == null ? null : status.trim();
+         this._lastUpdated = lastUpdated;
+         this._comments = comments == null ? null : comments.trim();
+      }
+
+      public String getItemName() { return this._itemName; }
+      public String getStatus() { return this._status; }
+      public Timestamp getLastUpdated() { return this._lastUpdated; }
+      public String getComments() { return this._comments; }
+
+      @Override
+      public String toString() {
+         return this._itemName + "\t" + this._status + "\t" + this._lastUpdated + "\t" + this._comments + "\t";
+      }
+   }//end Line
+
+   private final List<Line> _items;
+
+   public OrderReceipt(OrderSummary order, List<Line> items) {
+      super(order.getOrderId(), order.getLogin(), order.isPaid(), order.getTimeStampRecieved(), order.getTotal());
+      this._items = Collections.unmodifiableList(new ArrayList<Line>(items));
+   }
+
+   public List<Line> getItems() { return this._items; }
+
+}//end OrderReceipt
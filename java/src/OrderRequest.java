@@ -0,0 +1,39 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class describes a new order: who places it and which menu items it
+ * holds.
+ *
+ */
+public class OrderRequest {
+
+   private final String _login;
+   private final List<String> _items;
+
+   /**
+    * @param login the login of the customer placing the order
+    * @param items the names of the ordered menu items
+    */
+   public OrderRequest(String login, List<String> items) {
+      this._login = login;
+      this._items = Collections.unmodifiableList(new ArrayList<String>(items));
+   }
+
+   public String getLogin() { return this._login; }
+   public List<String> getItems() { return this._items; }
+
+}//end OrderRequest
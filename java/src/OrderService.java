@@ -0,0 +1,321 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class holds the order operations: placing orders, listing them,
+ * adding and removing items of an unpaid order, and marking orders paid.
+ *
+ */
+public class OrderService {
+
+   // Item edits lock the order row first, so concurrent edits of one order
+   // queue up and each adds to the total the one before it left, and an
+   // order cannot be paid halfway through an edit. An added item is priced
+   // from Menu in the same statement and keeps that price on its row; a
+   // removed item takes its own price off again, or the menu price when
+   // its row has none. No row comes back when the order is not an unpaid
+   // order of the user, or the item could not be added/removed.
+   static final String ADD_ITEM =
+      "WITH locked AS (" +
+      "SELECT orderid FROM Orders WHERE orderid = ? AND login = ? AND paid = 'f' FOR UPDATE), " +
+      "added AS (" +
+      "INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments, price) " +
+      "SELECT l.orderid, m.itemName, ?, ?, '', m.price FROM locked l, Menu m WHERE m.itemName = ? " +
+      "ON CONFLICT DO NOTHING RETURNING orderid, price) " +
+      "UPDATE Orders o SET total = o.total + a.price FROM added a " +
+      "WHERE o.orderid = a.orderid RETURNING o.total";
+   static final String REMOVE_ITEM =
+      "WITH locked AS (" +
+      "SELECT orderid FROM Orders WHERE orderid = ? AND login = ? AND paid = 'f' FOR UPDATE), " +
+      "removed AS (" +
+      "DELETE FROM ItemStatus i USING locked l WHERE i.orderid = l.orderid AND i.itemName = ? " +
+      "RETURNING i.orderid, i.itemName, i.price) " +
+      "UPDATE Orders o SET total = o.total - COALESCE(r.price, m.price) " +
+      "FROM removed r LEFT JOIN Menu m ON m.itemName = r.itemName " +
+      "WHERE o.orderid = r.orderid RETURNING o.total";
+
+   // orders are listed newest first; orderid breaks ties between orders
+   // placed in the same microsecond, so every order has one place.
+   static final String PAGE_ORDER =
+      "ORDER BY timeStampRecieved DESC, orderid DESC LIMIT ?";
+   static final String AFTER_CURSOR = "AND (timeStampRecieved, orderid) < (?, ?) ";
+
+   /**
+    * The page size the console and the HTTP server list orders in; set
+    * with -Dcafe.page.size.
+    */
+   public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("cafe.page.size", 20);
+   public static final int MAX_PAGE_SIZE = 500;
+
+   // statement timeout of the order listings in milliseconds, overridable
+   // with the cafe.timeout.listing system property. A listing that cannot
+   // use its index fails instead of holding up the register.
+   static final long LISTING_TIMEOUT = Long.getLong("cafe.timeout.listing", 2000);
+
+   static final String ITEMS =
+      "SELECT itemName, status, lastUpdated, comments FROM ItemStatus WHERE orderid = ?";
+
+   private final Cafe _esql;
+
+   public OrderService(Cafe esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * Places a new order in a single transaction.
+    *
+    * @param request the customer and the items to order
+    * @return the stored order
+    * @throws java.sql.SQLException when the order could not be stored
+    * @throws ServiceException when the order is empty, lists an item twice
+    *         or names an item that is not on the menu
+    */
+   public OrderReceipt placeOrder(OrderRequest request) throws SQLException {
+      if (request.getItems().isEmpty())
+         throw new ServiceException(ServiceException.Reason.INVALID, "An order needs at least one item");
+      OrderBuilder order = new OrderBuilder(this._esql, request.getLogin());
+      for (String item : request.getItems())
+         if (!order.addItem(item))
+            throw new ServiceException(ServiceException.Reason.INVALID, item + " is listed twice");
+      try {
+         int orderid = order.place();
+         this._esql.getFavoritesService().ordered(request.getLogin());
+         return getOrder(orderid);
+      }catch (IllegalArgumentException e) {
+         throw new ServiceException(ServiceException.Reason.INVALID, e.getMessage());
+      }//end try
+   }//end placeOrder
+
+   /**
+    * @param acting the session of the customer
+    * @param after the cursor of the page to list, or null for the first
+    * @param pageSize the most orders to list, at most MAX_PAGE_SIZE
+    * @return the orders the customer placed, newest first
+    * @throws java.sql.SQLException when the orders could not be read
+    * @throws ServiceException when the cursor or page size is invalid
+    */
+   public OrderPage listOwnOrders(UserSession acting, String after, int pageSize) throws SQLException {
+      return listPage(
+         "SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE login = ? ",
+         after, pageSize, acting.getLogin());
+   }//end listOwnOrders
+
+   /**
+    * @param acting the session of an employee or manager
+    * @param after the cursor of the page to list, or null for the first
+    * @param pageSize the most orders to list, at most MAX_PAGE_SIZE
+    * @return the orders of the last day that are still unpaid, newest
+    *         first
+    * @throws java.sql.SQLException when the orders could not be read
+    * @throws ServiceException when the acting user is a customer, or the
+    *         cursor or page size is invalid
+    */
+   public OrderPage listUnpaidOrders(UserSession acting, String after, int pageSize) throws SQLException {
+      requireStaff(acting);
+      return listPage(
+         "SELECT orderid, login, paid, timeStampRecieved, total FROM Orders " +
+         "WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = 'f' ",
+         after, pageSize);
+   }//end listUnpaidOrders
+
+   /**
+    * @param orderid the order
+    * @return the order with the status of each item; an order still
+    *         waiting in the order log as it was taken
+    * @throws java.sql.SQLException when the order could not be read
+    * @throws ServiceException when there is no such order
+    */
+   public OrderReceipt getOrder(int orderid) throws SQLException {
+      OrderLog log = this._esql.getOrderLog();
+      OrderReceipt logged = log == null ? null : log.get(orderid);
+      if (logged != null)
+         return logged;
+      // the two reads are independent; pipelined sessions overlap them.
+      if (this._esql.isPipelined() && !this._esql.inTransaction()) {
+         CompletableFuture<List<List<String>>> items = this._esql.getAsync().executeQueryAndReturnResult(ITEMS, orderid);
+         OrderSummary order;
+         try {
+            order = findOrder(orderid);
+         }catch (ServiceException e) {
+            items.cancel(true);
+            throw e;
+         }//end try
+         return new OrderReceipt(order, lines(orderid, AsyncCafe.get(items)));
+      }//end if
+      OrderSummary order = findOrder(orderid);
+      return new OrderReceipt(order, lines(orderid, this._esql.executeQueryAndReturnResult(ITEMS, orderid)));
+   }//end getOrder
+
+   /**
+    * Adds an item to an unpaid order of the acting customer. The item and
+    * its price are added in a single statement that returns the new total.
+    *
+    * @return the new total of the order
+    * @throws java.sql.SQLException when the change could not be stored
+    * @throws ServiceException when the order is missing, paid or someone
+    *         else's, the item is unknown or already part of the order
+    */
+   public double addItem(UserSession acting, int orderid, String itemName) throws SQLException {
+      requireMenuItem(itemName);
+      requireStored(orderid);
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(ADD_ITEM,
+         orderid, acting.getLogin(), new Timestamp(System.currentTimeMillis()), OrderBuilder.INITIAL_STATUS, itemName);
+      if (rows.isEmpty()) {
+         requireEditable(acting, orderid);
+         throw new ServiceException(ServiceException.Reason.CONFLICT, itemName + " is already part of order " + orderid);
+      }//end if
+      this._esql.getFavoritesService().ordered(acting.getLogin());
+      return Double.parseDouble(rows.get(0).get(0));
+   }//end addItem
+
+   /**
+    * Removes an item from an unpaid order of the acting customer. The item
+    * and its price are removed in a single statement that returns the new
+    * total.
+    *
+    * @return the new total of the order
+    * @throws java.sql.SQLException when the change could not be stored
+    * @throws ServiceException when the order is missing, paid or someone
+    *         else's, or does not hold the item
+    */
+   public double removeItem(UserSession acting, int orderid, String itemName) throws SQLException {
+      requireMenuItem(itemName);
+      requireStored(orderid);
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(REMOVE_ITEM,
+         orderid, acting.getLogin(), itemName);
+      if (rows.isEmpty()) {
+         requireEditable(acting, orderid);
+         throw new ServiceException(ServiceException.Reason.NOT_FOUND, itemName + " is not part of order " + orderid);
+      }//end if
+      this._esql.getFavoritesService().ordered(acting.getLogin());
+      return Double.parseDouble(rows.get(0).get(0));
+   }//end removeItem
+
+   /**
+    * Marks an order paid.
+    *
+    * @param acting the session of an employee or manager
+    * @param orderid the order
+    * @return the updated order
+    * @throws java.sql.SQLException when the change could not be stored
+    * @throws ServiceException when the acting user is a customer, or the
+    *         order is missing or already paid
+    */
+   public OrderReceipt markPaid(UserSession acting, int orderid) throws SQLException {
+      requireStaff(acting);
+      requireStored(orderid);
+      if (this._esql.executeUpdate("UPDATE Orders SET paid = 't' WHERE orderid = ? AND paid = 'f'", orderid) == 0) {
+         findOrder(orderid);
+         throw new ServiceException(ServiceException.Reason.CONFLICT, "Order " + orderid + " has already been paid");
+      }//end if
+      return getOrder(orderid);
+   }//end markPaid
+
+   /*
+    * Explains why an edit of the order matched nothing.
+    */
+   private void requireEditable(UserSession acting, int orderid) throws SQLException {
+      OrderSummary order = findOrder(orderid);
+      if (!order.getLogin().equals(acting.getLogin()))
+         throw new ServiceException(ServiceException.Reason.FORBIDDEN, "Order " + orderid + " belongs to another user");
+      if (order.isPaid())
+         throw new ServiceException(ServiceException.Reason.CONFLICT, "Order " + orderid + " has already been paid");
+   }//end requireEditable
+
+   /*
+    * Replays an order still waiting in the order log, so that edits find it.
+    */
+   private void requireStored(int orderid) throws SQLException {
+      OrderLog log = this._esql.getOrderLog();
+      if (log != null)
+         log.awaitReplay(orderid);
+   }//end requireStored
+
+   private void requireMenuItem(String itemName) throws SQLException {
+      if (this._esql.getMenuCatalog().get(itemName) == null)
+         throw new ServiceException(ServiceException.Reason.INVALID, itemName + " is not on the menu");
+   }//end requireMenuItem
+
+   // the items of the order with their pending status changes applied.
+   private List<OrderReceipt.Line> lines(int orderid, List<List<String>> rows) {
+      StatusWriter writer = this._esql.getStatusWriter();
+      List<OrderReceipt.Line> lines = new ArrayList<OrderReceipt.Line>();
+      for (List<String> row : rows)
+         lines.add(writer.overlay(orderid, new OrderReceipt.Line(row.get(0), row.get(1), timestamp(row.get(2)), row.get(3))));
+      return lines;
+   }//end lines
+
+   private OrderSummary findOrder(int orderid) throws SQLException {
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+         "SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE orderid = ?", orderid);
+      if (rows.isEmpty())
+         throw new ServiceException(ServiceException.Reason.NOT_FOUND, "No order " + orderid);
+      List<String> row = rows.get(0);
+      return new OrderSummary(Integer.parseInt(row.get(0)), row.get(1), row.get(2).charAt(0) == 't',
+                              timestamp(row.get(3)), Double.parseDouble(row.get(4)));
+   }//end findOrder
+
+   /*
+    * Lists one page of the query, which ends in its WHERE clause. One order
+    * more than the page holds is read to tell whether another page follows.
+    */
+   private OrderPage listPage(String query, String after, int pageSize, Object... params) throws SQLException {
+      if (pageSize < 1 || pageSize > MAX_PAGE_SIZE)
+         throw new ServiceException(ServiceException.Reason.INVALID, "List between 1 and " + MAX_PAGE_SIZE + " orders");
+      List<Object> values = new ArrayList<Object>(Arrays.asList(params));
+      if (after != null) {
+         query += AFTER_CURSOR;
+         values.addAll(Arrays.asList(OrderPage.parse(after)));
+      }//end if
+      values.add(pageSize + 1);
+      List<OrderSummary> orders = listOrders(query + PAGE_ORDER, values.toArray());
+      if (orders.size() <= pageSize)
+         return new OrderPage(orders, null);
+      orders = new ArrayList<OrderSummary>(orders.subList(0, pageSize));
+      return new OrderPage(orders, OrderPage.cursor(orders.get(pageSize - 1)));
+   }//end listPage
+
+   private List<OrderSummary> listOrders(String sql, Object... params) throws SQLException {
+      List<OrderSummary> orders = new ArrayList<OrderSummary>();
+      long timeout = this._esql.setThreadStatementTimeout(LISTING_TIMEOUT);
+      try {
+         ResultCursor cursor = this._esql.openCursor(sql, params);
+         try {
+            while (cursor.next())
+               orders.add(new OrderSummary(cursor.getInt(1), cursor.getString(2), cursor.getBoolean(3),
+                                           cursor.getTimestamp(4), cursor.getDouble(5)));
+         } finally {
+            cursor.close();
+         }//end try
+      } finally {
+         this._esql.setThreadStatementTimeout(timeout);
+      }//end try
+      return orders;
+   }//end listOrders
+
+   private static void requireStaff(UserSession acting) {
+      if (!acting.isStaff())
+         throw new ServiceException(ServiceException.Reason.FORBIDDEN, "Only employees and managers can do this");
+   }//end requireStaff
+
+   private static Timestamp timestamp(String value) {
+      return value == null ? null : Timestamp.valueOf(value);
+   }
+
+}//end OrderService
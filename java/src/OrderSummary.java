@@ -0,0 +1,53 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Timestamp;
+
+/**
+ * This class holds one row of the Orders table.
+ *
+ */
+public class OrderSummary {
+
+   // column header matching toString().
+   public static final String HEADER = "orderid\tlogin\tpaid\ttimestamprecieved\ttotal\t";
+
+   private final int _orderid;
+   private final String _login;
+   private final boolean _paid;
+   private final Timestamp _timeStampRecieved;
+   private final double _total;
+
+   public OrderSummary(int orderid, String login, boolean paid, Timestamp timeStampRecieved, double total) {
+      this._orderid = orderid;
+      this._login = login == null ? null : login.trim();
+      this._paid = paid;
+      this._timeStampRecieved = timeStampRecieved;
+      this._total = total;
+   }
+
+   public int getOrderId() { return this._orderid; }
+   public String getLogin() { return this._login; }
+   public boolean isPaid() { return this._paid; }
+   public Timestamp getTimeStampRecieved() { return this._timeStampRecieved; }
+   public double getTotal() { return this._total; }
+
+   /**
+    * @return the order as one tab separated line, in Orders column order
+    */
+   @Override
+   public String toString() {
+      return this._orderid + "\t" + this._login + "\t" + (this._paid ? "t" : "f") + "\t" +
+             this._timeStampRecieved + "\t" + this._total + "\t";
+   }
+
+}//end OrderSummary
@@ -0,0 +1,298 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps per-query statistics for every SQL template Cafe runs:
+ * a latency histogram, the rows returned or changed, and the number of
+ * failures. Parameterized statements are keyed by their template as is;
+ * string-built SQL is keyed by its text with quoted strings and numbers
+ * replaced by '?', so the same query with different values lands in one
+ * entry.
+ *
+ * The statistics can be printed as a text table, periodically if wanted,
+ * or written in the Prometheus text format together with the connection
+ * pool's wait times.
+ *
+ */
+public class QueryMetrics {
+
+   /**
+    * The statistics of one SQL template.
+    */
+   public static final class Stats {
+      private final String _template;
+      private final LatencyHistogram _latency = new LatencyHistogram();
+      private final AtomicLong _rows = new AtomicLong();
+      private final AtomicLong _errors = new AtomicLong();
+
+      Stats(String template) {
+         this._template = template;
+      }
+
+      public String getTemplate() { return this._template; }
+      public LatencyHistogram getLatency() { return this._latency; }
+      public long getRows() { return this._rows.get(); }
+      public long getErrors() { return this._errors.get(); }
+   }//end Stats
+
+   // templates beyond this many are counted together under OTHER, so
+   // string-built SQL that does not normalize well cannot grow the map
+   // without bound.
+   static final int MAX_TEMPLATES = 500;
+   static final String OTHER = "<other>";
+
+   // quantiles reported in the Prometheus output.
+   private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+   private final ConcurrentMap<String, Stats> _stats = new ConcurrentHashMap<String, Stats>();
+
+   private ScheduledExecutorService _dumper = null;
+
+   // reads tried again after a transient failure.
+   private final AtomicLong _retries = new AtomicLong();
+
+   /**
+    * Records one execution.
+    *
+    * @param template the SQL template, see template(String)
+    * @param nanos how long the execution took
+    * @param rows the rows returned or changed
+    * @param failed true when the execution threw
+    */
+   public void record(String template, long nanos, long rows, boolean failed) {
+      Stats stats = stats(template);
+      stats._latency.record(nanos);
+      if (rows > 0)
+         stats._rows.addAndGet(rows);
+      if (failed)
+         stats._errors.incrementAndGet();
+   }//end record
+
+   /**
+    * Counts one read that is tried again.
+    */
+   public void retried() {
+      this._retries.incrementAndGet();
+   }
+
+   public long getRetries() {
+      return this._retries.get();
+   }
+
+   /**
+    * @return the statistics of every template, the most time consuming first
+    */
+   public List<Stats> getStats() {
+      List<Stats> list = new ArrayList<Stats>(this._stats.values());
+      Collections.sort(list, new Comparator<Stats>() {
+         public int compare(Stats a, Stats b) {
+            long x = a._latency.getSumNanos(), y = b._latency.getSumNanos();
+            return x < y ? 1 : x > y ? -1 : 0;
+         }
+      });
+      return list;
+   }//end getStats
+
+   /**
+    * Drops every statistic recorded so far.
+    */
+   public void clear() {
+      this._stats.clear();
+      this._retries.set(0);
+   }
+
+   /**
+    * Reduces string-built SQL to its template: quoted strings and numeric
+    * literals become '?' and runs of whitespace a single space.
+    *
+    * @param sql the SQL text
+    * @return the template
+    */
+   public static String template(String sql) {
+      StringBuilder out = new StringBuilder(sql.length());
+      int n = sql.length();
+      for (int i = 0; i < n; ++i) {
+         char c = sql.charAt(i);
+         if (c == '\'') {
+            // skip to the closing quote; '' inside the literal is a quote.
+            for (++i; i < n; ++i) {
+               if (sql.charAt(i) != '\'')
+                  continue;
+               if (i + 1 < n && sql.charAt(i + 1) == '\'')
+                  ++i;
+               else
+                  break;
+            }//end for
+            out.append('?');
+         } else if (Character.isDigit(c) && (out.length() == 0 || !isWordChar(out.charAt(out.length() - 1)))) {
+            while (i + 1 < n && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.'))
+               ++i;
+            out.append('?');
+         } else if (Character.isWhitespace(c)) {
+            if (out.length() > 0 && out.charAt(out.length() - 1) != ' ')
+               out.append(' ');
+         } else {
+            out.append(c);
+         }//end if
+      }//end for
+      return out.toString().trim();
+   }//end template
+
+   /**
+    * Prints one line per template, the most time consuming first.
+    * Durations are in milliseconds.
+    */
+   public void dump(PrintWriter out) {
+      out.println("-- query metrics at " + new Timestamp(System.currentTimeMillis()));
+      out.println(String.format(Locale.ROOT, "%9s %7s %9s %9s %9s %9s %9s  %s",
+                                "count", "errors", "rows", "mean", "p50", "p99", "max", "query"));
+      for (Stats s : getStats()) {
+         LatencyHistogram h = s._latency;
+         out.println(String.format(Locale.ROOT, "%9d %7d %9d %9.3f %9.3f %9.3f %9.3f  %s",
+                                   h.getCount(), s.getErrors(), s.getRows(), h.getMeanNanos() / 1e6,
+                                   h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(99) / 1e6,
+                                   h.getMaxNanos() / 1e6, s._template));
+      }//end for
+      out.flush();
+   }//end dump
+
+   /**
+    * Writes the statistics in the Prometheus text exposition format. When a
+    * pool is given its connection wait times and gauges are included.
+    *
+    * @param out where to write
+    * @param pool the connection pool, or null
+    */
+   public void writePrometheus(PrintWriter out, ConnectionPool pool) {
+      List<Stats> stats = getStats();
+      out.println("# HELP cafe_query_duration_seconds Execution time of each SQL template.");
+      out.println("# TYPE cafe_query_duration_seconds summary");
+      for (Stats s : stats)
+         summary(out, "cafe_query_duration_seconds", "query=\"" + label(s._template) + "\"", s._latency);
+      out.println("# HELP cafe_query_rows_total Rows returned or changed by each SQL template.");
+      out.println("# TYPE cafe_query_rows_total counter");
+      for (Stats s : stats)
+         out.println("cafe_query_rows_total{query=\"" + label(s._template) + "\"} " + s.getRows());
+      out.println("# HELP cafe_query_errors_total Failed executions of each SQL template.");
+      out.println("# TYPE cafe_query_errors_total counter");
+      for (Stats s : stats)
+         out.println("cafe_query_errors_total{query=\"" + label(s._template) + "\"} " + s.getErrors());
+      out.println("# HELP cafe_query_retries_total Reads tried again after a transient failure.");
+      out.println("# TYPE cafe_query_retries_total counter");
+      out.println("cafe_query_retries_total " + getRetries());
+
+      if (pool != null) {
+         out.println("# HELP cafe_pool_wait_seconds Time spent waiting to borrow a connection.");
+         out.println("# TYPE cafe_pool_wait_seconds summary");
+         summary(out, "cafe_pool_wait_seconds", null, pool.getWaitHistogram());
+         out.println("# HELP cafe_pool_connections Connections of the pool by state.");
+         out.println("# TYPE cafe_pool_connections gauge");
+         out.println("cafe_pool_connections{state=\"active\"} " + pool.getActiveCount());
+         out.println("cafe_pool_connections{state=\"idle\"} " + pool.getIdleCount());
+         out.println("# HELP cafe_pool_timeouts_total Borrows that gave up waiting for a connection.");
+         out.println("# TYPE cafe_pool_timeouts_total counter");
+         out.println("cafe_pool_timeouts_total " + pool.getTimeoutCount());
+         CircuitBreaker breaker = pool.getCircuitBreaker();
+         out.println("# HELP cafe_breaker_open 1 while the circuit breaker rejects borrows, 0.5 while half open.");
+         out.println("# TYPE cafe_breaker_open gauge");
+         out.println("cafe_breaker_open " + (breaker.getState() == CircuitBreaker.State.OPEN ? "1"
+                                           : breaker.getState() == CircuitBreaker.State.HALF_OPEN ? "0.5" : "0"));
+         out.println("# HELP cafe_breaker_opens_total Times the circuit breaker opened.");
+         out.println("# TYPE cafe_breaker_opens_total counter");
+         out.println("cafe_breaker_opens_total " + breaker.getOpenCount());
+         out.println("# HELP cafe_breaker_rejections_total Borrows rejected while the breaker was open.");
+         out.println("# TYPE cafe_breaker_rejections_total counter");
+         out.println("cafe_breaker_rejections_total " + breaker.getRejectedCount());
+      }//end if
+      out.flush();
+   }//end writePrometheus
+
+   /**
+    * Prints the text table to the stream every period until stopDump is
+    * called. Starting again replaces the previous schedule.
+    *
+    * @param periodMillis time between two tables
+    * @param stream where to print
+    */
+   public synchronized void startDump(long periodMillis, PrintStream stream) {
+      stopDump();
+      final PrintWriter out = new PrintWriter(stream, true);
+      this._dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "cafe-metrics-dump");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      this._dumper.scheduleAtFixedRate(new Runnable() {
+         public void run() {
+            dump(out);
+         }
+      }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+   }//end startDump
+
+   public synchronized void stopDump() {
+      if (this._dumper != null) {
+         this._dumper.shutdownNow();
+         this._dumper = null;
+      }
+   }//end stopDump
+
+   private Stats stats(String template) {
+      Stats stats = this._stats.get(template);
+      if (stats != null)
+         return stats;
+      if (this._stats.size() >= MAX_TEMPLATES)
+         template = OTHER;
+      stats = new Stats(template);
+      Stats raced = this._stats.putIfAbsent(template, stats);
+      return raced != null ? raced : stats;
+   }//end stats
+
+   private static void summary(PrintWriter out, String name, String labels, LatencyHistogram h) {
+      String prefix = labels == null ? "" : labels + ",";
+      for (double q : QUANTILES)
+         out.println(name + "{" + prefix + "quantile=\"" + q + "\"} " + seconds(h.getValueAtPercentile(q * 100)));
+      String suffix = labels == null ? "" : "{" + labels + "}";
+      out.println(name + "_sum" + suffix + " " + seconds(h.getSumNanos()));
+      out.println(name + "_count" + suffix + " " + h.getCount());
+   }//end summary
+
+   private static String seconds(long nanos) {
+      return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+   }
+
+   private static boolean isWordChar(char c) {
+      return Character.isLetterOrDigit(c) || c == '_';
+   }
+
+   private static String label(String value) {
+      return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+   }
+
+}//end QueryMetrics
@@ -0,0 +1,144 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds the managers' sales reports: revenue and unpaid amounts
+ * by day or hour, and the best selling items over a range of days.
+ *
+ * Reports read the SalesByHour and ItemSales summary tables, which
+ * triggers keep up to date as orders are written, and never Orders or
+ * ItemStatus. A report costs the same however many orders the days hold,
+ * so it can run during service without loading the database.
+ *
+ */
+public class ReportService {
+
+   // longest range of days one report covers.
+   public static final int MAX_DAYS = 366;
+
+   // most items one top sellers report lists.
+   public static final int MAX_ITEMS = 100;
+
+   static final String DAILY =
+      "SELECT date_trunc('day', hour), sum(orders), sum(revenue), sum(unpaid) FROM SalesByHour " +
+      "WHERE hour >= ? AND hour < ? GROUP BY 1 ORDER BY 1";
+   static final String HOURLY =
+      "SELECT hour, sum(orders), sum(revenue), sum(unpaid) FROM SalesByHour " +
+      "WHERE hour >= ? AND hour < ? GROUP BY 1 ORDER BY 1";
+   static final String TOP_ITEMS =
+      "SELECT itemName, sum(orders), sum(revenue) FROM ItemSales WHERE day >= ? AND day < ? " +
+      "GROUP BY itemName HAVING sum(orders) > 0 ORDER BY 2 DESC, 3 DESC, 1 LIMIT ?";
+
+   // statement timeout of a report in milliseconds, overridable with the
+   // cafe.timeout.report system property.
+   static final long REPORT_TIMEOUT = Long.getLong("cafe.timeout.report", 2000);
+
+   private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+   private final Cafe _esql;
+
+   public ReportService(Cafe esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * @param acting the session of a manager
+    * @param from the first day
+    * @param to the day after the last day
+    * @return the sales of each day that had orders, oldest first
+    * @throws java.sql.SQLException when the report could not be read
+    * @throws ServiceException when the acting user is not a manager or the
+    *         range is empty or longer than MAX_DAYS
+    */
+   public List<SalesPeriod> dailySales(UserSession acting, Date from, Date to) throws SQLException {
+      return sales(DAILY, acting, from, to);
+   }//end dailySales
+
+   /**
+    * @param acting the session of a manager
+    * @param from the first day
+    * @param to the day after the last day
+    * @return the sales of each hour that had orders, oldest first
+    * @throws java.sql.SQLException when the report could not be read
+    * @throws ServiceException when the acting user is not a manager or the
+    *         range is empty or longer than MAX_DAYS
+    */
+   public List<SalesPeriod> hourlySales(UserSession acting, Date from, Date to) throws SQLException {
+      return sales(HOURLY, acting, from, to);
+   }//end hourlySales
+
+   /**
+    * @param acting the session of a manager
+    * @param from the first day
+    * @param to the day after the last day
+    * @param limit the most items to list, at most MAX_ITEMS
+    * @return the items held by the most orders in the range, best first
+    * @throws java.sql.SQLException when the report could not be read
+    * @throws ServiceException when the acting user is not a manager, the
+    *         range is empty or longer than MAX_DAYS, or the limit is out of
+    *         range
+    */
+   public List<ItemSales> topItems(UserSession acting, Date from, Date to, int limit) throws SQLException {
+      requireRange(acting, from, to);
+      if (limit < 1 || limit > MAX_ITEMS)
+         throw new ServiceException(ServiceException.Reason.INVALID,
+                                    "The number of items must be between 1 and " + MAX_ITEMS);
+      List<ItemSales> items = new ArrayList<ItemSales>();
+      for (List<String> row : query(TOP_ITEMS, from, to, limit))
+         items.add(new ItemSales(row.get(0), Integer.parseInt(row.get(1).trim()), Double.parseDouble(row.get(2))));
+      return items;
+   }//end topItems
+
+   /**
+    * @param day a day
+    * @param days the number of days to move, negative to move back
+    * @return the day that many days away
+    */
+   public static Date plusDays(Date day, int days) {
+      return Date.valueOf(new Date(day.getTime() + days * DAY_MILLIS + DAY_MILLIS / 2).toString());
+   }
+
+   private List<SalesPeriod> sales(String sql, UserSession acting, Date from, Date to) throws SQLException {
+      requireRange(acting, from, to);
+      List<SalesPeriod> periods = new ArrayList<SalesPeriod>();
+      for (List<String> row : query(sql, new Timestamp(from.getTime()), new Timestamp(to.getTime())))
+         periods.add(new SalesPeriod(Timestamp.valueOf(row.get(0)), Integer.parseInt(row.get(1).trim()),
+                                     Double.parseDouble(row.get(2)), Double.parseDouble(row.get(3))));
+      return periods;
+   }//end sales
+
+   private List<List<String>> query(String sql, Object... params) throws SQLException {
+      long timeout = this._esql.setThreadStatementTimeout(REPORT_TIMEOUT);
+      try {
+         return this._esql.executeQueryAndReturnResult(sql, params);
+      } finally {
+         this._esql.setThreadStatementTimeout(timeout);
+      }//end try
+   }//end query
+
+   private static void requireRange(UserSession acting, Date from, Date to) {
+      if (!acting.isManager())
+         throw new ServiceException(ServiceException.Reason.FORBIDDEN, "Only managers can see sales reports");
+      if (!from.before(to))
+         throw new ServiceException(ServiceException.Reason.INVALID, "The range must end after it starts");
+      if (plusDays(from, MAX_DAYS).before(to))
+         throw new ServiceException(ServiceException.Reason.INVALID,
+                                    "A report covers at most " + MAX_DAYS + " days");
+   }//end requireRange
+
+}//end ReportService
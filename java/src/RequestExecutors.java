@@ -0,0 +1,38 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class creates the executors that run one task per request, for the
+ * HTTP server, AsyncCafe and the load generator. Tasks spend most of their
+ * time waiting on the database, so each gets a thread of its own.
+ *
+ * This version runs them on a cached pool of platform threads. Built with
+ * JDK 21 or later, java/pom.xml adds the version in src21 to the jar for
+ * Java 21 runtimes, which runs every task on a virtual thread instead.
+ *
+ */
+public class RequestExecutors {
+
+   private RequestExecutors() {
+   }
+
+   /**
+    * @return an executor that starts every task at once on its own thread
+    */
+   public static ExecutorService newRequestExecutor() {
+      return Executors.newCachedThreadPool();
+   }
+
+}//end RequestExecutors
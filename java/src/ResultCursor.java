@@ -0,0 +1,134 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * This class walks the rows of a query one at a time. The driver fetches
+ * the rows from a server-side cursor in chunks of the fetch size, so only
+ * one chunk is ever held in memory no matter how large the result is.
+ *
+ * A cursor holds a pooled connection until it is closed, so always close
+ * it, e.g. with try-with-resources.
+ *
+ */
+public class ResultCursor implements AutoCloseable {
+
+   private final Cafe _owner;
+   private final ConnectionPool.PooledConnection _pc;
+   private final PreparedStatement _stmt;
+   private final boolean _cached;
+   private final boolean _ownsTransaction;
+   private final ResultSet _rs;
+   private ResultSetMetaData _meta = null;
+   private int _row = 0;
+   private boolean _closed = false;
+
+   // the query metrics entry and when the query was started.
+   private final String _template;
+   private final long _start;
+   private SQLException _failure = null;
+
+   ResultCursor(Cafe owner, ConnectionPool.PooledConnection pc, PreparedStatement stmt,
+                boolean cached, boolean ownsTransaction, ResultSet rs, String template, long start) {
+      this._owner = owner;
+      this._pc = pc;
+      this._stmt = stmt;
+      this._cached = cached;
+      this._ownsTransaction = ownsTransaction;
+      this._rs = rs;
+      this._template = template;
+      this._start = start;
+   }//end ResultCursor
+
+   /**
+    * Moves to the next row.
+    *
+    * @return false when there are no more rows
+    * @throws java.sql.SQLException when the next chunk could not be fetched
+    */
+   public boolean next() throws SQLException {
+      try {
+         if (!this._rs.next())
+            return false;
+      }catch (SQLException e) {
+         this._failure = e;
+         throw e;
+      }//end try
+      ++this._row;
+      return true;
+   }//end next
+
+   /**
+    * @return the number of rows read so far
+    */
+   public int getRowCount() { return this._row; }
+
+   public int getColumnCount() throws SQLException { return metaData().getColumnCount(); }
+   public String getColumnName(int column) throws SQLException { return metaData().getColumnName(column); }
+
+   public String getString(int column) throws SQLException { return this._rs.getString(column); }
+   public String getString(String column) throws SQLException { return this._rs.getString(column); }
+   public int getInt(int column) throws SQLException { return this._rs.getInt(column); }
+   public int getInt(String column) throws SQLException { return this._rs.getInt(column); }
+   public long getLong(int column) throws SQLException { return this._rs.getLong(column); }
+   public long getLong(String column) throws SQLException { return this._rs.getLong(column); }
+   public double getDouble(int column) throws SQLException { return this._rs.getDouble(column); }
+   public double getDouble(String column) throws SQLException { return this._rs.getDouble(column); }
+   public boolean getBoolean(int column) throws SQLException { return this._rs.getBoolean(column); }
+   public boolean getBoolean(String column) throws SQLException { return this._rs.getBoolean(column); }
+   public Timestamp getTimestamp(int column) throws SQLException { return this._rs.getTimestamp(column); }
+   public Timestamp getTimestamp(String column) throws SQLException { return this._rs.getTimestamp(column); }
+
+   /**
+    * @return true when the last column read was SQL NULL
+    */
+   public boolean wasNull() throws SQLException { return this._rs.wasNull(); }
+
+   /**
+    * Closes the cursor and hands its connection back.
+    *
+    * @throws java.sql.SQLException when ending the read transaction failed
+    */
+   @Override
+   public void close() throws SQLException {
+      if (this._closed)
+         return;
+      this._closed = true;
+      SQLException failure = null;
+      try {
+         this._rs.close();
+         if (this._cached)
+            this._stmt.setFetchSize(0);
+         else
+            this._stmt.close();
+      }catch (SQLException e) {
+         failure = e;
+      }//end try
+      this._owner.record(this._template, this._start, this._row,
+                         failure != null ? failure : this._failure);
+      this._owner.closeCursor(this._pc, this._ownsTransaction, failure);
+      if (failure != null)
+         throw failure;
+   }//end close
+
+   private ResultSetMetaData metaData() throws SQLException {
+      if (this._meta == null)
+         this._meta = this._rs.getMetaData();
+      return this._meta;
+   }//end metaData
+
+}//end ResultCursor
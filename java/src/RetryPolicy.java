@@ -0,0 +1,91 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class decides whether a failed call is tried again and how long to
+ * wait first. Waits grow exponentially from the base delay up to the
+ * maximum, each drawn at random below that bound ("full jitter"), so
+ * callers that failed together do not all come back at the same moment.
+ *
+ */
+public class RetryPolicy {
+
+   private final int _attempts;
+   private final long _baseMillis;
+   private final long _maxMillis;
+
+   /**
+    * @param attempts the most times a call is made, the first included
+    * @param baseMillis the bound of the wait after the first failure
+    * @param maxMillis the largest bound of any wait
+    */
+   public RetryPolicy(int attempts, long baseMillis, long maxMillis) {
+      if (attempts < 1)
+         throw new IllegalArgumentException("attempts must be positive: " + attempts);
+      this._attempts = attempts;
+      this._baseMillis = baseMillis;
+      this._maxMillis = maxMillis;
+   }//end RetryPolicy
+
+   public int getAttempts() { return this._attempts; }
+
+   /**
+    * @param attempt the number of the attempt that failed, from 1
+    * @return the time to wait before the next attempt
+    */
+   public long delay(int attempt) {
+      long bound = this._baseMillis << Math.min(attempt - 1, 30);
+      if (bound <= 0 || bound > this._maxMillis)
+         bound = this._maxMillis;
+      return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+   }//end delay
+
+   /**
+    * Waits before another attempt, if there is one left.
+    *
+    * @param attempt the number of the attempt that failed, from 1
+    * @return false when no attempt is left or the thread was interrupted
+    */
+   public boolean pause(int attempt) {
+      if (attempt >= this._attempts)
+         return false;
+      try {
+         Thread.sleep(delay(attempt));
+         return true;
+      }catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return false;
+      }//end try
+   }//end pause
+
+   /**
+    * @param e a failure
+    * @return true when the failure is one a repeated call can get past: the
+    *         connection broke, the server was restarting, or the
+    *         transaction lost a serialization or deadlock conflict
+    */
+   public static boolean isTransient(SQLException e) {
+      if (e instanceof CircuitBreaker.OpenException)
+         return false;
+      String state = e.getSQLState();
+      if (state == null)
+         return false;
+      return state.startsWith("08")
+          || state.equals("57P01") || state.equals("57P02") || state.equals("57P03")
+          || state.equals("53300")
+          || state.equals("40001") || state.equals("40P01");
+   }//end isTransient
+
+}//end RetryPolicy
@@ -0,0 +1,61 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Timestamp;
+
+/**
+ * This class holds the sales of one day or hour, as summed from the
+ * SalesByHour table.
+ *
+ */
+public class SalesPeriod {
+
+   // column header matching toString().
+   public static final String HEADER = "start\torders\trevenue\tunpaid\t";
+
+   private final Timestamp _start;
+   private final int _orders;
+   private final double _revenue;
+   private final double _unpaid;
+
+   public SalesPeriod(Timestamp start, int orders, double revenue, double unpaid) {
+      this._start = start;
+      this._orders = orders;
+      this._revenue = revenue;
+      this._unpaid = unpaid;
+   }
+
+   /**
+    * @return the first instant of the day or hour
+    */
+   public Timestamp getStart() { return this._start; }
+   public int getOrders() { return this._orders; }
+
+   /**
+    * @return the total of the orders received in the period
+    */
+   public double getRevenue() { return this._revenue; }
+
+   /**
+    * @return the part of the revenue that is not paid yet
+    */
+   public double getUnpaid() { return this._unpaid; }
+
+   /**
+    * @return the period as one tab separated line, matching HEADER
+    */
+   @Override
+   public String toString() {
+      return this._start + "\t" + this._orders + "\t" + this._revenue + "\t" + this._unpaid + "\t";
+   }
+
+}//end SalesPeriod
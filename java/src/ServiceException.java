@@ -0,0 +1,40 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+/**
+ * This exception reports a request the services refused, such as an
+ * unknown order or a customer editing someone else's profile. The reason
+ * lets front ends pick a response, e.g. an HTTP status.
+ *
+ */
+public class ServiceException extends RuntimeException {
+
+   private static final long serialVersionUID = 1L;
+
+   public enum Reason { INVALID, UNAUTHORIZED, FORBIDDEN, NOT_FOUND, CONFLICT }
+
+   private final Reason _reason;
+
+   /**
+    * @param reason why the request was refused
+    * @param message a message that can be shown to the user
+    */
+   public ServiceException(Reason reason, String message) {
+      super(message);
+      this._reason = reason;
+   }
+
+   public Reason getReason() {
+      return this._reason;
+   }
+
+}//end ServiceException
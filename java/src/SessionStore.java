@@ -0,0 +1,122 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the open sessions by token. It holds at most a fixed
+ * number of sessions, dropping the least recently used one when full, and
+ * forgets sessions that were not used for longer than the idle timeout.
+ * One store is shared by every console and HTTP session of a process.
+ *
+ */
+public class SessionStore {
+
+   // defaults, overridable with the cafe.sessions.max and
+   // cafe.sessions.idle (minutes) system properties.
+   static final int DEFAULT_CAPACITY = 10000;
+   static final long DEFAULT_IDLE_MILLIS = 30 * 60 * 1000L;
+
+   /**
+    * A session and when it was last used.
+    */
+   private static final class Slot {
+      final UserSession session;
+      long lastUsed;
+
+      Slot(UserSession session, long lastUsed) {
+         this.session = session;
+         this.lastUsed = lastUsed;
+      }
+   }//end Slot
+
+   private final int _capacity;
+   private final long _idleMillis;
+
+   // access-ordered map, so the eldest entry is the least recently used.
+   private final LinkedHashMap<String, Slot> _sessions;
+
+   private long _evictions = 0;
+   private long _expirations = 0;
+
+   /**
+    * @param capacity the maximum number of sessions kept
+    * @param idleMillis how long an unused session stays valid
+    */
+   public SessionStore(int capacity, long idleMillis) {
+      if (capacity < 1)
+         throw new IllegalArgumentException("capacity must be positive: " + capacity);
+      this._capacity = capacity;
+      this._idleMillis = idleMillis;
+      this._sessions = new LinkedHashMap<String, Slot>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+            if (size() <= SessionStore.this._capacity)
+               return false;
+            SessionStore.this._evictions++;
+            return true;
+         }
+      };
+   }//end SessionStore
+
+   /**
+    * Adds a session, or replaces the one with the same token.
+    */
+   public synchronized void put(UserSession session) {
+      this._sessions.put(session.getToken(), new Slot(session, System.currentTimeMillis()));
+   }
+
+   /**
+    * @param token the session token
+    * @return the session, or null when it is unknown, expired or was dropped
+    */
+   public synchronized UserSession get(String token) {
+      Slot slot = this._sessions.get(token);
+      if (slot == null)
+         return null;
+      long now = System.currentTimeMillis();
+      if (now - slot.lastUsed > this._idleMillis) {
+         this._sessions.remove(token);
+         this._expirations++;
+         return null;
+      }//end if
+      slot.lastUsed = now;
+      return slot.session;
+   }//end get
+
+   public synchronized void remove(String token) {
+      this._sessions.remove(token);
+   }
+
+   /**
+    * Drops every session of a user, e.g. after their login or role changed.
+    *
+    * @param login the user
+    * @return the number of sessions dropped
+    */
+   public synchronized int removeLogin(String login) {
+      int removed = 0;
+      for (Iterator<Slot> it = this._sessions.values().iterator(); it.hasNext();) {
+         if (it.next().session.getLogin().equals(login)) {
+            it.remove();
+            ++removed;
+         }//end if
+      }//end for
+      return removed;
+   }//end removeLogin
+
+   public synchronized int size() { return this._sessions.size(); }
+   public synchronized long getEvictions() { return this._evictions; }
+   public synchronized long getExpirations() { return this._expirations; }
+
+}//end SessionStore
@@ -0,0 +1,132 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps a bounded, least-recently-used set of PreparedStatements
+ * for a single physical connection, keyed by their SQL template. Reusing the
+ * statement lets the server keep its parsed plan instead of re-planning the
+ * same query shape on every call.
+ *
+ */
+public class StatementCache {
+
+   // default number of distinct SQL templates kept open per connection.
+   public static final int DEFAULT_CAPACITY = 64;
+
+   // the connection every cached statement was prepared on.
+   private final Connection _connection;
+
+   // maximum number of open statements before the eldest is closed.
+   private final int _capacity;
+
+   // access-ordered map, so the eldest entry is the least recently used.
+   private final LinkedHashMap<String, PreparedStatement> _statements;
+
+   private long _hits = 0;
+   private long _misses = 0;
+   private long _evictions = 0;
+
+   /**
+    * Creates a new statement cache over the given connection
+    *
+    * @param connection the physical connection statements are prepared on
+    * @param capacity the maximum number of statements kept open
+    */
+   public StatementCache(Connection connection, int capacity) {
+      if (capacity < 1)
+         throw new IllegalArgumentException("capacity must be positive: " + capacity);
+      this._connection = connection;
+      this._capacity = capacity;
+      this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= StatementCache.this._capacity)
+               return false;
+            StatementCache.this._evictions++;
+            closeQuietly(eldest.getValue());
+            return true;
+         }
+      };
+   }//end StatementCache
+
+   /**
+    * Returns an open PreparedStatement for the SQL template, preparing it on
+    * the first use. The caller must not close the returned statement.
+    *
+    * @param sql the SQL template with '?' placeholders
+    * @return the cached statement
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public synchronized PreparedStatement prepare(String sql) throws SQLException {
+      PreparedStatement stmt = this._statements.get(sql);
+      if (stmt != null) {
+         this._hits++;
+         stmt.clearParameters();
+         return stmt;
+      }//end if
+      this._misses++;
+      stmt = this._connection.prepareStatement(sql);
+      this._statements.put(sql, stmt);
+      return stmt;
+   }//end prepare
+
+   /**
+    * Drops a statement from the cache, e.g. after it failed and may be
+    * left in an unusable state.
+    *
+    * @param sql the SQL template to drop
+    */
+   public synchronized void invalidate(String sql) {
+      closeQuietly(this._statements.remove(sql));
+   }//end invalidate
+
+   public synchronized long getHits() { return this._hits; }
+   public synchronized long getMisses() { return this._misses; }
+   public synchronized long getEvictions() { return this._evictions; }
+   public synchronized int size() { return this._statements.size(); }
+
+   /**
+    * Closes every cached statement.
+    */
+   public synchronized void clear() {
+      Iterator<PreparedStatement> it = this._statements.values().iterator();
+      while (it.hasNext()) {
+         closeQuietly(it.next());
+         it.remove();
+      }//end while
+   }//end clear
+
+   @Override
+   public synchronized String toString() {
+      return String.format("statements=%d/%d hits=%d misses=%d evictions=%d",
+                           this._statements.size(), this._capacity,
+                           this._hits, this._misses, this._evictions);
+   }
+
+   private static void closeQuietly(PreparedStatement stmt) {
+      if (stmt == null)
+         return;
+      try {
+         stmt.close();
+      }catch (SQLException e) {
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+}//end StatementCache
@@ -0,0 +1,221 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class listens for ItemStatus changes on one connection of its own
+ * and hands each change to every subscriber, so that any number of open
+ * screens are kept current for the cost of a single LISTEN. The changes
+ * are announced by the item_status trigger of migration 002.
+ *
+ * The listener blocks in the driver until a notification arrives, waking
+ * every POLL_MILLIS to notice it was stopped; the load is the same however
+ * many subscribers there are.
+ *
+ * When the connection fails the listener reconnects after RETRY_MILLIS and
+ * sends subscribers a change with orderid 0: changes may have been missed
+ * and views should reload.
+ *
+ */
+public class StatusListener {
+
+   public static final String CHANNEL = "item_status";
+   static final int POLL_MILLIS = 250;
+   static final int RETRY_MILLIS = 1000;
+
+   /**
+    * One change of an ItemStatus row.
+    */
+   public static final class Change {
+      private final int _orderid;
+      private final String _login;
+      private final String _status;
+      private final String _itemName;
+
+      public Change(int orderid, String login, String status, String itemName) {
+         this._orderid = orderid;
+         this._login = login;
+         this._status = status;
+         this._itemName = itemName;
+      }
+
+      /**
+       * @return the order of the item, or 0 when the change is not known
+       *         and views should reload
+       */
+      public int getOrderId() { return this._orderid; }
+      public String getLogin() { return this._login; }
+      public String getStatus() { return this._status; }
+      public String getItemName() { return this._itemName; }
+
+      /**
+       * Reads a payload of the item_status trigger.
+       *
+       * @return the change, or a reload change when the payload is missing
+       *         or not in the trigger's format
+       */
+      static Change parse(String payload) {
+         String[] fields = payload == null ? new String[0] : payload.split(";", 4);
+         if (fields.length == 4) {
+            try {
+               return new Change(Integer.parseInt(fields[0]), fields[1], fields[2], fields[3]);
+            }catch (NumberFormatException e) {
+               // not from the trigger; fall through.
+            }//end try
+         }//end if
+         return new Change(0, null, null, null);
+      }//end parse
+   }//end Change
+
+   /**
+    * Receives changes on the listener thread; must not block.
+    */
+   public interface Subscriber {
+      void changed(Change change);
+   }
+
+   private final ConnectionPool _pool;
+   private final CopyOnWriteArrayList<Subscriber> _subscribers = new CopyOnWriteArrayList<Subscriber>();
+   private final AtomicLong _received = new AtomicLong();
+   private volatile boolean _running = false;
+   private volatile Connection _connection = null;
+   private Thread _thread = null;
+
+   /**
+    * @param pool the pool whose database to listen on; the listener opens
+    *        its own connection outside the pool
+    */
+   public StatusListener(ConnectionPool pool) {
+      this._pool = pool;
+   }
+
+   /**
+    * Connects and starts listening on a daemon thread.
+    *
+    * @throws java.sql.SQLException when the first connection fails
+    */
+   public synchronized void start() throws SQLException {
+      if (this._running)
+         return;
+      this._connection = listen();
+      this._running = true;
+      this._thread = new Thread(new Runnable() {
+         public void run() { loop(); }
+      }, "cafe-status-listener");
+      this._thread.setDaemon(true);
+      this._thread.start();
+   }//end start
+
+   public synchronized void stop() {
+      this._running = false;
+      if (this._thread != null)
+         this._thread.interrupt();
+      close(this._connection);
+   }//end stop
+
+   public void subscribe(Subscriber subscriber) {
+      this._subscribers.add(subscriber);
+   }
+
+   public void unsubscribe(Subscriber subscriber) {
+      this._subscribers.remove(subscriber);
+   }
+
+   public int getSubscriberCount() { return this._subscribers.size(); }
+   public long getReceived() { return this._received.get(); }
+
+   private Connection listen() throws SQLException {
+      Connection conn = this._pool.openDedicated();
+      try {
+         Statement stmt = conn.createStatement();
+         try {
+            stmt.execute("LISTEN " + CHANNEL);
+         } finally {
+            stmt.close();
+         }//end try
+         return conn;
+      }catch (SQLException e) {
+         close(conn);
+         throw e;
+      }//end try
+   }//end listen
+
+   private void loop() {
+      while (this._running) {
+         try {
+            Connection conn = this._connection;
+            if (conn == null)
+               this._connection = conn = listen();
+            for (PGNotification notification : poll(conn)) {
+               this._received.incrementAndGet();
+               publish(Change.parse(notification.getParameter()));
+            }//end for
+         }catch (SQLException e) {
+            if (!this._running)
+               return;
+            System.err.println("Status listener: " + e.getMessage() + "; reconnecting");
+            close(this._connection);
+            this._connection = null;
+            if (!pause(RETRY_MILLIS))
+               return;
+            publish(new Change(0, null, null, null));
+         }//end try
+      }//end while
+   }//end loop
+
+   private void publish(Change change) {
+      for (Subscriber subscriber : this._subscribers) {
+         try {
+            subscriber.changed(change);
+         }catch (RuntimeException e) {
+            System.err.println("Status subscriber failed: " + e);
+         }//end try
+      }//end for
+   }//end publish
+
+   /*
+    * Returns the notifications that arrived, waiting up to POLL_MILLIS for
+    * one.
+    */
+   private static PGNotification[] poll(Connection conn) throws SQLException {
+      PGNotification[] notifications = conn.unwrap(PGConnection.class).getNotifications(POLL_MILLIS);
+      return notifications == null ? new PGNotification[0] : notifications;
+   }//end poll
+
+   private boolean pause(long millis) {
+      try {
+         Thread.sleep(millis);
+         return this._running;
+      }catch (InterruptedException e) {
+         return false;
+      }//end try
+   }//end pause
+
+   private static void close(Connection conn) {
+      if (conn == null)
+         return;
+      try {
+         conn.close();
+      }catch (SQLException e) {
+         // ignored.
+      }//end try
+   }//end close
+
+}//end StatusListener
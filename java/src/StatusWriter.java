@@ -0,0 +1,435 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class writes ItemStatus status changes behind the callers. A change
+ * is kept in memory and the pending changes are written every FLUSH_MILLIS,
+ * or as soon as BATCH_SIZE of them wait, as one UPDATE of all their rows in
+ * a single commit. Changes to the same item before a flush are merged, the
+ * later status winning, so a busy kitchen commits a few times a second
+ * instead of once per change.
+ *
+ * A change is only applied when the row was not updated later, so a
+ * delayed write never undoes a newer status written directly, such as a
+ * claim. Reads of an order or of the kitchen queue show the pending changes
+ * of the items they return (see overlay). Changes made inside a transaction
+ * are written at once as part of it, and in synchronous mode, set with
+ * -Dcafe.status.sync=true, every change is written at once.
+ *
+ * A failed flush keeps its changes and is tried again on the next one.
+ * When more than MAX_PENDING changes wait the callers write them
+ * themselves, so a database outage reaches them instead of filling memory.
+ * close writes whatever is left.
+ *
+ */
+public class StatusWriter {
+
+   // defaults, overridable with the cafe.status.flush (milliseconds) and
+   // cafe.status.batch system properties.
+   static final long DEFAULT_FLUSH_MILLIS = 5;
+   static final int DEFAULT_BATCH_SIZE = 256;
+
+   // the changes are passed as one array per column, so the statement is
+   // the same however many rows a flush writes.
+   static final String UPDATE =
+      "UPDATE ItemStatus i SET status = v.status, lastUpdated = v.lastUpdated, " +
+      "comments = COALESCE(v.comments, i.comments) " +
+      "FROM unnest(?::integer[], ?::text[], ?::text[], ?::timestamp[], ?::text[]) " +
+      "AS v(orderid, itemName, status, lastUpdated, comments) " +
+      "WHERE i.orderid = v.orderid AND i.itemName = v.itemName AND i.lastUpdated <= v.lastUpdated";
+
+   // times close tries to write what is left.
+   static final int CLOSE_ATTEMPTS = 5;
+
+   /**
+    * One pending change.
+    */
+   private static final class Change {
+      final int orderid;
+      final String itemName;
+      final String status;
+      final Timestamp lastUpdated;
+      final String comments;
+
+      Change(int orderid, String itemName, String status, Timestamp lastUpdated, String comments) {
+         this.orderid = orderid;
+         this.itemName = itemName;
+         this.status = status;
+         this.lastUpdated = lastUpdated;
+         this.comments = comments;
+      }
+
+      // this change merged with a later call for the same item: the later
+      // time wins, keeping the other's comments when it has none.
+      Change then(Change later) {
+         Change newer = later.lastUpdated.before(this.lastUpdated) ? this : later;
+         Change older = newer == later ? this : later;
+         if (newer.comments != null || older.comments == null)
+            return newer;
+         return new Change(newer.orderid, newer.itemName, newer.status, newer.lastUpdated, older.comments);
+      }
+   }//end Change
+
+   private final Cafe _esql;
+   private final long _flushMillis;
+   private final int _batchSize;
+   private final int _maxPending;
+   private volatile boolean _synchronous = Boolean.getBoolean("cafe.status.sync");
+
+   // guarded by this: the changes waiting, and those being written by the
+   // current flush, which reads still have to see.
+   private Map<String, Change> _pending = new LinkedHashMap<String, Change>();
+   private Map<String, Change> _writing = new HashMap<String, Change>();
+   private boolean _flushRequested = false;
+   private boolean _closed = false;
+   private ScheduledExecutorService _flusher = null;
+
+   // one flush at a time.
+   private final Object _flushLock = new Object();
+
+   private final AtomicLong _changes = new AtomicLong();
+   private final AtomicLong _merged = new AtomicLong();
+   private final AtomicLong _flushes = new AtomicLong();
+   private final AtomicLong _rows = new AtomicLong();
+   private final AtomicLong _failures = new AtomicLong();
+
+   public StatusWriter(Cafe esql) {
+      this(esql, Long.getLong("cafe.status.flush", DEFAULT_FLUSH_MILLIS),
+           Integer.getInteger("cafe.status.batch", DEFAULT_BATCH_SIZE));
+   }
+
+   /**
+    * @param esql the session whose pool the flushes use
+    * @param flushMillis the longest a change waits before it is written
+    * @param batchSize the number of waiting changes that are written at once
+    */
+   public StatusWriter(Cafe esql, long flushMillis, int batchSize) {
+      if (flushMillis < 1 || batchSize < 1)
+         throw new IllegalArgumentException("flush interval and batch size must be positive");
+      this._esql = esql;
+      this._flushMillis = flushMillis;
+      this._batchSize = batchSize;
+      this._maxPending = batchSize * 16;
+   }//end StatusWriter
+
+   /**
+    * @return true when every change is written before update returns
+    */
+   public boolean isSynchronous() {
+      return this._synchronous;
+   }
+
+   public void setSynchronous(boolean synchronous) throws SQLException {
+      this._synchronous = synchronous;
+      if (synchronous)
+         flush();
+   }//end setSynchronous
+
+   /**
+    * Changes the status of an item, and its comments unless they are null.
+    * The change is written by a later flush unless the writer is
+    * synchronous or the calling thread is in a transaction.
+    *
+    * @param lastUpdated the time of the change
+    * @throws java.sql.SQLException when a change written at once could not
+    *         be stored
+    * @throws IllegalStateException when the writer is closed
+    */
+   public void update(int orderid, String itemName, String status, Timestamp lastUpdated, String comments)
+      throws SQLException {
+      Change change = new Change(orderid, itemName.trim(), status, lastUpdated, comments);
+      this._changes.incrementAndGet();
+      if (this._synchronous || this._esql.inTransaction()) {
+         write(Collections.singletonList(change));
+         return;
+      }//end if
+      boolean overflowing;
+      synchronized (this) {
+         if (this._closed)
+            throw new IllegalStateException("The status writer is closed");
+         String key = key(change.orderid, change.itemName);
+         Change previous = this._pending.get(key);
+         if (previous != null) {
+            this._merged.incrementAndGet();
+            change = previous.then(change);
+         }//end if
+         this._pending.put(key, change);
+         if (this._flusher == null)
+            start();
+         overflowing = this._pending.size() >= this._maxPending;
+         if (!overflowing && this._pending.size() >= this._batchSize && !this._flushRequested) {
+            this._flushRequested = true;
+            this._flusher.execute(new Runnable() {
+               public void run() { background(); }
+            });
+         }//end if
+      }//end synchronized
+      if (overflowing)
+         flush();
+   }//end update
+
+   /**
+    * Writes every pending change now.
+    *
+    * @throws java.sql.SQLException when the changes could not be stored;
+    *         they stay pending
+    */
+   public void flush() throws SQLException {
+      synchronized (this._flushLock) {
+         List<Change> changes;
+         synchronized (this) {
+            this._flushRequested = false;
+            if (this._pending.isEmpty())
+               return;
+            this._writing = this._pending;
+            this._pending = new LinkedHashMap<String, Change>();
+            changes = new ArrayList<Change>(this._writing.values());
+         }//end synchronized
+         try {
+            for (int i = 0; i < changes.size(); i += this._batchSize)
+               write(changes.subList(i, Math.min(i + this._batchSize, changes.size())));
+         }catch (SQLException e) {
+            this._failures.incrementAndGet();
+            requeue();
+            throw e;
+         }catch (RuntimeException e) {
+            this._failures.incrementAndGet();
+            requeue();
+            throw e;
+         }finally {
+            synchronized (this) {
+               this._writing = new HashMap<String, Change>();
+            }
+         }//end try
+      }//end synchronized
+   }//end flush
+
+   /**
+    * Applies the pending change of an item, if any, to the row read from
+    * the database.
+    *
+    * @param orderid the order of the item
+    * @param line the item as read
+    * @return the item as it will be once the changes are written
+    */
+   public OrderReceipt.Line overlay(int orderid, OrderReceipt.Line line) {
+      Change change = pending(orderid, line);
+      if (change == null)
+         return line;
+      return new OrderReceipt.Line(line.getItemName(), change.status, change.lastUpdated,
+                                   change.comments != null ? change.comments : line.getComments());
+   }//end overlay
+
+   /**
+    * @see #overlay(int, OrderReceipt.Line)
+    */
+   public WorkItem overlay(WorkItem item) {
+      Change change = pending(item.getOrderId(), item);
+      if (change == null)
+         return item;
+      return new WorkItem(item.getOrderId(), item.getItemName(), change.status, change.lastUpdated,
+                          change.comments != null ? change.comments : item.getComments());
+   }//end overlay
+
+   /**
+    * Stops the background flushes and writes what is left, trying again
+    * on transient failures. Changes that still could not be written are
+    * reported on standard error.
+    */
+   public void close() {
+      ScheduledExecutorService flusher;
+      synchronized (this) {
+         if (this._closed)
+            return;
+         this._closed = true;
+         flusher = this._flusher;
+      }//end synchronized
+      if (flusher != null) {
+         flusher.shutdown();
+         try {
+            flusher.awaitTermination(this._flushMillis + 10000, TimeUnit.MILLISECONDS);
+         }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }//end try
+      }//end if
+      RetryPolicy retry = new RetryPolicy(CLOSE_ATTEMPTS, 100, 2000);
+      for (int attempt = 1; ; attempt++) {
+         try {
+            flush();
+            return;
+         }catch (SQLException e) {
+            if (!retry.pause(attempt)) {
+               System.err.println("Lost " + getPending() + " item status changes: " + e.getMessage());
+               return;
+            }//end if
+         }//end try
+      }//end for
+   }//end close
+
+   public synchronized int getPending() {
+      return this._pending.size() + this._writing.size();
+   }
+
+   /** @return the changes made, merged or not */
+   public long getChanges() { return this._changes.get(); }
+
+   /** @return the changes that replaced a pending change of the same item */
+   public long getMerged() { return this._merged.get(); }
+
+   /** @return the statements that wrote changes, one commit each */
+   public long getFlushes() { return this._flushes.get(); }
+
+   /** @return the changes written */
+   public long getRows() { return this._rows.get(); }
+
+   public long getFailures() { return this._failures.get(); }
+
+   /**
+    * Writes the counters in the Prometheus text exposition format.
+    */
+   public void writePrometheus(PrintWriter out) {
+      out.println("# HELP cafe_status_changes_total Item status changes made.");
+      out.println("# TYPE cafe_status_changes_total counter");
+      out.println("cafe_status_changes_total " + getChanges());
+      out.println("# HELP cafe_status_merged_total Item status changes merged into a pending one.");
+      out.println("# TYPE cafe_status_merged_total counter");
+      out.println("cafe_status_merged_total " + getMerged());
+      out.println("# HELP cafe_status_commits_total Statements that wrote item status changes.");
+      out.println("# TYPE cafe_status_commits_total counter");
+      out.println("cafe_status_commits_total " + getFlushes());
+      out.println("# HELP cafe_status_pending Item status changes not written yet.");
+      out.println("# TYPE cafe_status_pending gauge");
+      out.println("cafe_status_pending " + getPending());
+      out.flush();
+   }//end writePrometheus
+
+   @Override
+   public String toString() {
+      return "status writes: " + getChanges() + " changes, " + getMerged() + " merged, "
+         + getFlushes() + " commits, " + getRows() + " rows, " + getFailures() + " failed flushes, "
+         + getPending() + " pending" + (isSynchronous() ? " (synchronous)" : "");
+   }
+
+   private synchronized Change pending(int orderid, OrderReceipt.Line line) {
+      if (this._pending.isEmpty() && this._writing.isEmpty())
+         return null;
+      String key = key(orderid, line.getItemName());
+      Change change = this._pending.get(key);
+      if (change == null)
+         change = this._writing.get(key);
+      // the row was updated after the change, which will not be applied.
+      if (change == null || line.getLastUpdated() != null && line.getLastUpdated().after(change.lastUpdated))
+         return null;
+      return change;
+   }//end pending
+
+   // puts the changes of a failed flush back under any made since.
+   private synchronized void requeue() {
+      Map<String, Change> pending = new LinkedHashMap<String, Change>(this._writing);
+      for (Map.Entry<String, Change> e : this._pending.entrySet()) {
+         Change earlier = pending.get(e.getKey());
+         pending.put(e.getKey(), earlier == null ? e.getValue() : earlier.then(e.getValue()));
+      }//end for
+      this._pending = pending;
+   }//end requeue
+
+   private void write(List<Change> changes) throws SQLException {
+      int n = changes.size();
+      String[] orderids = new String[n];
+      String[] itemNames = new String[n];
+      String[] statuses = new String[n];
+      String[] times = new String[n];
+      String[] comments = new String[n];
+      for (int i = 0; i < n; i++) {
+         Change c = changes.get(i);
+         orderids[i] = Integer.toString(c.orderid);
+         itemNames[i] = c.itemName;
+         statuses[i] = c.status;
+         times[i] = c.lastUpdated.toString();
+         comments[i] = c.comments;
+      }//end for
+      this._esql.executeUpdate(UPDATE, array(orderids), array(itemNames), array(statuses),
+                               array(times), array(comments));
+      this._flushes.incrementAndGet();
+      this._rows.addAndGet(n);
+   }//end write
+
+   // runs on the flusher thread.
+   private void background() {
+      try {
+         flush();
+      }catch (SQLException e) {
+         // kept pending; the next flush tries again.
+      }catch (RuntimeException e) {
+         System.err.println("Item status flush failed: " + e);
+      }//end try
+   }//end background
+
+   // called with the lock held.
+   private void start() {
+      this._flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "cafe-status-writer");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      this._flusher.scheduleWithFixedDelay(new Runnable() {
+         public void run() { background(); }
+      }, this._flushMillis, this._flushMillis, TimeUnit.MILLISECONDS);
+   }//end start
+
+   private static String key(int orderid, String itemName) {
+      return orderid + ";" + itemName.trim();
+   }
+
+   /*
+    * The array literal of the values, every element quoted; null elements
+    * are written as NULL.
+    */
+   static String array(String[] values) {
+      StringBuilder sb = new StringBuilder("{");
+      for (int i = 0; i < values.length; i++) {
+         if (i > 0)
+            sb.append(',');
+         if (values[i] == null) {
+            sb.append("NULL");
+            continue;
+         }//end if
+         sb.append('"');
+         for (int j = 0; j < values[i].length(); j++) {
+            char c = values[i].charAt(j);
+            if (c == '"' || c == '\\')
+               sb.append('\\');
+            sb.append(c);
+         }//end for
+         sb.append('"');
+      }//end for
+      return sb.append('}').toString();
+   }//end array
+
+}//end StatusWriter
@@ -0,0 +1,147 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class holds the user operations: creating users, logging in and
+ * updating profiles. Logging in opens a UserSession that carries the
+ * user's profile and role, so role checks later on need no query. Open
+ * sessions are kept in a SessionStore shared by every caller of this
+ * service.
+ *
+ */
+public class UserService {
+
+   public static final String CUSTOMER = "Customer";
+   public static final String EMPLOYEE = "Employee";
+   public static final String MANAGER = "Manager";
+
+   // Users columns a profile update may change; only managers may change type.
+   public static final List<String> PROFILE_FIELDS =
+      Arrays.asList("login", "phoneNum", "password", "favItems", "type");
+
+   private final Cafe _esql;
+   private final SessionStore _sessions = new SessionStore(
+      Integer.getInteger("cafe.sessions.max", SessionStore.DEFAULT_CAPACITY),
+      Long.getLong("cafe.sessions.idle", SessionStore.DEFAULT_IDLE_MILLIS / 60000) * 60000);
+
+   public UserService(Cafe esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * Creates a new customer with an empty favorites list.
+    *
+    * @param login the new login
+    * @param password the password
+    * @param phone the phone number
+    * @throws java.sql.SQLException when the user could not be stored, e.g.
+    *         because the login or phone number is taken
+    */
+   public void createUser(String login, String password, String phone) throws SQLException {
+      this._esql.executeUpdate(
+         "INSERT INTO USERS (phoneNum, login, password, favItems, type) VALUES (?, ?, ?, ?, ?)",
+         phone, login, password, "", CUSTOMER);
+   }//end createUser
+
+   /**
+    * Checks log in credentials and opens a session.
+    *
+    * @param login the login
+    * @param password the password
+    * @return the new session, or null when the credentials are wrong
+    * @throws java.sql.SQLException when the lookup failed
+    */
+   public UserSession logIn(String login, String password) throws SQLException {
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+         "SELECT login, phoneNum, favItems, type FROM USERS WHERE login = ? AND password = ?", login, password);
+      if (rows.isEmpty())
+         return null;
+      List<String> row = rows.get(0);
+      UserSession session = new UserSession(UUID.randomUUID().toString(), trim(row.get(0)), trim(row.get(1)),
+                                            trim(row.get(2)), trim(row.get(3)));
+      this._sessions.put(session);
+      return session;
+   }//end logIn
+
+   /**
+    * @param token the token of a session opened by logIn
+    * @return the session, or null when it expired or was closed
+    */
+   public UserSession getSession(String token) {
+      return this._sessions.get(token);
+   }
+
+   public void logOut(UserSession session) {
+      this._sessions.remove(session.getToken());
+   }
+
+   /**
+    * Changes one profile field. Users may change their own login, phone
+    * number, password and favorite items; only managers may change another
+    * user's profile or anyone's type.
+    *
+    * Favorite items are given as a comma list of menu item names, matched
+    * ignoring case, and stored through FavoritesService.
+    *
+    * The changed user's sessions are dropped, since they carry the old
+    * profile; when users change their own profile, the acting session is
+    * replaced by an updated one under the same token instead.
+    *
+    * @param acting the session of the user making the change
+    * @param targetLogin the user to change, or null for the acting user
+    * @param field one of PROFILE_FIELDS
+    * @param value the new value
+    * @return the acting user's session after the change
+    * @throws java.sql.SQLException when the update failed
+    * @throws ServiceException when the field is unknown, the change is not
+    *         allowed, the target user does not exist, or a favorite item is
+    *         not on the menu
+    */
+   public UserSession updateProfile(UserSession acting, String targetLogin, String field, String value)
+      throws SQLException {
+      if (!PROFILE_FIELDS.contains(field))
+         throw new ServiceException(ServiceException.Reason.INVALID,
+                                    "Profile field must be one of " + PROFILE_FIELDS);
+      String who = targetLogin != null ? targetLogin : acting.getLogin();
+      boolean self = who.equals(acting.getLogin());
+      if ((field.equals("type") || !self) && !acting.isManager())
+         throw new ServiceException(ServiceException.Reason.FORBIDDEN,
+                                    "Only managers can change user types or other users");
+
+      if (field.equals("favItems"))
+         value = this._esql.getFavoritesService().store(who, value);
+      // field is one of the fixed column names above, never user text.
+      else if (this._esql.executeUpdate("UPDATE Users SET " + field + " = ? WHERE login = ?", value, who) == 0)
+         throw new ServiceException(ServiceException.Reason.NOT_FOUND, "No user " + who);
+
+      this._sessions.removeLogin(who);
+      if (!self)
+         return acting;
+      UserSession updated = new UserSession(acting.getToken(),
+                                            field.equals("login") ? value : acting.getLogin(),
+                                            field.equals("phoneNum") ? value : acting.getPhoneNum(),
+                                            field.equals("favItems") ? value : acting.getFavItems(),
+                                            field.equals("type") ? value : acting.getType());
+      this._sessions.put(updated);
+      return updated;
+   }//end updateProfile
+
+   private static String trim(String value) {
+      return value == null ? null : value.trim();
+   }
+
+}//end UserService
@@ -0,0 +1,51 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+/**
+ * This class describes a logged in user: the session token and the
+ * user's profile and role as they were when the session was opened or
+ * last refreshed. Role checks on a session need no query.
+ *
+ */
+public class UserSession {
+
+   private final String _token;
+   private final String _login;
+   private final String _phoneNum;
+   private final String _favItems;
+   private final String _type;
+
+   public UserSession(String token, String login, String phoneNum, String favItems, String type) {
+      this._token = token;
+      this._login = login;
+      this._phoneNum = phoneNum;
+      this._favItems = favItems;
+      this._type = type;
+   }
+
+   public String getToken() { return this._token; }
+   public String getLogin() { return this._login; }
+   public String getPhoneNum() { return this._phoneNum; }
+   public String getFavItems() { return this._favItems; }
+   public String getType() { return this._type; }
+
+   public boolean isManager() {
+      return UserService.MANAGER.equals(this._type);
+   }
+
+   /**
+    * @return true for employees and managers
+    */
+   public boolean isStaff() {
+      return UserService.MANAGER.equals(this._type) || UserService.EMPLOYEE.equals(this._type);
+   }
+
+}//end UserSession
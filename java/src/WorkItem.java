@@ -0,0 +1,39 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Timestamp;
+
+/**
+ * This class holds one ItemStatus row as the kitchen queue shows it: an
+ * item together with the order it belongs to.
+ *
+ */
+public class WorkItem extends OrderReceipt.Line {
+
+   // column header matching toString().
+   public static final String HEADER = "orderid\t" + OrderReceipt.Line.HEADER;
+
+   private final int _orderid;
+
+   public WorkItem(int orderid, String itemName, String status, Timestamp lastUpdated, String comments) {
+      super(itemName, status, lastUpdated, comments);
+      this._orderid = orderid;
+   }
+
+   public int getOrderId() { return this._orderid; }
+
+   @Override
+   public String toString() {
+      return this._orderid + "\t" + super.toString();
+   }
+
+}//end WorkItem
@@ -0,0 +1,151 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.postgresql.PGConnection;
+
+/**
+ * The databases the integration tests run against. One throwaway Postgres
+ * is started for the test run. The first database is created from the
+ * scripts in sql/src, brought to the current version with the scripts in
+ * sql/src/migrations, and seeded with menu.csv and users.csv. Every test
+ * class then gets a copy of it of its own, so the classes do not see each
+ * other's orders.
+ *
+ */
+final class CafeDatabase {
+
+   public static final String CUSTOMER = "Natalie_Braun";
+   public static final String CUSTOMER_PASSWORD = "b123456";
+   public static final String OTHER_CUSTOMER = "Ruthie";
+   public static final String OTHER_CUSTOMER_PASSWORD = "a";
+   public static final String STAFF = "Amy";
+   public static final String STAFF_PASSWORD = "a5319";
+   public static final String MANAGER = "Admin";
+   public static final String MANAGER_PASSWORD = "admin";
+
+   static final String USER = "postgres";
+   static final String TEMPLATE = "cafe_template";
+
+   // applied in order after the create scripts, as sql/scripts/migrate.sh does
+   static final String[] MIGRATIONS = {
+      "001_text_numeric_indexes.sql", "002_item_status_queue.sql", "003_order_keyset_indexes.sql",
+      "004_menu_search.sql", "005_favorites.sql", "006_sales_rollups.sql", "007_kitchen_queue_index.sql",
+      "008_item_prices.sql" };
+
+   private static EmbeddedPostgres postgres;
+   private static int databases = 0;
+
+   private CafeDatabase() {
+   }
+
+   /**
+    * Creates a new database loaded with the schema and the seed data.
+    *
+    * @return its JDBC URL, for the user USER without a password
+    */
+   static synchronized String create() throws IOException, SQLException {
+      if (postgres == null) {
+         postgres = EmbeddedPostgres.start();
+         Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+               try {
+                  postgres.close();
+               }catch (IOException e) {
+                  // the server goes down with the JVM anyway.
+               }//end try
+            }
+         });
+         execute("postgres", "CREATE DATABASE " + TEMPLATE);
+         load(postgres.getJdbcUrl(USER, TEMPLATE));
+      }//end if
+      String name = "cafe_" + (++databases);
+      execute("postgres", "CREATE DATABASE " + name + " TEMPLATE " + TEMPLATE);
+      return postgres.getJdbcUrl(USER, name);
+   }//end create
+
+   /**
+    * Opens a Cafe session on a pool of its own; close it with close().
+    */
+   static Cafe open(String url, int maxSize) throws SQLException {
+      return new Cafe(new ConnectionPool(url, USER, "", 1, maxSize));
+   }
+
+   static void close(Cafe esql) {
+      if (esql == null)
+         return;
+      esql.cleanup();
+      esql.getPool().close();
+   }//end close
+
+   private static void execute(String database, String sql) throws SQLException {
+      try (Connection conn = DriverManager.getConnection(postgres.getJdbcUrl(USER, database));
+           Statement stmt = conn.createStatement()) {
+         stmt.execute(sql);
+      }//end try
+   }//end execute
+
+   private static void load(String url) throws IOException, SQLException {
+      try (Connection conn = DriverManager.getConnection(url);
+           Statement stmt = conn.createStatement()) {
+         stmt.execute(script("create_tables.sql", true));
+         stmt.execute(script("create_indexes.sql", true));
+         stmt.execute(script("menu_version.sql", true));
+         for (String migration : MIGRATIONS)
+            stmt.execute(script("migrations/" + migration, false));
+
+         PGConnection pg = conn.unwrap(PGConnection.class);
+         copy(pg, "Menu", "menu.csv");
+         copy(pg, "Users", "users.csv");
+         stmt.execute("ANALYZE");
+      }//end try
+   }//end load
+
+   // The create scripts start by dropping the tables they create, which
+   // fails on the fresh database; those statements are left out.
+   // Migrations run as they are.
+   private static String script(String name, boolean skipDrops) throws IOException {
+      StringBuilder sql = new StringBuilder();
+      try (BufferedReader reader = new BufferedReader(resource(name))) {
+         String line;
+         while ((line = reader.readLine()) != null)
+            if (!skipDrops || !line.trim().toUpperCase().startsWith("DROP "))
+               sql.append(line).append('\n');
+      }//end try
+      return sql.toString();
+   }//end script
+
+   private static void copy(PGConnection pg, String table, String csv) throws SQLException, IOException {
+      try (Reader reader = resource(csv)) {
+         pg.getCopyAPI().copyIn("COPY " + table + " FROM STDIN WITH DELIMITER ';'", reader);
+      }
+   }//end copy
+
+   private static Reader resource(String name) throws IOException {
+      InputStream in = CafeDatabase.class.getResourceAsStream("/sql/" + name);
+      if (in == null)
+         throw new IOException("Missing resource sql/" + name);
+      return new InputStreamReader(in, StandardCharsets.UTF_8);
+   }//end resource
+
+}//end CafeDatabase
@@ -0,0 +1,172 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+
+/**
+ * The pgjdbc settings ConnectionPool opens its connections with, and the
+ * round trips they save against the driver's own defaults: statements are
+ * prepared on the server at their first execution instead of their fifth,
+ * and the ItemStatus rows of an order go to the server as one multi-row
+ * INSERT instead of one statement per item.
+ *
+ */
+class DriverSettingsIT {
+
+   // no more than 8 rows, which the driver rewrites into a single INSERT.
+   static final List<String> ITEMS = Arrays.asList(
+      "Coffee", "7up", "Pepsi", "Lemonade", "Brisk", "Orange Juice", "Donuts", "Pudding");
+
+   static final String[][] DRIVER_DEFAULTS = {
+      { "cafe.jdbc.prepareThreshold", "5" },
+      { "cafe.jdbc.reWriteBatchedInserts", "false" } };
+
+   private static String url;
+   private static Cafe esql;
+
+   @BeforeAll
+   static void open() throws Exception {
+      url = CafeDatabase.create();
+      esql = CafeDatabase.open(url, 2);
+      // counts the INSERT statements run on ItemStatus, whatever their rows.
+      esql.executeUpdate("CREATE TABLE InsertStatements(statements integer NOT NULL)");
+      esql.executeUpdate("INSERT INTO InsertStatements VALUES (0)");
+      esql.executeUpdate(
+         "CREATE FUNCTION count_insert_statement() RETURNS trigger AS " +
+         "$$ BEGIN UPDATE InsertStatements SET statements = statements + 1; RETURN NULL; END; $$ " +
+         "LANGUAGE plpgsql");
+      esql.executeUpdate(
+         "CREATE TRIGGER trigger_count_insert_statement AFTER INSERT ON ItemStatus " +
+         "FOR EACH STATEMENT EXECUTE PROCEDURE count_insert_statement()");
+   }//end open
+
+   @AfterAll
+   static void close() {
+      CafeDatabase.close(esql);
+   }
+
+   @AfterEach
+   void clearOverrides() {
+      for (String[] setting : DRIVER_DEFAULTS)
+         System.clearProperty(setting[0]);
+   }
+
+   @Test
+   void connectionsUseTheCafeSettings() throws Exception {
+      ConnectionPool.PooledConnection pc = esql.getPool().borrow();
+      try {
+         assertEquals(1, pc.connection().unwrap(PGConnection.class).getPrepareThreshold());
+         Statement stmt = pc.connection().createStatement();
+         try {
+            assertEquals(Cafe.DEFAULT_FETCH_SIZE, stmt.getFetchSize());
+            ResultSet rs = stmt.executeQuery("SHOW application_name");
+            rs.next();
+            assertEquals("cafe", rs.getString(1));
+         } finally {
+            stmt.close();
+         }//end try
+      } finally {
+         esql.getPool().release(pc, false);
+      }//end try
+   }//end connectionsUseTheCafeSettings
+
+   @Test
+   void systemPropertiesOverrideTheSettings() throws Exception {
+      System.setProperty("cafe.jdbc.prepareThreshold", "7");
+      Properties props = ConnectionPool.connectionProperties("someone", "secret");
+      assertEquals("7", props.getProperty("prepareThreshold"));
+      assertEquals("true", props.getProperty("reWriteBatchedInserts"));
+      assertEquals("someone", props.getProperty("user"));
+
+      ConnectionPool pool = new ConnectionPool(url, CafeDatabase.USER, "", 1, 1);
+      try {
+         ConnectionPool.PooledConnection pc = pool.borrow();
+         try {
+            assertEquals(7, pc.connection().unwrap(PGConnection.class).getPrepareThreshold());
+         } finally {
+            pool.release(pc, false);
+         }//end try
+      } finally {
+         pool.close();
+      }//end try
+   }//end systemPropertiesOverrideTheSettings
+
+   @Test
+   void statementsArePreparedOnTheServerAtFirstUse() throws Exception {
+      assertEquals(1, preparedAfterOneUse(esql));
+
+      for (String[] setting : DRIVER_DEFAULTS)
+         System.setProperty(setting[0], setting[1]);
+      Cafe defaults = CafeDatabase.open(url, 1);
+      try {
+         assertEquals(0, preparedAfterOneUse(defaults));
+      } finally {
+         CafeDatabase.close(defaults);
+      }//end try
+   }//end statementsArePreparedOnTheServerAtFirstUse
+
+   @Test
+   void orderItemsAreInsertedInOneStatement() throws Exception {
+      assertEquals(1, insertStatements(esql));
+
+      for (String[] setting : DRIVER_DEFAULTS)
+         System.setProperty(setting[0], setting[1]);
+      Cafe defaults = CafeDatabase.open(url, 1);
+      try {
+         assertEquals(ITEMS.size(), insertStatements(defaults));
+      } finally {
+         CafeDatabase.close(defaults);
+      }//end try
+   }//end orderItemsAreInsertedInOneStatement
+
+   /*
+    * Runs a query once on a connection and returns how many statements of
+    * that text the connection's session holds prepared on the server.
+    */
+   private static int preparedAfterOneUse(Cafe session) throws SQLException {
+      String query = "SELECT itemName FROM Menu WHERE type = ?";
+      session.begin();
+      try {
+         session.executeQueryAndReturnResult(query, "Drinks");
+         return Integer.parseInt(session.executeQueryAndReturnResult(
+            "SELECT count(*) FROM pg_prepared_statements WHERE statement = 'SELECT itemName FROM Menu WHERE type = $1'")
+            .get(0).get(0));
+      } finally {
+         session.rollback();
+      }//end try
+   }//end preparedAfterOneUse
+
+   // places an order of ITEMS and returns how many INSERTs stored its items.
+   private static int insertStatements(Cafe session) throws SQLException {
+      int before = statements(session);
+      session.getOrderService().placeOrder(new OrderRequest(CafeDatabase.CUSTOMER, ITEMS));
+      return statements(session) - before;
+   }//end insertStatements
+
+   private static int statements(Cafe session) throws SQLException {
+      return Integer.parseInt(session.executeQueryAndReturnResult("SELECT statements FROM InsertStatements").get(0).get(0));
+   }
+
+}//end DriverSettingsIT
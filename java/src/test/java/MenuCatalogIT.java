@@ -0,0 +1,99 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Menu edits made through MenuService, checked against the catalog
+ * snapshots they swap in. A reload builds a new search index, so the same
+ * index after a version check means the catalog did not reload.
+ *
+ */
+class MenuCatalogIT {
+
+   private static Cafe esql;
+   private static UserSession manager;
+
+   @BeforeAll
+   static void open() throws Exception {
+      esql = CafeDatabase.open(CafeDatabase.create(), 2);
+      manager = esql.getUserService().logIn(CafeDatabase.MANAGER, CafeDatabase.MANAGER_PASSWORD);
+   }//end open
+
+   @AfterAll
+   static void close() {
+      CafeDatabase.close(esql);
+   }
+
+   @Test
+   void editsAreTakenWithoutReloading() throws Exception {
+      MenuCatalog catalog = esql.getMenuCatalog();
+      catalog.setCheckIntervalMillis(0);
+      catalog.reload();
+
+      esql.getMenuService().addItem(manager, new MenuItem("Matcha", "Drinks", 3.25, "Iced green tea", null));
+      MenuSearchIndex added = catalog.getSearchIndex();
+      assertSame(added, catalog.getSearchIndex());
+      assertEquals(3.25, catalog.get("Matcha").getPrice(), 0.001);
+
+      esql.getMenuService().updateItem(manager, "Matcha", new MenuItem("Matcha Latte", "Drinks", 3.75, "Green tea", null));
+      MenuSearchIndex updated = catalog.getSearchIndex();
+      assertSame(updated, catalog.getSearchIndex());
+      assertNull(catalog.get("Matcha"));
+      assertEquals(3.75, catalog.get("Matcha Latte").getPrice(), 0.001);
+
+      assertTrue(esql.getMenuService().deleteItem(manager, "Matcha Latte"));
+      MenuSearchIndex deleted = catalog.getSearchIndex();
+      assertSame(deleted, catalog.getSearchIndex());
+      assertNull(catalog.get("Matcha Latte"));
+   }//end editsAreTakenWithoutReloading
+
+   @Test
+   void anEditElsewhereIsReloaded() throws Exception {
+      MenuCatalog catalog = esql.getMenuCatalog();
+      catalog.setCheckIntervalMillis(0);
+      catalog.reload();
+      MenuSearchIndex before = catalog.getSearchIndex();
+
+      esql.executeUpdate("UPDATE Menu SET price = 2.49 WHERE itemName = ?", "Pudding");
+      assertEquals(2.49, catalog.get("Pudding").getPrice(), 0.001);
+      assertNotSame(before, catalog.getSearchIndex());
+      esql.executeUpdate("UPDATE Menu SET price = 1.99 WHERE itemName = ?", "Pudding");
+   }//end anEditElsewhereIsReloaded
+
+   @Test
+   void olderSnapshotsKeepTheirIndex() throws Exception {
+      MenuCatalog catalog = esql.getMenuCatalog();
+      catalog.reload();
+      MenuSearchIndex before = catalog.getSearchIndex();
+      int size = before.size();
+
+      esql.getMenuService().addItem(manager, new MenuItem("Hojicha", "Drinks", 3.25, "Roasted tea", null));
+      try {
+         assertEquals(size, before.size());
+         assertTrue(before.search("hojicha", 10).isEmpty());
+         assertEquals("Hojicha", catalog.getSearchIndex().search("hojicha", 10).get(0).getItemName());
+      } finally {
+         esql.getMenuService().deleteItem(manager, "Hojicha");
+      }//end try
+      assertTrue(catalog.getSearchIndex().search("hojicha", 10).isEmpty());
+   }//end olderSnapshotsKeepTheirIndex
+
+}//end MenuCatalogIT
@@ -0,0 +1,134 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Many sessions adding and removing items of the same order at once, as
+ * ADD_ITEM and REMOVE_ITEM of OrderService run them. Every edit that
+ * succeeds is counted; afterwards each item must be in the order exactly
+ * when it was added once more than removed, and the total must be the menu
+ * price of the items left.
+ *
+ */
+class OrderEditConcurrencyIT {
+
+   static final int THREADS = 8;
+   static final int EDITS = 250;
+   static final List<String> ITEMS = Arrays.asList("Coffee", "7up", "Pepsi", "Lemonade", "Brisk", "Donuts");
+
+   private static Cafe esql;
+
+   @BeforeAll
+   static void open() throws Exception {
+      esql = CafeDatabase.open(CafeDatabase.create(), THREADS);
+   }
+
+   @AfterAll
+   static void close() {
+      CafeDatabase.close(esql);
+   }
+
+   @Test
+   void concurrentEditsLeaveItemsAndTotalConsistent() throws Exception {
+      final UserSession customer = esql.getUserService().logIn(CafeDatabase.CUSTOMER, CafeDatabase.CUSTOMER_PASSWORD);
+      final int orderid = esql.getOrderService().placeOrder(
+         new OrderRequest(CafeDatabase.CUSTOMER, Arrays.asList(ITEMS.get(0)))).getOrderId();
+
+      // adds minus removes of each item, starting from the placed order.
+      final AtomicIntegerArray net = new AtomicIntegerArray(ITEMS.size());
+      net.set(0, 1);
+      final CountDownLatch start = new CountDownLatch(1);
+      ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+      try {
+         List<Future<Integer>> edits = new ArrayList<Future<Integer>>();
+         for (int t = 0; t < THREADS; ++t) {
+            final Random random = new Random(t);
+            edits.add(executor.submit(new Callable<Integer>() {
+               public Integer call() throws Exception {
+                  start.await();
+                  int done = 0;
+                  for (int i = 0; i < EDITS; ++i) {
+                     int item = random.nextInt(ITEMS.size());
+                     try {
+                        if (random.nextBoolean()) {
+                           esql.getOrderService().addItem(customer, orderid, ITEMS.get(item));
+                           net.incrementAndGet(item);
+                        } else {
+                           esql.getOrderService().removeItem(customer, orderid, ITEMS.get(item));
+                           net.decrementAndGet(item);
+                        }//end if
+                        ++done;
+                     }catch (ServiceException e) {
+                        // the item was already there, or already gone.
+                        assertTrue(e.getReason() == ServiceException.Reason.CONFLICT
+                                   || e.getReason() == ServiceException.Reason.NOT_FOUND, e.getMessage());
+                     }//end try
+                  }//end for
+                  return done;
+               }
+            }));
+         }//end for
+         start.countDown();
+         int done = 0;
+         for (Future<Integer> f : edits)
+            done += f.get(120, TimeUnit.SECONDS);
+         assertTrue(done > 0, "no edit succeeded");
+      } finally {
+         executor.shutdownNow();
+      }//end try
+
+      List<String> expected = new ArrayList<String>();
+      double total = 0;
+      for (int i = 0; i < ITEMS.size(); ++i) {
+         int count = net.get(i);
+         assertTrue(count == 0 || count == 1, ITEMS.get(i) + " added " + count + " times more than removed");
+         if (count == 1) {
+            expected.add(ITEMS.get(i));
+            total += esql.getMenuCatalog().get(ITEMS.get(i)).getPrice();
+         }//end if
+      }//end for
+
+      List<String> stored = new ArrayList<String>();
+      for (List<String> row : esql.executeQueryAndReturnResult(
+              "SELECT itemName FROM ItemStatus WHERE orderid = ?", orderid))
+         stored.add(row.get(0));
+      assertEquals(new TreeSet<String>(expected), new TreeSet<String>(stored));
+      assertEquals(expected.size(), stored.size());
+
+      List<List<String>> order = esql.executeQueryAndReturnResult(
+         "SELECT o.total, COALESCE(sum(m.price), 0) FROM Orders o " +
+         "LEFT JOIN ItemStatus i ON i.orderid = o.orderid LEFT JOIN Menu m ON m.itemName = i.itemName " +
+         "WHERE o.orderid = ? GROUP BY o.total", orderid);
+      assertEquals(total, Double.parseDouble(order.get(0).get(0)), 0.001);
+      assertEquals(Double.parseDouble(order.get(0).get(1)), Double.parseDouble(order.get(0).get(0)), 0.001);
+   }//end concurrentEditsLeaveItemsAndTotalConsistent
+
+}//end OrderEditConcurrencyIT
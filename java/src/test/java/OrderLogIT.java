@@ -0,0 +1,267 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Recovery of the order log. Orders are appended through a session whose
+ * database cannot be reached, so they stay in the log, and the log is
+ * then stopped the way a crash stops it: nothing replayed, forced or
+ * written to the state file. The segments are tiny, so a few orders
+ * span several of them.
+ *
+ */
+class OrderLogIT {
+
+   static final int SEGMENT = 256;
+   static final int RESERVE = 100;
+   // longer than any test; the replayer runs once when the log opens.
+   static final long REPLAY_MILLIS = 3600000;
+
+   private static Cafe esql;
+   private static Cafe offline;
+
+   @TempDir
+   File dir;
+
+   @BeforeAll
+   static void open() throws Exception {
+      esql = CafeDatabase.open(CafeDatabase.create(), 2);
+      // nothing listens on port 1.
+      offline = new Cafe(new ConnectionPool("jdbc:postgresql://localhost:1/cafe", CafeDatabase.USER, "", 0, 1));
+   }//end open
+
+   @AfterAll
+   static void close() {
+      CafeDatabase.close(esql);
+      CafeDatabase.close(offline);
+   }
+
+   @Test
+   void aRecordWithABadChecksumEndsTheLog() throws Exception {
+      List<OrderReceipt> orders = appendOffline(3);
+      File segment = lastSegment();
+      // the first byte of the third record's checksum.
+      int at = recordStarts(Files.readAllBytes(segment.toPath())).get(2) + 4;
+      RandomAccessFile file = new RandomAccessFile(segment, "rw");
+      try {
+         file.seek(at);
+         int b = file.read();
+         file.seek(at);
+         file.write(b ^ 0xff);
+      } finally {
+         file.close();
+      }//end try
+
+      assertRecovered(orders.subList(0, 2), orders.get(2));
+   }//end aRecordWithABadChecksumEndsTheLog
+
+   @Test
+   void aRecordCutShortEndsTheLog() throws Exception {
+      List<OrderReceipt> orders = appendOffline(3);
+      File segment = lastSegment();
+      int start = recordStarts(Files.readAllBytes(segment.toPath())).get(2);
+      RandomAccessFile file = new RandomAccessFile(segment, "rw");
+      try {
+         file.setLength(start + 12);
+      } finally {
+         file.close();
+      }//end try
+
+      assertRecovered(orders.subList(0, 2), orders.get(2));
+   }//end aRecordCutShortEndsTheLog
+
+   @Test
+   void reservedIdsAreNotHandedOutTwiceAfterACrash() throws Exception {
+      reserve();
+      List<OrderReceipt> orders = new ArrayList<OrderReceipt>();
+      for (int crash = 0; crash < 3; ++crash) {
+         OrderLog log = new OrderLog(offline, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+         assertEquals(orders.size(), log.getPending());
+         for (int i = 0; i < 10; ++i)
+            orders.add(append(log, "Coffee", "Brisk"));
+         halt(log);
+      }//end for
+      assertTrue(dir.list().length > 3, "the orders span several segments");
+
+      Set<Integer> ids = new HashSet<Integer>();
+      for (OrderReceipt order : orders)
+         assertTrue(ids.add(order.getOrderId()), "order id " + order.getOrderId() + " handed out twice");
+
+      OrderLog log = new OrderLog(esql, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+      try {
+         for (OrderReceipt order : orders)
+            log.awaitReplay(order.getOrderId());
+         assertEquals(0, log.getPending());
+         assertEquals(0, log.getRejected());
+      } finally {
+         log.close();
+      }//end try
+      for (OrderReceipt order : orders) {
+         assertEquals(1, count("SELECT count(*) FROM Orders WHERE orderid = ? AND login = ?",
+                               order.getOrderId(), CafeDatabase.CUSTOMER));
+         assertEquals(2, count("SELECT count(*) FROM ItemStatus WHERE orderid = ?", order.getOrderId()));
+      }//end for
+   }//end reservedIdsAreNotHandedOutTwiceAfterACrash
+
+   @Test
+   void anOrderTheDatabaseRefusesIsRejectedOnce() throws Exception {
+      reserve();
+      OrderLog log = new OrderLog(offline, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+      OrderReceipt good = append(log, "Coffee");
+      OrderReceipt refused = append(log, "No Such Item");
+      halt(log);
+
+      log = new OrderLog(esql, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+      try {
+         log.awaitReplay(good.getOrderId());
+         log.awaitReplay(refused.getOrderId());
+         assertEquals(0, log.getPending());
+         assertEquals(1, log.getReplayed() - log.getRejected());
+         assertEquals(1, log.getRejected());
+      } finally {
+         log.close();
+      }//end try
+      assertEquals(1, count("SELECT count(*) FROM Orders WHERE orderid = ?", good.getOrderId()));
+      assertEquals(0, count("SELECT count(*) FROM Orders WHERE orderid = ?", refused.getOrderId()));
+      List<String> rejected = Files.readAllLines(new File(dir, "rejected.txt").toPath());
+      assertEquals(1, rejected.size());
+      assertTrue(rejected.get(0).startsWith(refused.getOrderId() + "\t"), rejected.get(0));
+
+      // replayed past it: it is not tried again.
+      log = new OrderLog(esql, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+      try {
+         assertEquals(0, log.getPending());
+         assertNull(log.get(refused.getOrderId()));
+      } finally {
+         log.close();
+      }//end try
+      assertEquals(1, Files.readAllLines(new File(dir, "rejected.txt").toPath()).size());
+   }//end anOrderTheDatabaseRefusesIsRejectedOnce
+
+   /*
+    * Reopens a log whose last record is damaged: the orders before it are
+    * pending, the damaged one is gone, and the next order is appended in
+    * its place and survives another crash.
+    */
+   private void assertRecovered(List<OrderReceipt> kept, OrderReceipt lost) throws Exception {
+      OrderLog log = new OrderLog(offline, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+      assertEquals(kept.size(), log.getPending());
+      for (OrderReceipt order : kept)
+         assertEquals(order.getItems().size(), log.get(order.getOrderId()).getItems().size());
+      assertNull(log.get(lost.getOrderId()));
+      OrderReceipt next = append(log, "Pudding");
+      halt(log);
+
+      log = new OrderLog(offline, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+      assertEquals(kept.size() + 1, log.getPending());
+      assertEquals("Pudding", log.get(next.getOrderId()).getItems().get(0).getItemName());
+      halt(log);
+   }//end assertRecovered
+
+   /*
+    * Reserves order ids through the database and leaves them in the
+    * state file.
+    */
+   private void reserve() throws Exception {
+      OrderLog log = new OrderLog(esql, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+      assertEquals(RESERVE, log.getReserve());
+      log.close();
+   }//end reserve
+
+   private List<OrderReceipt> appendOffline(int n) throws Exception {
+      reserve();
+      OrderLog log = new OrderLog(offline, dir, SEGMENT, RESERVE, REPLAY_MILLIS);
+      List<OrderReceipt> orders = new ArrayList<OrderReceipt>();
+      for (int i = 0; i < n; ++i)
+         orders.add(append(log, "Coffee", "Lemonade"));
+      halt(log);
+      return orders;
+   }//end appendOffline
+
+   private static OrderReceipt append(OrderLog log, String... items) throws Exception {
+      OrderReceipt order = log.append(CafeDatabase.CUSTOMER, new Timestamp(System.currentTimeMillis()),
+                                      1.99 * items.length, Arrays.asList(items));
+      assertNotNull(log.get(order.getOrderId()));
+      return order;
+   }//end append
+
+   private File lastSegment() {
+      String[] names = dir.list((d, name) -> name.startsWith("orders-"));
+      assertEquals(1, names.length, "the orders share one segment");
+      return new File(dir, names[0]);
+   }//end lastSegment
+
+   /*
+    * Where each record of a segment starts, read off the length fields.
+    */
+   private static List<Integer> recordStarts(byte[] data) {
+      List<Integer> starts = new ArrayList<Integer>();
+      int offset = 0;
+      while (offset + 8 <= data.length) {
+         int length = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+            | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+         if (length <= 0)
+            break;
+         starts.add(offset);
+         offset += 8 + length;
+      }//end while
+      return starts;
+   }//end recordStarts
+
+   private static int count(String sql, Object... params) throws Exception {
+      return Integer.parseInt(esql.executeQueryAndReturnResult(sql, params).get(0).get(0));
+   }
+
+   /*
+    * Stops a log as a crash would: the replayer stops and the files are
+    * let go, with nothing replayed, forced or written to the state file
+    * after the replayer's last run.
+    */
+   private static void halt(OrderLog log) throws Exception {
+      ExecutorService replayer = (ExecutorService) field(log, "_replayer");
+      replayer.shutdownNow();
+      assertTrue(replayer.awaitTermination(30, TimeUnit.SECONDS));
+      ((RandomAccessFile) field(field(log, "_current"), "file")).close();
+      ((FileLock) field(log, "_lock")).release();
+      ((RandomAccessFile) field(log, "_lockFile")).close();
+   }//end halt
+
+   private static Object field(Object o, String name) throws Exception {
+      Field f = o.getClass().getDeclaredField(name);
+      f.setAccessible(true);
+      return f.get(o);
+   }//end field
+
+}//end OrderLogIT
@@ -0,0 +1,221 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Placing orders and editing them through OrderService, checked against
+ * the Orders and ItemStatus rows they leave behind.
+ *
+ */
+class OrderServiceIT {
+
+   private static Cafe esql;
+   private static UserSession customer;
+   private static UserSession other;
+   private static UserSession staff;
+
+   @BeforeAll
+   static void open() throws Exception {
+      esql = CafeDatabase.open(CafeDatabase.create(), 4);
+      customer = esql.getUserService().logIn(CafeDatabase.CUSTOMER, CafeDatabase.CUSTOMER_PASSWORD);
+      other = esql.getUserService().logIn(CafeDatabase.OTHER_CUSTOMER, CafeDatabase.OTHER_CUSTOMER_PASSWORD);
+      staff = esql.getUserService().logIn(CafeDatabase.STAFF, CafeDatabase.STAFF_PASSWORD);
+   }//end open
+
+   @AfterAll
+   static void close() {
+      CafeDatabase.close(esql);
+   }
+
+   @Test
+   void placeOrderStoresItemsAndTotal() throws Exception {
+      OrderReceipt order = place(CafeDatabase.CUSTOMER, "Coffee", "Brisk", "Lemonade");
+
+      assertEquals(CafeDatabase.CUSTOMER, order.getLogin());
+      assertEquals(3, order.getItems().size());
+      assertEquals(price("Coffee") + price("Brisk") + price("Lemonade"), order.getTotal(), 0.001);
+      assertStored(order.getOrderId(), order.getTotal(), "Brisk", "Coffee", "Lemonade");
+      for (OrderReceipt.Line line : order.getItems())
+         assertEquals(OrderBuilder.INITIAL_STATUS, line.getStatus());
+   }//end placeOrderStoresItemsAndTotal
+
+   @Test
+   void pipelinedOrderIsStoredTheSameWay() throws Exception {
+      esql.setPipelined(true);
+      try {
+         OrderReceipt order = place(CafeDatabase.CUSTOMER, "7up", "Pepsi");
+         assertEquals(price("7up") + price("Pepsi"), order.getTotal(), 0.001);
+         assertStored(order.getOrderId(), order.getTotal(), "7up", "Pepsi");
+      } finally {
+         esql.setPipelined(false);
+      }//end try
+   }//end pipelinedOrderIsStoredTheSameWay
+
+   @Test
+   void invalidOrdersStoreNothing() throws Exception {
+      int orders = count("SELECT count(*) FROM Orders");
+      assertReason(ServiceException.Reason.INVALID, () -> place(CafeDatabase.CUSTOMER));
+      assertReason(ServiceException.Reason.INVALID, () -> place(CafeDatabase.CUSTOMER, "Coffee", "Coffee"));
+      assertReason(ServiceException.Reason.INVALID, () -> place(CafeDatabase.CUSTOMER, "Coffee", "No Such Item"));
+      assertEquals(orders, count("SELECT count(*) FROM Orders"));
+   }//end invalidOrdersStoreNothing
+
+   @Test
+   void addAndRemoveItemsAdjustTheTotal() throws Exception {
+      OrderReceipt order = place(CafeDatabase.CUSTOMER, "Coffee");
+      int id = order.getOrderId();
+      OrderService orders = esql.getOrderService();
+
+      double total = orders.addItem(customer, id, "Brisk");
+      assertEquals(price("Coffee") + price("Brisk"), total, 0.001);
+      assertStored(id, total, "Brisk", "Coffee");
+
+      total = orders.removeItem(customer, id, "Coffee");
+      assertEquals(price("Brisk"), total, 0.001);
+      assertStored(id, total, "Brisk");
+
+      assertReason(ServiceException.Reason.CONFLICT, () -> orders.addItem(customer, id, "Brisk"));
+      assertReason(ServiceException.Reason.NOT_FOUND, () -> orders.removeItem(customer, id, "Coffee"));
+      assertReason(ServiceException.Reason.INVALID, () -> orders.addItem(customer, id, "No Such Item"));
+      assertStored(id, total, "Brisk");
+   }//end addAndRemoveItemsAdjustTheTotal
+
+   @Test
+   void itemsAreRemovedAtThePriceTheyWereAddedAt() throws Exception {
+      UserSession manager = esql.getUserService().logIn(CafeDatabase.MANAGER, CafeDatabase.MANAGER_PASSWORD);
+      OrderService orders = esql.getOrderService();
+      double donuts = price("Donuts"), pudding = price("Pudding");
+      double sales = revenue("Donuts") + revenue("Pudding");
+      int id = place(CafeDatabase.CUSTOMER, "Coffee", "Donuts").getOrderId();
+      orders.addItem(customer, id, "Pudding");
+      assertEquals(sales + donuts + pudding, revenue("Donuts") + revenue("Pudding"), 0.001);
+
+      reprice(manager, "Donuts", donuts + 1);
+      reprice(manager, "Pudding", pudding + 1);
+      try {
+         orders.removeItem(customer, id, "Donuts");
+         double total = orders.removeItem(customer, id, "Pudding");
+         assertEquals(price("Coffee"), total, 0.001);
+         assertStored(id, total, "Coffee");
+         assertEquals(sales, revenue("Donuts") + revenue("Pudding"), 0.001);
+      } finally {
+         reprice(manager, "Donuts", donuts);
+         reprice(manager, "Pudding", pudding);
+      }//end try
+   }//end itemsAreRemovedAtThePriceTheyWereAddedAt
+
+   @Test
+   void onlyTheCustomerEditsAnUnpaidOrder() throws Exception {
+      int id = place(CafeDatabase.CUSTOMER, "Coffee").getOrderId();
+      OrderService orders = esql.getOrderService();
+
+      assertReason(ServiceException.Reason.FORBIDDEN, () -> orders.addItem(other, id, "Brisk"));
+      assertReason(ServiceException.Reason.FORBIDDEN, () -> orders.markPaid(customer, id));
+      assertReason(ServiceException.Reason.NOT_FOUND, () -> orders.addItem(customer, -1, "Brisk"));
+
+      assertTrue(orders.markPaid(staff, id).isPaid());
+      assertReason(ServiceException.Reason.CONFLICT, () -> orders.markPaid(staff, id));
+      assertReason(ServiceException.Reason.CONFLICT, () -> orders.addItem(customer, id, "Brisk"));
+      assertReason(ServiceException.Reason.CONFLICT, () -> orders.removeItem(customer, id, "Coffee"));
+      assertStored(id, price("Coffee"), "Coffee");
+   }//end onlyTheCustomerEditsAnUnpaidOrder
+
+   @Test
+   void ordersAreListedAPageAtATimeNewestFirst() throws Exception {
+      List<Integer> placed = new ArrayList<Integer>();
+      for (int i = 0; i < 5; ++i)
+         placed.add(0, place(CafeDatabase.OTHER_CUSTOMER, "Pepsi").getOrderId());
+
+      List<Integer> listed = new ArrayList<Integer>();
+      String after = null;
+      int pages = 0;
+      do {
+         OrderPage page = esql.getOrderService().listOwnOrders(other, after, 2);
+         for (OrderSummary order : page.getOrders()) {
+            assertEquals(CafeDatabase.OTHER_CUSTOMER, order.getLogin());
+            listed.add(order.getOrderId());
+         }//end for
+         after = page.getNext();
+         ++pages;
+      } while (after != null);
+      assertEquals(placed, listed);
+      assertEquals(3, pages);
+
+      OrderPage unpaid = esql.getOrderService().listUnpaidOrders(staff, null, OrderService.MAX_PAGE_SIZE);
+      assertNull(unpaid.getNext());
+      List<Integer> unpaidIds = new ArrayList<Integer>();
+      for (OrderSummary order : unpaid.getOrders())
+         unpaidIds.add(order.getOrderId());
+      assertTrue(unpaidIds.containsAll(placed));
+      assertReason(ServiceException.Reason.FORBIDDEN,
+                   () -> esql.getOrderService().listUnpaidOrders(customer, null, OrderService.DEFAULT_PAGE_SIZE));
+   }//end ordersAreListedAPageAtATimeNewestFirst
+
+   private static OrderReceipt place(String login, String... items) throws Exception {
+      return esql.getOrderService().placeOrder(new OrderRequest(login, Arrays.asList(items)));
+   }
+
+   private static double price(String itemName) throws Exception {
+      MenuItem item = esql.getMenuCatalog().get(itemName);
+      assertNotNull(item, itemName);
+      return item.getPrice();
+   }//end price
+
+   private static void reprice(UserSession manager, String itemName, double price) throws Exception {
+      MenuItem item = esql.getMenuCatalog().get(itemName);
+      assertTrue(esql.getMenuService().updateItem(manager, itemName,
+         new MenuItem(itemName, item.getType(), price, item.getDescription(), item.getImageURL())));
+   }//end reprice
+
+   private static double revenue(String itemName) throws Exception {
+      return Double.parseDouble(esql.executeQueryAndReturnResult(
+         "SELECT COALESCE(sum(revenue), 0) FROM ItemSales WHERE itemName = ?", itemName).get(0).get(0));
+   }
+
+   private static int count(String query, Object... params) throws Exception {
+      return Integer.parseInt(esql.executeQueryAndReturnResult(query, params).get(0).get(0));
+   }
+
+   /*
+    * Checks the stored order: its total and exactly the given ItemStatus
+    * rows, in name order.
+    */
+   private static void assertStored(int orderid, double total, String... items) throws Exception {
+      List<List<String>> order = esql.executeQueryAndReturnResult("SELECT total FROM Orders WHERE orderid = ?", orderid);
+      assertEquals(1, order.size());
+      assertEquals(total, Double.parseDouble(order.get(0).get(0)), 0.001);
+      List<String> stored = new ArrayList<String>();
+      for (List<String> row : esql.executeQueryAndReturnResult(
+              "SELECT itemName FROM ItemStatus WHERE orderid = ? ORDER BY itemName", orderid))
+         stored.add(row.get(0));
+      assertEquals(Arrays.asList(items), stored);
+   }//end assertStored
+
+   static void assertReason(ServiceException.Reason reason, Executable call) {
+      assertEquals(reason, assertThrows(ServiceException.class, call).getReason());
+   }
+
+}//end OrderServiceIT
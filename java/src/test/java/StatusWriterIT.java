@@ -0,0 +1,147 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Status changes written behind the callers by a StatusWriter, checked
+ * against the ItemStatus rows after each flush. The writer's own flushes
+ * are an hour apart, so only the flushes the tests ask for write.
+ *
+ */
+class StatusWriterIT {
+
+   private static Cafe esql;
+
+   private StatusWriter writer;
+   private int orderid;
+   // a minute after the order was placed.
+   private long later;
+
+   @BeforeAll
+   static void open() throws Exception {
+      esql = CafeDatabase.open(CafeDatabase.create(), 2);
+   }
+
+   @AfterAll
+   static void close() {
+      CafeDatabase.close(esql);
+   }
+
+   @BeforeEach
+   void place() throws Exception {
+      this.writer = new StatusWriter(esql, 3600000, 256);
+      this.orderid = esql.getOrderService().placeOrder(
+         new OrderRequest(CafeDatabase.CUSTOMER, Arrays.asList("Coffee", "Brisk", "Donuts"))).getOrderId();
+      this.later = System.currentTimeMillis() + 60000;
+   }//end place
+
+   @AfterEach
+   void closeWriter() {
+      this.writer.close();
+   }
+
+   @Test
+   void changesToOneItemMergeWhateverTheirOrder() throws Exception {
+      this.writer.update(this.orderid, "Coffee", "Finished", at(2), null);
+      this.writer.update(this.orderid, "Coffee", "Started", at(1), "no sugar");
+      this.writer.update(this.orderid, "Brisk", "Started", at(1), "cold");
+      this.writer.update(this.orderid, "Brisk", "Finished", at(2), null);
+      assertEquals(2, this.writer.getMerged());
+      assertEquals(2, this.writer.getPending());
+      assertEquals("Finished", this.writer.overlay(new WorkItem(this.orderid, "Coffee", "Hasn't Started", at(0), "")).getStatus());
+
+      this.writer.flush();
+      assertEquals(1, this.writer.getFlushes());
+      assertEquals(0, this.writer.getPending());
+      assertRow("Coffee", "Finished", at(2), "no sugar");
+      assertRow("Brisk", "Finished", at(2), "cold");
+   }//end changesToOneItemMergeWhateverTheirOrder
+
+   @Test
+   void aChangeOlderThanTheRowIsNotApplied() throws Exception {
+      esql.executeUpdate("UPDATE ItemStatus SET status = ?, lastUpdated = ? WHERE orderid = ? AND itemName = ?",
+                         "Started", at(2), this.orderid, "Coffee");
+      this.writer.update(this.orderid, "Coffee", "Finished", at(1), "late");
+      this.writer.update(this.orderid, "Brisk", "Finished", at(1), null);
+      assertEquals("Started", this.writer.overlay(new WorkItem(this.orderid, "Coffee", "Started", at(2), "")).getStatus());
+
+      this.writer.flush();
+      assertRow("Coffee", "Started", at(2), "");
+      assertRow("Brisk", "Finished", at(1), "");
+   }//end aChangeOlderThanTheRowIsNotApplied
+
+   @Test
+   void aFailedFlushIsWrittenByTheNextOne() throws Exception {
+      // longer than the status column: the whole batch fails.
+      this.writer.update(this.orderid, "Coffee", "Waiting for the milk delivery", at(1), "oat milk");
+      this.writer.update(this.orderid, "Brisk", "Started", at(1), null);
+      assertThrows(SQLException.class, () -> this.writer.flush());
+      assertEquals(1, this.writer.getFailures());
+      assertEquals(2, this.writer.getPending());
+      assertRow("Brisk", "Hasn't Started", null, "");
+
+      // a later change of the same item replaces the one that failed and
+      // keeps its comments.
+      this.writer.update(this.orderid, "Coffee", "Started", at(2), null);
+      this.writer.update(this.orderid, "Donuts", "Finished", at(2), null);
+      this.writer.flush();
+      assertEquals(0, this.writer.getPending());
+      assertRow("Coffee", "Started", at(2), "oat milk");
+      assertRow("Brisk", "Started", at(1), "");
+      assertRow("Donuts", "Finished", at(2), "");
+   }//end aFailedFlushIsWrittenByTheNextOne
+
+   @Test
+   void commentsAreWrittenAsGiven() throws Exception {
+      String[] comments = {
+         "say \"when\"", "C:\\orders\\", "\\\"", "{a,b}", "NULL", "", "one, two", "it's \"extra\" \\hot\\" };
+      String[] items = { "Coffee", "Brisk", "Donuts" };
+      for (int i = 0; i < comments.length; i += items.length) {
+         for (int j = 0; j < items.length && i + j < comments.length; ++j)
+            this.writer.update(this.orderid, items[j], "Started", at(i + 1), comments[i + j]);
+         this.writer.flush();
+         for (int j = 0; j < items.length && i + j < comments.length; ++j)
+            assertRow(items[j], "Started", at(i + 1), comments[i + j]);
+      }//end for
+   }//end commentsAreWrittenAsGiven
+
+   private Timestamp at(int seconds) {
+      return new Timestamp(this.later + seconds * 1000L);
+   }
+
+   /*
+    * Checks an item of the order; a null time is not checked.
+    */
+   private void assertRow(String itemName, String status, Timestamp lastUpdated, String comments) throws Exception {
+      List<String> row = esql.executeQueryAndReturnResult(
+         "SELECT status, lastUpdated, comments FROM ItemStatus WHERE orderid = ? AND itemName = ?",
+         this.orderid, itemName).get(0);
+      assertEquals(status, row.get(0), itemName);
+      if (lastUpdated != null)
+         assertEquals(lastUpdated, Timestamp.valueOf(row.get(1)), itemName);
+      assertEquals(comments, row.get(2), itemName);
+   }//end assertRow
+
+}//end StatusWriterIT
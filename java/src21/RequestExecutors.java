@@ -0,0 +1,37 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class creates the executors that run one task per request, for the
+ * HTTP server, AsyncCafe and the load generator.
+ *
+ * The Java 21 version of src/RequestExecutors.java: every task runs on a
+ * virtual thread of its own, so thousands of requests waiting on the
+ * database cost no platform threads.
+ *
+ */
+public class RequestExecutors {
+
+   private RequestExecutors() {
+   }
+
+   /**
+    * @return an executor that starts every task at once on its own thread
+    */
+   public static ExecutorService newRequestExecutor() {
+      return Executors.newVirtualThreadPerTaskExecutor();
+   }
+
+}//end RequestExecutors
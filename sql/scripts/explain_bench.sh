@@ -0,0 +1,32 @@
+#!/bin/bash
+# Compares the query plans and timings of the original schema with those of
+# the migrated one. Builds a scratch database from create_tables.sql and
+# create_indexes.sql, fills it with generate_data.sql, runs
+# explain_queries.sql, applies the migrations and runs it again.
+# Usage: explain_bench.sh [database], default $USER"_explain"; the database
+# is dropped and recreated. USERS, ORDERS and ITEMS set the data size.
+# The plans are written to sql/explain/before.txt and after.txt.
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+DB=${1:-$USER"_explain"}
+OUT=$DIR/../explain
+PSQL="psql -h localhost -p $PGPORT -q -v ON_ERROR_STOP=1"
+
+$PSQL postgres -c "DROP DATABASE IF EXISTS $DB" -c "CREATE DATABASE $DB" || exit 1
+# the scripts start by dropping the tables they create
+grep -v '^DROP' $DIR/../src/create_tables.sql | $PSQL $DB || exit 1
+$PSQL $DB < $DIR/../src/create_indexes.sql || exit 1
+echo "Generating data"
+$PSQL $DB -v users=${USERS:-100000} -v orders=${ORDERS:-1000000} -v items=${ITEMS:-2000} \
+   -f $DIR/../src/generate_data.sql || exit 1
+$PSQL $DB -c "VACUUM ANALYZE" || exit 1
+
+mkdir -p $OUT
+$PSQL $DB -f $DIR/../src/explain_queries.sql > $OUT/before.txt || exit 1
+$DIR/migrate.sh $DB || exit 1
+$PSQL $DB -c "VACUUM ANALYZE" || exit 1
+$PSQL $DB -f $DIR/../src/explain_queries.sql > $OUT/after.txt || exit 1
+
+# one line per query: before and after execution time
+paste <(grep '^==\|Execution Time' $OUT/before.txt | paste - -) \
+      <(grep 'Execution Time' $OUT/after.txt) |
+   sed 's/ *Execution Time: */\t/g' | awk -F'\t' '{ printf "%-36s %12s -> %s\n", $1, $2, $3 }'
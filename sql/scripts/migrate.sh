@@ -0,0 +1,24 @@
+#!/bin/bash
+# Brings a database created by create_db.sh up to the current schema by
+# applying the scripts in sql/src/migrations whose number is above the
+# version stored in SchemaVersion. Each script runs in a transaction of its
+# own together with the version bump, so a failed script changes nothing.
+# Usage: migrate.sh [database], default $USER"_DB".
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+DB=${1:-$USER"_DB"}
+PSQL="psql -h localhost -p $PGPORT -q -v ON_ERROR_STOP=1 $DB"
+
+$PSQL -c "CREATE TABLE IF NOT EXISTS SchemaVersion(version integer NOT NULL);
+          INSERT INTO SchemaVersion SELECT 0 WHERE NOT EXISTS (SELECT 1 FROM SchemaVersion);" || exit 1
+CURRENT=$($PSQL -t -A -c "SELECT version FROM SchemaVersion") || exit 1
+
+for FILE in $DIR/../src/migrations/[0-9]*.sql; do
+   NAME=$(basename $FILE)
+   VERSION=$((10#${NAME%%_*}))
+   if [ $VERSION -le $CURRENT ]; then
+      continue
+   fi
+   echo "Applying $NAME"
+   ( cat $FILE; echo "UPDATE SchemaVersion SET version = $VERSION;" ) | $PSQL --single-transaction -f - || exit 1
+done
+echo "Schema version $($PSQL -t -A -c "SELECT version FROM SchemaVersion")"
@@ -0,0 +1,64 @@
+-- The queries the services run, with values from generate_data.sql, for
+-- sql/scripts/explain_bench.sh. Each runs once to warm the cache and once
+-- under EXPLAIN ANALYZE.
+
+\o /dev/null
+SELECT itemName, type, price, description, imageURL FROM Menu WHERE type = 'Type 7';
+SELECT login, phoneNum, favItems, type FROM Users WHERE login = 'user4242' AND password = 'pw4242';
+SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE login = 'user4242' ORDER BY timeStampRecieved DESC;
+SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = 'f';
+SELECT itemName, status, lastUpdated, comments FROM ItemStatus WHERE orderid = 4242;
+SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = 'f' AND (timeStampRecieved, orderid) < (NOW() - INTERVAL '12 hours', 2147483647) ORDER BY timeStampRecieved DESC, orderid DESC LIMIT 21;
+\o
+
+\echo '== menu by type'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT itemName, type, price, description, imageURL FROM Menu WHERE type = 'Type 7';
+
+\echo '== log in'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT login, phoneNum, favItems, type FROM Users WHERE login = 'user4242' AND password = 'pw4242';
+
+\echo '== customer order history'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE login = 'user4242' ORDER BY timeStampRecieved DESC;
+
+\echo '== unpaid orders of the last day'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = 'f';
+
+\echo '== customer order history, first page'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE login = 'user4242' ORDER BY timeStampRecieved DESC, orderid DESC LIMIT 21;
+
+\echo '== unpaid orders of the last day, a page from 12 hours back'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = 'f' AND (timeStampRecieved, orderid) < (NOW() - INTERVAL '12 hours', 2147483647) ORDER BY timeStampRecieved DESC, orderid DESC LIMIT 21;
+
+\echo '== items of an order'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT itemName, status, lastUpdated, comments FROM ItemStatus WHERE orderid = 4242;
+
+\echo '== most frequently ordered items of a customer'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT itemName, orders FROM ItemCounts WHERE login = 'user4242' AND orders > 0 ORDER BY orders DESC, lastOrdered DESC, itemName LIMIT 20;
+
+\echo '== sales by day of the last 30 days'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT date_trunc('day', hour), sum(orders), sum(revenue), sum(unpaid) FROM SalesByHour WHERE hour >= CURRENT_DATE - 29 AND hour < CURRENT_DATE + 1 GROUP BY 1 ORDER BY 1;
+
+\echo '== top sellers of the last 30 days'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT itemName, sum(orders), sum(revenue) FROM ItemSales WHERE day >= CURRENT_DATE - 29 AND day < CURRENT_DATE + 1 GROUP BY itemName HAVING sum(orders) > 0 ORDER BY 2 DESC, 3 DESC, 1 LIMIT 10;
+
+\echo '== item status changes written by one flush, rolled back'
+BEGIN;
+EXPLAIN (ANALYZE, BUFFERS)
+UPDATE ItemStatus i SET status = v.status, lastUpdated = v.lastUpdated, comments = COALESCE(v.comments, i.comments) FROM unnest('{4242,4243}'::integer[], '{"Coffee","Latte"}'::text[], '{"Finished","Finished"}'::text[], '{"2030-01-01 00:00:00","2030-01-01 00:00:00"}'::timestamp[], '{NULL,NULL}'::text[]) AS v(orderid, itemName, status, lastUpdated, comments) WHERE i.orderid = v.orderid AND i.itemName = v.itemName AND i.lastUpdated <= v.lastUpdated;
+ROLLBACK;
+
+\echo '== table and index sizes'
+SELECT c.relname, pg_size_pretty(pg_relation_size(c.oid)) AS size
+FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+WHERE n.nspname = 'public' AND c.relkind IN ('r', 'i')
+ORDER BY c.relname;
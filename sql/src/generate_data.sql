@@ -0,0 +1,31 @@
+-- Synthetic data for the EXPLAIN ANALYZE comparison in
+-- sql/scripts/explain_bench.sh. Takes the psql variables users, orders
+-- and items.
+--
+-- Menu items are spread over 40 types. Users are customers with one
+-- employee in every hundred. Orders come in one a minute, newest last, to
+-- random customers; all but the last few thousand are paid, as at a cafe
+-- where orders are settled the same day. Every order holds two items.
+
+SELECT setseed(0.42);
+
+INSERT INTO Menu (itemName, type, price, description, imageURL)
+SELECT 'Item ' || i, 'Type ' || (i % 40), 1.99 + i % 20, 'Description of item ' || i, 'https://example.com/' || i
+FROM generate_series(1, :items) i;
+
+INSERT INTO Users (login, phoneNum, password, favItems, type)
+SELECT 'user' || i, lpad(i::text, 10, '0'), 'pw' || i, 'Item ' || (1 + i % :items),
+       CASE WHEN i % 100 = 0 THEN 'Employee' ELSE 'Customer' END
+FROM generate_series(1, :users) i;
+
+INSERT INTO Orders (login, paid, timeStampRecieved, total)
+SELECT 'user' || (1 + (random() * (:users - 1))::integer),
+       i <= :orders - 5000 OR random() < 0.5,
+       NOW() - (:orders - i) * INTERVAL '1 minute',
+       3.98 + i % 30
+FROM generate_series(1, :orders) i;
+
+INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments)
+SELECT o.orderid, 'Item ' || (1 + (o.orderid * 7 + k * 13) % :items), o.timeStampRecieved + INTERVAL '5 minutes',
+       CASE WHEN o.paid THEN 'Finished' ELSE 'Started' END, ''
+FROM Orders o, generate_series(0, 1) k;
@@ -0,0 +1,20 @@
+DROP TABLE MenuVersion;
+
+CREATE TABLE MenuVersion(
+	version bigint NOT NULL);
+
+INSERT INTO MenuVersion VALUES (0);
+
+CREATE OR REPLACE FUNCTION menu_version_trigger()
+RETURNS "trigger" AS
+$BODY$
+BEGIN
+UPDATE MenuVersion SET version = version + 1;
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+CREATE TRIGGER trigger_menu_version AFTER INSERT OR UPDATE OR DELETE
+ON Menu FOR EACH STATEMENT
+EXECUTE PROCEDURE menu_version_trigger();
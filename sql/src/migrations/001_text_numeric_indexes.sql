@@ -0,0 +1,59 @@
+-- Schema version 1.
+--
+-- char(n) pads every value with spaces to its full width, so a login of
+-- five letters takes 50 characters in the row and in every index on it,
+-- and values read back have to be trimmed. The text columns become
+-- varchar, or text where no limit is useful; the cast from char drops the
+-- padding. Money becomes numeric, so prices and totals are exact cents
+-- instead of the nearest real.
+--
+-- It also adds the indexes behind the queries the services run:
+--   Menu(type)                      items of one type
+--   Orders(login, timeStampRecieved) a customer's orders, newest first
+--   Orders(timeStampRecieved) WHERE paid = false
+--                                   the unpaid orders of the last day
+--
+-- Applied by sql/scripts/migrate.sh.
+
+-- ItemStatus.itemName references Menu.itemName; both change type, so the
+-- key is dropped while they do.
+ALTER TABLE ItemStatus DROP CONSTRAINT itemstatus_itemname_fkey;
+
+ALTER TABLE Users
+	ALTER COLUMN login TYPE varchar(50),
+	ALTER COLUMN phoneNum TYPE varchar(16),
+	ALTER COLUMN password TYPE varchar(50),
+	ALTER COLUMN favItems TYPE text,
+	ALTER COLUMN type TYPE varchar(8);
+
+ALTER TABLE Menu
+	ALTER COLUMN itemName TYPE varchar(50),
+	ALTER COLUMN type TYPE varchar(20),
+	ALTER COLUMN price TYPE numeric(8,2) USING round(price::numeric, 2),
+	ALTER COLUMN description TYPE text,
+	ALTER COLUMN imageURL TYPE varchar(256);
+
+ALTER TABLE Orders
+	ALTER COLUMN login TYPE varchar(50),
+	ALTER COLUMN total TYPE numeric(10,2) USING round(total::numeric, 2);
+
+ALTER TABLE ItemStatus
+	ALTER COLUMN itemName TYPE varchar(50),
+	ALTER COLUMN status TYPE varchar(20),
+	ALTER COLUMN comments TYPE varchar(130);
+
+ALTER TABLE ItemStatus ADD CONSTRAINT itemstatus_itemname_fkey
+	FOREIGN KEY(itemName) REFERENCES Menu(itemName);
+
+CREATE INDEX menu_type
+ON Menu
+(type);
+
+CREATE INDEX orders_login_time
+ON Orders
+(login, timeStampRecieved);
+
+CREATE INDEX orders_unpaid_time
+ON Orders
+(timeStampRecieved)
+WHERE paid = false;
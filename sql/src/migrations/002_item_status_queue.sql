@@ -0,0 +1,42 @@
+-- Schema version 2.
+--
+-- Every change of an ItemStatus row is announced on the item_status
+-- channel, so that the application can push queue changes to open screens
+-- from a single LISTEN instead of every screen polling the table. The
+-- payload is orderid;login;status;itemName, with the item name last as it
+-- may hold a ';'. A deleted item is announced with the status Removed.
+-- Notifications go out when the transaction commits.
+--
+-- Applied by sql/scripts/migrate.sh.
+
+CREATE OR REPLACE FUNCTION item_status_notify()
+RETURNS "trigger" AS
+$BODY$
+DECLARE
+	item RECORD;
+	status text;
+BEGIN
+IF TG_OP = 'DELETE' THEN
+	item := OLD;
+	status := 'Removed';
+ELSE
+	item := NEW;
+	status := NEW.status;
+END IF;
+PERFORM pg_notify('item_status', item.orderid || ';' ||
+	COALESCE((SELECT login FROM Orders WHERE orderid = item.orderid), '') || ';' ||
+	status || ';' || item.itemName);
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+CREATE TRIGGER trigger_item_status_notify AFTER INSERT OR UPDATE OR DELETE
+ON ItemStatus FOR EACH ROW
+EXECUTE PROCEDURE item_status_notify();
+
+-- The kitchen claims the oldest items nobody has started on.
+CREATE INDEX itemstatus_queue
+ON ItemStatus
+(lastUpdated)
+WHERE status = 'Hasn''t Started';
@@ -0,0 +1,28 @@
+-- Schema version 3.
+--
+-- Order listings are paged by (timeStampRecieved, orderid), newest first:
+-- a page continues after the last order of the one before it with
+--   (timeStampRecieved, orderid) < (last time, last orderid)
+-- The listing indexes gain orderid, so that condition and the order of the
+-- page are read straight off the index, and a page costs the same however
+-- deep into the listing it is. index1 on timeStampRecieved alone is
+-- dropped: both listings are covered without it, and while it exists the
+-- planner may walk it instead, filtering out other customers' or paid
+-- orders and sorting ties.
+--
+-- Applied by sql/scripts/migrate.sh.
+
+DROP INDEX index1;
+
+DROP INDEX orders_login_time;
+
+CREATE INDEX orders_login_time
+ON Orders
+(login, timeStampRecieved, orderid);
+
+DROP INDEX orders_unpaid_time;
+
+CREATE INDEX orders_unpaid_time
+ON Orders
+(timeStampRecieved, orderid)
+WHERE paid = false;
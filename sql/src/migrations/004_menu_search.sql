@@ -0,0 +1,16 @@
+-- Schema version 4.
+--
+-- Menu search normally runs from the application's in-memory index. For
+-- menus too large to index in memory it runs in the database, matching
+-- each word of the query as a substring (LIKE '%word%') or as a close
+-- misspelling of a word (word <% text). The trigram index below answers
+-- both over the item's name, type and description; the expression has to
+-- stay the same as MenuService.SEARCH_TEXT.
+--
+-- Applied by sql/scripts/migrate.sh.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX menu_search
+ON Menu
+USING gin ((lower(itemName || ' ' || type || ' ' || COALESCE(description, ''))) gin_trgm_ops);
@@ -0,0 +1,92 @@
+-- Schema version 5.
+--
+-- Favorite items move from the free-form Users.favItems list into
+-- FavoriteItems, one row per user and menu item in the user's order. The
+-- existing lists are split on ',' and each entry is matched to a menu item
+-- ignoring case and surrounding blanks; entries that name no menu item are
+-- dropped. Users.favItems is kept, rewritten by the application as the
+-- comma list of the stored favorites, for older clients.
+--
+-- ItemCounts holds how many orders of each user held each item. The
+-- statement triggers below keep it up to date as ItemStatus rows are
+-- inserted and deleted, one aggregated upsert per statement, so the most
+-- frequently ordered items of a user are read from a handful of rows
+-- instead of the user's whole order history. Counts follow Orders.login and
+-- are not removed when a user or menu item is.
+--
+-- Applied by sql/scripts/migrate.sh.
+
+CREATE TABLE FavoriteItems(
+	login varchar(50) NOT NULL,
+	itemName varchar(50) NOT NULL,
+	position integer NOT NULL,
+	PRIMARY KEY(login, itemName),
+	FOREIGN KEY(login) REFERENCES Users(login) ON UPDATE CASCADE ON DELETE CASCADE,
+	FOREIGN KEY(itemName) REFERENCES Menu(itemName) ON UPDATE CASCADE ON DELETE CASCADE);
+
+INSERT INTO FavoriteItems (login, itemName, position)
+SELECT login, itemName, min(position)
+FROM (SELECT u.login, m.itemName, f.position
+      FROM Users u,
+           regexp_split_to_table(u.favItems, ',') WITH ORDINALITY AS f(entry, position),
+           Menu m
+      WHERE lower(trim(f.entry)) = lower(trim(m.itemName))) matched
+GROUP BY login, itemName;
+
+CREATE TABLE ItemCounts(
+	login varchar(50) NOT NULL,
+	itemName varchar(50) NOT NULL,
+	orders integer NOT NULL,
+	lastOrdered timestamp NOT NULL,
+	PRIMARY KEY(login, itemName));
+
+INSERT INTO ItemCounts (login, itemName, orders, lastOrdered)
+SELECT o.login, i.itemName, count(*), max(o.timeStampRecieved)
+FROM ItemStatus i JOIN Orders o ON o.orderid = i.orderid
+WHERE o.login IS NOT NULL
+GROUP BY o.login, i.itemName;
+
+-- Rows are upserted in key order, so two transactions counting items of
+-- the same user lock them in the same order.
+CREATE OR REPLACE FUNCTION item_counts_add()
+RETURNS "trigger" AS
+$BODY$
+BEGIN
+INSERT INTO ItemCounts (login, itemName, orders, lastOrdered)
+SELECT o.login, n.itemName, count(*), max(o.timeStampRecieved)
+FROM added n JOIN Orders o ON o.orderid = n.orderid
+WHERE o.login IS NOT NULL
+GROUP BY o.login, n.itemName
+ORDER BY o.login, n.itemName
+ON CONFLICT (login, itemName) DO UPDATE
+SET orders = ItemCounts.orders + EXCLUDED.orders,
+    lastOrdered = GREATEST(ItemCounts.lastOrdered, EXCLUDED.lastOrdered);
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+CREATE OR REPLACE FUNCTION item_counts_remove()
+RETURNS "trigger" AS
+$BODY$
+BEGIN
+UPDATE ItemCounts c
+SET orders = c.orders - r.orders
+FROM (SELECT o.login, d.itemName, count(*) AS orders
+      FROM removed d JOIN Orders o ON o.orderid = d.orderid
+      GROUP BY o.login, d.itemName) r
+WHERE c.login = r.login AND c.itemName = r.itemName;
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+CREATE TRIGGER trigger_item_counts_add AFTER INSERT
+ON ItemStatus REFERENCING NEW TABLE AS added
+FOR EACH STATEMENT
+EXECUTE PROCEDURE item_counts_add();
+
+CREATE TRIGGER trigger_item_counts_remove AFTER DELETE
+ON ItemStatus REFERENCING OLD TABLE AS removed
+FOR EACH STATEMENT
+EXECUTE PROCEDURE item_counts_remove();
@@ -0,0 +1,162 @@
+-- Schema version 6.
+--
+-- Sales reports read two summary tables instead of Orders and ItemStatus:
+--
+--   SalesByHour  orders received in each hour, their total and the part
+--                of it still unpaid
+--   ItemSales    how many orders held each item on each day, and the menu
+--                price of those items when they were ordered
+--
+-- Statement triggers on Orders and ItemStatus keep both up to date in the
+-- transaction that writes the order, one aggregated upsert per statement.
+-- Every hour and day is split over 8 slots picked by the writing backend,
+-- so concurrent orders of the same hour or item update different rows
+-- instead of queueing on one; reports sum the slots. A report over a day
+-- reads at most 24 * 8 rows of SalesByHour however many orders there were.
+--
+-- Applied by sql/scripts/migrate.sh.
+
+CREATE TABLE SalesByHour(
+	hour timestamp NOT NULL,
+	slot smallint NOT NULL,
+	orders integer NOT NULL,
+	revenue numeric(14,2) NOT NULL,
+	unpaid numeric(14,2) NOT NULL,
+	PRIMARY KEY(hour, slot));
+
+CREATE TABLE ItemSales(
+	day date NOT NULL,
+	itemName varchar(50) NOT NULL,
+	slot smallint NOT NULL,
+	orders integer NOT NULL,
+	revenue numeric(14,2) NOT NULL,
+	PRIMARY KEY(day, itemName, slot));
+
+INSERT INTO SalesByHour (hour, slot, orders, revenue, unpaid)
+SELECT date_trunc('hour', timeStampRecieved), 0, count(*), sum(total::numeric),
+       sum(CASE WHEN paid THEN 0 ELSE total::numeric END)
+FROM Orders
+GROUP BY 1;
+
+INSERT INTO ItemSales (day, itemName, slot, orders, revenue)
+SELECT o.timeStampRecieved::date, i.itemName, 0, count(*), sum(COALESCE(m.price, 0)::numeric)
+FROM ItemStatus i JOIN Orders o ON o.orderid = i.orderid
+     LEFT JOIN Menu m ON m.itemName = i.itemName
+GROUP BY 1, 2;
+
+-- An inserted order adds itself to its hour, a deleted one subtracts
+-- itself, and an updated one does both, which accounts for payments and
+-- for totals changed by added or removed items.
+CREATE OR REPLACE FUNCTION sales_by_hour_apply()
+RETURNS "trigger" AS
+$BODY$
+BEGIN
+IF TG_OP = 'INSERT' THEN
+	INSERT INTO SalesByHour AS s (hour, slot, orders, revenue, unpaid)
+	SELECT date_trunc('hour', timeStampRecieved), pg_backend_pid() % 8, count(*), sum(total::numeric),
+	       sum(CASE WHEN paid THEN 0 ELSE total::numeric END)
+	FROM new_orders
+	GROUP BY 1
+	ORDER BY 1
+	ON CONFLICT (hour, slot) DO UPDATE
+	SET orders = s.orders + EXCLUDED.orders,
+	    revenue = s.revenue + EXCLUDED.revenue,
+	    unpaid = s.unpaid + EXCLUDED.unpaid;
+ELSIF TG_OP = 'DELETE' THEN
+	INSERT INTO SalesByHour AS s (hour, slot, orders, revenue, unpaid)
+	SELECT date_trunc('hour', timeStampRecieved), pg_backend_pid() % 8, -count(*), -sum(total::numeric),
+	       -sum(CASE WHEN paid THEN 0 ELSE total::numeric END)
+	FROM old_orders
+	GROUP BY 1
+	ORDER BY 1
+	ON CONFLICT (hour, slot) DO UPDATE
+	SET orders = s.orders + EXCLUDED.orders,
+	    revenue = s.revenue + EXCLUDED.revenue,
+	    unpaid = s.unpaid + EXCLUDED.unpaid;
+ELSE
+	INSERT INTO SalesByHour AS s (hour, slot, orders, revenue, unpaid)
+	SELECT date_trunc('hour', timeStampRecieved), pg_backend_pid() % 8, sum(orders), sum(revenue), sum(unpaid)
+	FROM (SELECT timeStampRecieved, 1 AS orders, total::numeric AS revenue,
+	             CASE WHEN paid THEN 0 ELSE total::numeric END AS unpaid
+	      FROM new_orders
+	      UNION ALL
+	      SELECT timeStampRecieved, -1, -total::numeric,
+	             CASE WHEN paid THEN 0 ELSE -total::numeric END
+	      FROM old_orders) changed
+	GROUP BY 1
+	ORDER BY 1
+	ON CONFLICT (hour, slot) DO UPDATE
+	SET orders = s.orders + EXCLUDED.orders,
+	    revenue = s.revenue + EXCLUDED.revenue,
+	    unpaid = s.unpaid + EXCLUDED.unpaid;
+END IF;
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+CREATE TRIGGER trigger_sales_by_hour_insert AFTER INSERT
+ON Orders REFERENCING NEW TABLE AS new_orders
+FOR EACH STATEMENT
+EXECUTE PROCEDURE sales_by_hour_apply();
+
+CREATE TRIGGER trigger_sales_by_hour_update AFTER UPDATE
+ON Orders REFERENCING OLD TABLE AS old_orders NEW TABLE AS new_orders
+FOR EACH STATEMENT
+EXECUTE PROCEDURE sales_by_hour_apply();
+
+CREATE TRIGGER trigger_sales_by_hour_delete AFTER DELETE
+ON Orders REFERENCING OLD TABLE AS old_orders
+FOR EACH STATEMENT
+EXECUTE PROCEDURE sales_by_hour_apply();
+
+-- Items are priced from the menu as they are added, the same prices
+-- OrderBuilder and OrderService add to the order total, and removed at the
+-- menu price current when they are removed.
+CREATE OR REPLACE FUNCTION item_sales_add()
+RETURNS "trigger" AS
+$BODY$
+BEGIN
+INSERT INTO ItemSales AS s (day, itemName, slot, orders, revenue)
+SELECT o.timeStampRecieved::date, n.itemName, pg_backend_pid() % 8, count(*),
+       sum(COALESCE(m.price, 0)::numeric)
+FROM added n JOIN Orders o ON o.orderid = n.orderid
+     LEFT JOIN Menu m ON m.itemName = n.itemName
+GROUP BY 1, 2
+ORDER BY 1, 2
+ON CONFLICT (day, itemName, slot) DO UPDATE
+SET orders = s.orders + EXCLUDED.orders,
+    revenue = s.revenue + EXCLUDED.revenue;
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+CREATE OR REPLACE FUNCTION item_sales_remove()
+RETURNS "trigger" AS
+$BODY$
+BEGIN
+INSERT INTO ItemSales AS s (day, itemName, slot, orders, revenue)
+SELECT o.timeStampRecieved::date, d.itemName, pg_backend_pid() % 8, -count(*),
+       -sum(COALESCE(m.price, 0)::numeric)
+FROM removed d JOIN Orders o ON o.orderid = d.orderid
+     LEFT JOIN Menu m ON m.itemName = d.itemName
+GROUP BY 1, 2
+ORDER BY 1, 2
+ON CONFLICT (day, itemName, slot) DO UPDATE
+SET orders = s.orders + EXCLUDED.orders,
+    revenue = s.revenue + EXCLUDED.revenue;
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+CREATE TRIGGER trigger_item_sales_add AFTER INSERT
+ON ItemStatus REFERENCING NEW TABLE AS added
+FOR EACH STATEMENT
+EXECUTE PROCEDURE item_sales_add();
+
+CREATE TRIGGER trigger_item_sales_remove AFTER DELETE
+ON ItemStatus REFERENCING OLD TABLE AS removed
+FOR EACH STATEMENT
+EXECUTE PROCEDURE item_sales_remove();
@@ -0,0 +1,17 @@
+-- Schema version 7.
+--
+-- The kitchen queue lists the items that are not finished yet, oldest
+-- first:
+--   WHERE status IN ('Hasn''t Started', 'Started') ORDER BY lastUpdated
+-- itemstatus_queue of migration 002 covers only the items nobody has
+-- started on, so without this index the listing reads and sorts all of
+-- ItemStatus. The listing spells the statuses out as literals; a partial
+-- index is only used when the query's condition implies the index's, and
+-- bound parameters imply nothing.
+--
+-- Applied by sql/scripts/migrate.sh.
+
+CREATE INDEX itemstatus_open
+ON ItemStatus
+(lastUpdated)
+WHERE status IN ('Hasn''t Started', 'Started');
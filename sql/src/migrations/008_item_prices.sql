@@ -0,0 +1,50 @@
+-- Schema version 8.
+--
+-- ItemStatus records the menu price an item was ordered at, so removing
+-- the item takes off what adding it put on even when the menu price
+-- changed in between: OrderService subtracts it from Orders.total, and
+-- the ItemSales triggers of migration 006 add and subtract it. Rows
+-- without a price, written by older clients or loaded from data files,
+-- count at the current menu price, as every row did before.
+--
+-- Applied by sql/scripts/migrate.sh.
+
+ALTER TABLE ItemStatus ADD COLUMN price numeric(8,2);
+
+CREATE OR REPLACE FUNCTION item_sales_add()
+RETURNS "trigger" AS
+$BODY$
+BEGIN
+INSERT INTO ItemSales AS s (day, itemName, slot, orders, revenue)
+SELECT o.timeStampRecieved::date, n.itemName, pg_backend_pid() % 8, count(*),
+       sum(COALESCE(n.price, m.price, 0)::numeric)
+FROM added n JOIN Orders o ON o.orderid = n.orderid
+     LEFT JOIN Menu m ON m.itemName = n.itemName
+GROUP BY 1, 2
+ORDER BY 1, 2
+ON CONFLICT (day, itemName, slot) DO UPDATE
+SET orders = s.orders + EXCLUDED.orders,
+    revenue = s.revenue + EXCLUDED.revenue;
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+CREATE OR REPLACE FUNCTION item_sales_remove()
+RETURNS "trigger" AS
+$BODY$
+BEGIN
+INSERT INTO ItemSales AS s (day, itemName, slot, orders, revenue)
+SELECT o.timeStampRecieved::date, d.itemName, pg_backend_pid() % 8, -count(*),
+       -sum(COALESCE(d.price, m.price, 0)::numeric)
+FROM removed d JOIN Orders o ON o.orderid = d.orderid
+     LEFT JOIN Menu m ON m.itemName = d.itemName
+GROUP BY 1, 2
+ORDER BY 1, 2
+ON CONFLICT (day, itemName, slot) DO UPDATE
+SET orders = s.orders + EXCLUDED.orders,
+    revenue = s.revenue + EXCLUDED.revenue;
+RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
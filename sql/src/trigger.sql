@@ -1,16 +1,7 @@
-CREATE LANGUAGE plpgsql;
-CREATE OR REPLACE FUNCTION orderid_trigger()
-RETURNS "trigger" AS
-$BODY$
-BEGIN
-NEW.orderid := nextval('orders_orderid_seq');
-RETURN NEW;
-END;
-$BODY$
-LANGUAGE plpgsql VOLATILE;
-
-CREATE TRIGGER trigger_orderid BEFORE INSERT
-ON Orders FOR EACH ROW
-EXECUTE PROCEDURE orderid_trigger();
-
-
+-- Order ids are no longer assigned by a trigger. Orders.orderid takes its
+-- default from orders_orderid_seq, and the application reserves ids from
+-- the same sequence (OrderIdAllocator) and inserts them explicitly, so a
+-- trigger overwriting NEW.orderid would detach the ItemStatus rows from
+-- their order. Run this on databases that still have the old trigger.
+DROP TRIGGER IF EXISTS trigger_orderid ON Orders;
+DROP FUNCTION IF EXISTS orderid_trigger();